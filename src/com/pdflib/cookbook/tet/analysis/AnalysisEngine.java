@@ -0,0 +1,580 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.FakeTetBackend;
+import com.pdflib.cookbook.tet.backend.NativeTetBackend;
+import com.pdflib.cookbook.tet.backend.RecordingTetBackend;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+import com.pdflib.cookbook.tet.backend.TetTrace;
+import com.pdflib.cookbook.tet.util.EventLog;
+import com.pdflib.cookbook.tet.util.SymbolTable;
+
+/**
+ * Run any number of analyses over a set of documents in a single pass.
+ * <p>
+ * Running the individual cookbook samples on the same corpus opens every
+ * document and every page once per sample. The engine opens each document and
+ * page only once, and fans the text, glyph and image events out to all
+ * registered {@link Analyzer} instances. The time spent in each analyzer is
+ * measured separately, so that the cost of each analysis can be compared with
+ * the cost of the extraction itself.
+ * <p>
+ * The analyzers share one {@link SymbolTable} for the whole run, so a word
+ * that occurs in many documents gets its dense id only once, and the ids of
+ * all analyzers agree.
+ * <p>
+ * The documents are opened with the document options of all analyzers, e.g.
+ * "keeppua" for font_statistics, and the pages with the granularity that the
+ * analyzers need: the granularity of the text events of the analyzers that
+ * process text, e.g. word for concordance, otherwise glyph. Analyzers that
+ * need different text granularities cannot be combined. The combined options
+ * can change the results compared to the individual samples: with
+ * granularity=word the glyph based analyzers see the glyphs of the words,
+ * without e.g. the hyphens removed by dehyphenation, and with keeppua the
+ * concordance counts words with PUA characters as they are.
+ * <p>
+ * Glyph events are far more frequent than all other events, so only every
+ * 16th glyph event is timed and the result is scaled accordingly; this keeps
+ * the overhead of the measurement itself low.
+ * <p>
+ * usage: AnalysisEngine [ -analyzers &lt;analyzer list&gt; ] [ -record
+ * &lt;trace file&gt; | -replay &lt;trace file&gt; ] &lt;PDF document&gt; ...
+ * <p>
+ * The &lt;analyzer list&gt; is a comma-separated list out of
+ * "concordance", "font_statistics", "identify_ocr" and "image_count". By
+ * default all analyzers are run.
+ * <p>
+ * With -record the TET session is written to a trace file (see
+ * {@link TetTrace}). With -replay the documents are served from a trace
+ * instead of TET, which gives identical input on every run; the document
+ * names must be the ones used for recording.
+ * <p>
+ * Required software: TET 4 (not for -replay)
+ * <p>
+ * Required data: PDF documents
+ */
+public class AnalysisEngine {
+    /**
+     * Global option list. The program expects the "resource" directory parallel
+     * to the "java" directory.
+     */
+    private static final String GLOBAL_OPTLIST = "searchpath={../resource/cmap "
+            + "../resource/glyphlist ../input}";
+
+    /**
+     * The encoding in which the output is sent to System.out. For running
+     * the example in a Windows command window, you can set this for example to
+     * "windows-1252" for getting Latin-1 output.
+     */
+    private static final String OUTPUT_ENCODING = System.getProperty("file.encoding");
+
+    /**
+     * Command line flag for the list of analyzers.
+     */
+    private static final String ANALYZERS_OPT = "-analyzers";
+
+    /**
+     * Command line flag for recording the session to a trace file.
+     */
+    private static final String RECORD_OPT = "-record";
+
+    /**
+     * Command line flag for replaying a trace file.
+     */
+    private static final String REPLAY_OPT = "-replay";
+
+    /**
+     * Names of the available analyzers, see createAnalyzer().
+     */
+    private static final String ALL_ANALYZERS =
+            "concordance,font_statistics,identify_ocr,image_count";
+
+    /**
+     * Every (GLYPH_SAMPLE_MASK + 1)th glyph event is timed.
+     */
+    private static final int GLYPH_SAMPLE_MASK = 15;
+
+    private Analyzer[] analyzers = new Analyzer[0];
+
+    /**
+     * Time spent in each analyzer, parallel to the analyzers array.
+     */
+    private long[] analyzerNanos = new long[0];
+
+    /**
+     * Total time spent in process(), including the analyzers.
+     */
+    private long totalNanos;
+
+    private boolean wantsGlyphs;
+
+    private boolean wantsImages;
+
+    /**
+     * The distinct document options of the analyzers.
+     */
+    private String documentOptions = "";
+
+    /**
+     * The text granularity of the analyzers that process text, or null.
+     */
+    private String textGranularity;
+
+    /**
+     * Whether an analyzer needs granularity=glyph, if none processes text.
+     */
+    private boolean glyphGranularity;
+
+    /**
+     * The words of the run, shared by all analyzers, see
+     * {@link Analyzer#setSymbolTable(SymbolTable)}.
+     */
+    private final SymbolTable symbols = new SymbolTable();
+
+    /**
+     * Delivers the glyphs of each text chunk to glyph().
+     */
+    private final GlyphStream glyphStream = new GlyphStream();
+
+    /**
+     * Number of glyphs delivered, for selecting the glyph events to time.
+     */
+    private long glyphCount;
+
+    private final ImageRecord image = new ImageRecord();
+
+    public AnalysisEngine() {
+        glyphStream.addListener(new GlyphListener() {
+            public void glyph(GlyphRecord glyph) throws TETException {
+                deliver_glyph(glyph);
+            }
+        });
+    }
+
+    /**
+     * Register an analyzer. Analyzers receive the events in registration
+     * order.
+     *
+     * @throws IllegalArgumentException
+     *             The analyzer needs a different text granularity than an
+     *             analyzer that is already registered
+     */
+    public void addAnalyzer(Analyzer analyzer) {
+        String granularity = analyzer.getGranularity();
+        if (Analyzer.GRANULARITY_GLYPH.equals(granularity)) {
+            glyphGranularity = true;
+        }
+        else if (granularity != null) {
+            if (textGranularity != null
+                    && !textGranularity.equals(granularity)) {
+                throw new IllegalArgumentException("analyzer \""
+                        + analyzer.getName() + "\" needs granularity="
+                        + granularity + " instead of granularity="
+                        + textGranularity);
+            }
+            textGranularity = granularity;
+        }
+
+        String options = analyzer.getDocumentOptions();
+        if (options.length() > 0 && (" " + documentOptions + " ")
+                .indexOf(" " + options + " ") == -1) {
+            documentOptions = documentOptions.length() > 0
+                    ? documentOptions + " " + options : options;
+        }
+
+        analyzer.setSymbolTable(symbols);
+        analyzers = Arrays.copyOf(analyzers, analyzers.length + 1);
+        analyzers[analyzers.length - 1] = analyzer;
+        analyzerNanos = Arrays.copyOf(analyzerNanos, analyzers.length);
+        wantsGlyphs |= analyzer.wantsGlyphs();
+        wantsImages |= analyzer.wantsImages();
+    }
+
+    /**
+     * @return the symbol table shared by the analyzers
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * @return the option list for open_document(), combined from the
+     *         document options of the analyzers
+     */
+    public String getDocumentOptions() {
+        return documentOptions;
+    }
+
+    /**
+     * @return the option list for open_page(), with the granularity that the
+     *         analyzers need; word granularity if no analyzer needs any
+     */
+    public String getPageOptions() {
+        if (textGranularity != null) {
+            return "granularity=" + textGranularity;
+        }
+        return "granularity=" + (glyphGranularity ? Analyzer.GRANULARITY_GLYPH
+                : Analyzer.GRANULARITY_WORD);
+    }
+
+    /**
+     * Process a single document with all analyzers, and print the reports of
+     * the analyzers.
+     *
+     * @param tet
+     *            TET object
+     * @param filename
+     *            The name of the document
+     * @param out
+     *            Stream for the reports
+     *
+     * @return false if the document could not be opened
+     *
+     * @throws TETException
+     *             An error occurred in the TET API; the TET object must not be
+     *             used any longer
+     */
+    public boolean process(TET tet, String filename, PrintStream out)
+            throws TETException {
+        return process(new NativeTetBackend(tet), filename, out);
+    }
+
+    /**
+     * Process a single document with all analyzers, and print the reports of
+     * the analyzers.
+     *
+     * @param tet
+     *            TET backend
+     * @param filename
+     *            The name of the document
+     * @param out
+     *            Stream for the reports
+     *
+     * @return false if the document could not be opened
+     *
+     * @throws TETException
+     *             An error occurred in the TET API; the backend must not be
+     *             used any longer
+     */
+    public boolean process(TetBackend tet, String filename, PrintStream out)
+            throws TETException {
+        final long start = System.nanoTime();
+        try {
+            final int doc = tet.open_document(filename, documentOptions);
+            if (doc == -1) {
+                EventLog.getDefault().tetError(tet, filename, 0);
+                return false;
+            }
+
+            for (int i = 0; i < analyzers.length; i += 1) {
+                long t = System.nanoTime();
+                analyzers[i].startDocument(tet, doc, filename);
+                analyzerNanos[i] += System.nanoTime() - t;
+            }
+
+            final String pageOptions = getPageOptions();
+            final int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
+            for (int pageno = 1; pageno <= n_pages; ++pageno) {
+                process_page(tet, filename, doc, pageno, pageOptions);
+            }
+
+            for (int i = 0; i < analyzers.length; i += 1) {
+                long t = System.nanoTime();
+                analyzers[i].endDocument(tet, doc, out);
+                analyzerNanos[i] += System.nanoTime() - t;
+            }
+
+            tet.close_document(doc);
+            return true;
+        }
+        finally {
+            totalNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Deliver the events for one page to all analyzers.
+     */
+    private void process_page(TetBackend tet, String filename, int doc,
+            int pageno, String pageOptions) throws TETException {
+        final int page = tet.open_page(doc, pageno, pageOptions);
+
+        if (page == -1) {
+            EventLog.getDefault().tetError(tet, filename, pageno);
+            return;
+        }
+
+        final Analyzer[] a = analyzers;
+        final long[] nanos = analyzerNanos;
+
+        for (int i = 0; i < a.length; i += 1) {
+            long t = System.nanoTime();
+            a[i].startPage(pageno);
+            nanos[i] += System.nanoTime() - t;
+        }
+
+        for (String text = tet.get_text(page); text != null;
+                text = tet.get_text(page)) {
+            for (int i = 0; i < a.length; i += 1) {
+                long t = System.nanoTime();
+                a[i].text(text);
+                nanos[i] += System.nanoTime() - t;
+            }
+
+            if (wantsGlyphs) {
+                glyphStream.processChunk(tet, page, pageno);
+            }
+        }
+
+        if (wantsImages && tet.get_errnum() == 0) {
+            final ImageRecord img = image;
+            img.pageno = pageno;
+            while (tet.get_image_info(page) == 1) {
+                img.imageid = tet.imageid();
+                img.x = tet.x();
+                img.y = tet.y();
+                img.width = tet.width();
+                img.height = tet.height();
+                img.alpha = tet.alpha();
+                img.beta = tet.beta();
+
+                for (int i = 0; i < a.length; i += 1) {
+                    if (a[i].wantsImages()) {
+                        long t = System.nanoTime();
+                        a[i].image(img);
+                        nanos[i] += System.nanoTime() - t;
+                    }
+                }
+            }
+        }
+
+        if (tet.get_errnum() != 0) {
+            EventLog.getDefault().tetError(tet, filename, pageno);
+        }
+
+        for (int i = 0; i < a.length; i += 1) {
+            long t = System.nanoTime();
+            a[i].endPage(pageno);
+            nanos[i] += System.nanoTime() - t;
+        }
+
+        tet.close_page(page);
+    }
+
+    /**
+     * Deliver a glyph from the glyph stream to the analyzers that want
+     * glyphs.
+     */
+    private void deliver_glyph(GlyphRecord g) throws TETException {
+        final Analyzer[] a = analyzers;
+        final long[] nanos = analyzerNanos;
+        if ((glyphCount & GLYPH_SAMPLE_MASK) == 0) {
+            for (int i = 0; i < a.length; i += 1) {
+                if (a[i].wantsGlyphs()) {
+                    long t = System.nanoTime();
+                    a[i].glyph(g);
+                    nanos[i] += (System.nanoTime() - t)
+                            * (GLYPH_SAMPLE_MASK + 1);
+                }
+            }
+        }
+        else {
+            for (int i = 0; i < a.length; i += 1) {
+                if (a[i].wantsGlyphs()) {
+                    a[i].glyph(g);
+                }
+            }
+        }
+        glyphCount += 1;
+    }
+
+    /**
+     * Print how the processing time was distributed over the analyzers and
+     * the extraction in TET.
+     */
+    public void print_timings(PrintStream out) {
+        NumberFormat format = NumberFormat.getInstance();
+        format.setMinimumFractionDigits(1);
+        format.setMaximumFractionDigits(1);
+
+        long analyzerTotal = 0;
+        out.println("Time attribution:");
+        for (int i = 0; i < analyzers.length; i += 1) {
+            analyzerTotal += analyzerNanos[i];
+            print_timing(out, format, analyzers[i].getName(), analyzerNanos[i]);
+        }
+        print_timing(out, format, "extraction (TET)",
+                Math.max(0, totalNanos - analyzerTotal));
+        print_timing(out, format, "total", totalNanos);
+    }
+
+    private void print_timing(PrintStream out, NumberFormat format,
+            String name, long nanos) {
+        double percentage = totalNanos > 0 ? 100.0 * nanos / totalNanos : 0;
+        out.println("  " + name + ": " + format.format(nanos / 1e6) + " ms ("
+                + format.format(percentage) + "%)");
+    }
+
+    /**
+     * @return the time spent in the analyzer with the given index, in
+     *         nanoseconds
+     */
+    public long getAnalyzerNanos(int index) {
+        return analyzerNanos[index];
+    }
+
+    /**
+     * @return the total processing time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Create an analyzer by its name.
+     *
+     * @return the analyzer, or null if the name is unknown
+     */
+    public static Analyzer createAnalyzer(String name) {
+        if (name.equals("concordance")) {
+            return new ConcordanceAnalyzer();
+        }
+        else if (name.equals("font_statistics")) {
+            return new FontStatisticsAnalyzer();
+        }
+        else if (name.equals("identify_ocr")) {
+            return new PageClassificationAnalyzer();
+        }
+        else if (name.equals("image_count")) {
+            return new ImageCountAnalyzer();
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
+        System.out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
+        PrintStream out = new PrintStream(System.out, true, OUTPUT_ENCODING);
+
+        String analyzerList = ALL_ANALYZERS;
+        String recordFile = null;
+        String replayFile = null;
+        int i = 0;
+        while (i + 1 < args.length && args[i].startsWith("-")) {
+            if (args[i].equals(ANALYZERS_OPT)) {
+                analyzerList = args[i + 1];
+            }
+            else if (args[i].equals(RECORD_OPT)) {
+                recordFile = args[i + 1];
+            }
+            else if (args[i].equals(REPLAY_OPT)) {
+                replayFile = args[i + 1];
+            }
+            else {
+                usage();
+            }
+            i += 2;
+        }
+        if (i >= args.length || (recordFile != null && replayFile != null)) {
+            usage();
+        }
+
+        AnalysisEngine engine = new AnalysisEngine();
+        StringTokenizer tokenizer = new StringTokenizer(analyzerList, ",");
+        while (tokenizer.hasMoreTokens()) {
+            String name = tokenizer.nextToken();
+            Analyzer analyzer = createAnalyzer(name);
+            if (analyzer == null) {
+                System.err.println("unknown analyzer \"" + name + "\"");
+                usage();
+            }
+            engine.addAnalyzer(analyzer);
+        }
+
+        TetTrace.Writer trace = null;
+        FakeTetBackend replay = null;
+        TetBackend tet = null;
+        try {
+            if (recordFile != null) {
+                trace = new TetTrace.Writer(new File(recordFile));
+            }
+            if (replayFile != null) {
+                replay = new FakeTetBackend();
+                TetTrace.load(new File(replayFile), replay);
+            }
+            tet = create_backend(replay, trace);
+
+            for (; i < args.length; i += 1) {
+                try {
+                    engine.process(tet, args[i], out);
+                }
+                catch (TETException e) {
+                    EventLog.getDefault().tetException(e, args[i], 0);
+
+                    /*
+                     * After a TETException the TET object must no longer be
+                     * used, continue with a fresh one.
+                     */
+                    tet.delete();
+                    tet = create_backend(replay, trace);
+                }
+            }
+
+            out.println();
+            engine.print_timings(out);
+        }
+        catch (TETException e) {
+            System.err.println("Error " + e.get_errnum() + " in "
+                    + e.get_apiname() + "(): " + e.get_errmsg());
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.err.println("Error accessing trace file: " + e.getMessage());
+            System.exit(1);
+        }
+        finally {
+            if (tet != null) {
+                tet.delete();
+            }
+            if (trace != null) {
+                try {
+                    trace.close();
+                }
+                catch (IOException e) {
+                    System.err.println("Error writing trace file \""
+                            + recordFile + "\": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the backend for main(): the replay of a trace, or TET with an
+     * optional recorder.
+     */
+    private static TetBackend create_backend(FakeTetBackend replay,
+            TetTrace.Writer trace) throws TETException {
+        if (replay != null) {
+            return replay;
+        }
+        TetBackend tet = new NativeTetBackend();
+        tet.set_option(GLOBAL_OPTLIST);
+        return trace != null ? new RecordingTetBackend(tet, trace) : tet;
+    }
+
+    private static void usage() {
+        System.err.println("usage: AnalysisEngine [ -analyzers <analyzer list> ]"
+                + " [ -record <trace file> | -replay <trace file> ]"
+                + " <PDF document> ...");
+        System.err.println("available analyzers: " + ALL_ANALYZERS);
+        System.exit(1);
+    }
+}
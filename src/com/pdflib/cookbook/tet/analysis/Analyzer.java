@@ -0,0 +1,98 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.PrintStream;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+import com.pdflib.cookbook.tet.util.SymbolTable;
+
+/**
+ * An analysis that is driven by the {@link AnalysisEngine}. The engine opens
+ * each document and each page only once and delivers the events to all
+ * registered analyzers in the following order:
+ * <p>
+ * startDocument<br>
+ * for each page: startPage, (text, glyph*)*, image*, endPage<br>
+ * endDocument<br>
+ * <p>
+ * The records passed to glyph() and image() are reused by the engine and must
+ * not be stored. Extend {@link AnalyzerAdapter} to implement only the events
+ * that are of interest.
+ * <p>
+ * Each analyzer declares the TET options it needs, see
+ * {@link #getDocumentOptions()} and {@link #getGranularity()}; the engine
+ * combines the options of all registered analyzers.
+ */
+public interface Analyzer extends GlyphListener {
+    /**
+     * Granularity for analyzers that only need the glyph() events.
+     */
+    String GRANULARITY_GLYPH = "glyph";
+
+    /**
+     * Granularity for analyzers that expect one word per text() event.
+     */
+    String GRANULARITY_WORD = "word";
+
+    /**
+     * @return the name used in the report and in the timing summary
+     */
+    String getName();
+
+    /**
+     * @return the options for open_document() that the analyzer needs, e.g.
+     *         "keeppua", or "" for none; the documents are opened with the
+     *         options of all analyzers, so the options must not contradict
+     *         the options of other analyzers
+     */
+    String getDocumentOptions();
+
+    /**
+     * @return the value of the granularity page option that the analyzer
+     *         needs: the granularity of the text() events, e.g.
+     *         {@link #GRANULARITY_WORD}, {@link #GRANULARITY_GLYPH} if only
+     *         the glyphs are needed, or null if the analyzer uses neither
+     */
+    String getGranularity();
+
+    /**
+     * Called when the analyzer is registered, with the symbol table that the
+     * engine shares among all analyzers of a run. Analyzers that keep data
+     * per word intern the words there, so that each word gets its dense id
+     * once per run, and the ids of all analyzers agree.
+     */
+    void setSymbolTable(SymbolTable symbols);
+
+    /**
+     * @return true if the analyzer needs glyph() events; the engine only
+     *         calls get_char_info() if at least one analyzer wants glyphs
+     */
+    boolean wantsGlyphs();
+
+    /**
+     * @return true if the analyzer needs image() events; the engine only
+     *         calls get_image_info() if at least one analyzer wants images
+     */
+    boolean wantsImages();
+
+    void startDocument(TetBackend tet, int doc, String filename) throws TETException;
+
+    void startPage(int pageno) throws TETException;
+
+    /**
+     * Called for each chunk of text returned by get_text(), before the glyphs
+     * of the chunk.
+     */
+    void text(String text) throws TETException;
+
+    void image(ImageRecord image) throws TETException;
+
+    void endPage(int pageno) throws TETException;
+
+    /**
+     * Called after the last page of the document; the analyzer prints its
+     * report for the document. The document is still open, so pCOS can be
+     * used for the report.
+     */
+    void endDocument(TetBackend tet, int doc, PrintStream out) throws TETException;
+}
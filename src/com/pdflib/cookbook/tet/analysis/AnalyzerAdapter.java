@@ -0,0 +1,56 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.PrintStream;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+import com.pdflib.cookbook.tet.util.SymbolTable;
+
+/**
+ * Base class for analyzers with empty implementations of all events. By
+ * default an analyzer neither wants glyphs nor images, and needs no TET
+ * options.
+ */
+public abstract class AnalyzerAdapter implements Analyzer {
+    public String getDocumentOptions() {
+        return "";
+    }
+
+    public String getGranularity() {
+        return null;
+    }
+
+    public void setSymbolTable(SymbolTable symbols) {
+    }
+
+    public boolean wantsGlyphs() {
+        return false;
+    }
+
+    public boolean wantsImages() {
+        return false;
+    }
+
+    public void startDocument(TetBackend tet, int doc, String filename)
+            throws TETException {
+    }
+
+    public void startPage(int pageno) throws TETException {
+    }
+
+    public void text(String text) throws TETException {
+    }
+
+    public void glyph(GlyphRecord glyph) throws TETException {
+    }
+
+    public void image(ImageRecord image) throws TETException {
+    }
+
+    public void endPage(int pageno) throws TETException {
+    }
+
+    public void endDocument(TetBackend tet, int doc, PrintStream out)
+            throws TETException {
+    }
+}
@@ -0,0 +1,168 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+
+/**
+ * Extract each page once into a {@link PageModel}, and run several analyses on
+ * the page models in parallel.
+ * <p>
+ * TET is only called from the main thread, which extracts the pages one after
+ * the other. As soon as a page model is complete, the analyses for the page
+ * are submitted to a thread pool, so they run concurrently with each other and
+ * with the extraction of the following pages. The results are printed in page
+ * order at the end.
+ * <p>
+ * The example runs the page classification of identify_ocr and the font runs
+ * of font_finder.
+ * <p>
+ * usage: ColumnarAnalysis [ -threads &lt;n&gt; ] &lt;PDF document&gt;
+ * <p>
+ * Required software: TET 4
+ * <p>
+ * Required data: PDF document
+ */
+public class ColumnarAnalysis {
+    /**
+     * Global option list. The program expects the "resource" directory parallel
+     * to the "java" directory.
+     */
+    private static final String GLOBAL_OPTLIST = "searchpath={../resource/cmap "
+            + "../resource/glyphlist ../input}";
+
+    /**
+     * Document specific option list.
+     */
+    private static final String DOC_OPTLIST = "";
+
+    /**
+     * Page-specific option list.
+     */
+    private static final String PAGE_OPTLIST = "granularity=page";
+
+    /**
+     * The encoding in which the output is sent to System.out. For running
+     * the example in a Windows command window, you can set this for example to
+     * "windows-1252" for getting Latin-1 output.
+     */
+    private static final String OUTPUT_ENCODING = System.getProperty("file.encoding");
+
+    /**
+     * Maximum length of text to print out for a font run.
+     */
+    private static final int MAX_TEXT_LENGTH = 40;
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
+        System.out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
+        PrintStream out = new PrintStream(System.out, true, OUTPUT_ENCODING);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        if (args.length == 3 && args[0].equals("-threads")) {
+            threads = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (args.length != i + 1) {
+            System.err.println("usage: ColumnarAnalysis [ -threads <n> ] "
+                    + "<PDF document>");
+            System.exit(1);
+        }
+
+        PageAnalysis<String> classification = new PageClassification();
+        PageAnalysis<List<FontRunAnalysis.FontRun>> fontRuns =
+                new FontRunAnalysis(null, null);
+
+        List<Integer> pagenos = new ArrayList<Integer>();
+        List<Future<String>> classifications = new ArrayList<Future<String>>();
+        List<Future<List<FontRunAnalysis.FontRun>>> runs =
+                new ArrayList<Future<List<FontRunAnalysis.FontRun>>>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        TET tet = null;
+        int pageno = 0;
+        try {
+            tet = new TET();
+            tet.set_option(GLOBAL_OPTLIST);
+
+            final int doc = tet.open_document(args[i], DOC_OPTLIST);
+            if (doc == -1) {
+                System.err.println("Error " + tet.get_errnum() + " in "
+                        + tet.get_apiname() + "(): " + tet.get_errmsg());
+                return;
+            }
+
+            PageModelBuilder builder = new PageModelBuilder(tet, doc);
+            final int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
+            for (pageno = 1; pageno <= n_pages; ++pageno) {
+                PageModel page = builder.extract(pageno, PAGE_OPTLIST);
+                if (page != null) {
+                    pagenos.add(pageno);
+                    classifications.add(pool.submit(task(classification, page)));
+                    runs.add(pool.submit(task(fontRuns, page)));
+                }
+            }
+            tet.close_document(doc);
+
+            NumberFormat coordFormat = NumberFormat.getInstance();
+            coordFormat.setMinimumFractionDigits(0);
+            coordFormat.setMaximumFractionDigits(2);
+
+            for (int p = 0; p < classifications.size(); p += 1) {
+                List<FontRunAnalysis.FontRun> pageRuns = runs.get(p).get();
+                out.println("Page " + pagenos.get(p) + ": "
+                        + classifications.get(p).get());
+                for (FontRunAnalysis.FontRun run : pageRuns) {
+                    String text = run.text.length() > MAX_TEXT_LENGTH
+                            ? run.text.substring(0, MAX_TEXT_LENGTH) + "..."
+                            : run.text;
+                    out.println("  at (" + coordFormat.format(run.x) + " "
+                            + coordFormat.format(run.y) + "), font "
+                            + run.fontName + ": " + text);
+                }
+            }
+        }
+        catch (TETException e) {
+            System.err.println("Error " + e.get_errnum() + " in "
+                    + e.get_apiname() + "() on page " + pageno + ": "
+                    + e.get_errmsg());
+            System.exit(1);
+        }
+        catch (InterruptedException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        catch (ExecutionException e) {
+            System.err.println("Analysis failed: " + e.getCause());
+            System.exit(1);
+        }
+        finally {
+            pool.shutdown();
+            if (tet != null) {
+                tet.delete();
+            }
+        }
+    }
+
+    /**
+     * Wrap an analysis of a page as a task for the thread pool.
+     */
+    static <R> Callable<R> task(
+            final PageAnalysis<R> analysis, final PageModel page) {
+        return new Callable<R>() {
+            public R call() {
+                return analysis.analyze(page);
+            }
+        };
+    }
+}
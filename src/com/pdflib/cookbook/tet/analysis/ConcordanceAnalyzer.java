@@ -0,0 +1,126 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+import com.pdflib.cookbook.tet.util.SymbolTable;
+import com.pdflib.cookbook.tet.util.TokenNormalizer;
+import com.pdflib.cookbook.tet.util.WordCounter;
+
+/**
+ * Analyzer version of the concordance sample: a list of unique words in the
+ * document along with their counts, sorted by descending count.
+ * <p>
+ * Expects the text events to be delivered word by word, i.e. with
+ * granularity=word, and like the sample needs no document options.
+ * <p>
+ * The words are interned in the symbol table of the engine, which is kept
+ * for the whole run, so only the words that are new to the run are stored.
+ * The counts of the document are kept in arrays in the order in which the
+ * words first occur in the document.
+ */
+public class ConcordanceAnalyzer extends AnalyzerAdapter {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String filename;
+
+    private SymbolTable symbols = new SymbolTable();
+
+    /**
+     * Index + 1 of each word of the symbol table in the arrays of the
+     * document, 0 if the word does not occur in the document.
+     */
+    private int[] indexes = new int[INITIAL_CAPACITY];
+
+    /**
+     * The symbol id and the count of each word of the document.
+     */
+    private int[] documentIds = new int[INITIAL_CAPACITY];
+
+    private int[] documentCounts = new int[INITIAL_CAPACITY];
+
+    private int documentWords;
+
+    /**
+     * Number of words to list, or 0 for all words.
+     */
+    private final int top;
+
+    public ConcordanceAnalyzer() {
+        this(0);
+    }
+
+    /**
+     * @param top
+     *            Number of most frequent words to list, or 0 for all words
+     */
+    public ConcordanceAnalyzer(int top) {
+        this.top = top;
+    }
+
+    public String getName() {
+        return "concordance";
+    }
+
+    public String getGranularity() {
+        return GRANULARITY_WORD;
+    }
+
+    public void setSymbolTable(SymbolTable symbols) {
+        this.symbols = symbols;
+        Arrays.fill(indexes, 0);
+        documentWords = 0;
+    }
+
+    public void startDocument(TetBackend tet, int doc, String filename) {
+        this.filename = filename;
+        for (int i = 0; i < documentWords; i += 1) {
+            indexes[documentIds[i]] = 0;
+        }
+        documentWords = 0;
+    }
+
+    public void text(String text) {
+        /*
+         * Only include words that start with a letter.
+         */
+        if (TokenNormalizer.startsWithLetter(text)) {
+            int id = symbols.intern(text);
+            if (id >= indexes.length) {
+                indexes = Arrays.copyOf(indexes,
+                        Math.max(indexes.length * 2, symbols.size()));
+            }
+            int i = indexes[id] - 1;
+            if (i < 0) {
+                i = documentWords++;
+                if (i == documentIds.length) {
+                    documentIds = Arrays.copyOf(documentIds, i * 2);
+                    documentCounts = Arrays.copyOf(documentCounts, i * 2);
+                }
+                documentIds[i] = id;
+                documentCounts[i] = 0;
+                indexes[id] = i + 1;
+            }
+            documentCounts[i] += 1;
+        }
+    }
+
+    public void endDocument(TetBackend tet, int doc, PrintStream out)
+            throws TETException {
+        out.println("List of words in the document \""
+                + filename + "\" along with the number of occurrences:");
+        out.println();
+
+        int[] order = top > 0
+                ? WordCounter.topByCount(documentCounts, documentWords, top)
+                : WordCounter.sortByCount(documentCounts, documentWords);
+        for (int i = 0; i < order.length; i += 1) {
+            out.println(symbols.getSymbol(documentIds[order[i]]) + " "
+                    + documentCounts[order[i]]);
+        }
+        out.println();
+        out.println("Total unique words: " + documentWords);
+    }
+}
@@ -0,0 +1,197 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Split the text of a page into contiguous runs of glyphs that use the same
+ * font, as done by the font_finder and highlight_fonts samples.
+ * <p>
+ * Glyphs that do not contribute visible text are skipped like in font_finder:
+ * ARABIC TATWEEL, control characters, unmapped glyphs and hyphens removed by
+ * dehyphenation. By default runs never extend across text chunks; for pages
+ * that were extracted with word granularity the chunks can be joined, with a
+ * space between consecutive words of a run.
+ */
+public class FontRunAnalysis implements PageAnalysis<List<FontRunAnalysis.FontRun>> {
+    /**
+     * Unicode code point for ARABIC TATWEEL character.
+     */
+    private static final int U_ARABIC_TATWEEL = 0x640;
+
+    /**
+     * Nudge factor for the ascender height of the boxes (relative to the font
+     * size), as in highlight_fonts.
+     */
+    private static final float ASCENDER = 0.85f;
+
+    /**
+     * Nudge factor for the descender depth of the boxes (relative to the font
+     * size), as in highlight_fonts.
+     */
+    private static final float DESCENDER = 0.25f;
+
+    /**
+     * A run of glyphs with the same font.
+     */
+    public static class FontRun {
+        public final int pageno;
+
+        public final String fontName;
+
+        /**
+         * Position of the first glyph of the run.
+         */
+        public final float x;
+
+        public final float y;
+
+        public final String text;
+
+        /**
+         * One rectangle per line covered by the run, as llx, lly, urx, ury.
+         */
+        public final float[] boxes;
+
+        FontRun(int pageno, String fontName, float x, float y, String text,
+                float[] boxes) {
+            this.pageno = pageno;
+            this.fontName = fontName;
+            this.x = x;
+            this.y = y;
+            this.text = text;
+            this.boxes = boxes;
+        }
+    }
+
+    private final Set<String> includedFonts;
+
+    private final Set<String> ignoredFonts;
+
+    private final boolean joinChunks;
+
+    /**
+     * @param includedFonts
+     *            Fonts to include in the result, null for all fonts
+     * @param ignoredFonts
+     *            Fonts to exclude from the result, null for none
+     */
+    public FontRunAnalysis(Set<String> includedFonts, Set<String> ignoredFonts) {
+        this(includedFonts, ignoredFonts, false);
+    }
+
+    /**
+     * @param includedFonts
+     *            Fonts to include in the result, null for all fonts
+     * @param ignoredFonts
+     *            Fonts to exclude from the result, null for none
+     * @param joinChunks
+     *            true to let runs continue across text chunks
+     */
+    public FontRunAnalysis(Set<String> includedFonts, Set<String> ignoredFonts,
+            boolean joinChunks) {
+        this.includedFonts = includedFonts;
+        this.ignoredFonts = ignoredFonts;
+        this.joinChunks = joinChunks;
+    }
+
+    public List<FontRun> analyze(PageModel page) {
+        List<FontRun> runs = new ArrayList<FontRun>();
+        StringBuilder text = new StringBuilder();
+        float[] boxes = new float[16];
+
+        int currentFont = -1;
+        int runStart = -1;
+        int boxCount = 0;
+        float lasty = 0;
+
+        for (int c = 0; c < page.chunkStart.length; c += 1) {
+            int end = c + 1 < page.chunkStart.length
+                    ? page.chunkStart[c + 1] : page.glyphCount;
+            if (!joinChunks) {
+                if (currentFont != -1) {
+                    addRun(runs, page, currentFont, runStart, text, boxes,
+                            boxCount);
+                }
+                currentFont = -1;
+            }
+            boolean firstInChunk = true;
+
+            for (int i = page.chunkStart[c]; i < end; i += 1) {
+                int uv = page.uv[i];
+                if (uv == U_ARABIC_TATWEEL || Character.isISOControl(uv)
+                        || (page.flags[i] & (PageModel.FLAG_UNKNOWN
+                                | PageModel.FLAG_DH_ARTIFACT)) != 0) {
+                    continue;
+                }
+
+                int font = page.fontid[i];
+                if (font != currentFont) {
+                    if (currentFont != -1) {
+                        addRun(runs, page, currentFont, runStart, text, boxes,
+                                boxCount);
+                    }
+                    currentFont = font;
+                    runStart = i;
+                    text.setLength(0);
+                    boxCount = 0;
+                }
+                else if (firstInChunk) {
+                    text.append(' ');
+                }
+                firstInChunk = false;
+
+                float fs = page.fontsize[i];
+                float llx = page.x[i];
+                float lly = page.y[i] - DESCENDER * fs;
+                float urx = page.x[i] + page.width[i];
+                float ury = page.y[i] + ASCENDER * fs;
+                if (boxCount == 0 || page.y[i] != lasty) {
+                    if (4 * (boxCount + 1) > boxes.length) {
+                        boxes = Arrays.copyOf(boxes, boxes.length * 2);
+                    }
+                    boxes[4 * boxCount] = llx;
+                    boxes[4 * boxCount + 1] = lly;
+                    boxes[4 * boxCount + 2] = urx;
+                    boxes[4 * boxCount + 3] = ury;
+                    boxCount += 1;
+                    lasty = page.y[i];
+                }
+                else {
+                    int b = 4 * (boxCount - 1);
+                    boxes[b + 1] = Math.min(boxes[b + 1], lly);
+                    boxes[b + 2] = Math.max(boxes[b + 2], urx);
+                    boxes[b + 3] = Math.max(boxes[b + 3], ury);
+                }
+
+                text.appendCodePoint(uv);
+            }
+        }
+
+        if (currentFont != -1) {
+            addRun(runs, page, currentFont, runStart, text, boxes, boxCount);
+        }
+        return runs;
+    }
+
+    private void addRun(List<FontRun> runs, PageModel page, int font,
+            int first, StringBuilder text, float[] boxes, int boxCount) {
+        String fontName = page.fontName(font);
+        if (includeFont(fontName)) {
+            runs.add(new FontRun(page.pageno, fontName, page.x[first],
+                    page.y[first], text.toString(),
+                    Arrays.copyOf(boxes, 4 * boxCount)));
+        }
+    }
+
+    /**
+     * Same semantics as font_finder.includeFontInOutput().
+     */
+    private boolean includeFont(String fontName) {
+        return (includedFonts == null && ignoredFonts == null)
+            || (includedFonts != null && includedFonts.contains(fontName))
+            || (ignoredFonts != null && !ignoredFonts.contains(fontName));
+    }
+}
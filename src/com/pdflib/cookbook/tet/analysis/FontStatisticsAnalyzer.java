@@ -0,0 +1,196 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.PrintStream;
+import java.text.NumberFormat;
+import java.util.Arrays;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+
+/**
+ * Analyzer version of the font_statistics sample: for each font the embedding
+ * status, the number of glyphs and Unicode characters, unmapped glyphs, PUA
+ * characters and the share of the glyphs in the document.
+ * <p>
+ * Like the sample, the analyzer needs the "keeppua" document option for the
+ * PUA counts to be meaningful, and granularity=glyph.
+ */
+public class FontStatisticsAnalyzer extends AnalyzerAdapter {
+    /**
+     * Start of the Unicode PUA range.
+     */
+    private static final int PUA_RANGE_START = 0xE000;
+
+    /**
+     * End of the Unicode PUA range.
+     */
+    private static final int PUA_RANGE_END = 0xF8FF;
+
+    private String filename;
+
+    /*
+     * Per-font counters, indexed by the pCOS font id.
+     */
+    private int[] glyphCounts;
+
+    private int[] unicodeCharacterCounts;
+
+    private int[] unmappedGlyphCounts;
+
+    private int[] puaCharacterCounts;
+
+    /**
+     * Per-font set of the distinct PUA values that were seen, one bit per
+     * code point of the PUA range.
+     */
+    private long[][] puaSeen;
+
+    private int totalGlyphCount;
+
+    private int totalUnicodeCharacterCount;
+
+    private int totalUnmappedGlyphCount;
+
+    public String getName() {
+        return "font_statistics";
+    }
+
+    public String getDocumentOptions() {
+        return "keeppua";
+    }
+
+    public String getGranularity() {
+        return GRANULARITY_GLYPH;
+    }
+
+    public boolean wantsGlyphs() {
+        return true;
+    }
+
+    public void startDocument(TetBackend tet, int doc, String filename)
+            throws TETException {
+        this.filename = filename;
+        int fontCount = (int) tet.pcos_get_number(doc, "length:fonts");
+        glyphCounts = new int[fontCount];
+        unicodeCharacterCounts = new int[fontCount];
+        unmappedGlyphCounts = new int[fontCount];
+        puaCharacterCounts = new int[fontCount];
+        puaSeen = new long[fontCount][];
+        totalGlyphCount = 0;
+        totalUnicodeCharacterCount = 0;
+        totalUnmappedGlyphCount = 0;
+    }
+
+    public void glyph(GlyphRecord glyph) {
+        final int font = glyph.fontid;
+        ensureFont(font);
+
+        switch (glyph.type) {
+        case GlyphRecord.TYPE_NORMAL:
+        case GlyphRecord.TYPE_SEQUENCE_START:
+            glyphCounts[font] += 1;
+            totalGlyphCount += 1;
+            if (glyph.unknown) {
+                unmappedGlyphCounts[font] += 1;
+                totalUnmappedGlyphCount += 1;
+            }
+            else {
+                unicodeCharacterCounts[font] += 1;
+                totalUnicodeCharacterCount += 1;
+            }
+            count_pua(glyph.uv, font);
+            break;
+
+        case GlyphRecord.TYPE_SEQUENCE_CONT:
+            unicodeCharacterCounts[font] += 1;
+            totalUnicodeCharacterCount += 1;
+            count_pua(glyph.uv, font);
+            break;
+
+        default:
+            // trailing surrogates and inserted separators are not counted
+            break;
+        }
+    }
+
+    private void count_pua(int uv, int font) {
+        if (uv >= PUA_RANGE_START && uv <= PUA_RANGE_END) {
+            puaCharacterCounts[font] += 1;
+            if (puaSeen[font] == null) {
+                puaSeen[font] =
+                        new long[(PUA_RANGE_END - PUA_RANGE_START + 64) / 64];
+            }
+            int bit = uv - PUA_RANGE_START;
+            puaSeen[font][bit >> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Fonts may be added to the pCOS fonts array while pages are processed.
+     */
+    private void ensureFont(int font) {
+        if (font >= glyphCounts.length) {
+            int length = font + 1;
+            glyphCounts = Arrays.copyOf(glyphCounts, length);
+            unicodeCharacterCounts =
+                    Arrays.copyOf(unicodeCharacterCounts, length);
+            unmappedGlyphCounts =
+                    Arrays.copyOf(unmappedGlyphCounts, length);
+            puaCharacterCounts =
+                    Arrays.copyOf(puaCharacterCounts, length);
+            puaSeen = Arrays.copyOf(puaSeen, length);
+        }
+    }
+
+    public void endDocument(TetBackend tet, int doc, PrintStream out)
+            throws TETException {
+        out.println("Font statistics for document \"" + filename + "\"");
+        out.println(totalGlyphCount + " total glyphs in the document, "
+                + totalUnicodeCharacterCount + " total Unicode characters, "
+                + totalUnmappedGlyphCount
+                + " unmapped glyphs; breakdown by font:");
+        out.println();
+
+        /*
+         * Sort the font ids by descending glyph count; the count is in the
+         * upper half of the sort key, so a primitive sort is sufficient.
+         */
+        long[] order = new long[glyphCounts.length];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = ((long) glyphCounts[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        NumberFormat format = NumberFormat.getInstance();
+        format.setMinimumFractionDigits(0);
+        format.setMaximumFractionDigits(2);
+
+        for (int j = order.length - 1; j >= 0; j -= 1) {
+            int font = (int) order[j];
+            String fontName = tet.pcos_get_string(doc, "fonts[" + font
+                    + "]/name");
+            boolean embedded = tet.pcos_get_number(doc, "fonts[" + font
+                    + "]/embedded") != 0;
+            double percentage = totalGlyphCount > 0
+                    ? 100.0 * glyphCounts[font] / totalGlyphCount : 0;
+
+            out.print(format.format(percentage) + "% " + fontName);
+            out.print(": " + glyphCounts[font] + " glyphs, "
+                    + unicodeCharacterCounts[font] + " Unicode characters (");
+            out.print(embedded ? "embedded" : "not embedded");
+
+            if (unmappedGlyphCounts[font] > 0 || puaSeen[font] != null) {
+                int uniquePua = 0;
+                if (puaSeen[font] != null) {
+                    for (long bits : puaSeen[font]) {
+                        uniquePua += Long.bitCount(bits);
+                    }
+                }
+                out.print(", " + unmappedGlyphCounts[font] + " unknown, "
+                        + puaCharacterCounts[font] + " PUA characters, "
+                        + uniquePua + " unique PUA characters)");
+            }
+            out.println(")");
+        }
+    }
+}
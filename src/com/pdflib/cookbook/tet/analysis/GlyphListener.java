@@ -0,0 +1,20 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import com.pdflib.TETException;
+
+/**
+ * Receives the glyphs of a page from a {@link GlyphStream}.
+ */
+public interface GlyphListener {
+    /**
+     * Called once per glyph. The record is reused for the next glyph and must
+     * not be stored.
+     *
+     * @param glyph
+     *            the details of the current glyph
+     *
+     * @throws TETException
+     *             An error occurred in the TET API
+     */
+    void glyph(GlyphRecord glyph) throws TETException;
+}
@@ -0,0 +1,72 @@
+package com.pdflib.cookbook.tet.analysis;
+
+/**
+ * The glyph details that TET delivers after get_char_info(), copied into a
+ * plain Java object.
+ * <p>
+ * A {@link GlyphStream} owns exactly one instance and overwrites it for every
+ * glyph, so listeners must copy the values they want to keep beyond the
+ * callback. The field names and meanings are the same as for the public
+ * fields of the TET object.
+ */
+public final class GlyphRecord {
+    /**
+     * Glyph type "normal character".
+     */
+    public static final int TYPE_NORMAL = 0;
+
+    /**
+     * Glyph type "start of a sequence", e.g. a ligature.
+     */
+    public static final int TYPE_SEQUENCE_START = 1;
+
+    /**
+     * Glyph type "continuation of a sequence".
+     */
+    public static final int TYPE_SEQUENCE_CONT = 10;
+
+    /**
+     * Glyph type "trailing value of a surrogate pair".
+     */
+    public static final int TYPE_TRAILING_SURROGATE = 11;
+
+    /**
+     * Glyph type "inserted separator".
+     */
+    public static final int TYPE_INSERTED = 12;
+
+    /**
+     * Attribute bit for hyphens removed by dehyphenation.
+     */
+    public static final int ATTR_DH_ARTIFACT = 32;
+
+    /**
+     * Invisible text rendering mode.
+     */
+    public static final int TEXTRENDERING_INVISIBLE = 3;
+
+    /**
+     * Number of the page the glyph belongs to.
+     */
+    public int pageno;
+
+    public int uv;
+
+    public int fontid;
+
+    public double fontsize;
+
+    public double x;
+
+    public double y;
+
+    public double width;
+
+    public int attributes;
+
+    public int type;
+
+    public boolean unknown;
+
+    public int textrendering;
+}
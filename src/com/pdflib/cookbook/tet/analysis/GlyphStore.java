@@ -0,0 +1,322 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Persistent per-document store of the glyph columns of a {@link PageModel},
+ * read back through a memory-mapped file.
+ * <p>
+ * After one TET pass over a document the page models are written to a store
+ * file. Later analyses, e.g. with new search terms or new font filters, read
+ * the store instead of opening the PDF again; reading a page is a bulk copy
+ * out of the mapped file.
+ * <p>
+ * File layout (big-endian):
+ *
+ * <pre>
+ * header:      int magic "TGS1", int version, int pageCount, int fontCount,
+ *              long fontTableOffset, long pageTableOffset
+ * pages:       per page, padded to a multiple of 8 bytes:
+ *              int uv[n], float x[n], float y[n], float width[n],
+ *              float fontsize[n], int chunkStart[c], short fontid[n],
+ *              byte flags[n]
+ * font table:  per font: short length, UTF-8 bytes of the name
+ *              (length -1 for unused font ids)
+ * page table:  per page: long offset, int pageno, int glyphCount,
+ *              int chunkCount, int imageCount, float pageWidth,
+ *              float pageHeight
+ * </pre>
+ */
+public class GlyphStore implements Closeable {
+    private static final int MAGIC = 0x54475331; // "TGS1"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    private static final int PAGE_ENTRY_SIZE = 32;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+
+    private final MappedByteBuffer buffer;
+
+    private final int pageCount;
+
+    private final String[] fontNames;
+
+    private final long pageTableOffset;
+
+    /**
+     * Open a store file for reading.
+     *
+     * @param storeFile
+     *            The store file written by {@link Writer}
+     *
+     * @throws IOException
+     *             The file could not be read or is not a glyph store
+     */
+    public GlyphStore(File storeFile) throws IOException {
+        file = new RandomAccessFile(storeFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("glyph store \"" + storeFile
+                        + "\" is too large to be mapped");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("\"" + storeFile
+                        + "\" is not a glyph store of version " + VERSION);
+            }
+            pageCount = buffer.getInt(8);
+            int fontCount = buffer.getInt(12);
+            long fontTableOffset = buffer.getLong(16);
+            pageTableOffset = buffer.getLong(24);
+
+            fontNames = new String[fontCount];
+            int pos = (int) fontTableOffset;
+            for (int i = 0; i < fontCount; i += 1) {
+                short length = buffer.getShort(pos);
+                pos += 2;
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    ByteBuffer view = buffer.duplicate();
+                    view.position(pos);
+                    view.get(bytes);
+                    fontNames[i] = new String(bytes, UTF8);
+                    pos += length;
+                }
+            }
+        }
+        catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int pageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return the font names of the document, indexed by font id
+     */
+    public String[] fontNames() {
+        return fontNames.clone();
+    }
+
+    /**
+     * Read a page out of the mapped file.
+     *
+     * @param index
+     *            Index of the page in the store, between 0 and pageCount() - 1
+     *
+     * @return the page model
+     */
+    public PageModel page(int index) {
+        int entry = (int) (pageTableOffset + (long) index * PAGE_ENTRY_SIZE);
+        int offset = (int) buffer.getLong(entry);
+        int pageno = buffer.getInt(entry + 8);
+        int n = buffer.getInt(entry + 12);
+        int chunks = buffer.getInt(entry + 16);
+        int images = buffer.getInt(entry + 20);
+        float pageWidth = buffer.getFloat(entry + 24);
+        float pageHeight = buffer.getFloat(entry + 28);
+
+        int[] uv = new int[n];
+        float[] x = new float[n];
+        float[] y = new float[n];
+        float[] width = new float[n];
+        float[] fontsize = new float[n];
+        int[] chunkStart = new int[chunks];
+        short[] fontid = new short[n];
+        byte[] flags = new byte[n];
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.asIntBuffer().get(uv);
+        view.position(view.position() + 4 * n);
+        view.asFloatBuffer().get(x);
+        view.position(view.position() + 4 * n);
+        view.asFloatBuffer().get(y);
+        view.position(view.position() + 4 * n);
+        view.asFloatBuffer().get(width);
+        view.position(view.position() + 4 * n);
+        view.asFloatBuffer().get(fontsize);
+        view.position(view.position() + 4 * n);
+        view.asIntBuffer().get(chunkStart);
+        view.position(view.position() + 4 * chunks);
+        view.asShortBuffer().get(fontid);
+        view.position(view.position() + 2 * n);
+        view.get(flags);
+
+        return new PageModel(pageno, pageWidth, pageHeight, n, uv, x, y, width,
+                fontsize, fontid, flags, chunkStart, images, fontNames);
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Writes page models to a new store file. Pages must be added in the
+     * order in which they are to be stored; the font table is taken from the
+     * last page added, as the page builder only ever extends it.
+     */
+    public static class Writer implements Closeable {
+        private final File storeFile;
+
+        private final DataOutputStream out;
+
+        private long position;
+
+        private long[] offsets = new long[64];
+
+        /**
+         * Per page: pageno, glyph count, chunk count, image count.
+         */
+        private int[] counts = new int[4 * 64];
+
+        /**
+         * Per page: width and height.
+         */
+        private float[] sizes = new float[2 * 64];
+
+        private int pageCount;
+
+        private String[] fontNames = new String[0];
+
+        public Writer(File storeFile) throws IOException {
+            this.storeFile = storeFile;
+            OutputStream os = new BufferedOutputStream(
+                    new FileOutputStream(storeFile), 1 << 16);
+            out = new DataOutputStream(os);
+
+            /* header placeholder, patched in close() */
+            out.write(new byte[HEADER_SIZE]);
+            position = HEADER_SIZE;
+        }
+
+        /**
+         * Append the columns of a page to the store. Only the page metadata is
+         * kept in memory until the page table is written.
+         */
+        public void add(PageModel page) throws IOException {
+            if (pageCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, pageCount * 2);
+                counts = Arrays.copyOf(counts, 4 * pageCount * 2);
+                sizes = Arrays.copyOf(sizes, 2 * pageCount * 2);
+            }
+            offsets[pageCount] = position;
+            counts[4 * pageCount] = page.pageno;
+            counts[4 * pageCount + 1] = page.glyphCount;
+            counts[4 * pageCount + 2] = page.chunkStart.length;
+            counts[4 * pageCount + 3] = page.imageCount;
+            sizes[2 * pageCount] = page.pageWidth;
+            sizes[2 * pageCount + 1] = page.pageHeight;
+            pageCount += 1;
+
+            final int n = page.glyphCount;
+            for (int i = 0; i < n; i += 1) {
+                out.writeInt(page.uv[i]);
+            }
+            writeFloats(page.x, n);
+            writeFloats(page.y, n);
+            writeFloats(page.width, n);
+            writeFloats(page.fontsize, n);
+            for (int i = 0; i < page.chunkStart.length; i += 1) {
+                out.writeInt(page.chunkStart[i]);
+            }
+            for (int i = 0; i < n; i += 1) {
+                out.writeShort(page.fontid[i]);
+            }
+            out.write(page.flags, 0, n);
+
+            long size = 23L * n + 4L * page.chunkStart.length;
+            position += size;
+            pad();
+
+            if (page.fontCount() > fontNames.length) {
+                fontNames = new String[page.fontCount()];
+            }
+            for (int i = 0; i < page.fontCount(); i += 1) {
+                if (page.fontName(i) != null) {
+                    fontNames[i] = page.fontName(i);
+                }
+            }
+        }
+
+        private void writeFloats(float[] column, int n) throws IOException {
+            for (int i = 0; i < n; i += 1) {
+                out.writeFloat(column[i]);
+            }
+        }
+
+        private void pad() throws IOException {
+            while ((position & 7) != 0) {
+                out.write(0);
+                position += 1;
+            }
+        }
+
+        /**
+         * Write the font and page tables and complete the header.
+         */
+        public void close() throws IOException {
+            long fontTableOffset = position;
+            for (int i = 0; i < fontNames.length; i += 1) {
+                if (fontNames[i] == null) {
+                    out.writeShort(-1);
+                    position += 2;
+                }
+                else {
+                    byte[] bytes = fontNames[i].getBytes(UTF8);
+                    out.writeShort(bytes.length);
+                    out.write(bytes);
+                    position += 2 + bytes.length;
+                }
+            }
+            pad();
+
+            long pageTableOffset = position;
+            for (int i = 0; i < pageCount; i += 1) {
+                out.writeLong(offsets[i]);
+                for (int j = 0; j < 4; j += 1) {
+                    out.writeInt(counts[4 * i + j]);
+                }
+                out.writeFloat(sizes[2 * i]);
+                out.writeFloat(sizes[2 * i + 1]);
+            }
+            out.close();
+
+            RandomAccessFile header = new RandomAccessFile(storeFile, "rw");
+            try {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeInt(pageCount);
+                header.writeInt(fontNames.length);
+                header.writeLong(fontTableOffset);
+                header.writeLong(pageTableOffset);
+            }
+            finally {
+                header.close();
+            }
+        }
+    }
+}
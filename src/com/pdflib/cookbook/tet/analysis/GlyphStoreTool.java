@@ -0,0 +1,257 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+
+/**
+ * Extract a document once into a {@link GlyphStore}, and analyze the store
+ * again without opening the PDF document in TET.
+ * <p>
+ * The "build" command runs TET over all pages with word granularity and
+ * writes the store. The "fonts" command lists the font runs of the document
+ * like font_finder, optionally restricted to the given fonts, and the
+ * "search" command lists the words that match a regular expression like
+ * highlight_search_terms. Both read the store through a memory-mapped file,
+ * so they can be repeated with other fonts or search terms at a small
+ * fraction of the cost of a TET run.
+ * <p>
+ * usage:
+ *
+ * <pre>
+ * GlyphStoreTool build &lt;PDF document&gt; &lt;store file&gt;
+ * GlyphStoreTool fonts &lt;store file&gt; [ &lt;font name&gt; ... ]
+ * GlyphStoreTool search &lt;store file&gt; &lt;regular expression&gt;
+ * </pre>
+ * <p>
+ * Required software: TET 4 (for "build" only)
+ * <p>
+ * Required data: PDF document
+ */
+public class GlyphStoreTool {
+    /**
+     * Global option list. The program expects the "resource" directory parallel
+     * to the "java" directory.
+     */
+    private static final String GLOBAL_OPTLIST = "searchpath={../resource/cmap "
+            + "../resource/glyphlist ../input}";
+
+    /**
+     * Document specific option list.
+     */
+    private static final String DOC_OPTLIST = "";
+
+    /**
+     * Page-specific option list. Word granularity is required by the search;
+     * the font runs join the words again.
+     */
+    private static final String PAGE_OPTLIST =
+            "granularity=word contentanalysis={keephyphenglyphs}";
+
+    /**
+     * The encoding in which the output is sent to System.out. For running
+     * the example in a Windows command window, you can set this for example to
+     * "windows-1252" for getting Latin-1 output.
+     */
+    private static final String OUTPUT_ENCODING = System.getProperty("file.encoding");
+
+    /**
+     * Maximum length of text to print out for a font run.
+     */
+    private static final int MAX_TEXT_LENGTH = 40;
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
+        System.out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
+        PrintStream out = new PrintStream(System.out, true, OUTPUT_ENCODING);
+
+        if (args.length >= 3 && args[0].equals("build")) {
+            build(args[1], args[2], out);
+        }
+        else if (args.length >= 2 && args[0].equals("fonts")) {
+            Set<String> fonts = args.length > 2
+                    ? new HashSet<String>(Arrays.asList(args).subList(2, args.length))
+                    : null;
+            fonts(args[1], fonts, out);
+        }
+        else if (args.length == 3 && args[0].equals("search")) {
+            search(args[1], args[2], out);
+        }
+        else {
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: GlyphStoreTool build <PDF document> <store file>");
+        System.err.println("       GlyphStoreTool fonts <store file> [ <font name> ... ]");
+        System.err.println("       GlyphStoreTool search <store file> <regular expression>");
+        System.exit(1);
+    }
+
+    /**
+     * Extract all pages of the document and write them to the store.
+     */
+    private static void build(String filename, String storename,
+            PrintStream out) {
+        TET tet = null;
+        int pageno = 0;
+        try {
+            tet = new TET();
+            tet.set_option(GLOBAL_OPTLIST);
+
+            final int doc = tet.open_document(filename, DOC_OPTLIST);
+            if (doc == -1) {
+                System.err.println("Error " + tet.get_errnum() + " in "
+                        + tet.get_apiname() + "(): " + tet.get_errmsg());
+                System.exit(1);
+            }
+
+            long start = System.nanoTime();
+            PageModelBuilder builder = new PageModelBuilder(tet, doc);
+            GlyphStore.Writer writer = new GlyphStore.Writer(new File(storename));
+            int stored = 0;
+            try {
+                final int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
+                for (pageno = 1; pageno <= n_pages; ++pageno) {
+                    PageModel page = builder.extract(pageno, PAGE_OPTLIST);
+                    if (page != null) {
+                        writer.add(page);
+                        stored += 1;
+                    }
+                }
+            }
+            finally {
+                writer.close();
+            }
+            tet.close_document(doc);
+
+            out.println("Stored " + stored + " pages of \"" + filename
+                    + "\" in \"" + storename + "\" in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        catch (TETException e) {
+            System.err.println("Error " + e.get_errnum() + " in "
+                    + e.get_apiname() + "() on page " + pageno + ": "
+                    + e.get_errmsg());
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.err.println("Error writing \"" + storename + "\": "
+                    + e.getMessage());
+            System.exit(1);
+        }
+        finally {
+            if (tet != null) {
+                tet.delete();
+            }
+        }
+    }
+
+    /**
+     * Print the font runs of all pages in the store.
+     *
+     * @param fonts
+     *            The fonts to include in the output, or null for all fonts
+     */
+    private static void fonts(String storename, Set<String> fonts,
+            PrintStream out) {
+        NumberFormat coordFormat = coordFormat();
+        FontRunAnalysis analysis = new FontRunAnalysis(fonts, null, true);
+
+        GlyphStore store = open(storename);
+        try {
+            for (int p = 0; p < store.pageCount(); p += 1) {
+                List<FontRunAnalysis.FontRun> runs =
+                        analysis.analyze(store.page(p));
+                for (FontRunAnalysis.FontRun run : runs) {
+                    String text = run.text.length() > MAX_TEXT_LENGTH
+                            ? run.text.substring(0, MAX_TEXT_LENGTH) + "..."
+                            : run.text;
+                    out.println("page " + run.pageno + " at ("
+                            + coordFormat.format(run.x) + " "
+                            + coordFormat.format(run.y) + "), font "
+                            + run.fontName + ": " + text);
+                }
+            }
+        }
+        finally {
+            close(store);
+        }
+    }
+
+    /**
+     * Print the words of all pages in the store that match the expression.
+     */
+    private static void search(String storename, String regex,
+            PrintStream out) {
+        Pattern pattern = null;
+        try {
+            pattern = Pattern.compile(regex);
+        }
+        catch (PatternSyntaxException e) {
+            System.err.println("Invalid regular expression: " + e.getMessage());
+            System.exit(1);
+        }
+        NumberFormat coordFormat = coordFormat();
+        WordSearch analysis = new WordSearch(pattern);
+
+        GlyphStore store = open(storename);
+        try {
+            int count = 0;
+            for (int p = 0; p < store.pageCount(); p += 1) {
+                for (WordSearch.Match match : analysis.analyze(store.page(p))) {
+                    out.println("page " + match.pageno + " ["
+                            + coordFormat.format(match.llx) + " "
+                            + coordFormat.format(match.lly) + " "
+                            + coordFormat.format(match.urx) + " "
+                            + coordFormat.format(match.ury) + "]: "
+                            + match.text);
+                    count += 1;
+                }
+            }
+            out.println(count + " matches");
+        }
+        finally {
+            close(store);
+        }
+    }
+
+    private static GlyphStore open(String storename) {
+        try {
+            return new GlyphStore(new File(storename));
+        }
+        catch (IOException e) {
+            System.err.println("Error reading \"" + storename + "\": "
+                    + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static void close(GlyphStore store) {
+        try {
+            store.close();
+        }
+        catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private static NumberFormat coordFormat() {
+        NumberFormat coordFormat = NumberFormat.getInstance();
+        coordFormat.setMinimumFractionDigits(0);
+        coordFormat.setMaximumFractionDigits(2);
+        return coordFormat;
+    }
+}
@@ -0,0 +1,130 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.util.Arrays;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.NativeTetBackend;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+
+/**
+ * Push-based glyph iteration: runs the get_text()/get_char_info() loop for a
+ * page once and delivers every glyph to all registered listeners.
+ * <p>
+ * The stream copies the TET fields into a single {@link GlyphRecord} that is
+ * reused for all glyphs, so iterating a page does not allocate anything per
+ * glyph. As the listeners only see the record, independent analyses can be
+ * combined on one pass over the page, and each of them can be timed in
+ * isolation by registering it alone.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * GlyphStream stream = new GlyphStream();
+ * stream.addListener(fontCounter);
+ * stream.addListener(ocrDetector);
+ * int page = tet.open_page(doc, pageno, "granularity=glyph");
+ * stream.processPage(tet, page, pageno);
+ * tet.close_page(page);
+ * </pre>
+ */
+public class GlyphStream {
+    private final GlyphRecord record = new GlyphRecord();
+
+    private GlyphListener[] listeners = new GlyphListener[0];
+
+    /**
+     * Register a listener. Listeners are called in registration order.
+     */
+    public void addListener(GlyphListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    /**
+     * Deliver all glyphs of an opened page to the listeners.
+     *
+     * @param tet
+     *            TET object
+     * @param page
+     *            TET page handle
+     * @param pageno
+     *            The page number, passed on in the glyph record
+     *
+     * @return the number of glyphs delivered
+     *
+     * @throws TETException
+     *             An error occurred in the TET API
+     */
+    public int processPage(TET tet, int page, int pageno) throws TETException {
+        return processPage(new NativeTetBackend(tet), page, pageno);
+    }
+
+    /**
+     * Deliver all glyphs of an opened page to the listeners.
+     *
+     * @param tet
+     *            TET backend
+     * @param page
+     *            Page handle
+     * @param pageno
+     *            The page number, passed on in the glyph record
+     *
+     * @return the number of glyphs delivered
+     *
+     * @throws TETException
+     *             An error occurred in the TET API
+     */
+    public int processPage(TetBackend tet, int page, int pageno)
+            throws TETException {
+        int count = 0;
+        while (tet.get_text(page) != null) {
+            count += processChunk(tet, page, pageno);
+        }
+        return count;
+    }
+
+    /**
+     * Deliver the glyphs of the text chunk that was returned by the last
+     * get_text() call to the listeners, for callers that process the text
+     * chunks themselves.
+     *
+     * @param tet
+     *            TET backend
+     * @param page
+     *            Page handle
+     * @param pageno
+     *            The page number, passed on in the glyph record
+     *
+     * @return the number of glyphs delivered
+     *
+     * @throws TETException
+     *             An error occurred in the TET API
+     */
+    public int processChunk(TetBackend tet, int page, int pageno)
+            throws TETException {
+        final GlyphRecord g = record;
+        final GlyphListener[] l = listeners;
+        int count = 0;
+
+        g.pageno = pageno;
+        while (tet.get_char_info(page) != -1) {
+            g.uv = tet.uv();
+            g.fontid = tet.fontid();
+            g.fontsize = tet.fontsize();
+            g.x = tet.x();
+            g.y = tet.y();
+            g.width = tet.width();
+            g.attributes = tet.attributes();
+            g.type = tet.type();
+            g.unknown = tet.unknown();
+            g.textrendering = tet.textrendering();
+
+            for (int i = 0; i < l.length; i += 1) {
+                l[i].glyph(g);
+            }
+            count += 1;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,64 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.PrintStream;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+
+/**
+ * Analyzer version of the image_count sample: count the images in a document
+ * according to various interpretations.
+ */
+public class ImageCountAnalyzer extends AnalyzerAdapter {
+    private String filename;
+
+    private int rawImages;
+
+    private int placedImages;
+
+    public String getName() {
+        return "image_count";
+    }
+
+    public boolean wantsImages() {
+        return true;
+    }
+
+    public void startDocument(TetBackend tet, int doc, String filename)
+            throws TETException {
+        this.filename = filename;
+        rawImages = (int) tet.pcos_get_number(doc, "length:images");
+        placedImages = 0;
+    }
+
+    public void image(ImageRecord image) {
+        placedImages += 1;
+    }
+
+    public void endDocument(TetBackend tet, int doc, PrintStream out)
+            throws TETException {
+        /* image counts for normal, artificial, and consumed images */
+        int stats[] = { 0, 0, 0 };
+
+        int n_images = (int) tet.pcos_get_number(doc, "length:images");
+        int image_resources = 0;
+        for (int imageid = 0; imageid < n_images; imageid++) {
+            int mergetype = (int) tet.pcos_get_number(doc,
+                    "images[" + imageid + "]/mergetype");
+            stats[mergetype]++;
+            if (mergetype == 0 || mergetype == 1) {
+                image_resources++;
+            }
+        }
+
+        out.println("Image counts for document \"" + filename + "\"");
+        out.println("No of raw image resources before merging: " + rawImages);
+        out.println("No of placed images: " + placedImages);
+        out.println("No of images after merging (all types): " + n_images);
+        out.println("  normal images: " + stats[0]);
+        out.println("  artificial (merged) images: " + stats[1]);
+        out.println("  consumed images: " + stats[2]);
+        out.println("No of relevant (normal or artificial) image resources: "
+                + image_resources);
+    }
+}
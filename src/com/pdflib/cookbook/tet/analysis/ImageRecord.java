@@ -0,0 +1,30 @@
+package com.pdflib.cookbook.tet.analysis;
+
+/**
+ * The placement details that TET delivers after get_image_info(), copied into
+ * a plain Java object. Like {@link GlyphRecord} a single instance is reused
+ * for all images, so it must not be stored by the receiver.
+ */
+public final class ImageRecord {
+    /**
+     * Number of the page the image is placed on.
+     */
+    public int pageno;
+
+    /**
+     * pCOS id of the image, the index in the "images" pseudo object.
+     */
+    public int imageid;
+
+    public double x;
+
+    public double y;
+
+    public double width;
+
+    public double height;
+
+    public double alpha;
+
+    public double beta;
+}
@@ -0,0 +1,13 @@
+package com.pdflib.cookbook.tet.analysis;
+
+/**
+ * An analysis of a single {@link PageModel}. Implementations must not keep
+ * mutable state between calls, so that one instance can analyze several pages
+ * in parallel.
+ *
+ * @param <R>
+ *            the type of the analysis result
+ */
+public interface PageAnalysis<R> {
+    R analyze(PageModel page);
+}
@@ -0,0 +1,37 @@
+package com.pdflib.cookbook.tet.analysis;
+
+/**
+ * The page classification of the identify_ocr sample, computed from a
+ * {@link PageModel}.
+ */
+public class PageClassification implements PageAnalysis<String> {
+    public String analyze(PageModel page) {
+        boolean hasInvisibleText = false;
+        boolean hasNormalText = false;
+
+        final byte[] flags = page.flags;
+        for (int i = 0; i < page.glyphCount; i += 1) {
+            if ((flags[i] & PageModel.FLAG_INVISIBLE) != 0) {
+                hasInvisibleText = true;
+            }
+            else {
+                hasNormalText = true;
+            }
+            if (hasInvisibleText && hasNormalText) {
+                break;
+            }
+        }
+
+        boolean hasImage = page.imageCount > 0;
+        if (hasInvisibleText || hasNormalText) {
+            if (hasImage && hasInvisibleText && !hasNormalText) {
+                return "Searchable image";
+            }
+            else if (hasNormalText && !hasInvisibleText) {
+                return "Visible text";
+            }
+            return "Mixed";
+        }
+        return hasImage ? "Image only" : "No text or raster graphics";
+    }
+}
@@ -0,0 +1,92 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.io.PrintStream;
+
+import com.pdflib.cookbook.tet.backend.TetBackend;
+
+/**
+ * Analyzer version of the identify_ocr sample: classify each page as "No text
+ * or raster graphics", "Image only", "Searchable image", "Visible text" or
+ * "Mixed".
+ */
+public class PageClassificationAnalyzer extends AnalyzerAdapter {
+    private String filename;
+
+    private boolean hasInvisibleText;
+
+    private boolean hasNormalText;
+
+    private boolean hasImage;
+
+    /**
+     * The classification lines of the pages processed so far.
+     */
+    private final StringBuilder report = new StringBuilder();
+
+    public String getName() {
+        return "identify_ocr";
+    }
+
+    public String getGranularity() {
+        return GRANULARITY_GLYPH;
+    }
+
+    public boolean wantsGlyphs() {
+        return true;
+    }
+
+    public boolean wantsImages() {
+        return true;
+    }
+
+    public void startDocument(TetBackend tet, int doc, String filename) {
+        this.filename = filename;
+        report.setLength(0);
+    }
+
+    public void startPage(int pageno) {
+        hasInvisibleText = false;
+        hasNormalText = false;
+        hasImage = false;
+    }
+
+    public void glyph(GlyphRecord glyph) {
+        if (glyph.textrendering == GlyphRecord.TEXTRENDERING_INVISIBLE) {
+            hasInvisibleText = true;
+        }
+        else {
+            hasNormalText = true;
+        }
+    }
+
+    public void image(ImageRecord image) {
+        hasImage = true;
+    }
+
+    public void endPage(int pageno) {
+        report.append("Page ").append(pageno).append(": ");
+        if (hasInvisibleText || hasNormalText) {
+            if (hasImage && hasInvisibleText && !hasNormalText) {
+                report.append("Searchable image");
+            }
+            else if (hasNormalText && !hasInvisibleText) {
+                report.append("Visible text");
+            }
+            else {
+                report.append("Mixed");
+            }
+        }
+        else if (hasImage) {
+            report.append("Image only");
+        }
+        else {
+            report.append("No text or raster graphics");
+        }
+        report.append('\n');
+    }
+
+    public void endDocument(TetBackend tet, int doc, PrintStream out) {
+        out.println("Page classification for document \"" + filename + "\"");
+        out.print(report);
+    }
+}
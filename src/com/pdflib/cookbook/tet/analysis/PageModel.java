@@ -0,0 +1,168 @@
+package com.pdflib.cookbook.tet.analysis;
+
+/**
+ * Columnar in-memory model of the glyphs of one page.
+ * <p>
+ * The page is extracted once with {@link PageModelBuilder}, and the glyph
+ * details are stored as a struct of arrays: glyph i has the code point
+ * uv[i], the position x[i]/y[i] and so on. Compared to the TET glyph iterator
+ * the model can be traversed any number of times, by any number of analyses,
+ * and from any thread, as it is immutable once built.
+ * <p>
+ * Positions and sizes are stored as float, which is sufficient for page
+ * coordinates. Of the text rendering mode only "invisible" is kept, and of the
+ * attributes only the dehyphenation artifact bit; both are encoded together
+ * with the glyph type in the flags column.
+ */
+public final class PageModel {
+    /**
+     * TET could not determine a Unicode mapping for the glyph.
+     */
+    public static final byte FLAG_UNKNOWN = 0x01;
+
+    /**
+     * The glyph uses the invisible text rendering mode 3.
+     */
+    public static final byte FLAG_INVISIBLE = 0x02;
+
+    /**
+     * The glyph is a hyphen removed by dehyphenation.
+     */
+    public static final byte FLAG_DH_ARTIFACT = 0x04;
+
+    /**
+     * Glyph type 1, start of a sequence (e.g. ligature).
+     */
+    public static final byte FLAG_SEQUENCE_START = 0x08;
+
+    /**
+     * Glyph type 10, continuation of a sequence.
+     */
+    public static final byte FLAG_SEQUENCE_CONT = 0x10;
+
+    /**
+     * Glyph type 11, trailing value of a surrogate pair.
+     */
+    public static final byte FLAG_TRAILING_SURROGATE = 0x20;
+
+    /**
+     * Glyph type 12, inserted separator.
+     */
+    public static final byte FLAG_INSERTED = 0x40;
+
+    public final int pageno;
+
+    public final float pageWidth;
+
+    public final float pageHeight;
+
+    /**
+     * Number of glyphs on the page, the length of all glyph columns.
+     */
+    public final int glyphCount;
+
+    public final int[] uv;
+
+    public final float[] x;
+
+    public final float[] y;
+
+    public final float[] width;
+
+    public final float[] fontsize;
+
+    public final short[] fontid;
+
+    public final byte[] flags;
+
+    /**
+     * Index of the first glyph of each text chunk returned by get_text().
+     */
+    public final int[] chunkStart;
+
+    /**
+     * Number of placed images on the page.
+     */
+    public final int imageCount;
+
+    /**
+     * Font names of the document, indexed by font id. Contains at least the
+     * names of all fonts used on this page.
+     */
+    private final String[] fontNames;
+
+    PageModel(int pageno, float pageWidth, float pageHeight, int glyphCount,
+            int[] uv, float[] x, float[] y, float[] width, float[] fontsize,
+            short[] fontid, byte[] flags, int[] chunkStart, int imageCount,
+            String[] fontNames) {
+        this.pageno = pageno;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.glyphCount = glyphCount;
+        this.uv = uv;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.fontsize = fontsize;
+        this.fontid = fontid;
+        this.flags = flags;
+        this.chunkStart = chunkStart;
+        this.imageCount = imageCount;
+        this.fontNames = fontNames;
+    }
+
+    /**
+     * @return the name of the font with the given id
+     */
+    public String fontName(int id) {
+        return fontNames[id];
+    }
+
+    /**
+     * @return the number of entries in the font table
+     */
+    public int fontCount() {
+        return fontNames.length;
+    }
+
+    /**
+     * @return true if all bits of the flag mask are set for glyph i
+     */
+    public boolean hasFlag(int i, byte mask) {
+        return (flags[i] & mask) == mask;
+    }
+
+    /**
+     * Encode the TET glyph type and attributes into the flags column format.
+     */
+    static byte encodeFlags(int type, boolean unknown, int textrendering,
+            int attributes) {
+        int f = 0;
+        if (unknown) {
+            f |= FLAG_UNKNOWN;
+        }
+        if (textrendering == GlyphRecord.TEXTRENDERING_INVISIBLE) {
+            f |= FLAG_INVISIBLE;
+        }
+        if ((attributes & GlyphRecord.ATTR_DH_ARTIFACT) != 0) {
+            f |= FLAG_DH_ARTIFACT;
+        }
+        switch (type) {
+        case GlyphRecord.TYPE_SEQUENCE_START:
+            f |= FLAG_SEQUENCE_START;
+            break;
+        case GlyphRecord.TYPE_SEQUENCE_CONT:
+            f |= FLAG_SEQUENCE_CONT;
+            break;
+        case GlyphRecord.TYPE_TRAILING_SURROGATE:
+            f |= FLAG_TRAILING_SURROGATE;
+            break;
+        case GlyphRecord.TYPE_INSERTED:
+            f |= FLAG_INSERTED;
+            break;
+        default:
+            break;
+        }
+        return (byte) f;
+    }
+}
@@ -0,0 +1,169 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.util.Arrays;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.NativeTetBackend;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+import com.pdflib.cookbook.tet.util.PcosCache;
+
+/**
+ * Extracts the pages of one document into {@link PageModel} instances.
+ * <p>
+ * The builder keeps its column buffers between pages, so that only the final
+ * right-sized arrays of each page are allocated. Like the TET object it is
+ * bound to, the builder must only be used by one thread; the resulting page
+ * models can be shared freely.
+ */
+public class PageModelBuilder {
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final TetBackend tet;
+
+    private final int doc;
+
+    private final PcosCache pcos;
+
+    private String[] fontNames = new String[0];
+
+    private int[] uv = new int[INITIAL_CAPACITY];
+
+    private float[] x = new float[INITIAL_CAPACITY];
+
+    private float[] y = new float[INITIAL_CAPACITY];
+
+    private float[] width = new float[INITIAL_CAPACITY];
+
+    private float[] fontsize = new float[INITIAL_CAPACITY];
+
+    private short[] fontid = new short[INITIAL_CAPACITY];
+
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+
+    private int[] chunkStart = new int[64];
+
+    /**
+     * @param tet
+     *            The TET object
+     * @param doc
+     *            The TET document handle
+     */
+    public PageModelBuilder(TET tet, int doc) {
+        this(new NativeTetBackend(tet), doc);
+    }
+
+    /**
+     * @param tet
+     *            The TET backend
+     * @param doc
+     *            The document handle
+     */
+    public PageModelBuilder(TetBackend tet, int doc) {
+        this.tet = tet;
+        this.doc = doc;
+        this.pcos = new PcosCache(tet, doc);
+    }
+
+    /**
+     * Open a page, read all of its glyphs and placed images, and close it
+     * again.
+     *
+     * @param pageno
+     *            The number of the page to extract
+     * @param optlist
+     *            Option list for open_page()
+     *
+     * @return the model of the page, or null if the page could not be opened
+     *
+     * @throws TETException
+     *             An error occurred in the TET API
+     */
+    public PageModel extract(int pageno, String optlist) throws TETException {
+        final int page = tet.open_page(doc, pageno, optlist);
+        if (page == -1) {
+            System.err.println("Error " + tet.get_errnum() + " in "
+                    + tet.get_apiname() + "() on page " + pageno + ": "
+                    + tet.get_errmsg());
+            return null;
+        }
+
+        int n = 0;
+        int chunks = 0;
+        for (String text = tet.get_text(page); text != null;
+                text = tet.get_text(page)) {
+            if (chunks == chunkStart.length) {
+                chunkStart = Arrays.copyOf(chunkStart, chunks * 2);
+            }
+            chunkStart[chunks++] = n;
+
+            while (tet.get_char_info(page) != -1) {
+                if (n == uv.length) {
+                    grow();
+                }
+                uv[n] = tet.uv();
+                x[n] = (float) tet.x();
+                y[n] = (float) tet.y();
+                width[n] = (float) tet.width();
+                fontsize[n] = (float) tet.fontsize();
+                fontid[n] = (short) tet.fontid();
+                flags[n] = PageModel.encodeFlags(tet.type(), tet.unknown(),
+                        tet.textrendering(), tet.attributes());
+                addFont(tet.fontid());
+                n += 1;
+            }
+        }
+
+        int images = 0;
+        if (tet.get_errnum() == 0) {
+            while (tet.get_image_info(page) == 1) {
+                images += 1;
+            }
+        }
+
+        if (tet.get_errnum() != 0) {
+            System.err.println("Error " + tet.get_errnum() + " in "
+                    + tet.get_apiname() + "() on page " + pageno + ": "
+                    + tet.get_errmsg());
+        }
+        tet.close_page(page);
+
+        float pageWidth = (float) tet.pcos_get_number(doc,
+                "pages[" + (pageno - 1) + "]/width");
+        float pageHeight = (float) tet.pcos_get_number(doc,
+                "pages[" + (pageno - 1) + "]/height");
+
+        return new PageModel(pageno, pageWidth, pageHeight, n,
+                Arrays.copyOf(uv, n), Arrays.copyOf(x, n), Arrays.copyOf(y, n),
+                Arrays.copyOf(width, n), Arrays.copyOf(fontsize, n),
+                Arrays.copyOf(fontid, n), Arrays.copyOf(flags, n),
+                Arrays.copyOf(chunkStart, chunks), images, fontNames);
+    }
+
+    /**
+     * Make sure the font table contains the name of the font. The table is
+     * replaced instead of resized in place when it grows, so that the pages
+     * that were already handed out keep a consistent table; new entries are
+     * only ever written into slots that no earlier page refers to.
+     */
+    private void addFont(int id) throws TETException {
+        if (id >= fontNames.length) {
+            fontNames = Arrays.copyOf(fontNames, Math.max(id + 1,
+                    fontNames.length * 2));
+        }
+        if (fontNames[id] == null) {
+            fontNames[id] = pcos.fontName(id);
+        }
+    }
+
+    private void grow() {
+        int length = uv.length * 2;
+        uv = Arrays.copyOf(uv, length);
+        x = Arrays.copyOf(x, length);
+        y = Arrays.copyOf(y, length);
+        width = Arrays.copyOf(width, length);
+        fontsize = Arrays.copyOf(fontsize, length);
+        fontid = Arrays.copyOf(fontid, length);
+        flags = Arrays.copyOf(flags, length);
+    }
+}
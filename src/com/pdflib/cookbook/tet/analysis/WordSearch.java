@@ -0,0 +1,104 @@
+package com.pdflib.cookbook.tet.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Find the words of a page that match a regular expression, as done by the
+ * highlight_search_terms sample. The page must have been extracted with
+ * "granularity=word", so that each text chunk is one word.
+ * <p>
+ * The word text is rebuilt from the glyph code points; trailing surrogate
+ * glyphs are skipped as their code point is already part of the leading
+ * glyph.
+ */
+public class WordSearch implements PageAnalysis<List<WordSearch.Match>> {
+    /**
+     * Nudge factor for the ascender height of the boxes (relative to the font
+     * size). Unlike highlight_search_terms the ascender of the font is not
+     * known here.
+     */
+    private static final float ASCENDER = 0.85f;
+
+    /**
+     * Nudge factor for the descender depth of the boxes (relative to the font
+     * size).
+     */
+    private static final float DESCENDER = 0.25f;
+
+    /**
+     * A word that matches the search expression.
+     */
+    public static class Match {
+        public final int pageno;
+
+        public final String text;
+
+        /**
+         * Bounding box of the word as llx, lly, urx, ury.
+         */
+        public final float llx;
+
+        public final float lly;
+
+        public final float urx;
+
+        public final float ury;
+
+        Match(int pageno, String text, float llx, float lly, float urx,
+                float ury) {
+            this.pageno = pageno;
+            this.text = text;
+            this.llx = llx;
+            this.lly = lly;
+            this.urx = urx;
+            this.ury = ury;
+        }
+    }
+
+    private final Pattern pattern;
+
+    /**
+     * @param pattern
+     *            The expression that a word must match completely
+     */
+    public WordSearch(Pattern pattern) {
+        this.pattern = pattern;
+    }
+
+    public List<Match> analyze(PageModel page) {
+        List<Match> matches = new ArrayList<Match>();
+        StringBuilder text = new StringBuilder();
+        Matcher matcher = pattern.matcher(text);
+
+        for (int c = 0; c < page.chunkStart.length; c += 1) {
+            int start = page.chunkStart[c];
+            int end = c + 1 < page.chunkStart.length
+                    ? page.chunkStart[c + 1] : page.glyphCount;
+            if (start == end) {
+                continue;
+            }
+
+            text.setLength(0);
+            for (int i = start; i < end; i += 1) {
+                if ((page.flags[i] & PageModel.FLAG_TRAILING_SURROGATE) == 0) {
+                    text.appendCodePoint(page.uv[i]);
+                }
+            }
+
+            matcher.reset(text);
+            if (matcher.matches()) {
+                float fs = page.fontsize[start];
+                float llx = page.x[start];
+                float lly = page.y[start] - DESCENDER * fs;
+                float urx = page.x[end - 1] + page.width[end - 1];
+                float ury = page.y[start] + ASCENDER * fs;
+                matches.add(new Match(page.pageno, text.toString(), llx, lly,
+                        urx, ury));
+            }
+        }
+        return matches;
+    }
+}
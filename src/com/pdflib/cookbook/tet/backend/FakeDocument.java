@@ -0,0 +1,504 @@
+package com.pdflib.cookbook.tet.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A scripted document for {@link FakeTetBackend}.
+ * <p>
+ * A document consists of fonts, images and pages. Text is added to a page
+ * one chunk at a time, e.g. one line; the glyphs of the chunk are generated
+ * from its characters with a fixed advance of half the font size. The fake
+ * backend returns the chunks as they were added, or split into words for
+ * "granularity=word". The chunks of a page loaded from a {@link TetTrace}
+ * are returned as they were recorded for every granularity.
+ * <p>
+ * The pCOS values that the cookbook tools query are derived from the
+ * document: "length:pages", "pages[i]/width", "pages[i]/height",
+ * "length:fonts", "fonts[i]/name", "fonts[i]/embedded", "fonts[i]/ascender",
+ * "fonts[i]/descender", "length:images", "images[i]/Width",
+ * "images[i]/Height" and "images[i]/mergetype". Any other value can be set
+ * with {@link #setPcosValue(String, Object)}.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * FakeDocument document = new FakeDocument();
+ * int font = document.addFont("Helvetica", false);
+ * FakeDocument.Page page = document.addPage(595, 842);
+ * page.addText("Hello world", font, 12, 50, 700);
+ * backend.addDocument("hello.pdf", document);
+ * </pre>
+ */
+public class FakeDocument {
+    /**
+     * Advance width of the generated glyphs, relative to the font size.
+     */
+    private static final double GLYPH_ADVANCE = 0.5;
+
+    /**
+     * A page of a scripted document. The glyphs are stored as columns, the
+     * chunks as indexes into the columns.
+     */
+    public static class Page {
+        final double width;
+
+        final double height;
+
+        int glyphCount;
+
+        int[] uv = new int[256];
+
+        int[] type = new int[256];
+
+        int[] fontid = new int[256];
+
+        int[] textrendering = new int[256];
+
+        int[] attributes = new int[256];
+
+        boolean[] unknown = new boolean[256];
+
+        double[] x = new double[256];
+
+        double[] y = new double[256];
+
+        double[] glyphWidth = new double[256];
+
+        double[] fontsize = new double[256];
+
+        /**
+         * Text and first glyph of each chunk; a chunk ends where the next one
+         * starts.
+         */
+        final List<String> chunks = new ArrayList<String>();
+
+        int[] chunkStart = new int[16];
+
+        /**
+         * Whether the chunks are text recorded from TET, which is served
+         * verbatim instead of being split into words.
+         */
+        boolean recorded;
+
+        /**
+         * Placed images as imageid, x, y, width, height.
+         */
+        final List<double[]> images = new ArrayList<double[]>();
+
+        /**
+         * The words of the page for "granularity=word", computed on first
+         * use: text, first glyph and end glyph of each word.
+         */
+        String[] wordTexts;
+
+        int[] wordStart;
+
+        int[] wordEnd;
+
+        Page(double width, double height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Add a chunk of visible text on a horizontal line.
+         *
+         * @param text
+         *            The text of the chunk
+         * @param font
+         *            Font id as returned by addFont()
+         * @param fontsize
+         *            Font size
+         * @param x
+         *            Position of the first glyph
+         * @param y
+         *            Baseline of the text
+         */
+        public void addText(String text, int font, double fontsize, double x,
+                double y) {
+            addText(text, font, fontsize, x, y, 0);
+        }
+
+        /**
+         * Add a chunk of text on a horizontal line with a given text
+         * rendering mode, e.g. 3 for the invisible text layer of a scanned
+         * page.
+         */
+        public void addText(String text, int font, double fontsize, double x,
+                double y, int textrendering) {
+            final double advance = GLYPH_ADVANCE * fontsize;
+            beginChunk(text);
+            for (int i = 0; i < text.length();) {
+                int cp = text.codePointAt(i);
+                addGlyph(cp, 0, false, 0, font, fontsize, textrendering, x, y,
+                        advance);
+                if (Character.isSupplementaryCodePoint(cp)) {
+                    addGlyph(Character.lowSurrogate(cp), 11, false, 0, font,
+                            fontsize, textrendering, x, y, advance);
+                }
+                x += advance;
+                i += Character.charCount(cp);
+            }
+        }
+
+        /**
+         * Start a new chunk of text. The glyphs of the chunk are added with
+         * addGlyph() afterwards.
+         */
+        public void beginChunk(String text) {
+            if (chunks.size() == chunkStart.length) {
+                chunkStart = Arrays.copyOf(chunkStart, chunkStart.length * 2);
+            }
+            chunkStart[chunks.size()] = glyphCount;
+            chunks.add(text);
+            wordTexts = null;
+        }
+
+        /**
+         * Add a glyph to the current chunk, with the values that
+         * get_char_info() is to return for it.
+         */
+        public void addGlyph(int uv, int type, boolean unknown, int attributes,
+                int fontid, double fontsize, int textrendering, double x,
+                double y, double width) {
+            if (chunks.isEmpty()) {
+                throw new IllegalStateException("addGlyph() without chunk");
+            }
+            if (glyphCount == this.uv.length) {
+                int length = glyphCount * 2;
+                this.uv = Arrays.copyOf(this.uv, length);
+                this.type = Arrays.copyOf(this.type, length);
+                this.fontid = Arrays.copyOf(this.fontid, length);
+                this.textrendering = Arrays.copyOf(this.textrendering, length);
+                this.attributes = Arrays.copyOf(this.attributes, length);
+                this.unknown = Arrays.copyOf(this.unknown, length);
+                this.x = Arrays.copyOf(this.x, length);
+                this.y = Arrays.copyOf(this.y, length);
+                this.glyphWidth = Arrays.copyOf(this.glyphWidth, length);
+                this.fontsize = Arrays.copyOf(this.fontsize, length);
+            }
+            final int i = glyphCount++;
+            this.uv[i] = uv;
+            this.type[i] = type;
+            this.unknown[i] = unknown;
+            this.attributes[i] = attributes;
+            this.fontid[i] = fontid;
+            this.fontsize[i] = fontsize;
+            this.textrendering[i] = textrendering;
+            this.x[i] = x;
+            this.y[i] = y;
+            this.glyphWidth[i] = width;
+        }
+
+        /**
+         * Mark the last glyph added as a glyph without Unicode mapping.
+         */
+        public void markUnknown() {
+            unknown[glyphCount - 1] = true;
+        }
+
+        /**
+         * Place an image on the page.
+         *
+         * @param imageid
+         *            Image id as returned by addImage()
+         */
+        public void placeImage(int imageid, double x, double y, double width,
+                double height) {
+            images.add(new double[] { imageid, x, y, width, height });
+        }
+
+        /**
+         * @return the index after the last glyph of chunk c
+         */
+        int chunkEnd(int c) {
+            return c + 1 < chunks.size() ? chunkStart[c + 1] : glyphCount;
+        }
+
+        /**
+         * Split the chunks into words at whitespace glyphs; the whitespace
+         * itself is dropped, like TET does with word granularity.
+         * Synchronized, as a document may be served by several backends at
+         * once.
+         */
+        synchronized void splitWords() {
+            if (wordTexts != null) {
+                return;
+            }
+            List<String> texts = new ArrayList<String>();
+            int[] starts = new int[16];
+            int[] ends = new int[16];
+            StringBuilder word = new StringBuilder();
+
+            for (int c = 0; c < chunks.size(); c += 1) {
+                int start = -1;
+                int end = chunkEnd(c);
+                for (int i = chunkStart[c]; i <= end; i += 1) {
+                    boolean boundary = i == end
+                            || (type[i] != 11 && Character.isWhitespace(uv[i]));
+                    if (boundary) {
+                        if (start != -1) {
+                            if (texts.size() == starts.length) {
+                                starts = Arrays.copyOf(starts, starts.length * 2);
+                                ends = Arrays.copyOf(ends, ends.length * 2);
+                            }
+                            starts[texts.size()] = start;
+                            ends[texts.size()] = i;
+                            texts.add(word.toString());
+                            word.setLength(0);
+                            start = -1;
+                        }
+                    }
+                    else {
+                        if (start == -1) {
+                            start = i;
+                        }
+                        if (type[i] != 11) {
+                            word.appendCodePoint(uv[i]);
+                        }
+                    }
+                }
+            }
+            wordStart = starts;
+            wordEnd = ends;
+            wordTexts = texts.toArray(new String[texts.size()]);
+        }
+    }
+
+    private final List<String> fontNames = new ArrayList<String>();
+
+    private final List<Boolean> fontEmbedded = new ArrayList<Boolean>();
+
+    private final List<int[]> imageSizes = new ArrayList<int[]>();
+
+    private final List<byte[]> imageData = new ArrayList<byte[]>();
+
+    final List<Page> pages = new ArrayList<Page>();
+
+    private final Map<String, Object> pcosValues = new HashMap<String, Object>();
+
+    private boolean derivePcosValues = true;
+
+    /**
+     * Add a font.
+     *
+     * @return the font id
+     */
+    public int addFont(String name, boolean embedded) {
+        fontNames.add(name);
+        fontEmbedded.add(embedded);
+        return fontNames.size() - 1;
+    }
+
+    /**
+     * Add an image resource.
+     *
+     * @param width
+     *            Width in pixels
+     * @param height
+     *            Height in pixels
+     * @param imageType
+     *            The value that write_image_file() returns for the image,
+     *            e.g. 10 for TIFF or 20 for JPEG
+     * @param data
+     *            The image data returned by get_image_data()
+     *
+     * @return the image id
+     */
+    public int addImage(int width, int height, int imageType, byte[] data) {
+        imageSizes.add(new int[] { width, height, imageType });
+        imageData.add(data);
+        return imageSizes.size() - 1;
+    }
+
+    /**
+     * Add a page.
+     */
+    public Page addPage(double width, double height) {
+        Page page = new Page(width, height);
+        pages.add(page);
+        return page;
+    }
+
+    /**
+     * Set a pCOS value that is not derived from the document.
+     *
+     * @param value
+     *            A Number, a String, or a byte[] for pcos_get_stream()
+     */
+    public void setPcosValue(String path, Object value) {
+        pcosValues.put(path, value);
+    }
+
+    /**
+     * Switch the pCOS values that are derived from the document on or off.
+     * If off, only the values set with setPcosValue() exist. Replayed traces
+     * switch them off, so that a query that was not recorded fails instead
+     * of returning a made-up value.
+     */
+    public void setDerivePcosValues(boolean derive) {
+        derivePcosValues = derive;
+    }
+
+    int imageType(int imageid) {
+        return imageSizes.get(imageid)[2];
+    }
+
+    byte[] imageData(int imageid) {
+        return imageData.get(imageid);
+    }
+
+    int imageCount() {
+        return imageSizes.size();
+    }
+
+    /**
+     * Look up a pCOS value.
+     *
+     * @return a Number, a String, a byte[], or null if the path does not
+     *         exist
+     */
+    Object pcosValue(String path) {
+        Object value = pcosValues.get(path);
+        if (value != null || !derivePcosValues) {
+            return value;
+        }
+
+        if (path.startsWith("length:")) {
+            String array = path.substring(7);
+            if (array.equals("pages")) {
+                return pages.size();
+            }
+            else if (array.equals("fonts")) {
+                return fontNames.size();
+            }
+            else if (array.equals("images")) {
+                return imageSizes.size();
+            }
+            return null;
+        }
+
+        int open = path.indexOf('[');
+        int close = path.indexOf("]/");
+        if (open == -1 || close < open) {
+            return null;
+        }
+        String array = path.substring(0, open);
+        String key = path.substring(close + 2);
+        int index;
+        try {
+            index = Integer.parseInt(path.substring(open + 1, close));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (array.equals("pages") && index >= 0 && index < pages.size()) {
+            Page page = pages.get(index);
+            if (key.equals("width")) {
+                return page.width;
+            }
+            else if (key.equals("height")) {
+                return page.height;
+            }
+        }
+        else if (array.equals("fonts") && index >= 0
+                && index < fontNames.size()) {
+            if (key.equals("name")) {
+                return fontNames.get(index);
+            }
+            else if (key.equals("embedded")) {
+                return fontEmbedded.get(index) ? 1 : 0;
+            }
+            else if (key.equals("ascender")) {
+                return 720;
+            }
+            else if (key.equals("descender")) {
+                return -250;
+            }
+        }
+        else if (array.equals("images") && index >= 0
+                && index < imageSizes.size()) {
+            if (key.equals("Width")) {
+                return imageSizes.get(index)[0];
+            }
+            else if (key.equals("Height")) {
+                return imageSizes.get(index)[1];
+            }
+            else if (key.equals("mergetype")) {
+                return 0;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generate a document with pseudo-random text, for benchmarks. The words
+     * are drawn from a fixed vocabulary with a skewed distribution, so that
+     * word frequencies resemble natural text; every tenth page carries an
+     * image.
+     *
+     * @param pageCount
+     *            Number of pages
+     * @param wordsPerPage
+     *            Number of words on each page
+     * @param seed
+     *            Seed for the random generator; equal seeds give equal
+     *            documents
+     */
+    public static FakeDocument generate(int pageCount, int wordsPerPage,
+            long seed) {
+        Random random = new Random(seed);
+        String[] vocabulary = new String[2000];
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < vocabulary.length; i += 1) {
+            word.setLength(0);
+            int length = 2 + random.nextInt(9);
+            for (int j = 0; j < length; j += 1) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+
+        FakeDocument document = new FakeDocument();
+        int[] fonts = new int[] {
+            document.addFont("Helvetica", false),
+            document.addFont("Times-Bold", true),
+            document.addFont("Courier", false)
+        };
+        int image = document.addImage(100, 100, 20, new byte[1000]);
+
+        final double fontsize = 10;
+        final int wordsPerLine = 12;
+        StringBuilder line = new StringBuilder();
+        for (int p = 0; p < pageCount; p += 1) {
+            Page page = document.addPage(595, 842);
+            double y = 800;
+            for (int w = 0; w < wordsPerPage; w += wordsPerLine) {
+                line.setLength(0);
+                for (int i = w; i < Math.min(w + wordsPerLine, wordsPerPage);
+                        i += 1) {
+                    if (line.length() > 0) {
+                        line.append(' ');
+                    }
+                    /* squaring skews the distribution towards low indexes */
+                    double r = random.nextDouble();
+                    line.append(vocabulary[(int) (r * r * vocabulary.length)]);
+                }
+                int font = fonts[random.nextInt(10) == 0
+                        ? 1 + random.nextInt(2) : 0];
+                page.addText(line.toString(), font, fontsize, 50, y);
+                y -= 1.2 * fontsize;
+            }
+            if (p % 10 == 0) {
+                page.placeImage(image, 50, 50, 100, 100);
+            }
+        }
+        return document;
+    }
+}
@@ -0,0 +1,509 @@
+package com.pdflib.cookbook.tet.backend;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.pdflib.TETException;
+
+/**
+ * {@link TetBackend} that serves {@link FakeDocument} instances from memory,
+ * without the native TET library.
+ * <p>
+ * The fake follows the TET conventions that the cookbook code relies on:
+ * open_document() and open_page() return -1 and set the error fields on
+ * failure, get_text() returns null after the last chunk, get_char_info()
+ * returns -1 after the last glyph of the current chunk, and get_image_info()
+ * returns 0 after the last image. Invalid handles and unknown pCOS paths
+ * throw a TETException.
+ * <p>
+ * Of the page option list only "granularity=word" is evaluated; all other
+ * granularities return the chunks as scripted. Pages with recorded chunks,
+ * see {@link TetTrace}, return them as recorded for every granularity. All other option lists are
+ * accepted and ignored, except for the "filename" and "typeonly" options of
+ * write_image_file().
+ * <p>
+ * Like the TET object a backend instance must only be used by one thread,
+ * but several instances may serve the same documents.
+ */
+public class FakeTetBackend implements TetBackend {
+    /**
+     * Error number for documents that have not been added to the backend.
+     */
+    public static final int ERR_NO_DOCUMENT = 1010;
+
+    /**
+     * Error number for page numbers out of range.
+     */
+    public static final int ERR_PAGE_NUMBER = 3300;
+
+    /**
+     * Error number for failed image output.
+     */
+    public static final int ERR_IMAGE_FILE = 4000;
+
+    private static final Pattern WORD_GRANULARITY =
+            Pattern.compile(".*\\bgranularity\\s*=\\s*\\{?\\s*word\\b.*");
+
+    private static final Pattern TYPEONLY = Pattern.compile(".*\\btypeonly\\b.*");
+
+    /**
+     * State of an opened page.
+     */
+    private static final class OpenPage {
+        final FakeDocument.Page page;
+
+        final int doc;
+
+        final String[] texts;
+
+        final int[] start;
+
+        final int[] end;
+
+        final int chunkCount;
+
+        int chunk = -1;
+
+        int glyph;
+
+        int image;
+
+        OpenPage(FakeDocument.Page page, int doc, boolean words) {
+            this.page = page;
+            this.doc = doc;
+            if (words && !page.recorded) {
+                page.splitWords();
+                texts = page.wordTexts;
+                start = page.wordStart;
+                end = page.wordEnd;
+                chunkCount = page.wordTexts.length;
+            }
+            else {
+                texts = page.chunks.toArray(new String[page.chunks.size()]);
+                chunkCount = texts.length;
+                start = page.chunkStart;
+                end = new int[chunkCount];
+                for (int c = 0; c < chunkCount; c += 1) {
+                    end[c] = page.chunkEnd(c);
+                }
+            }
+        }
+    }
+
+    private final Map<String, FakeDocument> documents =
+            new HashMap<String, FakeDocument>();
+
+    private final List<FakeDocument> openDocuments = new ArrayList<FakeDocument>();
+
+    private final List<OpenPage> openPages = new ArrayList<OpenPage>();
+
+    private int errnum;
+
+    private String apiname = "";
+
+    private String errmsg = "";
+
+    /* current glyph or image */
+    private int uv;
+
+    private int type;
+
+    private boolean unknown;
+
+    private int attributes;
+
+    private int fontid;
+
+    private double fontsize;
+
+    private int textrendering;
+
+    private double x;
+
+    private double y;
+
+    private double width;
+
+    private double height;
+
+    private double alpha;
+
+    private double beta;
+
+    private int imageid;
+
+    /**
+     * Make a document available under a file name.
+     */
+    public void addDocument(String filename, FakeDocument document) {
+        documents.put(filename, document);
+    }
+
+    public void set_option(String optlist) {
+        clearError();
+    }
+
+    public int open_document(String filename, String optlist) {
+        FakeDocument document = documents.get(filename);
+        if (document == null) {
+            return error(ERR_NO_DOCUMENT, "open_document",
+                    "Couldn't open PDF file '" + filename
+                            + "' for reading (file not found)");
+        }
+        clearError();
+        openDocuments.add(document);
+        return openDocuments.size() - 1;
+    }
+
+    public void close_document(int doc) throws TETException {
+        document(doc, "close_document");
+        openDocuments.set(doc, null);
+        trim(openDocuments);
+        clearError();
+    }
+
+    public int open_page(int doc, int pagenumber, String optlist)
+            throws TETException {
+        FakeDocument document = document(doc, "open_page");
+        if (pagenumber < 1 || pagenumber > document.pages.size()) {
+            return error(ERR_PAGE_NUMBER, "open_page", "Page number "
+                    + pagenumber + " out of range");
+        }
+        clearError();
+        boolean words = optlist != null
+                && WORD_GRANULARITY.matcher(optlist).matches();
+        openPages.add(new OpenPage(document.pages.get(pagenumber - 1), doc,
+                words));
+        return openPages.size() - 1;
+    }
+
+    public void close_page(int page) throws TETException {
+        openPage(page, "close_page");
+        openPages.set(page, null);
+        trim(openPages);
+        clearError();
+    }
+
+    public String get_text(int page) throws TETException {
+        OpenPage p = openPage(page, "get_text");
+        clearError();
+        if (p.chunk + 1 >= p.chunkCount) {
+            p.chunk = p.chunkCount;
+            return null;
+        }
+        p.chunk += 1;
+        p.glyph = p.start[p.chunk];
+        return p.texts[p.chunk];
+    }
+
+    public int get_char_info(int page) throws TETException {
+        OpenPage p = openPage(page, "get_char_info");
+        clearError();
+        if (p.chunk < 0 || p.chunk >= p.chunkCount
+                || p.glyph >= p.end[p.chunk]) {
+            return -1;
+        }
+        final FakeDocument.Page g = p.page;
+        final int i = p.glyph++;
+        uv = g.uv[i];
+        type = g.type[i];
+        unknown = g.unknown[i];
+        attributes = g.attributes[i];
+        fontid = g.fontid[i];
+        fontsize = g.fontsize[i];
+        textrendering = g.textrendering[i];
+        x = g.x[i];
+        y = g.y[i];
+        width = g.glyphWidth[i];
+        height = g.fontsize[i];
+        alpha = 0;
+        beta = 0;
+        return 1;
+    }
+
+    public int get_image_info(int page) throws TETException {
+        OpenPage p = openPage(page, "get_image_info");
+        clearError();
+        if (p.image >= p.page.images.size()) {
+            return 0;
+        }
+        double[] placement = p.page.images.get(p.image++);
+        imageid = (int) placement[0];
+        x = placement[1];
+        y = placement[2];
+        width = placement[3];
+        height = placement[4];
+        alpha = 0;
+        beta = 0;
+        return 1;
+    }
+
+    public double pcos_get_number(int doc, String path) throws TETException {
+        Object value = pcosValue(doc, path, "pcos_get_number");
+        if (!(value instanceof Number)) {
+            throw exception(1500, "pcos_get_number", "pCOS path '" + path
+                    + "' does not point to a number");
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    public String pcos_get_string(int doc, String path) throws TETException {
+        Object value = pcosValue(doc, path, "pcos_get_string");
+        if (value instanceof byte[]) {
+            throw exception(1500, "pcos_get_string", "pCOS path '" + path
+                    + "' points to a stream");
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            return d == Math.rint(d) ? Long.toString((long) d)
+                    : Double.toString(d);
+        }
+        return (String) value;
+    }
+
+    public byte[] pcos_get_stream(int doc, String optlist, String path)
+            throws TETException {
+        Object value = pcosValue(doc, path, "pcos_get_stream");
+        if (!(value instanceof byte[])) {
+            throw exception(1500, "pcos_get_stream", "pCOS path '" + path
+                    + "' does not point to a stream");
+        }
+        return ((byte[]) value).clone();
+    }
+
+    public byte[] get_image_data(int doc, int imageid, String optlist)
+            throws TETException {
+        FakeDocument document = document(doc, "get_image_data");
+        checkImage(document, imageid, "get_image_data");
+        clearError();
+        return document.imageData(imageid).clone();
+    }
+
+    public int write_image_file(int doc, int imageid, String optlist)
+            throws TETException {
+        FakeDocument document = document(doc, "write_image_file");
+        checkImage(document, imageid, "write_image_file");
+        int imageType = document.imageType(imageid);
+        if (optlist != null && TYPEONLY.matcher(optlist).matches()) {
+            clearError();
+            return imageType;
+        }
+
+        String filename = optionValue(optlist, "filename");
+        if (filename == null) {
+            return error(ERR_IMAGE_FILE, "write_image_file",
+                    "Option 'filename' missing");
+        }
+        filename += "." + extension(imageType);
+        try {
+            OutputStream out = new FileOutputStream(filename);
+            try {
+                out.write(document.imageData(imageid));
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e) {
+            return error(ERR_IMAGE_FILE, "write_image_file",
+                    "Couldn't write image file '" + filename + "': "
+                            + e.getMessage());
+        }
+        clearError();
+        return imageType;
+    }
+
+    public int get_errnum() {
+        return errnum;
+    }
+
+    public String get_apiname() {
+        return apiname;
+    }
+
+    public String get_errmsg() {
+        return errmsg;
+    }
+
+    public void delete() {
+        openDocuments.clear();
+        openPages.clear();
+    }
+
+    public int uv() {
+        return uv;
+    }
+
+    public int type() {
+        return type;
+    }
+
+    public boolean unknown() {
+        return unknown;
+    }
+
+    public int attributes() {
+        return attributes;
+    }
+
+    public int fontid() {
+        return fontid;
+    }
+
+    public double fontsize() {
+        return fontsize;
+    }
+
+    public int textrendering() {
+        return textrendering;
+    }
+
+    public double x() {
+        return x;
+    }
+
+    public double y() {
+        return y;
+    }
+
+    public double width() {
+        return width;
+    }
+
+    public double height() {
+        return height;
+    }
+
+    public double alpha() {
+        return alpha;
+    }
+
+    public double beta() {
+        return beta;
+    }
+
+    public int imageid() {
+        return imageid;
+    }
+
+    private FakeDocument document(int doc, String api) throws TETException {
+        FakeDocument document = doc >= 0 && doc < openDocuments.size()
+                ? openDocuments.get(doc) : null;
+        if (document == null) {
+            throw exception(2100, api, "Invalid document handle " + doc);
+        }
+        return document;
+    }
+
+    private OpenPage openPage(int page, String api) throws TETException {
+        OpenPage p = page >= 0 && page < openPages.size()
+                ? openPages.get(page) : null;
+        if (p == null || p.doc >= openDocuments.size()
+                || openDocuments.get(p.doc) == null) {
+            throw exception(2102, api, "Invalid page handle " + page);
+        }
+        return p;
+    }
+
+    private Object pcosValue(int doc, String path, String api)
+            throws TETException {
+        FakeDocument document = document(doc, api);
+        Object value = document.pcosValue(path);
+        if (value == null) {
+            throw exception(1500, api, "pCOS path '" + path + "' not found");
+        }
+        clearError();
+        return value;
+    }
+
+    private void checkImage(FakeDocument document, int imageid, String api)
+            throws TETException {
+        if (imageid < 0 || imageid >= document.imageCount()) {
+            throw exception(2104, api, "Invalid image id " + imageid);
+        }
+    }
+
+    /**
+     * Remove closed handles from the end of a handle list, so that handles
+     * are reused when documents and pages are opened and closed in turn.
+     */
+    private static void trim(List<?> handles) {
+        while (!handles.isEmpty() && handles.get(handles.size() - 1) == null) {
+            handles.remove(handles.size() - 1);
+        }
+    }
+
+    private int error(int num, String api, String msg) {
+        errnum = num;
+        apiname = api;
+        errmsg = msg;
+        return -1;
+    }
+
+    private TETException exception(int num, String api, String msg) {
+        error(num, api, msg);
+        return new TETException(msg, num, api);
+    }
+
+    private void clearError() {
+        errnum = 0;
+        apiname = "";
+        errmsg = "";
+    }
+
+    /**
+     * @return the value of an option in an option list, with or without
+     *         braces, or null if the option is not present
+     */
+    static String optionValue(String optlist, String name) {
+        if (optlist == null) {
+            return null;
+        }
+        int i = optlist.indexOf(name + "=");
+        while (i > 0 && !Character.isWhitespace(optlist.charAt(i - 1))) {
+            i = optlist.indexOf(name + "=", i + 1);
+        }
+        if (i == -1) {
+            return null;
+        }
+        int start = i + name.length() + 1;
+        if (start < optlist.length() && optlist.charAt(start) == '{') {
+            int end = optlist.indexOf('}', start);
+            return end == -1 ? null : optlist.substring(start + 1, end);
+        }
+        int end = start;
+        while (end < optlist.length()
+                && !Character.isWhitespace(optlist.charAt(end))) {
+            end += 1;
+        }
+        return optlist.substring(start, end);
+    }
+
+    /**
+     * @return the file name extension for a write_image_file() image type
+     */
+    private static String extension(int imageType) {
+        switch (imageType) {
+        case 10:
+            return "tif";
+        case 20:
+            return "jpg";
+        case 31:
+            return "jp2";
+        case 32:
+            return "jpf";
+        case 33:
+            return "j2k";
+        case 50:
+            return "jbig2";
+        default:
+            return "raw";
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.pdflib.cookbook.tet.backend;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+
+/**
+ * {@link TetBackend} that delegates all calls to a com.pdflib.TET object.
+ */
+public final class NativeTetBackend implements TetBackend {
+    private final TET tet;
+
+    /**
+     * Create a backend with a new TET object.
+     *
+     * @throws TETException
+     *             The TET object could not be created
+     */
+    public NativeTetBackend() throws TETException {
+        this(new TET());
+    }
+
+    /**
+     * Create a backend for an existing TET object. Deleting the backend
+     * deletes the TET object.
+     */
+    public NativeTetBackend(TET tet) {
+        this.tet = tet;
+    }
+
+    /**
+     * @return the underlying TET object
+     */
+    public TET getTET() {
+        return tet;
+    }
+
+    public void set_option(String optlist) throws TETException {
+        tet.set_option(optlist);
+    }
+
+    public int open_document(String filename, String optlist)
+            throws TETException {
+        return tet.open_document(filename, optlist);
+    }
+
+    public void close_document(int doc) throws TETException {
+        tet.close_document(doc);
+    }
+
+    public int open_page(int doc, int pagenumber, String optlist)
+            throws TETException {
+        return tet.open_page(doc, pagenumber, optlist);
+    }
+
+    public void close_page(int page) throws TETException {
+        tet.close_page(page);
+    }
+
+    public String get_text(int page) throws TETException {
+        return tet.get_text(page);
+    }
+
+    public int get_char_info(int page) throws TETException {
+        return tet.get_char_info(page);
+    }
+
+    public int get_image_info(int page) throws TETException {
+        return tet.get_image_info(page);
+    }
+
+    public double pcos_get_number(int doc, String path) throws TETException {
+        return tet.pcos_get_number(doc, path);
+    }
+
+    public String pcos_get_string(int doc, String path) throws TETException {
+        return tet.pcos_get_string(doc, path);
+    }
+
+    public byte[] pcos_get_stream(int doc, String optlist, String path)
+            throws TETException {
+        return tet.pcos_get_stream(doc, optlist, path);
+    }
+
+    public byte[] get_image_data(int doc, int imageid, String optlist)
+            throws TETException {
+        return tet.get_image_data(doc, imageid, optlist);
+    }
+
+    public int write_image_file(int doc, int imageid, String optlist)
+            throws TETException {
+        return tet.write_image_file(doc, imageid, optlist);
+    }
+
+    public int get_errnum() {
+        return tet.get_errnum();
+    }
+
+    public String get_apiname() {
+        return tet.get_apiname();
+    }
+
+    public String get_errmsg() {
+        return tet.get_errmsg();
+    }
+
+    public void delete() {
+        tet.delete();
+    }
+
+    public int uv() {
+        return tet.uv;
+    }
+
+    public int type() {
+        return tet.type;
+    }
+
+    public boolean unknown() {
+        return tet.unknown;
+    }
+
+    public int attributes() {
+        return tet.attributes;
+    }
+
+    public int fontid() {
+        return tet.fontid;
+    }
+
+    public double fontsize() {
+        return tet.fontsize;
+    }
+
+    public int textrendering() {
+        return tet.textrendering;
+    }
+
+    public double x() {
+        return tet.x;
+    }
+
+    public double y() {
+        return tet.y;
+    }
+
+    public double width() {
+        return tet.width;
+    }
+
+    public double height() {
+        return tet.height;
+    }
+
+    public double alpha() {
+        return tet.alpha;
+    }
+
+    public double beta() {
+        return tet.beta;
+    }
+
+    public int imageid() {
+        return tet.imageid;
+    }
+}
@@ -0,0 +1,238 @@
+package com.pdflib.cookbook.tet.backend;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.pdflib.TETException;
+
+/**
+ * {@link TetBackend} that passes all calls on to another backend and records
+ * the results in a {@link TetTrace}.
+ * <p>
+ * Only what the caller actually requests is recorded, so the session should
+ * be recorded with the tool that needs the most details, e.g. the
+ * AnalysisEngine with all analyzers. See {@link TetTrace} for what a replay
+ * can serve.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * TetTrace.Writer trace = new TetTrace.Writer(new File("session.trace"));
+ * TetBackend tet = new RecordingTetBackend(new NativeTetBackend(), trace);
+ * ... use tet ...
+ * tet.delete();
+ * trace.close();
+ * </pre>
+ */
+public class RecordingTetBackend implements TetBackend {
+    private final TetBackend tet;
+
+    private final TetTrace.Writer trace;
+
+    /**
+     * Document index in the trace by document handle.
+     */
+    private final Map<Integer, Integer> documents = new HashMap<Integer, Integer>();
+
+    /**
+     * Page key in the trace by page handle; -1 for pages that have already
+     * been recorded.
+     */
+    private final Map<Integer, Integer> pages = new HashMap<Integer, Integer>();
+
+    /**
+     * @param tet
+     *            The backend that does the work
+     * @param trace
+     *            The trace to write to; it is not closed by the backend
+     */
+    public RecordingTetBackend(TetBackend tet, TetTrace.Writer trace) {
+        this.tet = tet;
+        this.trace = trace;
+    }
+
+    public void set_option(String optlist) throws TETException {
+        tet.set_option(optlist);
+    }
+
+    public int open_document(String filename, String optlist)
+            throws TETException {
+        int doc = tet.open_document(filename, optlist);
+        if (doc != -1) {
+            documents.put(doc, trace.document(filename));
+        }
+        return doc;
+    }
+
+    public void close_document(int doc) throws TETException {
+        tet.close_document(doc);
+        documents.remove(doc);
+    }
+
+    public int open_page(int doc, int pagenumber, String optlist)
+            throws TETException {
+        int page = tet.open_page(doc, pagenumber, optlist);
+        if (page != -1) {
+            int index = document(doc);
+            pages.put(page, index != -1 ? trace.page(index, pagenumber) : -1);
+        }
+        return page;
+    }
+
+    public void close_page(int page) throws TETException {
+        tet.close_page(page);
+        pages.remove(page);
+    }
+
+    public String get_text(int page) throws TETException {
+        String text = tet.get_text(page);
+        int key = page(page);
+        if (text != null && key != -1) {
+            trace.text(key, text);
+        }
+        return text;
+    }
+
+    public int get_char_info(int page) throws TETException {
+        int result = tet.get_char_info(page);
+        int key = page(page);
+        if (result != -1 && key != -1) {
+            trace.glyph(key, tet);
+        }
+        return result;
+    }
+
+    public int get_image_info(int page) throws TETException {
+        int result = tet.get_image_info(page);
+        int key = page(page);
+        if (result == 1 && key != -1) {
+            trace.image(key, tet);
+        }
+        return result;
+    }
+
+    public double pcos_get_number(int doc, String path) throws TETException {
+        double value = tet.pcos_get_number(doc, path);
+        trace.number(document(doc), path, value);
+        return value;
+    }
+
+    public String pcos_get_string(int doc, String path) throws TETException {
+        String value = tet.pcos_get_string(doc, path);
+        trace.string(document(doc), path, value);
+        return value;
+    }
+
+    public byte[] pcos_get_stream(int doc, String optlist, String path)
+            throws TETException {
+        byte[] value = tet.pcos_get_stream(doc, optlist, path);
+        trace.stream(document(doc), path, value);
+        return value;
+    }
+
+    public byte[] get_image_data(int doc, int imageid, String optlist)
+            throws TETException {
+        byte[] data = tet.get_image_data(doc, imageid, optlist);
+        if (data != null) {
+            trace.imageData(document(doc), imageid, data);
+        }
+        return data;
+    }
+
+    public int write_image_file(int doc, int imageid, String optlist)
+            throws TETException {
+        int type = tet.write_image_file(doc, imageid, optlist);
+        if (type != -1) {
+            trace.imageType(document(doc), imageid, type);
+        }
+        return type;
+    }
+
+    public int get_errnum() {
+        return tet.get_errnum();
+    }
+
+    public String get_apiname() {
+        return tet.get_apiname();
+    }
+
+    public String get_errmsg() {
+        return tet.get_errmsg();
+    }
+
+    public void delete() {
+        tet.delete();
+        documents.clear();
+        pages.clear();
+    }
+
+    public int uv() {
+        return tet.uv();
+    }
+
+    public int type() {
+        return tet.type();
+    }
+
+    public boolean unknown() {
+        return tet.unknown();
+    }
+
+    public int attributes() {
+        return tet.attributes();
+    }
+
+    public int fontid() {
+        return tet.fontid();
+    }
+
+    public double fontsize() {
+        return tet.fontsize();
+    }
+
+    public int textrendering() {
+        return tet.textrendering();
+    }
+
+    public double x() {
+        return tet.x();
+    }
+
+    public double y() {
+        return tet.y();
+    }
+
+    public double width() {
+        return tet.width();
+    }
+
+    public double height() {
+        return tet.height();
+    }
+
+    public double alpha() {
+        return tet.alpha();
+    }
+
+    public double beta() {
+        return tet.beta();
+    }
+
+    public int imageid() {
+        return tet.imageid();
+    }
+
+    /**
+     * @return the trace index of an open document, or -1 if the handle is
+     *         unknown; the trace ignores values for index -1
+     */
+    private int document(int doc) {
+        Integer index = documents.get(doc);
+        return index != null ? index : -1;
+    }
+
+    private int page(int page) {
+        Integer key = pages.get(page);
+        return key != null ? key : -1;
+    }
+}
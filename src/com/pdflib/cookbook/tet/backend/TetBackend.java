@@ -0,0 +1,97 @@
+package com.pdflib.cookbook.tet.backend;
+
+import com.pdflib.TETException;
+
+/**
+ * The subset of the TET API that the cookbook infrastructure uses, as an
+ * interface, so that the Java-side layers can run without the native TET
+ * library.
+ * <p>
+ * The methods have the same names, parameters and semantics as the methods of
+ * com.pdflib.TET. Instead of the public fields of the TET object, the details
+ * of the current glyph (after get_char_info()) and of the current image
+ * (after get_image_info()) are available through accessor methods of the same
+ * name.
+ * <p>
+ * {@link NativeTetBackend} delegates to a TET object, {@link FakeTetBackend}
+ * serves scripted documents from memory.
+ */
+public interface TetBackend {
+    void set_option(String optlist) throws TETException;
+
+    int open_document(String filename, String optlist) throws TETException;
+
+    void close_document(int doc) throws TETException;
+
+    int open_page(int doc, int pagenumber, String optlist) throws TETException;
+
+    void close_page(int page) throws TETException;
+
+    String get_text(int page) throws TETException;
+
+    int get_char_info(int page) throws TETException;
+
+    int get_image_info(int page) throws TETException;
+
+    double pcos_get_number(int doc, String path) throws TETException;
+
+    String pcos_get_string(int doc, String path) throws TETException;
+
+    byte[] pcos_get_stream(int doc, String optlist, String path)
+            throws TETException;
+
+    byte[] get_image_data(int doc, int imageid, String optlist)
+            throws TETException;
+
+    int write_image_file(int doc, int imageid, String optlist)
+            throws TETException;
+
+    int get_errnum();
+
+    String get_apiname();
+
+    String get_errmsg();
+
+    /**
+     * Release the backend; it must not be used any longer.
+     */
+    void delete();
+
+    /*
+     * Details of the current glyph, valid after get_char_info() returned a
+     * value other than -1.
+     */
+
+    int uv();
+
+    int type();
+
+    boolean unknown();
+
+    int attributes();
+
+    int fontid();
+
+    double fontsize();
+
+    int textrendering();
+
+    /*
+     * Position and size of the current glyph or image; the image details are
+     * valid after get_image_info() returned 1.
+     */
+
+    double x();
+
+    double y();
+
+    double width();
+
+    double height();
+
+    double alpha();
+
+    double beta();
+
+    int imageid();
+}
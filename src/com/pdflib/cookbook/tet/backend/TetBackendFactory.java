@@ -0,0 +1,45 @@
+package com.pdflib.cookbook.tet.backend;
+
+import com.pdflib.TETException;
+
+/**
+ * Creates the backends of the programs that need a backend per worker
+ * thread. The default factory creates a {@link NativeTetBackend} each time;
+ * checks and benchmarks can set a factory of {@link FakeTetBackend} objects
+ * to run such a program without the native TET library.
+ */
+public abstract class TetBackendFactory {
+    private static TetBackendFactory defaultFactory = new TetBackendFactory() {
+        public TetBackend create() throws TETException {
+            return new NativeTetBackend();
+        }
+    };
+
+    /**
+     * @return a new backend, which the caller must delete
+     *
+     * @throws TETException
+     *             The backend could not be created
+     */
+    public abstract TetBackend create() throws TETException;
+
+    /**
+     * @return the factory of the programs, creating NativeTetBackend objects
+     *         unless another factory was set
+     */
+    public static synchronized TetBackendFactory getDefault() {
+        return defaultFactory;
+    }
+
+    /**
+     * Replace the factory of the programs.
+     *
+     * @return the previous factory, for restoring it afterwards
+     */
+    public static synchronized TetBackendFactory setDefault(
+            TetBackendFactory factory) {
+        TetBackendFactory previous = defaultFactory;
+        defaultFactory = factory;
+        return previous;
+    }
+}
@@ -0,0 +1,467 @@
+package com.pdflib.cookbook.tet.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Trace files of TET sessions: a {@link RecordingTetBackend} writes
+ * everything that TET returned to a trace, and {@link #load(File,
+ * FakeTetBackend)} turns the trace into {@link FakeDocument} instances, so
+ * that the same session can be replayed any number of times without the
+ * native library.
+ * <p>
+ * A trace contains the text chunks, the glyph details and the placed images
+ * of each page, and all pCOS values, image data and image types that were
+ * queried. Each page and each pCOS value is recorded only once, also if the
+ * document is opened several times. The replay serves exactly what was
+ * recorded: pages that were never opened are empty, chunks whose glyphs were
+ * not fetched have no glyphs, and pCOS paths that were not queried do not
+ * exist. The text chunks are served verbatim, as the glyphs needed to split
+ * them into words may not have been fetched, so pages should be replayed
+ * with the same page option list that was used for recording.
+ * <p>
+ * The file is a GZIP-compressed sequence of records, each starting with a
+ * tag byte, after a header with magic number and version. Strings are stored
+ * as length and UTF-8 bytes.
+ */
+public final class TetTrace {
+    private static final int MAGIC = 0x54455452; // "TETR"
+
+    private static final int VERSION = 1;
+
+    /* record tags */
+    private static final int DOCUMENT = 'D';
+
+    private static final int PAGE = 'P';
+
+    private static final int TEXT = 'T';
+
+    private static final int GLYPH = 'G';
+
+    private static final int IMAGE = 'I';
+
+    private static final int NUMBER = 'N';
+
+    private static final int STRING = 'S';
+
+    private static final int STREAM = 'B';
+
+    private static final int IMAGE_DATA = 'M';
+
+    private static final int IMAGE_TYPE = 'W';
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private TetTrace() {
+    }
+
+    /**
+     * Writes a trace file. A writer can be shared by several recording
+     * backends, also from different threads.
+     * <p>
+     * If writing fails, recording stops, and the error is thrown by
+     * {@link #close()}; the recorded TET session itself is not affected.
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+
+        private final Map<String, Integer> documents =
+                new HashMap<String, Integer>();
+
+        /**
+         * Recorded pages as (document index << 32 | page number).
+         */
+        private final Set<Long> pages = new HashSet<Long>();
+
+        /**
+         * Recorded pCOS values, image data and image types as document
+         * index, tag and path.
+         */
+        private final Set<String> values = new HashSet<String>();
+
+        private int nextPageKey;
+
+        private IOException error;
+
+        public Writer(File trace) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(trace)), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        /**
+         * @return the index of the document in the trace
+         */
+        synchronized int document(String filename) {
+            Integer index = documents.get(filename);
+            if (index == null) {
+                index = documents.size();
+                documents.put(filename, index);
+                try {
+                    out.write(DOCUMENT);
+                    out.writeInt(index);
+                    writeString(out, filename);
+                }
+                catch (IOException e) {
+                    failed(e);
+                }
+            }
+            return index;
+        }
+
+        /**
+         * @return the key for the records of the page, or -1 if the page has
+         *         already been recorded
+         */
+        synchronized int page(int document, int pageno) {
+            if (!pages.add(((long) document << 32) | pageno)) {
+                return -1;
+            }
+            int key = nextPageKey++;
+            try {
+                out.write(PAGE);
+                out.writeInt(key);
+                out.writeInt(document);
+                out.writeInt(pageno);
+            }
+            catch (IOException e) {
+                failed(e);
+            }
+            return key;
+        }
+
+        synchronized void text(int page, String text) {
+            try {
+                out.write(TEXT);
+                out.writeInt(page);
+                writeString(out, text);
+            }
+            catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        synchronized void glyph(int page, TetBackend tet) {
+            try {
+                out.write(GLYPH);
+                out.writeInt(page);
+                out.writeInt(tet.uv());
+                out.writeByte(tet.type());
+                out.writeBoolean(tet.unknown());
+                out.writeInt(tet.attributes());
+                out.writeInt(tet.fontid());
+                out.writeDouble(tet.fontsize());
+                out.writeByte(tet.textrendering());
+                out.writeDouble(tet.x());
+                out.writeDouble(tet.y());
+                out.writeDouble(tet.width());
+            }
+            catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        synchronized void image(int page, TetBackend tet) {
+            try {
+                out.write(IMAGE);
+                out.writeInt(page);
+                out.writeInt(tet.imageid());
+                out.writeDouble(tet.x());
+                out.writeDouble(tet.y());
+                out.writeDouble(tet.width());
+                out.writeDouble(tet.height());
+            }
+            catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        synchronized void number(int document, String path, double value) {
+            if (document >= 0 && values.add(document + " N " + path)) {
+                try {
+                    out.write(NUMBER);
+                    out.writeInt(document);
+                    writeString(out, path);
+                    out.writeDouble(value);
+                }
+                catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        synchronized void string(int document, String path, String value) {
+            if (document >= 0 && values.add(document + " S " + path)) {
+                try {
+                    out.write(STRING);
+                    out.writeInt(document);
+                    writeString(out, path);
+                    writeString(out, value);
+                }
+                catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        synchronized void stream(int document, String path, byte[] value) {
+            if (document >= 0 && values.add(document + " B " + path)) {
+                try {
+                    out.write(STREAM);
+                    out.writeInt(document);
+                    writeString(out, path);
+                    writeBytes(out, value);
+                }
+                catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        synchronized void imageData(int document, int imageid, byte[] data) {
+            if (document >= 0 && values.add(document + " M " + imageid)) {
+                try {
+                    out.write(IMAGE_DATA);
+                    out.writeInt(document);
+                    out.writeInt(imageid);
+                    writeBytes(out, data);
+                }
+                catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        synchronized void imageType(int document, int imageid, int type) {
+            if (document >= 0 && values.add(document + " W " + imageid)) {
+                try {
+                    out.write(IMAGE_TYPE);
+                    out.writeInt(document);
+                    out.writeInt(imageid);
+                    out.writeInt(type);
+                }
+                catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        public synchronized void close() throws IOException {
+            try {
+                out.close();
+            }
+            catch (IOException e) {
+                failed(e);
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private void failed(IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * Load a trace, and add its documents to a fake backend under the
+     * recorded file names.
+     *
+     * @return the file names of the documents in the trace
+     *
+     * @throws IOException
+     *             The trace could not be read or is damaged
+     */
+    public static List<String> load(File trace, FakeTetBackend backend)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(trace)), 1 << 16));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("\"" + trace
+                        + "\" is not a TET trace of version " + VERSION);
+            }
+
+            List<FakeDocument> documents = new ArrayList<FakeDocument>();
+            List<String> filenames = new ArrayList<String>();
+            List<Map<Integer, byte[]>> imageData =
+                    new ArrayList<Map<Integer, byte[]>>();
+            List<Map<Integer, Integer>> imageTypes =
+                    new ArrayList<Map<Integer, Integer>>();
+            List<int[]> maxImageIds = new ArrayList<int[]>();
+            Map<Integer, FakeDocument.Page> pages =
+                    new HashMap<Integer, FakeDocument.Page>();
+
+            for (int tag = in.read(); tag != -1; tag = in.read()) {
+                switch (tag) {
+                case DOCUMENT: {
+                    int index = in.readInt();
+                    if (index != documents.size()) {
+                        throw new IOException("damaged trace \"" + trace + "\"");
+                    }
+                    FakeDocument document = new FakeDocument();
+                    document.setDerivePcosValues(false);
+                    documents.add(document);
+                    filenames.add(readString(in));
+                    imageData.add(new HashMap<Integer, byte[]>());
+                    imageTypes.add(new HashMap<Integer, Integer>());
+                    maxImageIds.add(new int[] { -1 });
+                    break;
+                }
+
+                case PAGE: {
+                    int key = in.readInt();
+                    FakeDocument document = document(documents, in.readInt(), trace);
+                    int pageno = in.readInt();
+                    while (document.pages.size() < pageno) {
+                        document.pages.add(new FakeDocument.Page(0, 0));
+                    }
+                    pages.put(key, document.pages.get(pageno - 1));
+                    break;
+                }
+
+                case TEXT: {
+                    FakeDocument.Page page = page(pages, in.readInt(), trace);
+                    page.beginChunk(readString(in));
+                    page.recorded = true;
+                    break;
+                }
+
+                case GLYPH:
+                    page(pages, in.readInt(), trace).addGlyph(in.readInt(),
+                            in.readByte(), in.readBoolean(), in.readInt(),
+                            in.readInt(), in.readDouble(), in.readByte(),
+                            in.readDouble(), in.readDouble(), in.readDouble());
+                    break;
+
+                case IMAGE: {
+                    FakeDocument.Page page = page(pages, in.readInt(), trace);
+                    page.placeImage(in.readInt(), in.readDouble(),
+                            in.readDouble(), in.readDouble(), in.readDouble());
+                    break;
+                }
+
+                case NUMBER: {
+                    FakeDocument document = document(documents, in.readInt(), trace);
+                    document.setPcosValue(readString(in), in.readDouble());
+                    break;
+                }
+
+                case STRING: {
+                    FakeDocument document = document(documents, in.readInt(), trace);
+                    document.setPcosValue(readString(in), readString(in));
+                    break;
+                }
+
+                case STREAM: {
+                    FakeDocument document = document(documents, in.readInt(), trace);
+                    document.setPcosValue(readString(in), readBytes(in));
+                    break;
+                }
+
+                case IMAGE_DATA: {
+                    int index = in.readInt();
+                    document(documents, index, trace);
+                    int imageid = in.readInt();
+                    imageData.get(index).put(imageid, readBytes(in));
+                    maxImageIds.get(index)[0] = Math.max(
+                            maxImageIds.get(index)[0], imageid);
+                    break;
+                }
+
+                case IMAGE_TYPE: {
+                    int index = in.readInt();
+                    document(documents, index, trace);
+                    int imageid = in.readInt();
+                    imageTypes.get(index).put(imageid, in.readInt());
+                    maxImageIds.get(index)[0] = Math.max(
+                            maxImageIds.get(index)[0], imageid);
+                    break;
+                }
+
+                default:
+                    throw new IOException("damaged trace \"" + trace
+                            + "\": unknown record type " + tag);
+                }
+            }
+
+            for (int d = 0; d < documents.size(); d += 1) {
+                FakeDocument document = documents.get(d);
+                for (int id = 0; id <= maxImageIds.get(d)[0]; id += 1) {
+                    Integer type = imageTypes.get(d).get(id);
+                    byte[] data = imageData.get(d).get(id);
+                    document.addImage(0, 0, type != null ? type : -1,
+                            data != null ? data : new byte[0]);
+                }
+                backend.addDocument(filenames.get(d), document);
+            }
+            return filenames;
+        }
+        catch (EOFException e) {
+            throw new IOException("truncated trace \"" + trace + "\"");
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static FakeDocument document(List<FakeDocument> documents,
+            int index, File trace) throws IOException {
+        if (index < 0 || index >= documents.size()) {
+            throw new IOException("damaged trace \"" + trace
+                    + "\": unknown document " + index);
+        }
+        return documents.get(index);
+    }
+
+    private static FakeDocument.Page page(Map<Integer, FakeDocument.Page> pages,
+            int key, File trace) throws IOException {
+        FakeDocument.Page page = pages.get(key);
+        if (page == null) {
+            throw new IOException("damaged trace \"" + trace
+                    + "\": unknown page " + key);
+        }
+        return page;
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        writeBytes(out, s.getBytes(UTF8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] b)
+            throws IOException {
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), UTF8);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return b;
+    }
+}
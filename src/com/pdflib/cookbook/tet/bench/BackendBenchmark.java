@@ -0,0 +1,343 @@
+package com.pdflib.cookbook.tet.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.NumberFormat;
+import java.util.List;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.analysis.AnalysisEngine;
+import com.pdflib.cookbook.tet.analysis.GlyphListener;
+import com.pdflib.cookbook.tet.analysis.GlyphRecord;
+import com.pdflib.cookbook.tet.analysis.GlyphStream;
+import com.pdflib.cookbook.tet.analysis.PageModel;
+import com.pdflib.cookbook.tet.analysis.PageModelBuilder;
+import com.pdflib.cookbook.tet.backend.FakeDocument;
+import com.pdflib.cookbook.tet.backend.FakeTetBackend;
+import com.pdflib.cookbook.tet.backend.TetTrace;
+
+/**
+ * Measure the throughput of the Java-side layers of the cookbook on a
+ * generated document served by {@link FakeTetBackend}, without the native TET
+ * library. Alternatively the first document of a recorded {@link TetTrace} is
+ * replayed, so that real documents can be used as input.
+ * <p>
+ * Each scenario is run a number of times for warming up the JIT, and then
+ * measured:
+ * <ul>
+ * <li>"iteration": the bare get_text()/get_char_info() loop, i.e. the cost of
+ * the fake backend itself</li>
+ * <li>"glyph stream": the {@link GlyphStream} with one listener</li>
+ * <li>"page model": the {@link PageModelBuilder}</li>
+ * <li>"analysis engine": the {@link AnalysisEngine} with all analyzers</li>
+ * </ul>
+ * <p>
+ * usage: BackendBenchmark [ -pages &lt;n&gt; ] [ -words &lt;words per
+ * page&gt; ] [ -replay &lt;trace file&gt; ] [ -iterations &lt;n&gt; ]
+ */
+public class BackendBenchmark implements Benchmark {
+    private static final String GENERATED_FILENAME = "benchmark.pdf";
+
+    private static final String PAGE_OPTLIST = "granularity=word";
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private static long checksum;
+
+    private final FakeTetBackend tet = new FakeTetBackend();
+
+    /**
+     * Name of the document to process.
+     */
+    private final String filename;
+
+    private final String workload;
+
+    private final int pages;
+
+    /**
+     * Number of glyphs in the document, for the scenarios that do not count
+     * the glyphs themselves.
+     */
+    private final long documentGlyphs;
+
+    /**
+     * A scenario on the backend; after a TETException the scenario continues
+     * with a fresh backend state the next time.
+     */
+    private abstract class BackendScenario implements Scenario {
+        private final String name;
+
+        BackendScenario(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long run() throws TETException {
+            try {
+                return process();
+            }
+            catch (TETException e) {
+                tet.delete();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the number of glyphs processed
+         */
+        abstract long process() throws TETException;
+    }
+
+    /**
+     * Add the document to process to the backend, the first document of a
+     * trace or a generated document, and count its glyphs.
+     *
+     * @param replayFile
+     *            The trace file, or null for a generated document
+     * @param pages
+     *            Number of pages of the generated document
+     * @param words
+     *            Number of words per page of the generated document
+     */
+    BackendBenchmark(String replayFile, int pages, int words)
+            throws IOException, TETException {
+        if (replayFile != null) {
+            List<String> filenames = TetTrace.load(new File(replayFile), tet);
+            if (filenames.isEmpty()) {
+                throw new IOException("No document in \"" + replayFile
+                        + "\"");
+            }
+            filename = filenames.get(0);
+            workload = "trace:" + new File(replayFile).getName();
+        }
+        else {
+            filename = GENERATED_FILENAME;
+            tet.addDocument(filename, FakeDocument.generate(pages, words, 1));
+            workload = "generated-" + pages + "x" + words;
+        }
+
+        documentGlyphs = iterate(false);
+        int doc = tet.open_document(filename, "");
+        this.pages = (int) tet.pcos_get_number(doc, "length:pages");
+        tet.close_document(doc);
+    }
+
+    public static void main(String[] args) {
+        int pages = 200;
+        int words = 400;
+        int iterations = 10;
+        String replayFile = null;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                usage();
+            }
+            if (args[i].equals("-pages")) {
+                pages = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-words")) {
+                words = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-replay")) {
+                replayFile = args[i + 1];
+            }
+            else if (args[i].equals("-iterations")) {
+                iterations = intArg(args[i + 1]);
+            }
+            else {
+                usage();
+            }
+        }
+
+        BackendBenchmark benchmark = null;
+        try {
+            benchmark = new BackendBenchmark(replayFile, pages, words);
+        }
+        catch (IOException e) {
+            System.err.println("Error reading trace file: " + e.getMessage());
+            System.exit(1);
+        }
+        catch (TETException e) {
+            System.err.println("Error " + e.get_errnum() + " in "
+                    + e.get_apiname() + "(): " + e.get_errmsg());
+            System.exit(1);
+        }
+
+        System.out.println("Document \"" + benchmark.filename + "\": "
+                + benchmark.pages + " pages, " + benchmark.documentGlyphs
+                + " glyphs, " + iterations + " iterations");
+        for (Scenario scenario : benchmark.getScenarios()) {
+            try {
+                for (int i = 0; i < WARMUP_ITERATIONS; i += 1) {
+                    checksum += scenario.run();
+                }
+
+                long glyphs = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i += 1) {
+                    glyphs += scenario.run();
+                }
+                long nanos = System.nanoTime() - start;
+                checksum += glyphs;
+
+                report(scenario.getName(),
+                        (long) benchmark.pages * iterations, glyphs, nanos);
+            }
+            catch (TETException e) {
+                /*
+                 * A replayed trace only contains what the recorded tool
+                 * queried, so a scenario may need values that are missing.
+                 */
+                System.out.println(scenario.getName() + ": skipped, error "
+                        + e.get_errnum() + " in " + e.get_apiname() + "(): "
+                        + e.get_errmsg());
+            }
+        }
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    public String getWorkload() {
+        return workload;
+    }
+
+    public String getUnit() {
+        return "page";
+    }
+
+    public long getSize() {
+        return pages;
+    }
+
+    public Scenario[] getScenarios() {
+        return new Scenario[] {
+            new BackendScenario("iteration") {
+                long process() throws TETException {
+                    checksum += iterate(true);
+                    return documentGlyphs;
+                }
+            },
+            new BackendScenario("glyph stream") {
+                long process() throws TETException {
+                    return stream();
+                }
+            },
+            new BackendScenario("page model") {
+                long process() throws TETException {
+                    return build();
+                }
+            },
+            new BackendScenario("analysis engine") {
+                long process() throws TETException {
+                    return analyze();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param sum
+     *            true to return the sum of the code points, false to return
+     *            the number of glyphs
+     */
+    private long iterate(boolean sum) throws TETException {
+        final int doc = tet.open_document(filename, "");
+        final int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
+        long count = 0;
+        for (int pageno = 1; pageno <= n_pages; ++pageno) {
+            final int page = tet.open_page(doc, pageno, PAGE_OPTLIST);
+            while (tet.get_text(page) != null) {
+                while (tet.get_char_info(page) != -1) {
+                    count += sum ? tet.uv() : 1;
+                }
+            }
+            tet.close_page(page);
+        }
+        tet.close_document(doc);
+        return count;
+    }
+
+    private long stream() throws TETException {
+        final long[] sum = new long[1];
+        GlyphStream stream = new GlyphStream();
+        stream.addListener(new GlyphListener() {
+            public void glyph(GlyphRecord glyph) {
+                sum[0] += glyph.fontid;
+            }
+        });
+
+        final int doc = tet.open_document(filename, "");
+        final int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
+        long count = 0;
+        for (int pageno = 1; pageno <= n_pages; ++pageno) {
+            final int page = tet.open_page(doc, pageno, PAGE_OPTLIST);
+            count += stream.processPage(tet, page, pageno);
+            tet.close_page(page);
+        }
+        tet.close_document(doc);
+        checksum += sum[0];
+        return count;
+    }
+
+    private long build() throws TETException {
+        final int doc = tet.open_document(filename, "");
+        final int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
+        PageModelBuilder builder = new PageModelBuilder(tet, doc);
+        long count = 0;
+        for (int pageno = 1; pageno <= n_pages; ++pageno) {
+            PageModel page = builder.extract(pageno, PAGE_OPTLIST);
+            count += page.glyphCount;
+        }
+        tet.close_document(doc);
+        return count;
+    }
+
+    private long analyze() throws TETException {
+        AnalysisEngine engine = new AnalysisEngine();
+        engine.addAnalyzer(AnalysisEngine.createAnalyzer("concordance"));
+        engine.addAnalyzer(AnalysisEngine.createAnalyzer("font_statistics"));
+        engine.addAnalyzer(AnalysisEngine.createAnalyzer("identify_ocr"));
+        engine.addAnalyzer(AnalysisEngine.createAnalyzer("image_count"));
+
+        PrintStream out = new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        engine.process(tet, filename, out);
+        return documentGlyphs;
+    }
+
+    private static void report(String name, long pages, long glyphs,
+            long nanos) {
+        NumberFormat format = NumberFormat.getInstance();
+        format.setMaximumFractionDigits(1);
+        double seconds = nanos / 1e9;
+        System.out.println(name + ": " + format.format(pages / seconds)
+                + " pages/s, " + format.format(glyphs / seconds / 1e6)
+                + " M glyphs/s");
+    }
+
+    private static int intArg(String value) {
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: BackendBenchmark [ -pages <n> ] "
+                + "[ -words <words per page> ] [ -replay <trace file> ] "
+                + "[ -iterations <n> ]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,41 @@
+package com.pdflib.cookbook.tet.bench;
+
+import com.pdflib.TETException;
+
+/**
+ * A benchmark on a fixed workload with a number of scenarios, each of which
+ * processes the whole workload once. The benchmarks print their own
+ * measurements, and the {@link BenchmarkGate} compares them with baselines.
+ */
+interface Benchmark {
+    /**
+     * A scenario under test, processing the whole workload once.
+     */
+    interface Scenario {
+        String getName();
+
+        /**
+         * @return a count or checksum of the result, which the caller must
+         *         use so that the JIT cannot drop the work
+         */
+        long run() throws TETException;
+    }
+
+    /**
+     * @return the name of the workload, which identifies the baselines of
+     *         the scenarios
+     */
+    String getWorkload();
+
+    /**
+     * @return the unit in which the workload is measured, e.g. "page"
+     */
+    String getUnit();
+
+    /**
+     * @return the size of the workload in units
+     */
+    long getSize();
+
+    Scenario[] getScenarios();
+}
@@ -0,0 +1,631 @@
+package com.pdflib.cookbook.tet.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.util.EventLog;
+import com.pdflib.cookbook.tet.util.ReportWriter;
+
+/**
+ * Regression gate for the scenarios of the benchmarks: a fresh run is
+ * compared against baselines stored as JSON, and the program fails if a
+ * scenario got slower or allocates more than a threshold.
+ * <p>
+ * -benchmarks selects the benchmarks as a comma-separated list out of
+ * "backend" ({@link BackendBenchmark}), "words" ({@link WordCounterBenchmark})
+ * and "tokens" ({@link TokenNormalizerBenchmark}); by default all of them are
+ * run. -pages, -words and -replay select the workload of the backend
+ * benchmark, -stream the number of words of the word stream of the other
+ * two.
+ * <p>
+ * Each scenario is measured for a number of iterations, and every iteration
+ * yields one sample of the throughput in units of the workload per second,
+ * pages or words, and, on JVMs that can measure the allocations of a thread,
+ * of the bytes allocated per unit. A sample that is not finite, e.g. of an
+ * iteration too short for the timer, is an error. The baseline directory
+ * holds one file per scenario ("tool") and workload with the samples of the
+ * run that recorded it. The workload of the backend benchmark is either
+ * "generated-&lt;pages&gt;x&lt;words&gt;" or "trace:&lt;trace file
+ * name&gt;", and the word stream of the others is generated from its
+ * parameters, so baselines of different workloads can be kept in the same
+ * directory.
+ * <p>
+ * For each metric the relative change of the mean and its 95% confidence
+ * interval (Welch's t-interval) are reported. A metric regresses if the
+ * change is worse than the threshold and the confidence interval does not
+ * include 0, so that noise alone does not fail the gate. As the samples
+ * depend on the machine, baselines should be recorded on the machine that
+ * runs the gate.
+ * <p>
+ * usage: BenchmarkGate [ -benchmarks &lt;benchmarks&gt; ] [ -pages &lt;n&gt;
+ * ] [ -words &lt;words per page&gt; ] [ -replay &lt;trace file&gt; ] [
+ * -stream &lt;n&gt; ] [ -iterations &lt;n&gt; ] [ -threshold
+ * &lt;fraction&gt; ] [ -allocthreshold &lt;fraction&gt; ] [ -update ]
+ * &lt;baseline directory&gt;
+ * <p>
+ * Missing baselines are recorded from the current run; -update replaces the
+ * existing ones. The thresholds default to 0.15, i.e. a loss of 15% of the
+ * throughput or 15% more bytes per unit. The exit status is 2 if a metric
+ * regressed.
+ * <p>
+ * The report can be written as JSONL, CSV or TSV with the system property
+ * com.pdflib.cookbook.tet.report.format, see {@link ReportWriter}.
+ */
+public class BenchmarkGate {
+    /**
+     * The encoding in which the output is sent to System.out. For running
+     * the example in a Windows command window, you can set this for example to
+     * "windows-1252" for getting Latin-1 output.
+     */
+    private static final String OUTPUT_ENCODING = System.getProperty("file.encoding");
+
+    private static final double DEFAULT_THRESHOLD = 0.15;
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    /**
+     * Exit status if a metric regressed.
+     */
+    private static final int REGRESSION_EXIT = 2;
+
+    private static final String BACKEND = "backend";
+
+    private static final String WORDS = "words";
+
+    private static final String TOKENS = "tokens";
+
+    /**
+     * Two-sided 95% quantiles of Student's t-distribution for 1 to 30 degrees
+     * of freedom.
+     */
+    private static final double[] T_95 = { 12.706, 4.303, 3.182, 2.776, 2.571,
+        2.447, 2.365, 2.306, 2.262, 2.228, 2.201, 2.179, 2.160, 2.145, 2.131,
+        2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060,
+        2.056, 2.052, 2.048, 2.045, 2.042 };
+
+    private static final double Z_95 = 1.96;
+
+    /**
+     * Smallest baseline of the bytes per unit that changes are relative to,
+     * so that the change of a scenario that allocates nothing is defined.
+     */
+    private static final double MIN_BYTES_PER_UNIT = 1;
+
+    /**
+     * Sink for the results of the scenarios, so that the JIT cannot drop them.
+     */
+    private static long checksum;
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
+        String benchmarks = BACKEND + "," + WORDS + "," + TOKENS;
+        int pages = 200;
+        int words = 400;
+        int stream = WordCounterBenchmark.DEFAULT_WORDS;
+        int iterations = 10;
+        String replayFile = null;
+        double threshold = DEFAULT_THRESHOLD;
+        double allocThreshold = DEFAULT_THRESHOLD;
+        boolean update = false;
+
+        int i = 0;
+        for (; i < args.length - 1 && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-update")) {
+                update = true;
+                i -= 1;
+            }
+            else if (args[i].equals("-benchmarks")) {
+                benchmarks = args[i + 1];
+            }
+            else if (args[i].equals("-pages")) {
+                pages = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-words")) {
+                words = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-replay")) {
+                replayFile = args[i + 1];
+            }
+            else if (args[i].equals("-stream")) {
+                stream = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-iterations")) {
+                iterations = intArg(args[i + 1]);
+                if (iterations < 2) {
+                    usage();
+                }
+            }
+            else if (args[i].equals("-threshold")) {
+                threshold = fractionArg(args[i + 1]);
+            }
+            else if (args[i].equals("-allocthreshold")) {
+                allocThreshold = fractionArg(args[i + 1]);
+            }
+            else {
+                usage();
+            }
+        }
+        if (args.length - i != 1) {
+            usage();
+        }
+        File directory = new File(args[i]);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Cannot create baseline directory \""
+                    + directory + "\"");
+            System.exit(1);
+        }
+
+        List<Benchmark> selected = new ArrayList<Benchmark>();
+        for (String name : benchmarks.split(",")) {
+            if (name.equals(BACKEND)) {
+                try {
+                    selected.add(new BackendBenchmark(replayFile, pages,
+                            words));
+                }
+                catch (IOException e) {
+                    System.err.println("Error reading trace file: "
+                            + e.getMessage());
+                    System.exit(1);
+                }
+                catch (TETException e) {
+                    System.err.println("Error " + e.get_errnum() + " in "
+                            + e.get_apiname() + "(): " + e.get_errmsg());
+                    System.exit(1);
+                }
+            }
+            else if (name.equals(WORDS)) {
+                selected.add(new WordCounterBenchmark(stream,
+                        WordCounterBenchmark.DEFAULT_VOCABULARY));
+            }
+            else if (name.equals(TOKENS)) {
+                selected.add(new TokenNormalizerBenchmark(stream,
+                        WordCounterBenchmark.DEFAULT_VOCABULARY,
+                        TokenNormalizerBenchmark.DEFAULT_CAPITALIZED,
+                        TokenNormalizerBenchmark.DEFAULT_NON_ASCII));
+            }
+            else {
+                usage();
+            }
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported()) {
+                allocations.setThreadAllocatedMemoryEnabled(true);
+            }
+            else {
+                allocations = null;
+            }
+        }
+
+        ReportWriter out = ReportWriter.open(OUTPUT_ENCODING);
+        int regressions = 0;
+        try {
+            if (allocations == null) {
+                out.println("Allocations cannot be measured on this JVM");
+            }
+            for (Benchmark benchmark : selected) {
+                regressions += gate(out, benchmark, directory, iterations,
+                        allocations, threshold, allocThreshold, update);
+            }
+
+            out.println();
+            out.println(regressions == 0 ? "No regressions"
+                    : regressions + " regression(s) beyond the threshold");
+            out.println("(checksum " + checksum + ")");
+        }
+        catch (IOException e) {
+            System.err.println("Error in baseline: " + e.getMessage());
+            out.close();
+            System.exit(1);
+        }
+        catch (IllegalStateException e) {
+            System.err.println("Error in measurement: " + e.getMessage());
+            out.close();
+            System.exit(1);
+        }
+        out.close();
+        if (regressions > 0) {
+            System.exit(REGRESSION_EXIT);
+        }
+    }
+
+    /**
+     * Measure the scenarios of a benchmark and compare them with their
+     * baselines, or record the baselines.
+     *
+     * @param allocations
+     *            The bean for the allocations of the thread, or null
+     *
+     * @return the number of regressed metrics
+     */
+    private static int gate(ReportWriter out, Benchmark benchmark,
+            File directory, int iterations,
+            com.sun.management.ThreadMXBean allocations, double threshold,
+            double allocThreshold, boolean update) throws IOException {
+        String workload = benchmark.getWorkload();
+        String unit = benchmark.getUnit();
+        String rate = unit + "s/s";
+        String bytes = "bytes/" + unit;
+        String rateKey = unit + "sPerSecond";
+        String bytesKey = "bytesPer" + Character.toUpperCase(unit.charAt(0))
+                + unit.substring(1);
+
+        out.println();
+        out.println("Workload " + workload + ": " + benchmark.getSize() + " "
+                + unit + "s, " + iterations + " iterations");
+
+        int regressions = 0;
+        for (Benchmark.Scenario scenario : benchmark.getScenarios()) {
+            String tool = scenario.getName();
+            double[] throughput = new double[iterations];
+            double[] allocated = allocations != null
+                    ? new double[iterations] : null;
+            try {
+                measure(scenario, benchmark.getSize(), allocations,
+                        throughput, allocated);
+            }
+            catch (TETException e) {
+                /*
+                 * A replayed trace only contains what the recorded tool
+                 * queried, so a scenario may need values that are missing.
+                 */
+                out.println(tool + ": skipped, error " + e.get_errnum()
+                        + " in " + e.get_apiname() + "(): " + e.get_errmsg());
+                continue;
+            }
+
+            File file = new File(directory, baselineName(tool, workload));
+            out.println();
+            if (update || !file.exists()) {
+                writeBaseline(file, tool, workload, rateKey, throughput,
+                        bytesKey, allocated);
+                out.println(tool + ": baseline written to \"" + file + "\"");
+                out.print("  " + rate + " ").printFixed(mean(throughput), 1);
+                if (allocated != null) {
+                    out.print(", " + bytes + " ").printFixed(mean(allocated),
+                            0);
+                }
+                out.println();
+                continue;
+            }
+
+            Map<String, Object> baseline = readBaseline(file, tool, workload);
+            out.println(tool + ": compared with \"" + file + "\"");
+            if (!compare(out, tool, workload, rate,
+                    samples(baseline, rateKey, file), throughput, threshold,
+                    true, 0)) {
+                regressions += 1;
+            }
+            double[] baseAllocated = baseline.get(bytesKey) != null
+                    ? samples(baseline, bytesKey, file) : null;
+            if (allocated != null && baseAllocated != null
+                    && !compare(out, tool, workload, bytes, baseAllocated,
+                            allocated, allocThreshold, false,
+                            MIN_BYTES_PER_UNIT)) {
+                regressions += 1;
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Run a scenario and take one sample per iteration.
+     *
+     * @param size
+     *            The size of the workload in units
+     * @param allocated
+     *            Array for the bytes allocated per unit, or null
+     *
+     * @throws IllegalStateException
+     *             if a sample is not finite
+     */
+    private static void measure(Benchmark.Scenario scenario, long size,
+            com.sun.management.ThreadMXBean allocations, double[] throughput,
+            double[] allocated) throws TETException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i += 1) {
+            checksum += scenario.run();
+        }
+
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < throughput.length; i += 1) {
+            long bytes = allocated != null
+                    ? allocations.getThreadAllocatedBytes(thread) : 0;
+            long start = System.nanoTime();
+            checksum += scenario.run();
+            long nanos = System.nanoTime() - start;
+            if (allocated != null) {
+                allocated[i] = (double) (allocations
+                        .getThreadAllocatedBytes(thread) - bytes) / size;
+                checkSample(scenario, allocated[i]);
+            }
+            throughput[i] = size / (nanos / 1e9);
+            checkSample(scenario, throughput[i]);
+        }
+    }
+
+    /**
+     * Reject samples that are infinite or NaN, which JSON cannot represent,
+     * e.g. of an empty workload or of an iteration too short for the timer.
+     */
+    private static void checkSample(Benchmark.Scenario scenario,
+            double sample) {
+        if (Double.isNaN(sample) || Double.isInfinite(sample)) {
+            throw new IllegalStateException(scenario.getName() + ": sample "
+                    + sample + " is not finite, use a larger workload");
+        }
+    }
+
+    /**
+     * Print the comparison of a metric.
+     *
+     * @param higherIsBetter
+     *            true if larger values are an improvement
+     * @param minScale
+     *            Smallest value that the changes are relative to, if the
+     *            baseline mean is smaller
+     *
+     * @return false if the metric regressed
+     */
+    private static boolean compare(ReportWriter out, String tool,
+            String workload, String metric, double[] baseline,
+            double[] current, double threshold, boolean higherIsBetter,
+            double minScale) {
+        double baseMean = mean(baseline);
+        double mean = mean(current);
+        double a = variance(baseline) / baseline.length;
+        double b = variance(current) / current.length;
+        double margin = 0;
+        if (a + b > 0) {
+            double df = (a + b) * (a + b) / (a * a / (baseline.length - 1)
+                    + b * b / (current.length - 1));
+            margin = tQuantile(df) * Math.sqrt(a + b);
+        }
+
+        double scale = Math.max(baseMean, minScale);
+        double delta = (mean - baseMean) / scale;
+        double low = (mean - baseMean - margin) / scale;
+        double high = (mean - baseMean + margin) / scale;
+
+        /* the change as loss, positive if the metric got worse */
+        double loss = higherIsBetter ? -delta : delta;
+        boolean significant = low > 0 || high < 0;
+        String status;
+        if (significant && loss > threshold) {
+            status = "REGRESSION";
+        }
+        else if (significant && loss < 0) {
+            status = "improved";
+        }
+        else {
+            status = "ok";
+        }
+
+        if (out.isText()) {
+            out.print("  " + metric + ": ").printFixed(baseMean, 1)
+                    .print(" -> ").printFixed(mean, 1).print(", ");
+            printPercent(out, delta);
+            out.print(" [");
+            printPercent(out, low);
+            out.print(", ");
+            printPercent(out, high);
+            out.println("] " + status);
+        }
+        else {
+            out.startRecord().field("tool", tool).field("workload", workload)
+                    .field("metric", metric).field("baseline", baseMean)
+                    .field("current", mean).field("delta", delta)
+                    .field("low", low).field("high", high)
+                    .field("status", status).endRecord();
+        }
+        return !status.equals("REGRESSION");
+    }
+
+    private static void printPercent(ReportWriter out, double fraction) {
+        if (fraction >= 0) {
+            out.print('+');
+        }
+        out.printFixed(fraction * 100, 1).print('%');
+    }
+
+    /**
+     * @return the two-sided 95% quantile of Student's t-distribution; for
+     *         fractional degrees of freedom the next smaller integer is used
+     */
+    private static double tQuantile(double df) {
+        if (df < 1) {
+            return T_95[0];
+        }
+        if (df <= T_95.length) {
+            return T_95[(int) df - 1];
+        }
+        /* first term of the Cornish-Fisher expansion */
+        return Z_95 + (Z_95 * Z_95 * Z_95 + Z_95) / (4 * df);
+    }
+
+    private static double mean(double[] samples) {
+        double sum = 0;
+        for (double sample : samples) {
+            sum += sample;
+        }
+        return sum / samples.length;
+    }
+
+    /**
+     * @return the sample variance
+     */
+    private static double variance(double[] samples) {
+        double mean = mean(samples);
+        double sum = 0;
+        for (double sample : samples) {
+            sum += (sample - mean) * (sample - mean);
+        }
+        return sum / (samples.length - 1);
+    }
+
+    /**
+     * @return the file name of the baseline of a tool and workload
+     */
+    private static String baselineName(String tool, String workload) {
+        String name = tool + "@" + workload;
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            file.append(c < 0x80 && (Character.isLetterOrDigit(c)
+                    || c == '.' || c == '-' || c == '@') ? c : '_');
+        }
+        return file.append(".json").toString();
+    }
+
+    private static void writeBaseline(File file, String tool, String workload,
+            String rateKey, double[] throughput, String bytesKey,
+            double[] allocated) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"tool\": ");
+        EventLog.appendJsonString(json, tool);
+        json.append(",\n  \"workload\": ");
+        EventLog.appendJsonString(json, workload);
+        json.append(",\n  \"java\": ");
+        EventLog.appendJsonString(json, System.getProperty("java.version"));
+        appendSamples(json, rateKey, throughput);
+        if (allocated != null) {
+            appendSamples(json, bytesKey, allocated);
+        }
+        json.append("\n}\n");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8");
+        try {
+            writer.write(json.toString());
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private static void appendSamples(StringBuilder json, String name,
+            double[] samples) {
+        json.append(",\n  \"").append(name).append("\": {\"mean\": ")
+                .append(mean(samples)).append(", \"samples\": [");
+        for (int i = 0; i < samples.length; i += 1) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append(samples[i]);
+        }
+        json.append("]}");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readBaseline(File file, String tool,
+            String workload) throws IOException {
+        StringBuilder text = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(file),
+                "UTF-8");
+        try {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, n);
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        Object value;
+        try {
+            value = JsonReader.parse(text.toString());
+        }
+        catch (IOException e) {
+            throw new IOException("\"" + file + "\": " + e.getMessage());
+        }
+        if (!(value instanceof Map)) {
+            throw new IOException("\"" + file + "\" is not a JSON object");
+        }
+        Map<String, Object> baseline = (Map<String, Object>) value;
+        if (!tool.equals(baseline.get("tool"))
+                || !workload.equals(baseline.get("workload"))) {
+            throw new IOException("\"" + file + "\" is not the baseline of "
+                    + tool + " on " + workload);
+        }
+        return baseline;
+    }
+
+    /**
+     * @return the samples of a metric of a baseline
+     */
+    private static double[] samples(Map<String, Object> baseline, String name,
+            File file) throws IOException {
+        Object metric = baseline.get(name);
+        Object samples = metric instanceof Map ? ((Map<?, ?>) metric)
+                .get("samples") : null;
+        if (!(samples instanceof List) || ((List<?>) samples).size() < 2) {
+            throw new IOException("\"" + file + "\": at least two samples of "
+                    + name + " expected");
+        }
+        List<?> list = (List<?>) samples;
+        double[] values = new double[list.size()];
+        for (int i = 0; i < values.length; i += 1) {
+            if (!(list.get(i) instanceof Double)
+                    || Double.isInfinite((Double) list.get(i))) {
+                throw new IOException("\"" + file + "\": invalid sample of "
+                        + name);
+            }
+            values[i] = (Double) list.get(i);
+        }
+        return values;
+    }
+
+    private static int intArg(String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n < 1) {
+                usage();
+            }
+            return n;
+        }
+        catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static double fractionArg(String value) {
+        try {
+            double fraction = Double.parseDouble(value);
+            if (!(fraction >= 0)) {
+                usage();
+            }
+            return fraction;
+        }
+        catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: BenchmarkGate [ -benchmarks <benchmarks> ] "
+                + "[ -pages <n> ] [ -words <words per page> ] "
+                + "[ -replay <trace file> ] [ -stream <n> ] "
+                + "[ -iterations <n> ] [ -threshold <fraction> ] "
+                + "[ -allocthreshold <fraction> ] [ -update ] "
+                + "<baseline directory>");
+        System.exit(1);
+    }
+}
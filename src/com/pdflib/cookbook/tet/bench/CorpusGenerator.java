@@ -0,0 +1,556 @@
+package com.pdflib.cookbook.tet.bench;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.pdflib.PDFlibException;
+import com.pdflib.pdflib;
+import com.pdflib.cookbook.tet.util.ReportWriter;
+
+/**
+ * Generate a reproducible corpus of synthetic PDF documents with PDFlib, as
+ * known workloads for the throughput benchmarks of the cookbook tools.
+ * <p>
+ * usage: CorpusGenerator [ -documents &lt;n&gt; ] [ -pages &lt;n&gt; ] [
+ * -words &lt;words per page&gt; ] [ -fonts &lt;font kinds&gt; ] [ -fontfile
+ * &lt;TrueType or OpenType font&gt; ] [ -ocr &lt;fraction of pages&gt; ] [
+ * -images &lt;images per page&gt; ] [ -attachments &lt;attachments per
+ * document&gt; ] [ -seed &lt;n&gt; ] [ -prefix &lt;file name prefix&gt; ]
+ * &lt;output directory&gt;
+ * <p>
+ * The documents consist of lines of words drawn from a generated vocabulary
+ * with a Zipf distribution, like the words of natural text. The font size is
+ * chosen so that the requested number of words fills the page. Each line uses
+ * one of the requested font kinds, a comma-separated list out of:
+ * <ul>
+ * <li>"embedded": a Type 3 font with standard glyph names, which is always
+ * embedded; with -fontfile the given font file is embedded instead</li>
+ * <li>"unembedded": the core font Helvetica, which is not embedded</li>
+ * <li>"pua": a Type 3 font whose glyphs have non-standard names and
+ * Private Use Area code points, so that TET can only map them to the PUA</li>
+ * </ul>
+ * With -ocr the given fraction of pages is generated like a scanned page with
+ * an OCR layer: a page-sized image with the text on top of it in text
+ * rendering mode 3 (invisible). -images places the given number of small
+ * generated images on each page, and -attachments attaches generated files to
+ * the first page of each document.
+ * <p>
+ * The same options and seed always produce the same text, images and
+ * attachments. A summary line per document is printed; it can be written as
+ * JSONL, CSV or TSV with the system property
+ * com.pdflib.cookbook.tet.report.format (see {@link ReportWriter}), e.g. as
+ * manifest for the benchmarks.
+ * <p>
+ * Required software: PDFlib 9
+ */
+public class CorpusGenerator {
+    /**
+     * The encoding in which the output is sent to System.out. For running
+     * the example in a Windows command window, you can set this for example to
+     * "windows-1252" for getting Latin-1 output.
+     */
+    private static final String OUTPUT_ENCODING = System.getProperty("file.encoding");
+
+    private static final String EMBEDDED = "embedded";
+
+    private static final String UNEMBEDDED = "unembedded";
+
+    private static final String PUA = "pua";
+
+    private static final double PAGE_WIDTH = 595;
+
+    private static final double PAGE_HEIGHT = 842;
+
+    private static final double MARGIN = 50;
+
+    /**
+     * Leading as a multiple of the font size.
+     */
+    private static final double LEADING = 1.2;
+
+    /**
+     * Average glyph width as a fraction of the font size, for estimating the
+     * number of characters per line.
+     */
+    private static final double GLYPH_WIDTH = 0.5;
+
+    /**
+     * Width of the space glyph of the Type 3 fonts, in glyph space units.
+     */
+    private static final int SPACE_WIDTH = 250;
+
+    private static final double MAX_FONT_SIZE = 12;
+
+    private static final double MIN_FONT_SIZE = 2;
+
+    private static final int VOCABULARY_SIZE = 5000;
+
+    /**
+     * Width and height in pixels of the images placed on the pages.
+     */
+    private static final int IMAGE_SIZE = 64;
+
+    /**
+     * Resolution of the page-sized images of OCR pages, in pixels per point.
+     */
+    private static final double SCAN_RESOLUTION = 0.5;
+
+    private static final int ATTACHMENT_SIZE = 4096;
+
+    private int documents = 10;
+
+    private int pages = 10;
+
+    private int wordsPerPage = 300;
+
+    private String[] fontKinds = { EMBEDDED, UNEMBEDDED, PUA };
+
+    private String fontFile;
+
+    private double ocrFraction;
+
+    private int imagesPerPage;
+
+    private int attachments;
+
+    private long seed = 1;
+
+    private String prefix = "synthetic";
+
+    private File outputDirectory;
+
+    private String[] vocabulary;
+
+    /**
+     * Cumulative Zipf probabilities of the vocabulary words.
+     */
+    private double[] cumulative;
+
+    /**
+     * Counter for unique virtual file names.
+     */
+    private int pvfCounter;
+
+    /**
+     * Virtual files of the attachments of the current document.
+     */
+    private final List<String> attachmentFiles = new ArrayList<String>();
+
+    private static ReportWriter out;
+
+    /**
+     * Generate the vocabulary with a Zipf distribution; the words consist of
+     * the lowercase letters a-z, which all fonts can show.
+     */
+    private void createVocabulary() {
+        Random random = new Random(seed);
+        vocabulary = new String[VOCABULARY_SIZE];
+        cumulative = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int i = 0; i < VOCABULARY_SIZE; i += 1) {
+            int length = 2 + random.nextInt(9);
+            char[] word = new char[length];
+            for (int j = 0; j < length; j += 1) {
+                word[j] = (char) ('a' + random.nextInt(26));
+            }
+            vocabulary[i] = new String(word);
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < VOCABULARY_SIZE; i += 1) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    private String randomWord(Random random) {
+        int i = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return vocabulary[Math.min(i, VOCABULARY_SIZE - 1)];
+    }
+
+    /**
+     * Generate all documents.
+     */
+    private void execute() {
+        createVocabulary();
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            System.err.println("Error: cannot create directory \""
+                    + outputDirectory + "\"");
+            System.exit(1);
+        }
+
+        out.println("Generating " + documents + " documents with " + pages
+                + " pages and " + wordsPerPage + " words per page in \""
+                + outputDirectory + "\"");
+
+        for (int i = 0; i < documents; i += 1) {
+            String filename = new File(outputDirectory, prefix
+                    + String.format("%05d", i) + ".pdf").getPath();
+            pdflib p = null;
+            try {
+                p = new pdflib();
+                generate_document(p, filename, new Random(seed * 31 + i));
+            }
+            catch (PDFlibException e) {
+                System.err.println("Error " + e.get_errnum() + " in "
+                        + e.get_apiname() + "() for \"" + filename + "\": "
+                        + e.get_errmsg());
+                System.exit(1);
+            }
+            finally {
+                if (p != null) {
+                    p.delete();
+                }
+            }
+        }
+    }
+
+    private void generate_document(pdflib p, String filename, Random random)
+            throws PDFlibException {
+        p.set_option("errorpolicy=exception");
+        if (fontFile != null) {
+            p.set_option("FontOutline={SyntheticEmbedded=" + fontFile + "}");
+        }
+        p.begin_document(filename, "");
+        p.set_info("Creator", "Corpus Generator TET Cookbook Example");
+        p.set_info("Title", new File(filename).getName());
+
+        int[] fonts = new int[fontKinds.length];
+        for (int i = 0; i < fontKinds.length; i += 1) {
+            fonts[i] = load_font(p, fontKinds[i]);
+        }
+
+        int ocrPages = 0;
+        int images = 0;
+        for (int pageno = 1; pageno <= pages; ++pageno) {
+            p.begin_page_ext(PAGE_WIDTH, PAGE_HEIGHT, "");
+
+            boolean ocr = random.nextDouble() < ocrFraction;
+            if (ocr) {
+                place_scan(p, random);
+                ocrPages += 1;
+            }
+            place_images(p, random);
+            images += imagesPerPage;
+            place_text(p, fonts, ocr, random);
+
+            if (pageno == 1) {
+                attach_files(p, random);
+            }
+            p.end_page_ext("");
+        }
+        p.end_document("");
+        delete_pvfs(p);
+
+        if (out.isText()) {
+            out.println(filename + ": " + pages + " pages, "
+                    + (long) pages * wordsPerPage + " words, " + ocrPages
+                    + " OCR pages, " + images + " images, " + attachments
+                    + " attachments");
+        }
+        else {
+            out.startRecord().field("file", filename).field("pages", pages)
+                    .field("words", (long) pages * wordsPerPage)
+                    .field("ocrpages", ocrPages).field("images", images)
+                    .field("attachments", attachments).endRecord();
+        }
+    }
+
+    /**
+     * Load or create the font for one of the font kinds.
+     */
+    private int load_font(pdflib p, String kind) throws PDFlibException {
+        if (kind.equals(UNEMBEDDED)) {
+            return p.load_font("Helvetica", "unicode", "embedding=false");
+        }
+        if (kind.equals(EMBEDDED) && fontFile != null) {
+            return p.load_font("SyntheticEmbedded", "unicode", "embedding");
+        }
+
+        /*
+         * Type 3 font with a box for each letter. The "embedded" font uses
+         * the letters a-z; the "pua" font uses the PUA code points U+E000 to
+         * U+E019 with glyph names that are not in any glyph list. Both fonts
+         * have an empty space glyph for the spaces between the words.
+         */
+        boolean pua = kind.equals(PUA);
+        String fontname = pua ? "SyntheticPUA" : "SyntheticType3";
+        p.begin_font(fontname, 0.001, 0, 0, 0.001, 0, 0, "");
+        p.begin_glyph_ext(' ', "glyphname=space width=" + SPACE_WIDTH
+                + " boundingbox={0 0 0 0}");
+        p.end_glyph();
+        for (int c = 0; c < 26; c += 1) {
+            int width = 400 + 10 * c;
+            int height = 450 + (c % 3) * 120;
+            int uv = pua ? 0xE000 + c : 'a' + c;
+            String glyphname = pua ? "syn" + (c + 1) : String.valueOf((char) uv);
+            p.begin_glyph_ext(uv, "glyphname=" + glyphname + " width=" + width
+                    + " boundingbox={0 0 " + width + " " + height + "}");
+            p.rect(50, 0, width - 100, height);
+            p.fill();
+            p.end_glyph();
+        }
+        p.end_font();
+        return p.load_font(fontname, "unicode", "");
+    }
+
+    /**
+     * Fill the page with wordsPerPage words, one font per line.
+     */
+    private void place_text(pdflib p, int[] fonts, boolean invisible,
+            Random random) throws PDFlibException {
+        final double width = PAGE_WIDTH - 2 * MARGIN;
+        final double height = PAGE_HEIGHT - 2 * MARGIN;
+
+        /*
+         * Estimate the font size at which the words fill the text area; the
+         * average word has 6 letters and a space.
+         */
+        double area = width * height;
+        double fontsize = Math.sqrt(area
+                / (GLYPH_WIDTH * LEADING * 7.0 * Math.max(wordsPerPage, 1)));
+        fontsize = Math.max(MIN_FONT_SIZE, Math.min(MAX_FONT_SIZE, fontsize));
+        int lineChars = (int) (width / (GLYPH_WIDTH * fontsize));
+
+        String options = "boxsize={" + width + " " + fontsize
+                + "} fitmethod=auto" + (invisible ? " textrendering=3" : "");
+
+        double y = PAGE_HEIGHT - MARGIN - fontsize;
+        int words = 0;
+        StringBuilder line = new StringBuilder();
+        while (words < wordsPerPage) {
+            line.setLength(0);
+            while (words < wordsPerPage) {
+                String word = randomWord(random);
+                if (line.length() > 0
+                        && line.length() + 1 + word.length() > lineChars) {
+                    break;
+                }
+                if (line.length() > 0) {
+                    line.append(' ');
+                }
+                line.append(word);
+                words += 1;
+            }
+
+            int font = random.nextInt(fonts.length);
+            String text = fontKinds[font].equals(PUA) ? to_pua(line)
+                    : line.toString();
+            p.fit_textline(text, MARGIN, y, "font=" + fonts[font]
+                    + " fontsize=" + fontsize + " " + options);
+
+            y -= fontsize * LEADING;
+            if (y < MARGIN) {
+                /* more words than fit: continue on top of the earlier lines */
+                y = PAGE_HEIGHT - MARGIN - fontsize * (1 + LEADING / 2);
+            }
+        }
+    }
+
+    /**
+     * Map the letters a-z to the code points of the PUA font.
+     */
+    private static String to_pua(CharSequence text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            result.append(c >= 'a' && c <= 'z' ? (char) (0xE000 + c - 'a') : c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Place a gray page-sized image, as on a scanned page.
+     */
+    private void place_scan(pdflib p, Random random) throws PDFlibException {
+        int w = (int) (PAGE_WIDTH * SCAN_RESOLUTION);
+        int h = (int) (PAGE_HEIGHT * SCAN_RESOLUTION);
+        byte[] data = new byte[w * h];
+        for (int i = 0; i < data.length; i += 1) {
+            /* light paper with some noise */
+            data[i] = (byte) (224 + random.nextInt(32));
+        }
+        place_raw_image(p, data, w, h, 1, 0, 0, "boxsize={" + PAGE_WIDTH + " "
+                + PAGE_HEIGHT + "} fitmethod=entire");
+    }
+
+    /**
+     * Place imagesPerPage small RGB images in a row at the bottom of the
+     * page; each image is a distinct image resource.
+     */
+    private void place_images(pdflib p, Random random) throws PDFlibException {
+        double size = Math.min(MARGIN - 10, (PAGE_WIDTH - 2 * MARGIN)
+                / Math.max(imagesPerPage, 1));
+        for (int i = 0; i < imagesPerPage; i += 1) {
+            byte[] data = new byte[IMAGE_SIZE * IMAGE_SIZE * 3];
+            int r = random.nextInt(256);
+            int g = random.nextInt(256);
+            int b = random.nextInt(256);
+            for (int j = 0; j < data.length; j += 3) {
+                int shade = random.nextInt(64);
+                data[j] = (byte) (r ^ shade);
+                data[j + 1] = (byte) (g ^ shade);
+                data[j + 2] = (byte) (b ^ shade);
+            }
+            place_raw_image(p, data, IMAGE_SIZE, IMAGE_SIZE, 3,
+                    MARGIN + i * size, 5, "boxsize={" + size + " " + size
+                            + "} fitmethod=meet");
+        }
+    }
+
+    /**
+     * Load uncompressed 8 bit image data from a virtual file and place it.
+     */
+    private void place_raw_image(pdflib p, byte[] data, int width,
+            int height, int components, double x, double y, String optlist)
+            throws PDFlibException {
+        String pvf = "/pvf/image" + pvfCounter++;
+        p.create_pvf(pvf, data, "");
+        int image = p.load_image("raw", pvf, "width=" + width + " height="
+                + height + " components=" + components + " bpc=8");
+        p.fit_image(image, x, y, optlist);
+        p.close_image(image);
+        p.delete_pvf(pvf);
+    }
+
+    /**
+     * Attach the generated files as file attachment annotations to the
+     * current page. The virtual files are deleted after end_document().
+     */
+    private void attach_files(pdflib p, Random random) throws PDFlibException {
+        for (int i = 0; i < attachments; i += 1) {
+            StringBuilder content = new StringBuilder(ATTACHMENT_SIZE);
+            while (content.length() < ATTACHMENT_SIZE) {
+                content.append(randomWord(random)).append(' ');
+            }
+            String pvf = "/pvf/attachment" + pvfCounter++;
+            try {
+                p.create_pvf(pvf, content.toString().getBytes("US-ASCII"), "");
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            attachmentFiles.add(pvf);
+            double x = PAGE_WIDTH - MARGIN + 5;
+            double y = PAGE_HEIGHT - MARGIN - (i + 1) * 25;
+            String description = "{Attachment " + (i + 1) + "}";
+            int attachment = p.load_asset("Attachment", pvf,
+                    "mimetype=text/plain description=" + description);
+            p.create_annotation(x, y, x + 20, y + 20, "FileAttachment",
+                    "attachment=" + attachment + " iconname=paperclip "
+                            + "title={Corpus Generator} contents="
+                            + description);
+        }
+    }
+
+    /**
+     * Delete the virtual files of the attachments.
+     */
+    private void delete_pvfs(pdflib p) throws PDFlibException {
+        for (String pvf : attachmentFiles) {
+            p.delete_pvf(pvf);
+        }
+        attachmentFiles.clear();
+    }
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
+        out = ReportWriter.open(OUTPUT_ENCODING);
+
+        CorpusGenerator generator = new CorpusGenerator();
+        int i = 0;
+        for (; i < args.length - 1 && args[i].startsWith("-"); i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("-documents")) {
+                generator.documents = intArg(value, 1);
+            }
+            else if (args[i].equals("-pages")) {
+                generator.pages = intArg(value, 1);
+            }
+            else if (args[i].equals("-words")) {
+                generator.wordsPerPage = intArg(value, 0);
+            }
+            else if (args[i].equals("-fonts")) {
+                generator.fontKinds = value.split(",");
+                for (String kind : generator.fontKinds) {
+                    if (!kind.equals(EMBEDDED) && !kind.equals(UNEMBEDDED)
+                            && !kind.equals(PUA)) {
+                        System.err.println("unknown font kind \"" + kind
+                                + "\"");
+                        usage();
+                    }
+                }
+            }
+            else if (args[i].equals("-fontfile")) {
+                generator.fontFile = value;
+            }
+            else if (args[i].equals("-ocr")) {
+                try {
+                    generator.ocrFraction = Double.parseDouble(value);
+                }
+                catch (NumberFormatException e) {
+                    usage();
+                }
+            }
+            else if (args[i].equals("-images")) {
+                generator.imagesPerPage = intArg(value, 0);
+            }
+            else if (args[i].equals("-attachments")) {
+                generator.attachments = intArg(value, 0);
+            }
+            else if (args[i].equals("-seed")) {
+                try {
+                    generator.seed = Long.parseLong(value);
+                }
+                catch (NumberFormatException e) {
+                    usage();
+                }
+            }
+            else if (args[i].equals("-prefix")) {
+                generator.prefix = value;
+            }
+            else {
+                usage();
+            }
+        }
+        if (i != args.length - 1) {
+            usage();
+        }
+        generator.outputDirectory = new File(args[i]);
+
+        generator.execute();
+        out.close();
+    }
+
+    private static int intArg(String value, int min) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n < min) {
+                usage();
+            }
+            return n;
+        }
+        catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: CorpusGenerator [ -documents <n> ] "
+                + "[ -pages <n> ] [ -words <words per page> ] "
+                + "[ -fonts <font kinds> ] [ -fontfile <font file> ] "
+                + "[ -ocr <fraction of pages> ] [ -images <images per page> ] "
+                + "[ -attachments <attachments per document> ] "
+                + "[ -seed <n> ] [ -prefix <file name prefix> ] "
+                + "<output directory>");
+        System.err.println("font kinds: comma-separated list of \"embedded\", "
+                + "\"unembedded\" and \"pua\"");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,208 @@
+package com.pdflib.cookbook.tet.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser for the benchmark baselines. Objects are returned as
+ * Map&lt;String, Object&gt;, arrays as List&lt;Object&gt;, numbers as Double,
+ * and strings, booleans and null as String, Boolean and null.
+ */
+class JsonReader {
+    private final String text;
+
+    private int pos;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @throws IOException
+     *             The text is not a single JSON value
+     */
+    static Object parse(String text) throws IOException {
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.value();
+        reader.skipWhitespace();
+        if (reader.pos < text.length()) {
+            throw reader.error("unexpected text after value");
+        }
+        return value;
+    }
+
+    private Object value() throws IOException {
+        skipWhitespace();
+        if (pos == text.length()) {
+            throw error("unexpected end of text");
+        }
+        char c = text.charAt(pos);
+        switch (c) {
+        case '{':
+            return object();
+        case '[':
+            return array();
+        case '"':
+            return string();
+        case 't':
+            return literal("true", Boolean.TRUE);
+        case 'f':
+            return literal("false", Boolean.FALSE);
+        case 'n':
+            return literal("null", null);
+        default:
+            return number();
+        }
+    }
+
+    private Map<String, Object> object() throws IOException {
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        pos += 1;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos += 1;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("member name expected");
+            }
+            String name = string();
+            skipWhitespace();
+            expect(':');
+            object.put(name, value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos += 1;
+            }
+            else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> array() throws IOException {
+        List<Object> array = new ArrayList<Object>();
+        pos += 1;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos += 1;
+            return array;
+        }
+        while (true) {
+            array.add(value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos += 1;
+            }
+            else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String string() throws IOException {
+        StringBuilder s = new StringBuilder();
+        pos += 1;
+        while (true) {
+            if (pos >= text.length()) {
+                throw error("unterminated string");
+            }
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return s.toString();
+            }
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+            if (pos >= text.length()) {
+                throw error("unterminated string");
+            }
+            c = text.charAt(pos++);
+            switch (c) {
+            case 'b':
+                s.append('\b');
+                break;
+            case 'f':
+                s.append('\f');
+                break;
+            case 'n':
+                s.append('\n');
+                break;
+            case 'r':
+                s.append('\r');
+                break;
+            case 't':
+                s.append('\t');
+                break;
+            case 'u':
+                if (pos + 4 > text.length()) {
+                    throw error("invalid escape sequence");
+                }
+                try {
+                    s.append((char) Integer.parseInt(
+                            text.substring(pos, pos + 4), 16));
+                }
+                catch (NumberFormatException e) {
+                    throw error("invalid escape sequence");
+                }
+                pos += 4;
+                break;
+            default:
+                s.append(c);
+            }
+        }
+    }
+
+    private Object literal(String word, Object value) throws IOException {
+        if (!text.startsWith(word, pos)) {
+            throw error("unexpected character");
+        }
+        pos += word.length();
+        return value;
+    }
+
+    private Double number() throws IOException {
+        int start = pos;
+        while (pos < text.length()
+                && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+            pos += 1;
+        }
+        try {
+            return Double.valueOf(text.substring(start, pos));
+        }
+        catch (NumberFormatException e) {
+            pos = start;
+            throw error("unexpected character");
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c) {
+            throw error("'" + c + "' expected");
+        }
+        pos += 1;
+    }
+
+    private int peek() {
+        return pos < text.length() ? text.charAt(pos) : -1;
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length()
+                && Character.isWhitespace(text.charAt(pos))) {
+            pos += 1;
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + pos);
+    }
+}
@@ -0,0 +1,310 @@
+package com.pdflib.cookbook.tet.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.NumberFormat;
+import java.util.Random;
+
+import com.pdflib.cookbook.tet.util.TokenNormalizer;
+
+/**
+ * Compare the word classification and case folding of the text samples
+ * before and with the {@link TokenNormalizer}.
+ * <p>
+ * The words are generated like in {@link WordCounterBenchmark}. A part of
+ * them is capitalized, like the first words of sentences, and a part gets a
+ * non-ASCII letter, so that the general path of the normalizer is measured
+ * too. The scenarios are the per-word work of concordance with
+ * LOWERCASE_WORDS set, Character.isLetter() and String.toLowerCase()
+ * before, the normalizer with and without NFKC normalization now; and the
+ * first-character check of back_of_the_book_index, the search of the
+ * lowercased character in a string of allowed characters before, a folded
+ * table lookup now. The counting of the words is left out, see
+ * {@link WordCounterBenchmark} for it.
+ * <p>
+ * usage: TokenNormalizerBenchmark [ -words &lt;n&gt; ] [ -vocabulary
+ * &lt;n&gt; ] [ -iterations &lt;n&gt; ] [ -capitalized &lt;percent&gt; ] [
+ * -nonascii &lt;percent&gt; ]
+ */
+public class TokenNormalizerBenchmark implements Benchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private static final String INCLUDE_CHARS = "abcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * Non-ASCII letters that are put into words, among them some whose case
+     * folding expands.
+     */
+    private static final String NON_ASCII = "\u00e9\u00fc\u00f6\u00c4\u00df"
+            + "\u0107\u0161\u03b1\u0416\ufb01";
+
+    static final int DEFAULT_CAPITALIZED = 10;
+
+    static final int DEFAULT_NON_ASCII = 2;
+
+    /**
+     * The per-word work under test, over the whole word stream once.
+     */
+    interface WordScenario extends Scenario {
+        /**
+         * @return a checksum of the result
+         */
+        long run();
+    }
+
+    private final String[] words;
+
+    private final String workload;
+
+    /**
+     * Lowercase ASCII characters that INCLUDE_CHARS contains.
+     */
+    private final boolean[] includedAscii = new boolean[128];
+
+    /**
+     * @param words
+     *            Number of words of the stream
+     * @param vocabulary
+     *            Number of distinct words
+     * @param capitalized
+     *            Percentage of capitalized words
+     * @param nonAscii
+     *            Percentage of words with a non-ASCII letter
+     */
+    TokenNormalizerBenchmark(int words, int vocabulary, int capitalized,
+            int nonAscii) {
+        this.words = generate(words, vocabulary, capitalized, nonAscii);
+        workload = "generated-" + words + "x" + vocabulary + "-capitalized"
+                + capitalized + "-nonascii" + nonAscii;
+        for (int i = 0; i < INCLUDE_CHARS.length(); i += 1) {
+            includedAscii[INCLUDE_CHARS.charAt(i)] = true;
+        }
+    }
+
+    public static void main(String[] args) {
+        int words = WordCounterBenchmark.DEFAULT_WORDS;
+        int vocabulary = WordCounterBenchmark.DEFAULT_VOCABULARY;
+        int iterations = 10;
+        int capitalized = DEFAULT_CAPITALIZED;
+        int nonAscii = DEFAULT_NON_ASCII;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                usage();
+            }
+            if (args[i].equals("-words")) {
+                words = intArg(args[i + 1], 1);
+            }
+            else if (args[i].equals("-vocabulary")) {
+                vocabulary = intArg(args[i + 1], 1);
+            }
+            else if (args[i].equals("-iterations")) {
+                iterations = intArg(args[i + 1], 1);
+            }
+            else if (args[i].equals("-capitalized")) {
+                capitalized = intArg(args[i + 1], 0);
+            }
+            else if (args[i].equals("-nonascii")) {
+                nonAscii = intArg(args[i + 1], 0);
+            }
+            else {
+                usage();
+            }
+        }
+
+        TokenNormalizerBenchmark benchmark = new TokenNormalizerBenchmark(
+                words, vocabulary, capitalized, nonAscii);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads)
+                        .isThreadAllocatedMemorySupported()) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+            allocations.setThreadAllocatedMemoryEnabled(true);
+        }
+        long thread = Thread.currentThread().getId();
+
+        NumberFormat format = NumberFormat.getInstance();
+        format.setMaximumFractionDigits(1);
+
+        System.out.println(words + " words, vocabulary of " + vocabulary
+                + " words, " + capitalized + "% capitalized, " + nonAscii
+                + "% non-ASCII, " + iterations + " iterations");
+        long checksum = 0;
+        for (WordScenario scenario : benchmark.getScenarios()) {
+            for (int i = 0; i < WARMUP_ITERATIONS; i += 1) {
+                checksum += scenario.run();
+            }
+
+            long bytes = allocations != null
+                    ? allocations.getThreadAllocatedBytes(thread) : 0;
+            long start = System.nanoTime();
+            long result = 0;
+            for (int i = 0; i < iterations; i += 1) {
+                result = scenario.run();
+            }
+            long nanos = System.nanoTime() - start;
+            checksum += result;
+
+            double millions = (double) words * iterations / 1e6;
+            String line = scenario.getName() + ": " + result + ", "
+                    + format.format(millions / (nanos / 1e9)) + " M words/s";
+            if (allocations != null) {
+                bytes = allocations.getThreadAllocatedBytes(thread) - bytes;
+                line += ", " + format.format(bytes / millions / 1024)
+                        + " KB allocated per M words";
+            }
+            System.out.println(line);
+        }
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    public String getWorkload() {
+        return workload;
+    }
+
+    public String getUnit() {
+        return "word";
+    }
+
+    public long getSize() {
+        return words.length;
+    }
+
+    public WordScenario[] getScenarios() {
+        return new WordScenario[] {
+            new WordScenario() {
+                public String getName() {
+                    return "isLetter and toLowerCase";
+                }
+
+                public long run() {
+                    int checksum = 0;
+                    for (int i = 0; i < words.length; i += 1) {
+                        String text = words[i];
+                        if (Character.isLetter(text.charAt(0))) {
+                            text = text.toLowerCase();
+                            checksum += text.length() + text.charAt(0);
+                        }
+                    }
+                    return checksum;
+                }
+            },
+            new WordScenario() {
+                public String getName() {
+                    return "token normalizer";
+                }
+
+                public long run() {
+                    int checksum = 0;
+                    TokenNormalizer normalizer =
+                            new TokenNormalizer(true, false);
+                    for (int i = 0; i < words.length; i += 1) {
+                        String text = words[i];
+                        if (TokenNormalizer.startsWithLetter(text)) {
+                            int length = normalizer.normalize(text);
+                            checksum += length + normalizer.getBuffer()[0];
+                        }
+                    }
+                    return checksum;
+                }
+            },
+            new WordScenario() {
+                public String getName() {
+                    return "token normalizer with NFKC";
+                }
+
+                public long run() {
+                    int checksum = 0;
+                    TokenNormalizer normalizer =
+                            new TokenNormalizer(true, true);
+                    for (int i = 0; i < words.length; i += 1) {
+                        String text = words[i];
+                        if (TokenNormalizer.startsWithLetter(text)) {
+                            int length = normalizer.normalize(text);
+                            checksum += length + normalizer.getBuffer()[0];
+                        }
+                    }
+                    return checksum;
+                }
+            },
+            new WordScenario() {
+                public String getName() {
+                    return "indexOf first-character check";
+                }
+
+                public long run() {
+                    int included = 0;
+                    for (int i = 0; i < words.length; i += 1) {
+                        if (INCLUDE_CHARS.indexOf(Character.toLowerCase(
+                                words[i].charAt(0))) != -1) {
+                            included += 1;
+                        }
+                    }
+                    return included;
+                }
+            },
+            new WordScenario() {
+                public String getName() {
+                    return "folded table first-character check";
+                }
+
+                public long run() {
+                    int included = 0;
+                    for (int i = 0; i < words.length; i += 1) {
+                        int c = TokenNormalizer.foldCase(words[i].charAt(0));
+                        if (c < includedAscii.length ? includedAscii[c]
+                                : INCLUDE_CHARS.indexOf(c) != -1) {
+                            included += 1;
+                        }
+                    }
+                    return included;
+                }
+            }
+        };
+    }
+
+    /**
+     * Generate the word stream of {@link WordCounterBenchmark} and change
+     * the given percentages of the words.
+     */
+    private static String[] generate(int count, int vocabularySize,
+            int capitalized, int nonAscii) {
+        String[] words = WordCounterBenchmark.generate(count, vocabularySize,
+                1);
+        Random random = new Random(2);
+        for (int i = 0; i < count; i += 1) {
+            char[] chars = words[i].toCharArray();
+            if (random.nextInt(100) < nonAscii) {
+                chars[random.nextInt(chars.length)] = NON_ASCII.charAt(
+                        random.nextInt(NON_ASCII.length()));
+            }
+            if (random.nextInt(100) < capitalized) {
+                chars[0] = Character.toUpperCase(chars[0]);
+            }
+            words[i] = new String(chars);
+        }
+        return words;
+    }
+
+    private static int intArg(String value, int min) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n < min) {
+                usage();
+            }
+            return n;
+        }
+        catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: TokenNormalizerBenchmark [ -words <n> ] "
+                + "[ -vocabulary <n> ] [ -iterations <n> ] "
+                + "[ -capitalized <percent> ] [ -nonascii <percent> ]");
+        System.exit(1);
+    }
+}
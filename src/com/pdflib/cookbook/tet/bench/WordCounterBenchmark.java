@@ -0,0 +1,381 @@
+package com.pdflib.cookbook.tet.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import com.pdflib.cookbook.tet.util.NgramCounter;
+import com.pdflib.cookbook.tet.util.WordCounter;
+
+/**
+ * Compare the word counting of the concordance with a
+ * HashMap&lt;String, Integer&gt; and with the {@link WordCounter}.
+ * <p>
+ * The words are drawn from a generated vocabulary with a Zipf distribution,
+ * like the words of natural text, and every occurrence is a String object of
+ * its own, like the words returned by TET_get_text(). Each iteration counts
+ * the whole word stream into a new counter. For both counters the throughput
+ * and, on JVMs that can measure the allocations of a thread, the bytes
+ * allocated per million words are reported. A third run counts the bigrams
+ * and trigrams with a {@link NgramCounter} besides the words, for the cost
+ * of the n-gram concordance; like the counters of a concordance worker, the
+ * counters of this run are cleared and reused for each iteration.
+ * <p>
+ * The n-grams of the generated words are almost all distinct, as the words
+ * are drawn independently. With -text the words of a text file are counted
+ * instead, e.g. text extracted with TET, for the n-gram statistics of real
+ * text.
+ * <p>
+ * Note that the Strings cache their hash code after the first iteration, so
+ * the measurement favors the HashMap slightly, while the WordCounter always
+ * hashes the characters.
+ * <p>
+ * Afterwards the listing of the counted words by descending count is timed:
+ * the former comparator sort of the words with two map lookups per
+ * comparison, the primitive sort of {@link WordCounter#sortByCount()}, and
+ * the selection of the most frequent words with
+ * {@link WordCounter#topByCount(int)}.
+ * <p>
+ * usage: WordCounterBenchmark [ -words &lt;n&gt; ] [ -vocabulary &lt;n&gt; ]
+ * [ -text &lt;text file&gt; ] [ -iterations &lt;n&gt; ] [ -top &lt;k&gt; ]
+ */
+public class WordCounterBenchmark implements Benchmark {
+    static final int DEFAULT_WORDS = 2000000;
+
+    static final int DEFAULT_VOCABULARY = 50000;
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    /**
+     * The separators between the words of a text file.
+     */
+    private static final Pattern SEPARATORS =
+            Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * A counter under test, counting the whole word stream once.
+     */
+    interface WordScenario extends Scenario {
+        /**
+         * @return the number of distinct words
+         */
+        long run();
+    }
+
+    /**
+     * The word stream, every occurrence a String object of its own.
+     */
+    private final String[] words;
+
+    private final String workload;
+
+    /**
+     * @param words
+     *            The word stream
+     * @param workload
+     *            The name of the workload
+     */
+    WordCounterBenchmark(String[] words, String workload) {
+        this.words = words;
+        this.workload = workload;
+    }
+
+    /**
+     * Benchmark on a generated word stream.
+     */
+    WordCounterBenchmark(int words, int vocabulary) {
+        this(generate(words, vocabulary, 1),
+                "generated-" + words + "x" + vocabulary);
+    }
+
+    public static void main(String[] args) {
+        int words = DEFAULT_WORDS;
+        int vocabulary = DEFAULT_VOCABULARY;
+        int iterations = 10;
+        int top = 1000;
+        String text = null;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                usage();
+            }
+            if (args[i].equals("-words")) {
+                words = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-vocabulary")) {
+                vocabulary = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-iterations")) {
+                iterations = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-top")) {
+                top = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-text")) {
+                text = args[i + 1];
+            }
+            else {
+                usage();
+            }
+        }
+
+        WordCounterBenchmark benchmark;
+        if (text != null) {
+            try {
+                benchmark = new WordCounterBenchmark(read(new File(text)),
+                        "text:" + new File(text).getName());
+            }
+            catch (IOException e) {
+                System.err.println("Error reading \"" + text + "\": "
+                        + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            words = benchmark.words.length;
+        }
+        else {
+            benchmark = new WordCounterBenchmark(words, vocabulary);
+        }
+        String[] stream = benchmark.words;
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads)
+                        .isThreadAllocatedMemorySupported()) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+            allocations.setThreadAllocatedMemoryEnabled(true);
+        }
+        long thread = Thread.currentThread().getId();
+
+        NumberFormat format = NumberFormat.getInstance();
+        format.setMaximumFractionDigits(1);
+
+        System.out.println(words + " words, "
+                + (text != null ? "from \"" + text + "\""
+                        : "vocabulary of " + vocabulary + " words")
+                + ", " + iterations + " iterations");
+        long checksum = 0;
+        for (WordScenario scenario : benchmark.getScenarios()) {
+            for (int i = 0; i < WARMUP_ITERATIONS; i += 1) {
+                checksum += scenario.run();
+            }
+
+            long bytes = allocations != null
+                    ? allocations.getThreadAllocatedBytes(thread) : 0;
+            long start = System.nanoTime();
+            long distinct = 0;
+            for (int i = 0; i < iterations; i += 1) {
+                distinct = scenario.run();
+            }
+            long nanos = System.nanoTime() - start;
+            checksum += distinct;
+
+            double millions = (double) words * iterations / 1e6;
+            String line = scenario.getName() + ": " + distinct
+                    + " distinct words, "
+                    + format.format(millions / (nanos / 1e9)) + " M words/s";
+            if (allocations != null) {
+                bytes = allocations.getThreadAllocatedBytes(thread) - bytes;
+                line += ", " + format.format(bytes / millions / 1024)
+                        + " KB allocated per M words";
+            }
+            System.out.println(line);
+        }
+
+        final Map<String, Integer> map = new HashMap<String, Integer>();
+        WordCounter counter = new WordCounter();
+        for (int i = 0; i < stream.length; i += 1) {
+            Integer value = map.get(stream[i]);
+            map.put(stream[i],
+                    Integer.valueOf(value == null ? 1 : value.intValue() + 1));
+            counter.add(stream[i]);
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i += 1) {
+            checksum += sortMap(map).length + counter.sortByCount().length
+                    + counter.topByCount(top).length;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i += 1) {
+            checksum += sortMap(map).length;
+        }
+        reportSort("comparator sort", start, iterations);
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i += 1) {
+            checksum += counter.sortByCount().length;
+        }
+        reportSort("primitive sort", start, iterations);
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i += 1) {
+            checksum += counter.topByCount(top).length;
+        }
+        reportSort("top " + top + " heap", start, iterations);
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    public String getWorkload() {
+        return workload;
+    }
+
+    public String getUnit() {
+        return "word";
+    }
+
+    public long getSize() {
+        return words.length;
+    }
+
+    public WordScenario[] getScenarios() {
+        return new WordScenario[] {
+            new WordScenario() {
+                public String getName() {
+                    return "hash map";
+                }
+
+                public long run() {
+                    Map<String, Integer> wordCounters =
+                            new HashMap<String, Integer>();
+                    for (int i = 0; i < words.length; i += 1) {
+                        Integer value = wordCounters.get(words[i]);
+                        wordCounters.put(words[i], Integer.valueOf(
+                                value == null ? 1 : value.intValue() + 1));
+                    }
+                    return wordCounters.size();
+                }
+            },
+            new WordScenario() {
+                public String getName() {
+                    return "word counter";
+                }
+
+                public long run() {
+                    WordCounter wordCounters = new WordCounter();
+                    for (int i = 0; i < words.length; i += 1) {
+                        wordCounters.add(words[i]);
+                    }
+                    return wordCounters.size();
+                }
+            },
+            new WordScenario() {
+                private final WordCounter wordCounters = new WordCounter();
+
+                private final NgramCounter ngrams =
+                        new NgramCounter(3, wordCounters);
+
+                public String getName() {
+                    return "word counter with 2- and 3-grams";
+                }
+
+                public long run() {
+                    wordCounters.clear();
+                    ngrams.clear();
+                    for (int i = 0; i < words.length; i += 1) {
+                        ngrams.addToken(wordCounters.add(words[i]));
+                    }
+                    return wordCounters.size();
+                }
+            }
+        };
+    }
+
+    /**
+     * The sort of the former concordance.
+     */
+    private static String[] sortMap(final Map<String, Integer> map) {
+        String[] words = map.keySet().toArray(new String[map.size()]);
+        Arrays.sort(words, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                return map.get(o2).compareTo(map.get(o1));
+            }
+        });
+        return words;
+    }
+
+    private static void reportSort(String name, long start, int iterations) {
+        NumberFormat format = NumberFormat.getInstance();
+        format.setMaximumFractionDigits(2);
+        System.out.println(name + ": " + format.format(
+                (System.nanoTime() - start) / 1e6 / iterations) + " ms");
+    }
+
+    /**
+     * Generate a stream of words with a Zipf distribution over a random
+     * vocabulary. Each occurrence is a separate String object.
+     */
+    static String[] generate(int count, int vocabularySize, long seed) {
+        Random random = new Random(seed);
+        String[] vocabulary = new String[vocabularySize];
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < vocabularySize; i += 1) {
+            word.setLength(0);
+            int length = 2 + random.nextInt(9);
+            for (int j = 0; j < length; j += 1) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+
+        /* cumulative weights 1/rank */
+        double[] cumulative = new double[vocabularySize];
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i += 1) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+
+        String[] words = new String[count];
+        for (int i = 0; i < count; i += 1) {
+            int rank = Arrays.binarySearch(cumulative,
+                    random.nextDouble() * sum);
+            if (rank < 0) {
+                rank = Math.min(-rank - 1, vocabularySize - 1);
+            }
+            words[i] = new String(vocabulary[rank].toCharArray());
+        }
+        return words;
+    }
+
+    /**
+     * Read the words of a UTF-8 text file, split at all characters that are
+     * neither letters nor digits.
+     */
+    static String[] read(File file) throws IOException {
+        String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        String[] words = SEPARATORS.split(text);
+        if (words.length > 0 && words[0].length() == 0) {
+            /* the text starts with a separator */
+            words = Arrays.copyOfRange(words, 1, words.length);
+        }
+        return words;
+    }
+
+    private static int intArg(String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n < 1) {
+                usage();
+            }
+            return n;
+        }
+        catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: WordCounterBenchmark [ -words <n> ] "
+                + "[ -vocabulary <n> ] [ -text <text file> ] "
+                + "[ -iterations <n> ] [ -top <k> ]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,39 @@
+package com.pdflib.cookbook.tet.check;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * The temporary directory of a check.
+ */
+final class CheckFiles {
+    private CheckFiles() {
+    }
+
+    /**
+     * @return a new temporary directory whose name starts with the prefix
+     */
+    static File createDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Delete a directory created by createDirectory() with its files.
+     *
+     * @param directory
+     *            The directory, or null
+     */
+    static void delete(File directory) {
+        if (directory == null) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
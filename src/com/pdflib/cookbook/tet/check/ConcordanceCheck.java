@@ -0,0 +1,252 @@
+package com.pdflib.cookbook.tet.check;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.FakeDocument;
+import com.pdflib.cookbook.tet.backend.FakeTetBackend;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+import com.pdflib.cookbook.tet.backend.TetBackendFactory;
+
+/**
+ * Checks of the error handling of the concordance sample with generated
+ * documents served by {@link FakeTetBackend}, without the native TET
+ * library: a document that fails must not change the results for the other
+ * documents.
+ * <p>
+ * Each check runs the main program of the sample with a
+ * {@link TetBackendFactory} of such backends, once with failing documents
+ * between two good ones, and once with the good documents only, and
+ * compares the files written by the two runs, the document-term matrix of
+ * -corpus and the state of -state. The sample runs with a single worker
+ * thread, and its report is discarded.
+ * <p>
+ * One failing document throws a TETException on its second page, after the
+ * words of its first page have been counted; the other one claims a page
+ * more than it has, so that opening its last page fails.
+ * <p>
+ * usage: ConcordanceCheck
+ * <p>
+ * The exit status is 1 if a check fails.
+ */
+public class ConcordanceCheck {
+    private static final String CONCORDANCE =
+            "com.pdflib.cookbook.tet.text.concordance";
+
+    private static final String FIRST_DOCUMENT = "first.pdf";
+
+    private static final String FAILING_DOCUMENT = "failing.pdf";
+
+    private static final String TRUNCATED_DOCUMENT = "truncated.pdf";
+
+    private static final String LAST_DOCUMENT = "last.pdf";
+
+    private static final List<String> WITH_FAILURES = Arrays.asList(
+            FIRST_DOCUMENT, FAILING_DOCUMENT, TRUNCATED_DOCUMENT,
+            LAST_DOCUMENT);
+
+    private static final List<String> WITHOUT_FAILURES = Arrays.asList(
+            FIRST_DOCUMENT, LAST_DOCUMENT);
+
+    /**
+     * The page of the failing document on which the TETException is thrown.
+     */
+    private static final int FAILING_PAGE = 2;
+
+    private static final int PAGES = 3;
+
+    private static final int WORDS_PER_PAGE = 200;
+
+    /**
+     * Error number of the TETException of the failing page.
+     */
+    private static final int ERR_DAMAGED_PAGE = 4000;
+
+    /**
+     * Backend that throws a TETException when the failing page of the
+     * failing document is opened.
+     */
+    private static class FailingTetBackend extends FakeTetBackend {
+        private int failingDoc = -1;
+
+        FailingTetBackend() {
+            addDocument(FIRST_DOCUMENT, FakeDocument.generate(PAGES,
+                    WORDS_PER_PAGE, 1));
+            addDocument(FAILING_DOCUMENT, FakeDocument.generate(PAGES,
+                    WORDS_PER_PAGE, 2));
+            addDocument(LAST_DOCUMENT, FakeDocument.generate(PAGES,
+                    WORDS_PER_PAGE, 3));
+
+            FakeDocument truncated = FakeDocument.generate(PAGES,
+                    WORDS_PER_PAGE, 4);
+            truncated.setPcosValue("length:pages", Integer.valueOf(PAGES + 1));
+            addDocument(TRUNCATED_DOCUMENT, truncated);
+        }
+
+        public int open_document(String filename, String optlist) {
+            int doc = super.open_document(filename, optlist);
+            if (filename.equals(FAILING_DOCUMENT)) {
+                failingDoc = doc;
+            }
+            return doc;
+        }
+
+        public int open_page(int doc, int pagenumber, String optlist)
+                throws TETException {
+            if (doc == failingDoc && pagenumber == FAILING_PAGE) {
+                throw new TETException("Page " + pagenumber
+                        + " is damaged", ERR_DAMAGED_PAGE, "open_page");
+            }
+            return super.open_page(doc, pagenumber, optlist);
+        }
+    }
+
+    private final File directory;
+
+    /**
+     * The main method of the sample, whose class is not public.
+     */
+    private final Method concordance;
+
+    private int failures;
+
+    private ConcordanceCheck(File directory)
+            throws ReflectiveOperationException {
+        this.directory = directory;
+        concordance = Class.forName(CONCORDANCE).getMethod("main",
+                String[].class);
+        concordance.setAccessible(true);
+    }
+
+    /**
+     * The failing documents must not have a row in the document-term matrix,
+     * and the row of the next document must not contain their counts.
+     */
+    private void check_corpus() throws IOException {
+        String withFailures = new File(directory, "with_failures").getPath();
+        String withoutFailures =
+                new File(directory, "without_failures").getPath();
+
+        run(WITH_FAILURES, withFailures, false);
+        run(WITHOUT_FAILURES, withoutFailures, false);
+
+        String[] extensions = { ".tfm", ".docs", ".vocab" };
+        for (String extension : extensions) {
+            compare("corpus", withFailures + extension,
+                    withoutFailures + extension);
+        }
+    }
+
+    /**
+     * The failing documents must not be recorded in the state, and their
+     * counts must not be recorded under the next document.
+     */
+    private void check_state() throws IOException {
+        String withFailures =
+                new File(directory, "with_failures.state").getPath();
+        String withoutFailures =
+                new File(directory, "without_failures.state").getPath();
+
+        run(WITH_FAILURES, withFailures, true);
+        run(WITHOUT_FAILURES, withoutFailures, true);
+
+        compare("state", withFailures, withoutFailures);
+    }
+
+    /**
+     * Run the concordance in a single worker thread.
+     *
+     * @param filenames
+     *            The documents to process
+     * @param output
+     *            The base name of the document-term matrix, or the state
+     *            file
+     * @param state
+     *            Whether to update a state instead of writing a
+     *            document-term matrix
+     */
+    private void run(List<String> filenames, String output, boolean state) {
+        List<String> args = new ArrayList<String>();
+        args.add(state ? "-state" : "-corpus");
+        args.add(output);
+        args.addAll(filenames);
+
+        TetBackendFactory previous = TetBackendFactory.setDefault(
+                new TetBackendFactory() {
+                    public TetBackend create() {
+                        return new FailingTetBackend();
+                    }
+                });
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            concordance.invoke(null,
+                    (Object) args.toArray(new String[args.size()]));
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        catch (InvocationTargetException e) {
+            throw new IllegalStateException("concordance failed",
+                    e.getCause());
+        }
+        finally {
+            System.setOut(stdout);
+            TetBackendFactory.setDefault(previous);
+        }
+    }
+
+    private void compare(String check, String actual, String expected)
+            throws IOException {
+        if (Arrays.equals(Files.readAllBytes(new File(actual).toPath()),
+                Files.readAllBytes(new File(expected).toPath()))) {
+            System.out.println(check + ": " + actual + " OK");
+        }
+        else {
+            System.out.println(check + ": " + actual + " differs from "
+                    + expected);
+            failures += 1;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 0) {
+            System.err.println("usage: ConcordanceCheck");
+            System.exit(2);
+        }
+
+        File directory = null;
+        int failures = 0;
+        try {
+            directory = CheckFiles.createDirectory("concordance");
+            ConcordanceCheck check = new ConcordanceCheck(directory);
+            check.check_corpus();
+            check.check_state();
+            failures = check.failures;
+        }
+        catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            System.exit(2);
+        }
+        catch (ReflectiveOperationException e) {
+            System.err.println("Cannot find the concordance sample: " + e);
+            System.exit(2);
+        }
+        finally {
+            CheckFiles.delete(directory);
+        }
+
+        System.out.println(failures == 0 ? "All checks passed"
+                : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
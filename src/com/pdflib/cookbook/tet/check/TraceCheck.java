@@ -0,0 +1,137 @@
+package com.pdflib.cookbook.tet.check;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.analysis.AnalysisEngine;
+import com.pdflib.cookbook.tet.analysis.ConcordanceAnalyzer;
+import com.pdflib.cookbook.tet.backend.FakeDocument;
+import com.pdflib.cookbook.tet.backend.FakeTetBackend;
+import com.pdflib.cookbook.tet.backend.RecordingTetBackend;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+import com.pdflib.cookbook.tet.backend.TetTrace;
+
+/**
+ * Record and replay check of {@link TetTrace}: a session is recorded from
+ * generated documents served by {@link FakeTetBackend}, without the native
+ * TET library, and replayed from the trace, and the reports of the
+ * {@link AnalysisEngine} must be identical.
+ * <p>
+ * The session is recorded once with the concordance alone, which fetches
+ * the text but no glyphs, so the replay must serve the recorded words, and
+ * once with all analyzers.
+ * <p>
+ * usage: TraceCheck
+ * <p>
+ * The exit status is 1 if a check fails.
+ */
+public class TraceCheck {
+    private static final String GENERATED_DOCUMENT = "generated.pdf";
+
+    private static final String HELLO_DOCUMENT = "hello.pdf";
+
+    private final File directory;
+
+    private int failures;
+
+    private TraceCheck(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Record a session with the given analyzers and compare the reports of
+     * the recording and of the replay.
+     */
+    private void check(String name, String[] analyzers)
+            throws IOException, TETException {
+        FakeTetBackend source = new FakeTetBackend();
+        source.addDocument(GENERATED_DOCUMENT, FakeDocument.generate(3, 200,
+                1));
+        FakeDocument hello = new FakeDocument();
+        int font = hello.addFont("Helvetica", false);
+        hello.addPage(595, 842).addText("hello world hello", font, 12, 50,
+                700);
+        source.addDocument(HELLO_DOCUMENT, hello);
+
+        File file = new File(directory, name + ".trace");
+        TetTrace.Writer trace = new TetTrace.Writer(file);
+        String recorded;
+        try {
+            recorded = run(new RecordingTetBackend(source, trace), analyzers);
+        }
+        finally {
+            trace.close();
+        }
+
+        FakeTetBackend replay = new FakeTetBackend();
+        TetTrace.load(file, replay);
+        String replayed = run(replay, analyzers);
+
+        if (recorded.equals(replayed)) {
+            System.out.println(name + ": OK");
+        }
+        else {
+            System.out.println(name + ": replay differs from recording");
+            System.out.println("recording:");
+            System.out.print(recorded);
+            System.out.println("replay:");
+            System.out.print(replayed);
+            failures += 1;
+        }
+    }
+
+    /**
+     * @return the reports of the analyzers for the documents
+     */
+    private static String run(TetBackend tet, String[] analyzers)
+            throws TETException, UnsupportedEncodingException {
+        AnalysisEngine engine = new AnalysisEngine();
+        for (String name : analyzers) {
+            engine.addAnalyzer(AnalysisEngine.createAnalyzer(name));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        engine.process(tet, GENERATED_DOCUMENT, out);
+        engine.process(tet, HELLO_DOCUMENT, out);
+        out.close();
+        return bytes.toString("UTF-8");
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 0) {
+            System.err.println("usage: TraceCheck");
+            System.exit(2);
+        }
+
+        File directory = null;
+        int failures = 0;
+        try {
+            directory = CheckFiles.createDirectory("trace");
+            TraceCheck check = new TraceCheck(directory);
+            check.check("text only", new String[] { "concordance" });
+            check.check("all analyzers", new String[] { "concordance",
+                    "font_statistics", "identify_ocr", "image_count" });
+            failures = check.failures;
+        }
+        catch (IOException e) {
+            System.err.println("Error accessing trace file: " + e.getMessage());
+            System.exit(2);
+        }
+        catch (TETException e) {
+            System.err.println("Error " + e.get_errnum() + " in "
+                    + e.get_apiname() + "(): " + e.get_errmsg());
+            System.exit(2);
+        }
+        finally {
+            CheckFiles.delete(directory);
+        }
+
+        System.out.println(failures == 0 ? "All checks passed"
+                : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
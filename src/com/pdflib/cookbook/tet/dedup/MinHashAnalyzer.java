@@ -0,0 +1,90 @@
+package com.pdflib.cookbook.tet.dedup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.analysis.AnalysisEngine;
+import com.pdflib.cookbook.tet.analysis.AnalyzerAdapter;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+
+/**
+ * Analyzer that computes the MinHash signature of each document from the
+ * words delivered by the {@link AnalysisEngine}, and appends it to a
+ * {@link SignatureIndex}. The text is shingled while it is extracted, so no
+ * text needs to be stored for the near-duplicate detection.
+ */
+public class MinHashAnalyzer extends AnalyzerAdapter {
+    private final MinHasher hasher;
+
+    private final SignatureIndex.Writer index;
+
+    private final int[] signature;
+
+    private String filename;
+
+    /**
+     * Exception from writing the index, rethrown by {@link #checkError()}.
+     */
+    private IOException error;
+
+    /**
+     * @param hasher
+     *            The MinHash parameters
+     * @param index
+     *            The index to append the signatures to
+     */
+    public MinHashAnalyzer(MinHasher hasher, SignatureIndex.Writer index) {
+        this.hasher = hasher;
+        this.index = index;
+        this.signature = new int[hasher.getNumHashes()];
+    }
+
+    public String getName() {
+        return "minhash";
+    }
+
+    public String getGranularity() {
+        return GRANULARITY_WORD;
+    }
+
+    public void startDocument(TetBackend tet, int doc, String filename) {
+        this.filename = filename;
+        hasher.reset();
+    }
+
+    /**
+     * With granularity=word each chunk is a word.
+     */
+    public void text(String text) {
+        hasher.addWord(text);
+    }
+
+    public void endDocument(TetBackend tet, int doc, PrintStream out)
+            throws TETException {
+        hasher.getSignature(signature);
+        long shingles = hasher.getShingleCount();
+        if (error != null) {
+            return;
+        }
+        try {
+            int id = index.add(filename, shingles, signature);
+            out.println("Document \"" + filename + "\": " + shingles
+                    + " shingles, index entry " + id);
+        }
+        catch (IOException e) {
+            error = e;
+        }
+    }
+
+    /**
+     * @throws IOException
+     *             Writing the index failed; the documents after the failure
+     *             have not been added
+     */
+    public void checkError() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.pdflib.cookbook.tet.dedup;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Computes the MinHash signature of a text from its word shingles.
+ * <p>
+ * The words of a document are fed one at a time with {@link #addWord}, as
+ * they come from get_text() with granularity=word. Each run of
+ * <code>shingleSize</code> consecutive words is one shingle. The shingle is
+ * hashed to 64 bits, and each of the <code>numHashes</code> hash functions
+ * h(x) = (a * x + b) &gt;&gt;&gt; 32, with random odd a and random b, keeps the
+ * minimum over all shingles. Only the signature is kept, not the text, so the
+ * memory needed does not depend on the size of the document.
+ * <p>
+ * The fraction of equal positions in two signatures estimates the Jaccard
+ * similarity of the shingle sets of the two documents.
+ * <p>
+ * Words are lowercased, and words without any letter or digit are skipped,
+ * so that punctuation and case changes between re-issues do not matter.
+ * Documents with fewer words than the shingle size form a single shingle.
+ * <p>
+ * A MinHasher is not thread-safe, but cheap to create for each thread;
+ * instances with the same parameters produce comparable signatures.
+ */
+public class MinHasher {
+    private final int shingleSize;
+
+    private final long seed;
+
+    private final long[] a;
+
+    private final long[] b;
+
+    /**
+     * Current minima, stored as unsigned values shifted into the signed range
+     * so that they can be compared with the signed operators.
+     */
+    private final int[] minima;
+
+    /**
+     * The hashes of the last shingleSize words.
+     */
+    private final long[] window;
+
+    private long wordCount;
+
+    private long shingleCount;
+
+    /**
+     * @param numHashes
+     *            Number of hash functions, i.e. the length of the signature
+     * @param shingleSize
+     *            Number of consecutive words in a shingle
+     * @param seed
+     *            Seed for the hash functions; signatures are only comparable
+     *            if they were computed with the same parameters
+     */
+    public MinHasher(int numHashes, int shingleSize, long seed) {
+        if (numHashes < 1 || shingleSize < 1) {
+            throw new IllegalArgumentException("numHashes and shingleSize "
+                    + "must be positive");
+        }
+        this.shingleSize = shingleSize;
+        this.seed = seed;
+        a = new long[numHashes];
+        b = new long[numHashes];
+        Random random = new Random(seed);
+        for (int i = 0; i < numHashes; i += 1) {
+            a[i] = random.nextLong() | 1;
+            b[i] = random.nextLong();
+        }
+        minima = new int[numHashes];
+        window = new long[shingleSize];
+        reset();
+    }
+
+    public int getNumHashes() {
+        return minima.length;
+    }
+
+    public int getShingleSize() {
+        return shingleSize;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Start a new document.
+     */
+    public void reset() {
+        Arrays.fill(minima, Integer.MAX_VALUE);
+        wordCount = 0;
+        shingleCount = 0;
+    }
+
+    /**
+     * Add the next word of the document.
+     */
+    public void addWord(CharSequence word) {
+        long h = 0xcbf29ce484222325L;
+        boolean significant = false;
+        for (int i = 0; i < word.length(); i += 1) {
+            char c = word.charAt(i);
+            if (c < 0x80) {
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                significant |= (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+            }
+            else if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+                significant = true;
+            }
+            h = (h ^ c) * 0x100000001b3L;
+        }
+        if (!significant) {
+            return;
+        }
+
+        window[(int) (wordCount % shingleSize)] = mix(h);
+        wordCount += 1;
+        if (wordCount >= shingleSize) {
+            addShingle();
+        }
+    }
+
+    /**
+     * @return the number of shingles of the current document so far,
+     *         including the single short shingle of a document with fewer
+     *         words than the shingle size
+     */
+    public long getShingleCount() {
+        return wordCount > 0 && wordCount < shingleSize ? 1 : shingleCount;
+    }
+
+    /**
+     * Store the signature of the current document.
+     *
+     * @param signature
+     *            Array of length getNumHashes(); all entries are
+     *            Integer.MAX_VALUE if the document has no words
+     */
+    public void getSignature(int[] signature) {
+        if (wordCount > 0 && wordCount < shingleSize) {
+            /* a short document is a single shingle of all its words */
+            addShingle();
+        }
+        System.arraycopy(minima, 0, signature, 0, minima.length);
+    }
+
+    /**
+     * @return the estimated Jaccard similarity of the documents with the
+     *         given signatures
+     */
+    public static double similarity(int[] s1, int[] s2) {
+        int equal = 0;
+        for (int i = 0; i < s1.length; i += 1) {
+            if (s1[i] == s2[i]) {
+                equal += 1;
+            }
+        }
+        return (double) equal / s1.length;
+    }
+
+    /**
+     * Hash the words in the window in their order and update the minima.
+     */
+    private void addShingle() {
+        int n = (int) Math.min(wordCount, shingleSize);
+        long start = wordCount - n;
+        long x = 0;
+        for (long i = start; i < wordCount; i += 1) {
+            x = x * 0x9e3779b97f4a7c15L + window[(int) (i % shingleSize)];
+        }
+        x = mix(x);
+
+        final long[] a = this.a;
+        final long[] b = this.b;
+        final int[] minima = this.minima;
+        for (int i = 0; i < minima.length; i += 1) {
+            int v = (int) ((a[i] * x + b[i]) >>> 32) ^ Integer.MIN_VALUE;
+            if (v < minima[i]) {
+                minima[i] = v;
+            }
+        }
+        shingleCount += 1;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads the bits of a 64 bit value.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53a87a3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
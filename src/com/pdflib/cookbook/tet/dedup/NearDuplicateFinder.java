@@ -0,0 +1,496 @@
+package com.pdflib.cookbook.tet.dedup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds clusters of near-duplicate documents in a {@link SignatureIndex} with
+ * locality-sensitive hashing.
+ * <p>
+ * The signatures are split into bands of rows; two documents become
+ * candidates if all rows of at least one band are equal. The number of bands
+ * and rows is chosen so that pairs with the threshold similarity are found
+ * with a probability of at least 99%. Every candidate pair is verified with
+ * the full signatures, and verified pairs are merged into clusters with a
+ * union-find structure.
+ * <p>
+ * To keep the memory bounded for large corpora, the band hashes are not kept
+ * in a hash table. Each (band hash, document) pair is packed into a long and
+ * collected in a buffer of fixed size; full buffers are sorted and written to
+ * temporary files, which are then merged. Documents with the same band hash
+ * are adjacent in the merged sequence. Besides the buffer only 4 bytes per
+ * document are held in memory for the union-find, plus 8 bytes per document
+ * that ends up in a cluster.
+ * <p>
+ * At most {@link #MAX_DOCUMENTS} documents are supported, as 26 bits of the
+ * packed pairs hold the document number. The remaining 38 bits of the band
+ * hash make accidental collisions rare, and they are removed by the
+ * verification anyway.
+ */
+public class NearDuplicateFinder {
+    private static final int DOC_BITS = 26;
+
+    private static final long DOC_MASK = (1L << DOC_BITS) - 1;
+
+    /**
+     * Maximum number of documents in an index.
+     */
+    public static final int MAX_DOCUMENTS = 1 << DOC_BITS;
+
+    /**
+     * Required probability that a pair with the threshold similarity becomes
+     * a candidate.
+     */
+    private static final double RECALL = 0.99;
+
+    /**
+     * Maximum number of documents of a band bucket that new documents are
+     * compared with. Buckets with many documents occur for large groups of
+     * near-duplicates; their members are usually already in the same cluster
+     * and are then not compared at all.
+     */
+    private static final int MAX_REPRESENTATIVES = 16;
+
+    private final SignatureIndex index;
+
+    private final double threshold;
+
+    private final int bands;
+
+    private final int rows;
+
+    private final int bufferSize;
+
+    private final File tempDirectory;
+
+    /**
+     * Union-find parent of each document; the root of a cluster is its
+     * smallest document number.
+     */
+    private int[] parent;
+
+    private long comparisons;
+
+    private long verifiedPairs;
+
+    private int runs;
+
+    /**
+     * @param index
+     *            The signature index
+     * @param threshold
+     *            Minimum estimated Jaccard similarity of near-duplicates,
+     *            between 0 and 1
+     * @param bufferSize
+     *            Number of band hashes that are sorted in memory; each takes
+     *            8 bytes
+     * @param tempDirectory
+     *            Directory for the sorted runs, or null for the default
+     *            temporary directory
+     */
+    public NearDuplicateFinder(SignatureIndex index, double threshold,
+            int bufferSize, File tempDirectory) {
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("threshold must be in (0, 1]");
+        }
+        this.index = index;
+        this.threshold = threshold;
+        this.bufferSize = bufferSize;
+        this.tempDirectory = tempDirectory;
+
+        int numHashes = index.getNumHashes();
+        int r = 1;
+        for (int candidate = 2; candidate <= numHashes; candidate += 1) {
+            int b = numHashes / candidate;
+            double p = 1 - Math.pow(1 - Math.pow(threshold, candidate), b);
+            if (p >= RECALL) {
+                r = candidate;
+            }
+        }
+        rows = r;
+        bands = numHashes / r;
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of signature comparisons done by the last call to
+     *         findClusters()
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+    /**
+     * @return the number of pairs above the threshold that joined two
+     *         clusters
+     */
+    public long getVerifiedPairs() {
+        return verifiedPairs;
+    }
+
+    /**
+     * @return the number of sorted runs written to disk
+     */
+    public int getRuns() {
+        return runs;
+    }
+
+    /**
+     * Find the clusters of near-duplicates.
+     *
+     * @return the clusters with at least two documents, each as ascending
+     *         array of document numbers, ordered by their first document
+     */
+    public List<int[]> findClusters() throws IOException {
+        final int size = index.size();
+        parent = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            parent[i] = i;
+        }
+        comparisons = 0;
+        verifiedPairs = 0;
+        runs = 0;
+
+        List<File> runFiles = new ArrayList<File>();
+        try {
+            long[] buffer = new long[Math.max(bufferSize, bands)];
+            int n = 0;
+
+            int[] signature = new int[index.getNumHashes()];
+            SignatureIndex.Cursor cursor = index.cursor();
+            try {
+                long shingles;
+                for (int doc = 0; (shingles = cursor.next(signature)) != -1;
+                        doc += 1) {
+                    /*
+                     * Documents without words all have the initial signature
+                     * and must not be clustered.
+                     */
+                    if (shingles == 0) {
+                        continue;
+                    }
+                    if (n + bands > buffer.length) {
+                        runFiles.add(writeRun(buffer, n));
+                        n = 0;
+                    }
+                    for (int band = 0; band < bands; band += 1) {
+                        buffer[n++] = (bandHash(signature, band) & ~DOC_MASK)
+                                | doc;
+                    }
+                }
+            }
+            finally {
+                cursor.close();
+            }
+
+            if (runFiles.isEmpty()) {
+                Arrays.sort(buffer, 0, n);
+                scanBuckets(new ArraySource(buffer, n));
+            }
+            else {
+                runFiles.add(writeRun(buffer, n));
+                buffer = null;
+                MergeSource source = new MergeSource(runFiles);
+                try {
+                    scanBuckets(source);
+                }
+                finally {
+                    source.close();
+                }
+            }
+        }
+        finally {
+            for (File run : runFiles) {
+                run.delete();
+            }
+        }
+
+        return collectClusters();
+    }
+
+    /**
+     * Read the signature of a document from the index.
+     */
+    public int[] signature(int doc) throws IOException {
+        int[] signature = new int[index.getNumHashes()];
+        index.read(doc, signature);
+        return signature;
+    }
+
+    private long bandHash(int[] signature, int band) {
+        long h = (band + 1) * 0x9e3779b97f4a7c15L;
+        int start = band * rows;
+        for (int i = start; i < start + rows; i += 1) {
+            h = (h ^ signature[i]) * 0x100000001b3L;
+        }
+        return MinHasher.mix(h);
+    }
+
+    private File writeRun(long[] buffer, int n) throws IOException {
+        Arrays.sort(buffer, 0, n);
+        File run = File.createTempFile("lsh", ".run", tempDirectory);
+        run.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), 1 << 16));
+        try {
+            for (int i = 0; i < n; i += 1) {
+                out.writeLong(buffer[i]);
+            }
+        }
+        finally {
+            out.close();
+        }
+        runs += 1;
+        return run;
+    }
+
+    /**
+     * Process the sorted band hashes bucket by bucket.
+     */
+    private void scanBuckets(KeySource source) throws IOException {
+        int[] bucket = new int[16];
+        int n = 0;
+        long current = 0;
+
+        int[][] representatives = new int[MAX_REPRESENTATIVES][];
+        int[] representativeDocs = new int[MAX_REPRESENTATIVES];
+
+        while (source.hasNext()) {
+            long key = source.next();
+            long hash = key & ~DOC_MASK;
+            if (n > 0 && hash != current) {
+                processBucket(bucket, n, representatives, representativeDocs);
+                n = 0;
+            }
+            current = hash;
+            if (n == bucket.length) {
+                bucket = Arrays.copyOf(bucket, n * 2);
+            }
+            bucket[n++] = (int) (key & DOC_MASK);
+        }
+        if (n > 0) {
+            processBucket(bucket, n, representatives, representativeDocs);
+        }
+    }
+
+    /**
+     * Verify the documents of a bucket against the representatives of the
+     * clusters found in the bucket so far.
+     */
+    private void processBucket(int[] bucket, int n, int[][] representatives,
+            int[] representativeDocs) throws IOException {
+        if (n < 2) {
+            return;
+        }
+        int count = 0;
+        for (int i = 0; i < n; i += 1) {
+            int doc = bucket[i];
+            int root = find(doc);
+
+            boolean done = false;
+            for (int j = 0; j < count && !done; j += 1) {
+                done = find(representativeDocs[j]) == root;
+            }
+            if (done) {
+                continue;
+            }
+
+            int[] signature = null;
+            for (int j = 0; j < count && !done; j += 1) {
+                if (signature == null) {
+                    signature = signature(doc);
+                }
+                comparisons += 1;
+                if (MinHasher.similarity(signature,
+                        representatives[j]) >= threshold) {
+                    union(doc, representativeDocs[j]);
+                    verifiedPairs += 1;
+                    done = true;
+                }
+            }
+            if (!done && count < MAX_REPRESENTATIVES) {
+                representatives[count] = signature != null ? signature
+                        : signature(doc);
+                representativeDocs[count] = doc;
+                count += 1;
+            }
+        }
+    }
+
+    private int find(int doc) {
+        while (parent[doc] != doc) {
+            parent[doc] = parent[parent[doc]];
+            doc = parent[doc];
+        }
+        return doc;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra < rb) {
+            parent[rb] = ra;
+        }
+        else if (rb < ra) {
+            parent[ra] = rb;
+        }
+    }
+
+    private List<int[]> collectClusters() {
+        BitSet roots = new BitSet();
+        long[] members = new long[16];
+        int n = 0;
+        for (int doc = 0; doc < parent.length; doc += 1) {
+            int root = find(doc);
+            if (root != doc) {
+                if (n + 2 > members.length) {
+                    members = Arrays.copyOf(members, members.length * 2);
+                }
+                members[n++] = (long) root << 32 | doc;
+                if (!roots.get(root)) {
+                    roots.set(root);
+                    members[n++] = (long) root << 32 | root;
+                }
+            }
+        }
+        Arrays.sort(members, 0, n);
+
+        List<int[]> clusters = new ArrayList<int[]>();
+        int start = 0;
+        while (start < n) {
+            int end = start + 1;
+            while (end < n && members[end] >>> 32 == members[start] >>> 32) {
+                end += 1;
+            }
+            int[] cluster = new int[end - start];
+            for (int i = start; i < end; i += 1) {
+                cluster[i - start] = (int) members[i];
+            }
+            clusters.add(cluster);
+            start = end;
+        }
+        parent = null;
+        return clusters;
+    }
+
+    /**
+     * Sorted sequence of packed band hashes.
+     */
+    private interface KeySource {
+        boolean hasNext() throws IOException;
+
+        long next() throws IOException;
+    }
+
+    private static class ArraySource implements KeySource {
+        private final long[] keys;
+
+        private final int n;
+
+        private int pos;
+
+        ArraySource(long[] keys, int n) {
+            this.keys = keys;
+            this.n = n;
+        }
+
+        public boolean hasNext() {
+            return pos < n;
+        }
+
+        public long next() {
+            return keys[pos++];
+        }
+    }
+
+    /**
+     * K-way merge of the sorted runs.
+     */
+    private static class MergeSource implements KeySource {
+        private static class Run {
+            final DataInputStream in;
+
+            long head;
+
+            Run(File file) throws IOException {
+                in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file), 1 << 16));
+            }
+
+            boolean advance() throws IOException {
+                try {
+                    head = in.readLong();
+                    return true;
+                }
+                catch (EOFException e) {
+                    in.close();
+                    return false;
+                }
+            }
+        }
+
+        private final PriorityQueue<Run> queue;
+
+        private final List<Run> open = new ArrayList<Run>();
+
+        MergeSource(List<File> files) throws IOException {
+            queue = new PriorityQueue<Run>(files.size(), new Comparator<Run>() {
+                public int compare(Run r1, Run r2) {
+                    return Long.compare(r1.head, r2.head);
+                }
+            });
+            try {
+                for (File file : files) {
+                    Run run = new Run(file);
+                    open.add(run);
+                    if (run.advance()) {
+                        queue.add(run);
+                    }
+                }
+            }
+            catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        public long next() throws IOException {
+            Run run = queue.poll();
+            long key = run.head;
+            if (run.advance()) {
+                queue.add(run);
+            }
+            return key;
+        }
+
+        void close() throws IOException {
+            for (Run run : open) {
+                run.in.close();
+            }
+        }
+    }
+}
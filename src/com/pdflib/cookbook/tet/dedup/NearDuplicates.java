@@ -0,0 +1,287 @@
+package com.pdflib.cookbook.tet.dedup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.text.NumberFormat;
+import java.util.List;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.analysis.AnalysisEngine;
+import com.pdflib.cookbook.tet.util.EventLog;
+import com.pdflib.cookbook.tet.util.ReportWriter;
+
+/**
+ * Detect near-duplicate documents in a corpus, e.g. re-issued PDFs whose text
+ * is almost identical.
+ * <p>
+ * usage:<br>
+ * NearDuplicates add [ -hashes &lt;n&gt; ] [ -shingle &lt;words&gt; ]
+ * &lt;index directory&gt; &lt;PDF document&gt; ...<br>
+ * NearDuplicates clusters [ -threshold &lt;similarity&gt; ] [ -buffer
+ * &lt;n&gt; ] &lt;index directory&gt;
+ * <p>
+ * "add" extracts the words of the documents, computes their MinHash
+ * signatures while the text is extracted (see {@link MinHasher}), and appends
+ * them to the {@link SignatureIndex} in the index directory. It can be run any
+ * number of times to extend the index; -hashes (default 128) and -shingle
+ * (default 5) only take effect when the index is created, and must be given
+ * with the same values for an existing index.
+ * <p>
+ * "clusters" reports the clusters of documents whose estimated similarity is
+ * at least the threshold (default 0.9), see {@link NearDuplicateFinder}. The
+ * first document of each cluster is the one added first; for the others the
+ * estimated similarity to it is printed. -buffer sets the number of band
+ * hashes that are sorted in memory (default 4M, i.e. 32 MB); larger
+ * corpora are sorted in runs in the index directory.
+ * <p>
+ * The report can be written as JSONL, CSV or TSV with the system property
+ * com.pdflib.cookbook.tet.report.format, see {@link ReportWriter}.
+ * <p>
+ * Required software: TET 4 (for "add")
+ * <p>
+ * Required data: PDF documents
+ */
+public class NearDuplicates {
+    /**
+     * Global option list. The program expects the "resource" directory parallel
+     * to the "java" directory.
+     */
+    private static final String GLOBAL_OPTLIST = "searchpath={../resource/cmap "
+            + "../resource/glyphlist ../input}";
+
+    /**
+     * The encoding in which the output is sent to System.out. For running
+     * the example in a Windows command window, you can set this for example to
+     * "windows-1252" for getting Latin-1 output.
+     */
+    private static final String OUTPUT_ENCODING = System.getProperty("file.encoding");
+
+    /**
+     * Seed of the hash functions; all indexes use the same hash functions.
+     */
+    private static final long SEED = 0x5445544d48L;
+
+    private static final int DEFAULT_HASHES = 128;
+
+    private static final int DEFAULT_SHINGLE_SIZE = 5;
+
+    private static final double DEFAULT_THRESHOLD = 0.9;
+
+    private static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
+        if (args.length < 2) {
+            usage();
+        }
+        if (args[0].equals("add")) {
+            add(args);
+        }
+        else if (args[0].equals("clusters")) {
+            clusters(args);
+        }
+        else {
+            usage();
+        }
+    }
+
+    private static void add(String[] args) throws UnsupportedEncodingException {
+        int hashes = DEFAULT_HASHES;
+        int shingleSize = DEFAULT_SHINGLE_SIZE;
+        int i = 1;
+        for (; i < args.length - 1 && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-hashes")) {
+                hashes = intArg(args[i + 1]);
+            }
+            else if (args[i].equals("-shingle")) {
+                shingleSize = intArg(args[i + 1]);
+            }
+            else {
+                usage();
+            }
+        }
+        if (args.length - i < 2) {
+            usage();
+        }
+
+        PrintStream out = new PrintStream(System.out, true, OUTPUT_ENCODING);
+        MinHasher hasher = new MinHasher(hashes, shingleSize, SEED);
+        SignatureIndex.Writer index = null;
+        TET tet = null;
+        try {
+            index = new SignatureIndex.Writer(new File(args[i]), hasher);
+            MinHashAnalyzer analyzer = new MinHashAnalyzer(hasher, index);
+            AnalysisEngine engine = new AnalysisEngine();
+            engine.addAnalyzer(analyzer);
+
+            tet = new TET();
+            tet.set_option(GLOBAL_OPTLIST);
+            for (i += 1; i < args.length; i += 1) {
+                try {
+                    engine.process(tet, args[i], out);
+                }
+                catch (TETException e) {
+                    EventLog.getDefault().tetException(e, args[i], 0);
+
+                    /*
+                     * After a TETException the TET object must no longer be
+                     * used, continue with a fresh one.
+                     */
+                    tet.delete();
+                    tet = new TET();
+                    tet.set_option(GLOBAL_OPTLIST);
+                }
+                analyzer.checkError();
+            }
+            out.println("Documents in index: " + index.size());
+        }
+        catch (TETException e) {
+            System.err.println("Error " + e.get_errnum() + " in "
+                    + e.get_apiname() + "(): " + e.get_errmsg());
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.err.println("Error writing signature index: "
+                    + e.getMessage());
+            System.exit(1);
+        }
+        finally {
+            if (tet != null) {
+                tet.delete();
+            }
+            if (index != null) {
+                try {
+                    index.close();
+                }
+                catch (IOException e) {
+                    System.err.println("Error writing signature index: "
+                            + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void clusters(String[] args)
+            throws UnsupportedEncodingException {
+        double threshold = DEFAULT_THRESHOLD;
+        int bufferSize = DEFAULT_BUFFER_SIZE;
+        int i = 1;
+        for (; i < args.length - 1 && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-threshold")) {
+                try {
+                    threshold = Double.parseDouble(args[i + 1]);
+                }
+                catch (NumberFormatException e) {
+                    usage();
+                }
+                if (threshold <= 0 || threshold > 1) {
+                    usage();
+                }
+            }
+            else if (args[i].equals("-buffer")) {
+                bufferSize = intArg(args[i + 1]);
+            }
+            else {
+                usage();
+            }
+        }
+        if (args.length - i != 1) {
+            usage();
+        }
+
+        ReportWriter out = ReportWriter.open(OUTPUT_ENCODING);
+        SignatureIndex index = null;
+        try {
+            File directory = new File(args[i]);
+            index = new SignatureIndex(directory);
+            NearDuplicateFinder finder = new NearDuplicateFinder(index,
+                    threshold, bufferSize, directory);
+
+            long start = System.nanoTime();
+            List<int[]> clusters = finder.findClusters();
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            NumberFormat format = NumberFormat.getInstance();
+            format.setMinimumFractionDigits(2);
+            format.setMaximumFractionDigits(2);
+
+            out.println("Near-duplicate clusters in \"" + directory
+                    + "\" with similarity >= " + threshold + ":");
+            out.println();
+            int duplicates = 0;
+            for (int c = 0; c < clusters.size(); c += 1) {
+                int[] cluster = clusters.get(c);
+                int[] first = finder.signature(cluster[0]);
+                out.println("Cluster " + (c + 1) + " (" + cluster.length
+                        + " documents):");
+                for (int j = 0; j < cluster.length; j += 1) {
+                    String name = index.name(cluster[j]);
+                    double similarity = j == 0 ? 1 : MinHasher.similarity(
+                            first, finder.signature(cluster[j]));
+                    if (out.isText()) {
+                        out.print("  " + name);
+                        if (j > 0) {
+                            out.print(" (" + format.format(similarity) + ")");
+                        }
+                        out.println();
+                    }
+                    else {
+                        out.startRecord().field("cluster", c + 1)
+                                .field("document", name)
+                                .field("similarity", similarity).endRecord();
+                    }
+                }
+                duplicates += cluster.length - 1;
+            }
+
+            out.println();
+            out.println(index.size() + " documents, " + clusters.size()
+                    + " clusters, " + duplicates + " near-duplicates");
+            out.println(finder.getBands() + " bands of " + finder.getRows()
+                    + " rows, " + finder.getComparisons()
+                    + " signature comparisons, " + finder.getRuns()
+                    + " sorted runs, " + millis + " ms");
+        }
+        catch (IOException e) {
+            System.err.println("Error reading signature index: "
+                    + e.getMessage());
+            System.exit(1);
+        }
+        finally {
+            out.close();
+            if (index != null) {
+                try {
+                    index.close();
+                }
+                catch (IOException e) {
+                    /* nothing was written */
+                }
+            }
+        }
+    }
+
+    private static int intArg(String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n < 1) {
+                usage();
+            }
+            return n;
+        }
+        catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: NearDuplicates add [ -hashes <n> ] "
+                + "[ -shingle <words> ] <index directory> <PDF document> ...");
+        System.err.println("       NearDuplicates clusters "
+                + "[ -threshold <similarity> ] [ -buffer <n> ] "
+                + "<index directory>");
+        System.exit(1);
+    }
+}
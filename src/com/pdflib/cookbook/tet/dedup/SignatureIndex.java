@@ -0,0 +1,367 @@
+package com.pdflib.cookbook.tet.dedup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * On-disk index of the MinHash signatures of a corpus.
+ * <p>
+ * The index is a directory with two files. Documents are numbered in the
+ * order in which they were added; the signature records have a fixed size,
+ * so the signature of a document is read with a single positional read, and
+ * the whole index can be scanned sequentially without holding it in memory.
+ * <p>
+ * File layout (big-endian):
+ *
+ * <pre>
+ * signatures:  header: int magic "TMH1", int version, int numHashes,
+ *              int shingleSize, long seed
+ *              per document: long nameOffset, long shingleCount,
+ *              int signature[numHashes]
+ * names:       per document: the name as written by
+ *              DataOutputStream.writeUTF()
+ * </pre>
+ *
+ * Documents are appended by a {@link Writer}; an index can be extended by
+ * later runs with the same MinHash parameters.
+ */
+public class SignatureIndex implements Closeable {
+    private static final int MAGIC = 0x544d4831; // "TMH1"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    static final String SIGNATURES_FILE = "signatures";
+
+    static final String NAMES_FILE = "names";
+
+    private final File directory;
+
+    private final RandomAccessFile signatures;
+
+    private final RandomAccessFile names;
+
+    private final int numHashes;
+
+    private final int shingleSize;
+
+    private final long seed;
+
+    private final int recordSize;
+
+    private final int size;
+
+    private final ByteBuffer record;
+
+    /**
+     * Open an index for reading.
+     *
+     * @param directory
+     *            The index directory written by {@link Writer}
+     *
+     * @throws IOException
+     *             The index could not be read
+     */
+    public SignatureIndex(File directory) throws IOException {
+        this.directory = directory;
+        signatures = new RandomAccessFile(new File(directory,
+                SIGNATURES_FILE), "r");
+        try {
+            names = new RandomAccessFile(new File(directory, NAMES_FILE), "r");
+        }
+        catch (IOException e) {
+            signatures.close();
+            throw e;
+        }
+        try {
+            if (signatures.length() < HEADER_SIZE
+                    || signatures.readInt() != MAGIC
+                    || signatures.readInt() != VERSION) {
+                throw new IOException("\"" + directory
+                        + "\" is not a signature index of version " + VERSION);
+            }
+            numHashes = signatures.readInt();
+            shingleSize = signatures.readInt();
+            seed = signatures.readLong();
+            recordSize = recordSize(numHashes);
+
+            long count = (signatures.length() - HEADER_SIZE) / recordSize;
+            if (count > NearDuplicateFinder.MAX_DOCUMENTS) {
+                throw new IOException("signature index \"" + directory
+                        + "\" has too many documents");
+            }
+            size = (int) count;
+            record = ByteBuffer.allocate(recordSize);
+        }
+        catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of documents in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public int getShingleSize() {
+        return shingleSize;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Read the signature of a document.
+     *
+     * @param doc
+     *            Document number, 0 to size() - 1
+     * @param signature
+     *            Array of length getNumHashes() for the signature
+     *
+     * @return the number of shingles of the document, 0 for a document
+     *         without text
+     */
+    public synchronized long read(int doc, int[] signature) throws IOException {
+        readRecord(doc);
+        record.getLong();
+        long shingleCount = record.getLong();
+        record.asIntBuffer().get(signature, 0, numHashes);
+        return shingleCount;
+    }
+
+    /**
+     * @return the name of a document
+     */
+    public synchronized String name(int doc) throws IOException {
+        readRecord(doc);
+        names.seek(record.getLong(0));
+        return names.readUTF();
+    }
+
+    /**
+     * @return a cursor for reading all signatures in document order
+     */
+    public Cursor cursor() throws IOException {
+        return new Cursor();
+    }
+
+    public void close() throws IOException {
+        try {
+            signatures.close();
+        }
+        finally {
+            if (names != null) {
+                names.close();
+            }
+        }
+    }
+
+    private void readRecord(int doc) throws IOException {
+        if (doc < 0 || doc >= size) {
+            throw new IndexOutOfBoundsException("document " + doc);
+        }
+        record.clear();
+        FileChannel channel = signatures.getChannel();
+        long pos = HEADER_SIZE + (long) doc * recordSize;
+        while (record.hasRemaining()) {
+            if (channel.read(record, pos + record.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        record.flip();
+    }
+
+    private static int recordSize(int numHashes) {
+        return 16 + 4 * numHashes;
+    }
+
+    /**
+     * Sequential reader for the signatures of all documents.
+     */
+    public class Cursor implements Closeable {
+        private final DataInputStream in;
+
+        private int doc;
+
+        private Cursor() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(new File(directory, SIGNATURES_FILE)),
+                    1 << 16));
+            in.skipBytes(HEADER_SIZE);
+        }
+
+        /**
+         * Read the signature of the next document.
+         *
+         * @return the number of shingles of the document, or -1 after the
+         *         last document
+         */
+        public long next(int[] signature) throws IOException {
+            if (doc == size) {
+                return -1;
+            }
+            in.readLong();
+            long shingleCount = in.readLong();
+            for (int i = 0; i < numHashes; i += 1) {
+                signature[i] = in.readInt();
+            }
+            doc += 1;
+            return shingleCount;
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Appends documents to a new or an existing index. The methods are
+     * synchronized, so a writer can be shared by several extraction threads.
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream signatures;
+
+        private final DataOutputStream names;
+
+        private final int numHashes;
+
+        private long namesLength;
+
+        private int size;
+
+        /**
+         * Create an index, or open an existing index for appending.
+         *
+         * @param directory
+         *            The index directory; it is created if necessary
+         * @param hasher
+         *            The MinHash parameters; for an existing index they must
+         *            be the same as the ones the index was created with
+         *
+         * @throws IOException
+         *             The index could not be created, or the parameters do not
+         *             match the existing index
+         */
+        public Writer(File directory, MinHasher hasher) throws IOException {
+            this.numHashes = hasher.getNumHashes();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("cannot create index directory \""
+                        + directory + "\"");
+            }
+
+            File signaturesFile = new File(directory, SIGNATURES_FILE);
+            File namesFile = new File(directory, NAMES_FILE);
+            int recordSize = recordSize(numHashes);
+            boolean exists = signaturesFile.length() >= HEADER_SIZE;
+            if (exists) {
+                RandomAccessFile file = new RandomAccessFile(signaturesFile,
+                        "rw");
+                try {
+                    if (file.readInt() != MAGIC || file.readInt() != VERSION
+                            || file.readInt() != numHashes
+                            || file.readInt() != hasher.getShingleSize()
+                            || file.readLong() != hasher.getSeed()) {
+                        throw new IOException("\"" + directory
+                                + "\" is not a signature index with the same "
+                                + "MinHash parameters");
+                    }
+                    /* drop an incomplete record left by an aborted run */
+                    long count = (file.length() - HEADER_SIZE) / recordSize;
+                    file.setLength(HEADER_SIZE + count * recordSize);
+                    size = (int) count;
+                }
+                finally {
+                    file.close();
+                }
+            }
+
+            namesLength = namesFile.length();
+            signatures = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(signaturesFile, exists), 1 << 16));
+            names = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(namesFile, true)));
+            if (!exists) {
+                signatures.writeInt(MAGIC);
+                signatures.writeInt(VERSION);
+                signatures.writeInt(numHashes);
+                signatures.writeInt(hasher.getShingleSize());
+                signatures.writeLong(hasher.getSeed());
+            }
+        }
+
+        /**
+         * Append a document.
+         *
+         * @return the document number
+         */
+        public synchronized int add(String name, long shingleCount,
+                int[] signature) throws IOException {
+            if (size == NearDuplicateFinder.MAX_DOCUMENTS) {
+                throw new IOException("signature index is full");
+            }
+            names.writeUTF(name);
+            long offset = namesLength;
+            namesLength += 2 + utfLength(name);
+
+            signatures.writeLong(offset);
+            signatures.writeLong(shingleCount);
+            for (int i = 0; i < numHashes; i += 1) {
+                signatures.writeInt(signature[i]);
+            }
+            return size++;
+        }
+
+        /**
+         * @return the length of a string in modified UTF-8, as written by
+         *         writeUTF() after the 2 length bytes
+         */
+        private static int utfLength(String s) {
+            int length = 0;
+            for (int i = 0; i < s.length(); i += 1) {
+                char c = s.charAt(i);
+                length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+            }
+            return length;
+        }
+
+        /**
+         * @return the number of documents in the index
+         */
+        public synchronized int size() {
+            return size;
+        }
+
+        public synchronized void close() throws IOException {
+            try {
+                names.close();
+            }
+            finally {
+                signatures.close();
+            }
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.pdflib.cookbook.tet.font;
 
-import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.text.NumberFormat;
 import java.util.Iterator;
@@ -10,6 +9,7 @@ import java.util.TreeSet;
 
 import com.pdflib.TET;
 import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.util.ReportWriter;
 
 /**
  * Identify the locations in a PDF where a particular font is used; print the
@@ -76,9 +76,11 @@ public class font_finder {
         System.getProperty("file.encoding");
     
     /**
-     * For printing to System.out in the encoding specified via OUTPUT_ENCODING.
+     * For printing to System.out in the encoding specified via OUTPUT_ENCODING,
+     * or as records in the format selected by the system property
+     * com.pdflib.cookbook.tet.report.format.
      */
-    private static PrintStream out;
+    private static ReportWriter out;
     
     /**
      * Command line flag for fonts to ignore.
@@ -359,6 +361,17 @@ public class font_finder {
             if (USE_ACROBAT_COORDINATES) {
                 yPos = pageHeight - yPos;
             }
+
+            /*
+             * Records always contain the file name and the complete chunk.
+             */
+            if (!out.isText()) {
+                out.startRecord().field("file", filename)
+                        .field("page", pageno).field("x", round(xPos))
+                        .field("y", round(yPos)).field("font", fontName)
+                        .field("text", chunk).endRecord();
+                return;
+            }
             
             /*
              * Only print filename if there is more than one
@@ -395,6 +408,13 @@ public class font_finder {
         }
     }
 
+    /**
+     * Round a coordinate to two decimals, like the text output.
+     */
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
     /**
      * Whether to include the font in the output.
      * 
@@ -459,8 +479,8 @@ public class font_finder {
      *             Unsupported encoding specified for System.out
      */
     public static void main(String[] args) throws UnsupportedEncodingException {
-        System.out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
-        out = new PrintStream(System.out, true, OUTPUT_ENCODING);
+        out = ReportWriter.open(OUTPUT_ENCODING);
+        out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
         
         Set<String> fontsToInclude = null;
         Set<String> fontsToIgnore = null;
@@ -525,6 +545,7 @@ public class font_finder {
                         fontsToIgnore, printFilenames);
                 f.execute();
             }
+            out.close();
         }
         else {
             usage();
@@ -532,6 +553,7 @@ public class font_finder {
     }
 
     private static void usage() {
+        out.close();
         System.err.println("usage: font_finder [ -ignorefonts <font list> | "
                 + " -includefonts <font list> ] <PDF document> ...");
         System.exit(1);
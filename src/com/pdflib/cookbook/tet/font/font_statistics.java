@@ -12,6 +12,9 @@ import java.util.Set;
 
 import com.pdflib.TET;
 import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.analysis.GlyphListener;
+import com.pdflib.cookbook.tet.analysis.GlyphRecord;
+import com.pdflib.cookbook.tet.analysis.GlyphStream;
 
 /**
  * For each font in a document display the following information:
@@ -32,7 +35,7 @@ import com.pdflib.TETException;
  *
  * @version $Id: font_statistics.java,v 1.14 2015/12/03 11:44:23 stm Exp $
  */
-class font_statistics {
+class font_statistics implements GlyphListener {
     /**
      * Global option list. The program expects the "resource" directory parallel
      * to the "java" directory.
@@ -140,6 +143,11 @@ class font_statistics {
      */
     private int totalUnmappedGlyphCount = 0;
 
+    /**
+     * Delivers the glyphs of each page to glyph().
+     */
+    private final GlyphStream glyphStream = new GlyphStream();
+
     /**
      * Comment
      *
@@ -164,58 +172,9 @@ class font_statistics {
         else {
             /*
              * Retrieve all glyphs for the page and count the characters and
-             * glyphs.
+             * glyphs in glyph().
              */
-            for (String text = tet.get_text(page); text != null; text = tet
-                    .get_text(page)) {
-                for (int ci = tet.get_char_info(page); ci != -1; ci = tet
-                        .get_char_info(page)) {
-                    Font fontInfo = fontInfos[tet.fontid];
-
-                    switch (tet.type) {
-                    case 0:
-                    case 1:
-                        /*
-                         * Normal character which corresponds to exactly one
-                         * glyph (0), or start of a sequence (1, e.g. ligature)
-                         */
-                        fontInfo.glyphCount += 1;
-                        totalGlyphCount += 1;
-                        
-                        if (tet.unknown) {
-                            fontInfo.unmappedGlyphCount += 1;
-                            totalUnmappedGlyphCount += 1;
-                        }
-                        else {
-                            fontInfo.unicodeCharacterCount += 1;
-                            totalUnicodeCharacterCount += 1;
-                        }
-
-                        count_pua(tet, fontInfo);
-                        break;
-
-                    case 10:
-                        /*
-                         * Continuation of a sequence (e.g. ligature). If a
-                         * glyph can be mapped to a sequence of Unicode
-                         * characters, it can by definition not be unknown.
-                         */
-                        fontInfo.unicodeCharacterCount += 1;
-                        totalUnicodeCharacterCount += 1;
-                        count_pua(tet, fontInfo);
-                        break;
-
-                    case 11:
-                        // Trailing value of a surrogate pair; the leading value
-                        // has type=0, 1, or 10.
-                        break;
-
-                    case 12:
-                        // Inserted word, line, or zone separator
-                        break;
-                    }
-                }
-            }
+            glyphStream.processPage(tet, page, pageno);
 
             if (tet.get_errnum() != 0) {
                 System.err.println("Error " + tet.get_errnum() + " in "
@@ -226,18 +185,71 @@ class font_statistics {
         }
     }
 
+    /**
+     * Count a single glyph.
+     *
+     * @param glyph
+     *            The details of the current glyph
+     */
+    public void glyph(GlyphRecord glyph) {
+        Font fontInfo = fontInfos[glyph.fontid];
+
+        switch (glyph.type) {
+        case 0:
+        case 1:
+            /*
+             * Normal character which corresponds to exactly one
+             * glyph (0), or start of a sequence (1, e.g. ligature)
+             */
+            fontInfo.glyphCount += 1;
+            totalGlyphCount += 1;
+            
+            if (glyph.unknown) {
+                fontInfo.unmappedGlyphCount += 1;
+                totalUnmappedGlyphCount += 1;
+            }
+            else {
+                fontInfo.unicodeCharacterCount += 1;
+                totalUnicodeCharacterCount += 1;
+            }
+
+            count_pua(glyph, fontInfo);
+            break;
+
+        case 10:
+            /*
+             * Continuation of a sequence (e.g. ligature). If a
+             * glyph can be mapped to a sequence of Unicode
+             * characters, it can by definition not be unknown.
+             */
+            fontInfo.unicodeCharacterCount += 1;
+            totalUnicodeCharacterCount += 1;
+            count_pua(glyph, fontInfo);
+            break;
+
+        case 11:
+            // Trailing value of a surrogate pair; the leading value
+            // has type=0, 1, or 10.
+            break;
+
+        case 12:
+            // Inserted word, line, or zone separator
+            break;
+        }
+    }
+
     /**
      * Analyze the current Unicode character, and update the PUA statistics if
      * it is inside the PUA range.
      *
-     * @param tet
-     *            The TET object describing the current Unicode character
+     * @param glyph
+     *            The glyph describing the current Unicode character
      * @param fontInfo
      *            The FontInfo object for the font of the current character
      */
-    private void count_pua(TET tet, Font fontInfo) {
-        if (tet.uv >= PUA_RANGE_START && tet.uv <= PUA_RANGE_END) {
-            Integer uv = new Integer(tet.uv);
+    private void count_pua(GlyphRecord glyph, Font fontInfo) {
+        if (glyph.uv >= PUA_RANGE_START && glyph.uv <= PUA_RANGE_END) {
+            Integer uv = new Integer(glyph.uv);
             Integer newValue;
             if (fontInfo.puaGlyphs.containsKey(uv)) {
                 // Increment counter
@@ -261,6 +273,7 @@ class font_statistics {
      */
     private font_statistics(String filename) {
         this.filename = filename;
+        glyphStream.addListener(this);
     }
 
     /**
@@ -2,6 +2,8 @@ package com.pdflib.cookbook.tet.image;
 
 import com.pdflib.TETException;
 import com.pdflib.TET;
+import com.pdflib.cookbook.tet.util.OptionList;
+import com.pdflib.cookbook.tet.util.PcosCache;
 
 /**
  * PDF image extractor based on PDFlib TET
@@ -63,6 +65,9 @@ public class images_per_page
             /* Get number of pages in the document */
             int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
 
+            /* Cache for the pCOS values queried per image */
+            PcosCache pcos = new PcosCache(tet, doc);
+
             /* Loop over pages and extract images  */
             for (pageno = 1; pageno <= n_pages; ++pageno)
             {
@@ -77,6 +82,9 @@ public class images_per_page
                     continue; /* try next page */
                 }
 
+		/* Common prefix of the image file names for this page */
+		String pagefilebase = outfilebase + "_p" + pageno + "_";
+
                 /*
                  * Retrieve all images on the page 
 		 */
@@ -88,7 +96,7 @@ public class images_per_page
 		    imagecount++;
 
 		    /* Report image details: pixel geometry, color space etc. */
-		    report_image_info(tet, doc, tet.imageid);
+		    report_image_info(tet, pcos, doc, tet.imageid);
 
 		    /* Report placement geometry */
 		    System.out.println("  placed on page " + pageno + 
@@ -98,7 +106,9 @@ public class images_per_page
 			tet.alpha + ", beta=" + 
 			tet.beta + ")");
 		    /* Write image data to file */
-		    imageoptlist = "filename={" + outfilebase + "_p" + pageno + "_" + imagecount + "_I" + tet.imageid + "}";
+		    imageoptlist = OptionList.builder()
+			.add("filename", pagefilebase + imagecount + "_I" + tet.imageid)
+			.format();
 
 		    if (tet.write_image_file(doc, tet.imageid, imageoptlist) == -1){
 			System.out.println("\nError [" + tet.get_errnum()+ 
@@ -113,9 +123,12 @@ public class images_per_page
 		    /* and retrieve it if present */
 		    if (maskid != -1){
 			System.out.print("  masked with ");
-			report_image_info(tet, doc, maskid);
+			report_image_info(tet, pcos, doc, maskid);
 
-			imageoptlist = "filename={" + outfilebase + "_p" + pageno + "_" + imagecount + "_I" + tet.imageid + "mask_I" + maskid +"}";
+			imageoptlist = OptionList.builder()
+			    .add("filename", pagefilebase + imagecount + "_I"
+				    + tet.imageid + "mask_I" + maskid)
+			    .format();
 
 			if (tet.write_image_file(doc, tet.imageid, imageoptlist) == -1){
 			    System.out.println("\nError [" + tet.get_errnum() + 
@@ -180,14 +193,12 @@ public class images_per_page
      *   or "consumed"
      * - "stencilmask" property, i.e. /ImageMask in PDF
      */
-    private static void report_image_info(TET tet, int doc, int imageid) throws com.pdflib.TETException {
+    private static void report_image_info(TET tet, PcosCache pcos, int doc, int imageid) throws com.pdflib.TETException {
 	int width, height, bpc, cs, components, mergetype, stencilmask;
 	String csname;
 
-	width = (int) tet.pcos_get_number(doc, 
-	    "images[" + imageid + "]/Width");
-	height = (int) tet.pcos_get_number(doc, 
-	    "images[" + imageid + "]/Height");
+	width = pcos.imageWidth(imageid);
+	height = pcos.imageHeight(imageid);
 	bpc = (int) tet.pcos_get_number(doc, 
 	    "images[" + imageid + "]/bpc");
 	cs = (int) tet.pcos_get_number(doc, 
@@ -195,8 +206,7 @@ public class images_per_page
 	components = (int) tet.pcos_get_number(doc, 
 	    "colorspaces[" + cs + "]/components");
 
-	csname = tet.pcos_get_string(doc, 
-	    "colorspaces[" + cs + "]/name");
+	csname = pcos.colorspaceName(cs);
 
 	System.out.print("image " + imageid + ": " + width + "x" + height +
 	    " pixel, " + components + "x" + bpc + " bit " + csname);
@@ -206,8 +216,7 @@ public class images_per_page
 	    String basecsname;
 	    basecs = (int) tet.pcos_get_number(doc, 
 		"colorspaces[" + cs + "]/baseid");
-	    basecsname = tet.pcos_get_string(doc, 
-		"colorspaces[" + basecs + "]/name");
+	    basecsname = pcos.colorspaceName(basecs);
 	    System.out.print(" " + basecsname);
 	}
 
@@ -0,0 +1,298 @@
+package com.pdflib.cookbook.tet.mains;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Additive-increase/multiplicative-decrease (AIMD) controller for the number
+ * of concurrently active extraction workers.
+ * <p>
+ * The batch runner starts the maximum number of worker threads, but a worker
+ * only extracts a file while it holds one of the permits handed out by
+ * {@link #acquire()}. Each call to {@link #run()} evaluates the last interval:
+ * <p>
+ * - if the memory headroom is below the configured minimum, the limit is
+ * halved<br>
+ * - if the pages/sec rate dropped noticeably after the previous increase, the
+ * additional worker did not pay off and the limit is halved<br>
+ * - otherwise the limit grows by one worker<br>
+ * <p>
+ * The limit always stays within the configured bounds, and every decision is
+ * logged to System.out so that runs can be audited afterwards.
+ */
+public class ConcurrencyController implements Runnable {
+    /**
+     * Relative drop of the pages/sec rate that counts as a throughput loss.
+     */
+    private static final double RATE_TOLERANCE = 0.05;
+
+    /**
+     * Factor applied to the limit on a multiplicative decrease.
+     */
+    private static final double DECREASE_FACTOR = 0.5;
+
+    /**
+     * Memory statistics of Linux, with the memory that is available without
+     * swapping, including the page cache that can be reclaimed.
+     */
+    private static final String MEMINFO = "/proc/meminfo";
+
+    /**
+     * Semaphore whose permit count can also be lowered while permits are held.
+     */
+    private static class WorkerPermits extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        WorkerPermits(int permits) {
+            super(permits, true);
+        }
+
+        void reduce(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+
+    private final ExtractionMetrics metrics;
+
+    private final int minWorkers;
+
+    private final int maxWorkers;
+
+    private final double minHeadroom;
+
+    private final WorkerPermits permits;
+
+    /**
+     * The old generation of the heap, or null if it cannot be identified.
+     */
+    private final MemoryPoolMXBean oldGeneration = findOldGeneration();
+
+    private int limit;
+
+    private long lastPages;
+
+    private long lastFiles;
+
+    private long lastNanos;
+
+    private double lastRate = -1;
+
+    private boolean lastWasIncrease = false;
+
+    /**
+     * @param metrics
+     *            the metrics of the batch run, used for the page counts
+     * @param minWorkers
+     *            lower bound for the number of active workers, at least 1
+     * @param maxWorkers
+     *            upper bound for the number of active workers
+     * @param minHeadroom
+     *            fraction of free memory below which the number of workers is
+     *            reduced, between 0 and 1
+     */
+    public ConcurrencyController(ExtractionMetrics metrics, int minWorkers,
+            int maxWorkers, double minHeadroom) {
+        if (minWorkers < 1 || maxWorkers < minWorkers) {
+            throw new IllegalArgumentException("illegal worker bounds "
+                    + minWorkers + ".." + maxWorkers);
+        }
+        this.metrics = metrics;
+        this.minWorkers = minWorkers;
+        this.maxWorkers = maxWorkers;
+        this.minHeadroom = minHeadroom;
+        this.limit = minWorkers;
+        this.permits = new WorkerPermits(minWorkers);
+        this.lastNanos = System.nanoTime();
+        metrics.setWorkerCount(limit);
+    }
+
+    /**
+     * Wait until the worker may extract the next file.
+     */
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    /**
+     * Give the permit back after the file has been extracted.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Evaluate the last control interval and adjust the number of workers.
+     */
+    public synchronized void run() {
+        long now = System.nanoTime();
+        long pages = metrics.getPagesCompleted();
+        long files = metrics.getFilesCompleted() + metrics.getFilesFailed();
+        double seconds = (now - lastNanos) / 1e9;
+        double rate = seconds > 0 ? (pages - lastPages) / seconds : 0;
+        double headroom = memoryHeadroom();
+        boolean progress = files > lastFiles;
+
+        int newLimit = limit;
+        String reason;
+        if (headroom < minHeadroom) {
+            newLimit = decreased();
+            reason = "memory headroom below " + percent(minHeadroom);
+        }
+        else if (!progress) {
+            reason = "no file finished in interval";
+        }
+        else if (lastWasIncrease && rate < lastRate * (1 - RATE_TOLERANCE)) {
+            newLimit = decreased();
+            reason = "throughput dropped after increase";
+        }
+        else if (limit < maxWorkers) {
+            newLimit = limit + 1;
+            reason = "throughput holding";
+        }
+        else {
+            reason = "at upper bound";
+        }
+
+        System.out.println(String.format(
+                "[concurrency] workers %d -> %d: %s (%.1f pages/s, "
+                + "previous %.1f pages/s, memory headroom %s)",
+                limit, newLimit, reason, rate, Math.max(lastRate, 0),
+                percent(headroom)));
+
+        if (newLimit > limit) {
+            permits.release(newLimit - limit);
+        }
+        else if (newLimit < limit) {
+            permits.reduce(limit - newLimit);
+        }
+        lastWasIncrease = newLimit > limit;
+        limit = newLimit;
+        metrics.setWorkerCount(limit);
+
+        if (progress) {
+            lastRate = rate;
+            lastPages = pages;
+            lastFiles = files;
+            lastNanos = now;
+        }
+    }
+
+    private int decreased() {
+        return Math.max(minWorkers, (int) (limit * DECREASE_FACTOR));
+    }
+
+    /**
+     * The heap headroom is based on the old generation after the last
+     * garbage collection, as the usage of the whole heap includes garbage
+     * that has not been collected yet. The TET instances allocate most of
+     * their memory outside of the Java heap, so on Linux the smaller of the
+     * heap headroom and the available physical memory is used. The page
+     * cache counts as available, as it is reclaimed when memory is needed.
+     *
+     * @return fraction of memory that is still available, between 0 and 1
+     */
+    private double memoryHeadroom() {
+        double headroom = heapHeadroom();
+        double physical = physicalHeadroom();
+        return physical >= 0 ? Math.min(headroom, physical) : headroom;
+    }
+
+    /**
+     * @return the fraction of the old generation that was free after the
+     *         last garbage collection, or of the whole heap if the old
+     *         generation is unknown
+     */
+    private double heapHeadroom() {
+        Runtime rt = Runtime.getRuntime();
+        if (oldGeneration != null) {
+            MemoryUsage usage = oldGeneration.getCollectionUsage();
+            if (usage == null || usage.getUsed() == 0) {
+                /* no collection of the old generation yet */
+                usage = oldGeneration.getUsage();
+            }
+            long max = usage.getMax() > 0 ? usage.getMax() : rt.maxMemory();
+            return Math.max(0, 1 - usage.getUsed() / (double) max);
+        }
+        return (rt.maxMemory() - rt.totalMemory() + rt.freeMemory())
+                / (double) rt.maxMemory();
+    }
+
+    /**
+     * @return the fraction of the physical memory that is available
+     *         according to MemAvailable of /proc/meminfo, or -1 if it is not
+     *         known
+     */
+    private static double physicalHeadroom() {
+        long total = -1;
+        long available = -1;
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(MEMINFO), "US-ASCII"));
+            try {
+                for (String line = in.readLine(); line != null;
+                        line = in.readLine()) {
+                    if (line.startsWith("MemTotal:")) {
+                        total = meminfoValue(line);
+                    }
+                    else if (line.startsWith("MemAvailable:")) {
+                        available = meminfoValue(line);
+                    }
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            /* not Linux */
+            return -1;
+        }
+        if (total <= 0 || available < 0) {
+            return -1;
+        }
+        return available / (double) total;
+    }
+
+    /**
+     * @return the number of a line of /proc/meminfo like "MemTotal: 16318256
+     *         kB", or -1 if there is none
+     */
+    private static long meminfoValue(String line) {
+        String[] fields = line.trim().split("\\s+");
+        try {
+            return fields.length >= 2 ? Long.parseLong(fields[1]) : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the heap pool that supports a usage threshold, which is the
+     *         old generation with the collectors of HotSpot, or null
+     */
+    private static MemoryPoolMXBean findOldGeneration() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP
+                    && pool.isUsageThresholdSupported()) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    private static String percent(double fraction) {
+        return String.format("%.0f%%", fraction * 100);
+    }
+}
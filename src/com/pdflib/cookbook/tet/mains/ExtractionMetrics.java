@@ -0,0 +1,383 @@
+package com.pdflib.cookbook.tet.mains;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.pdflib.TETException;
+
+/**
+ * Live metrics of a batch extraction run, exposed as an MXBean under the name
+ * {@link #OBJECT_NAME}.
+ * <p>
+ * All update methods of the workers are lock-free, so they can be called
+ * from any number of extraction workers without serializing them. Latencies are recorded in a
+ * log-linear histogram with eight sub-buckets per power of two, which gives
+ * percentiles with a relative error of at most 12.5% in constant memory.
+ */
+public class ExtractionMetrics implements ExtractionMetricsMXBean {
+    /**
+     * JMX object name under which the metrics are registered.
+     */
+    public static final String OBJECT_NAME =
+            "com.pdflib.cookbook.tet:type=ExtractionMetrics";
+
+    /**
+     * Number of sub-buckets per power of two, as a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong filesCompleted = new AtomicLong();
+
+    private final AtomicLong filesFailed = new AtomicLong();
+
+    private final AtomicLong pagesCompleted = new AtomicLong();
+
+    private final AtomicInteger filesInProgress = new AtomicInteger();
+
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    private final AtomicLong maxLatencyMicros = new AtomicLong();
+
+    /**
+     * Latency histogram in microseconds, see {@link #bucketIndex(long)}.
+     */
+    private final AtomicLongArray latencyBuckets =
+            new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+    private final ConcurrentHashMap<String, AtomicLong> errorCounts =
+            new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * The queue of files that are waiting for extraction, may be null.
+     */
+    private volatile Collection<?> pendingQueue;
+
+    private volatile int workerCount = 1;
+
+    /**
+     * Worker time in nanoseconds permitted by the worker counts before the
+     * last change of the count, and the time of that change. Guarded by
+     * this.
+     */
+    private long permittedNanos;
+
+    private long permittedSince = startNanos;
+
+    private ObjectName registeredName;
+
+    /**
+     * Register the metrics with the platform MBean server. Failing to register
+     * is reported but does not stop the batch run.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        }
+        catch (JMException e) {
+            System.err.println("Unable to register " + OBJECT_NAME + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Remove the metrics from the platform MBean server again.
+     */
+    public void unregister() {
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .unregisterMBean(registeredName);
+            }
+            catch (JMException e) {
+                System.err.println("Unable to unregister " + OBJECT_NAME
+                        + ": " + e.getMessage());
+            }
+            registeredName = null;
+        }
+    }
+
+    /**
+     * @param queue
+     *            the queue of pending files, whose size is reported as the
+     *            queue depth
+     */
+    public void setPendingQueue(Collection<?> queue) {
+        this.pendingQueue = queue;
+    }
+
+    /**
+     * Set the number of workers that may extract at the same time from now
+     * on. The worker time permitted so far is accounted with the previous
+     * count, for the worker utilization.
+     */
+    public synchronized void setWorkerCount(int workerCount) {
+        long now = System.nanoTime();
+        permittedNanos += (now - permittedSince) * (long) this.workerCount;
+        permittedSince = now;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Record the start of the extraction of a file.
+     *
+     * @return the start timestamp to pass to fileCompleted or fileFailed
+     */
+    public long fileStarted() {
+        filesInProgress.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the successful extraction of a file.
+     *
+     * @param startNanos
+     *            the value returned by fileStarted
+     * @param pages
+     *            the number of pages of the file
+     */
+    public void fileCompleted(long startNanos, int pages) {
+        fileFinished(startNanos);
+        filesCompleted.incrementAndGet();
+        pagesCompleted.addAndGet(pages);
+    }
+
+    /**
+     * Record a failed extraction.
+     *
+     * @param startNanos
+     *            the value returned by fileStarted
+     * @param error
+     *            the exception that aborted the extraction
+     */
+    public void fileFailed(long startNanos, Throwable error) {
+        fileFinished(startNanos);
+        filesFailed.incrementAndGet();
+
+        String key = errorKey(error);
+        AtomicLong counter = errorCounts.get(key);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = errorCounts.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Record a lookup in a cache that is used by the extraction.
+     *
+     * @param hit
+     *            true if the value was found in the cache
+     */
+    public void cacheLookup(boolean hit) {
+        if (hit) {
+            cacheHits.incrementAndGet();
+        }
+        else {
+            cacheMisses.incrementAndGet();
+        }
+    }
+
+    private void fileFinished(long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        filesInProgress.decrementAndGet();
+        busyNanos.addAndGet(nanos);
+
+        long micros = nanos / 1000;
+        latencyBuckets.incrementAndGet(bucketIndex(micros));
+        long max = maxLatencyMicros.get();
+        while (micros > max && !maxLatencyMicros.compareAndSet(max, micros)) {
+            max = maxLatencyMicros.get();
+        }
+    }
+
+    /**
+     * Build the key for the error counters from the root cause of the error.
+     */
+    private static String errorKey(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        if (root instanceof TETException) {
+            return root.getClass().getSimpleName() + "["
+                    + ((TETException) root).get_errnum() + "]";
+        }
+        return root.getClass().getName();
+    }
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each, larger values share a bucket
+     * with the values that have the same highest SUB_BUCKET_BITS + 1 bits.
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    /**
+     * @return the largest value that falls into the bucket
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    private double latencyPercentileMillis(double percentile) {
+        long total = 0;
+        for (int i = 0; i < latencyBuckets.length(); i += 1) {
+            total += latencyBuckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile / 100.0 * total);
+        long seen = 0;
+        for (int i = 0; i < latencyBuckets.length(); i += 1) {
+            seen += latencyBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxLatencyMicros.get())
+                        / 1000.0;
+            }
+        }
+        return maxLatencyMicros.get() / 1000.0;
+    }
+
+    private static double rate(long count, double seconds) {
+        return seconds > 0 ? count / seconds : 0;
+    }
+
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    public long getFilesCompleted() {
+        return filesCompleted.get();
+    }
+
+    public long getFilesFailed() {
+        return filesFailed.get();
+    }
+
+    public long getPagesCompleted() {
+        return pagesCompleted.get();
+    }
+
+    public double getFilesPerSecond() {
+        return rate(filesCompleted.get() + filesFailed.get(),
+                getElapsedSeconds());
+    }
+
+    public double getPagesPerSecond() {
+        return rate(pagesCompleted.get(), getElapsedSeconds());
+    }
+
+    public int getPendingFiles() {
+        Collection<?> queue = pendingQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    public int getFilesInProgress() {
+        return filesInProgress.get();
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public double getWorkerUtilization() {
+        double available;
+        synchronized (this) {
+            available = permittedNanos + (System.nanoTime() - permittedSince)
+                    * (double) workerCount;
+        }
+        return available > 0 ? Math.min(1.0, busyNanos.get() / available) : 0;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public double getCacheHitRate() {
+        long hits = cacheHits.get();
+        long lookups = hits + cacheMisses.get();
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> retval = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> e : errorCounts.entrySet()) {
+            retval.put(e.getKey(), e.getValue().get());
+        }
+        return retval;
+    }
+
+    public double getLatencyP50Millis() {
+        return latencyPercentileMillis(50);
+    }
+
+    public double getLatencyP90Millis() {
+        return latencyPercentileMillis(90);
+    }
+
+    public double getLatencyP99Millis() {
+        return latencyPercentileMillis(99);
+    }
+
+    public double getLatencyMaxMillis() {
+        return maxLatencyMicros.get() / 1000.0;
+    }
+
+    /**
+     * @return a one-line summary of the metrics, for the final log line
+     */
+    public String summary() {
+        return String.format(
+                "%d files (%d failed), %d pages in %.1fs: %.2f files/s, "
+                + "%.2f pages/s, latency p50=%.1fms p99=%.1fms",
+                filesCompleted.get() + filesFailed.get(), filesFailed.get(),
+                pagesCompleted.get(), getElapsedSeconds(), getFilesPerSecond(),
+                getPagesPerSecond(), getLatencyP50Millis(),
+                getLatencyP99Millis());
+    }
+}
@@ -0,0 +1,81 @@
+package com.pdflib.cookbook.tet.mains;
+
+import java.util.Map;
+
+/**
+ * Management interface of the live metrics of a RunTextExtractor batch run.
+ * The attributes can be scraped with any JMX client while the run is in
+ * progress, e.g. jconsole or a Prometheus JMX exporter.
+ * <p>
+ * All rates are averages since the start of the run.
+ */
+public interface ExtractionMetricsMXBean {
+    /**
+     * @return seconds since the batch run was started
+     */
+    double getElapsedSeconds();
+
+    /**
+     * @return number of files that were extracted successfully
+     */
+    long getFilesCompleted();
+
+    /**
+     * @return number of files that failed with an exception
+     */
+    long getFilesFailed();
+
+    /**
+     * @return number of pages of successfully extracted files
+     */
+    long getPagesCompleted();
+
+    double getFilesPerSecond();
+
+    double getPagesPerSecond();
+
+    /**
+     * @return number of files that are still waiting in the input queue
+     */
+    int getPendingFiles();
+
+    /**
+     * @return number of files currently being extracted
+     */
+    int getFilesInProgress();
+
+    /**
+     * @return number of workers that may currently extract at the same time
+     */
+    int getWorkerCount();
+
+    /**
+     * @return fraction of the worker time spent extracting files, between 0
+     *         and 1; the worker time is the time of the run weighted with the
+     *         number of workers that were permitted to extract
+     */
+    double getWorkerUtilization();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return cache hits divided by cache lookups, or 0 if there was no lookup
+     */
+    double getCacheHitRate();
+
+    /**
+     * @return number of failed files keyed by the class of the root cause,
+     *         for TET errors additionally qualified with the error number
+     */
+    Map<String, Long> getErrorCounts();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+}
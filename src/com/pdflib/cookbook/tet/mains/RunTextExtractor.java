@@ -10,8 +10,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.pdflib.TETException;
 import com.pdflib.cookbook.tet.text.TextExtractor;
+import com.pdflib.cookbook.tet.util.EventLog;
 
 /**
  * Main for extracting text using Tet
@@ -24,6 +32,17 @@ public class RunTextExtractor {
 	 * @param argv
 	 * args:
 	 *    inputFolder=myInputFolder regex=patternThatSelectsFiles outputFolder=myOutputFolder
+	 * optional args for concurrent extraction:
+	 *    minWorkers=1 maxWorkers=minWorkers controlInterval=10 minHeadroom=0.1
+	 *    If maxWorkers is greater than minWorkers, a ConcurrencyController
+	 *    adjusts the number of active workers every controlInterval seconds.
+	 *
+	 * While the run is in progress its metrics are available via JMX under
+	 * the name ExtractionMetrics.OBJECT_NAME.
+	 *
+	 * A file that fails no longer stops the run: the failure is logged and
+	 * counted by the class of its cause, the remaining files are extracted,
+	 * and afterwards the exception of the first failed file is rethrown.
 	 * @throws UnsupportedEncodingException
 	 */
     public static void main(String argv[]) throws UnsupportedEncodingException {
@@ -48,25 +67,142 @@ public class RunTextExtractor {
     	if(outputFolder==null)outputFolder = "./output";
     	checkDir(outputFolder); // make the folder if necessary
     	List<String> filesToExtract = getFilesFromRegex(inputFolder, regex);
-    	for(String filePath : filesToExtract){
-        	TextExtractor te = new TextExtractor();
-        	List<String> lines = te.getTextLines(filePath);
-        	String[] parts = filePath.split("/");
-        	String outputFileName = parts[parts.length-1].replace(".pdf", ".txt");
-        	
-        	String outputFilePath = outputFolder + "/" + outputFileName;
-			try {
-	    		BufferedWriter bw = new BufferedWriter(new FileWriter(new File(outputFilePath)));
-	        	for(String s : lines){
-	            	bw.write(s);
-	            	bw.newLine();
-	        	}
-				bw.close();
-			} catch (IOException e) {
-				throw new IllegalStateException(e);
-			}
+
+    	int minWorkers = intArg(argMap, "minWorkers", 1);
+    	int maxWorkers = intArg(argMap, "maxWorkers", minWorkers);
+    	int controlInterval = intArg(argMap, "controlInterval", 10);
+    	String minHeadroomArg = argMap.get("minHeadroom");
+    	double minHeadroom = minHeadroomArg == null
+    			? 0.1 : Double.parseDouble(minHeadroomArg);
+
+    	/*
+    	 * Expose live metrics via JMX, so that long runs can be monitored
+    	 * while they are in progress.
+    	 */
+    	final Queue<String> pendingFiles = new ConcurrentLinkedQueue<>(filesToExtract);
+    	final ExtractionMetrics metrics = new ExtractionMetrics();
+    	metrics.setPendingQueue(pendingFiles);
+    	metrics.register();
+
+    	/*
+    	 * Start maxWorkers threads, each with its own TET instance; the
+    	 * controller decides how many of them may extract at the same time.
+    	 */
+    	final ConcurrencyController controller = new ConcurrencyController(
+    			metrics, minWorkers, maxWorkers, minHeadroom);
+    	ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    	if (maxWorkers > minWorkers) {
+    		scheduler.scheduleAtFixedRate(controller, controlInterval,
+    				controlInterval, TimeUnit.SECONDS);
     	}
-    	
+    	final String outputDir = outputFolder;
+    	final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    	List<Thread> workers = new ArrayList<>();
+    	for (int i = 0; i < maxWorkers; i++) {
+    		Thread worker = new Thread(new Runnable() {
+    			public void run() {
+    				runWorker(pendingFiles, outputDir, metrics, controller, failure);
+    			}
+    		}, "extractor-" + i);
+    		worker.start();
+    		workers.add(worker);
+    	}
+    	try {
+    		for (Thread worker : workers) {
+    			worker.join();
+    		}
+    	} catch (InterruptedException e) {
+    		throw new IllegalStateException(e);
+    	} finally {
+    		scheduler.shutdownNow();
+    		EventLog.getDefault().flush();
+    		System.out.println(metrics.summary());
+    		metrics.unregister();
+    	}
+    	if (failure.get() != null) {
+    		throw failure.get();
+    	}
+    }
+
+    /**
+     * Take files from the queue until it is empty. Failing files are counted
+     * and skipped; the exception of the first one is rethrown by main.
+     */
+    private static void runWorker(Queue<String> pendingFiles, String outputFolder,
+    		ExtractionMetrics metrics, ConcurrencyController controller,
+    		AtomicReference<RuntimeException> failure) {
+    	TextExtractor te = null;
+    	try {
+    		while (true) {
+    			controller.acquire();
+    			try {
+    				String filePath = pendingFiles.poll();
+    				if (filePath == null) {
+    					break;
+    				}
+    				if (te == null) {
+    					te = new TextExtractor();
+    				}
+    				long start = metrics.fileStarted();
+    				try {
+    					extractFile(te, filePath, outputFolder, metrics, start);
+    				} catch (RuntimeException e) {
+    					metrics.fileFailed(start, e);
+    					logFailure(filePath, e);
+    					failure.compareAndSet(null, e);
+    				}
+    			} finally {
+    				controller.release();
+    			}
+    		}
+    	} catch (InterruptedException e) {
+    		failure.compareAndSet(null, new IllegalStateException(e));
+    	} finally {
+    		if (te != null) {
+    			te.delete();
+    		}
+    	}
+    }
+
+    /**
+     * Report a failed file to the event log, with the TET error details if
+     * the failure was caused by a TETException.
+     */
+    private static void logFailure(String filePath, RuntimeException e) {
+    	if (e.getCause() instanceof TETException) {
+    		EventLog.getDefault().tetException((TETException) e.getCause(),
+    				filePath, 0);
+    	} else {
+    		EventLog.getDefault().error(filePath, String.valueOf(e.getMessage()));
+    	}
+    }
+
+    private static int intArg(Map<String, String> argMap, String key, int defaultValue) {
+    	String value = argMap.get(key);
+    	return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Extract the text of one file into a .txt file in the output folder.
+     */
+    private static void extractFile(TextExtractor te, String filePath,
+    		String outputFolder, ExtractionMetrics metrics, long start) {
+    	List<String> lines = te.getTextLines(filePath);
+    	String[] parts = filePath.split("/");
+    	String outputFileName = parts[parts.length-1].replace(".pdf", ".txt");
+
+    	String outputFilePath = outputFolder + "/" + outputFileName;
+		try {
+    		BufferedWriter bw = new BufferedWriter(new FileWriter(new File(outputFilePath)));
+        	for(String s : lines){
+            	bw.write(s);
+            	bw.newLine();
+        	}
+			bw.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		metrics.fileCompleted(start, te.getPageCount());
     }
 
     
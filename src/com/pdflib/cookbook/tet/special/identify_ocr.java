@@ -2,6 +2,9 @@ package com.pdflib.cookbook.tet.special;
 
 import com.pdflib.TET;
 import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.analysis.GlyphListener;
+import com.pdflib.cookbook.tet.analysis.GlyphRecord;
+import com.pdflib.cookbook.tet.analysis.GlyphStream;
 
 /**
  * Classify the pages in a document according to the following criteria:
@@ -48,7 +51,28 @@ class identify_ocr {
     /**
      * Invisible text rendering mode.
      */
-    private static final int INVISIBLE_TEXT_RENDERING = 3;
+    private static final int INVISIBLE_TEXT_RENDERING =
+        GlyphRecord.TEXTRENDERING_INVISIBLE;
+    
+    /**
+     * Glyph listener that records which kinds of text are present on a page.
+     */
+    private static class text_detector implements GlyphListener {
+        // Is invisible text present?
+        boolean hasInvisibleText = false;
+        
+        // Is normal text present?
+        boolean hasNormalText = false;
+
+        public void glyph(GlyphRecord glyph) {
+            if (glyph.textrendering == INVISIBLE_TEXT_RENDERING) {
+                hasInvisibleText = true;
+            }
+            else {
+                hasNormalText = true;
+            }
+        }
+    }
     
     /**
      * Process a page in the document, and print out the classification of the
@@ -73,25 +97,14 @@ class identify_ocr {
                     + tet.get_apiname() + "(): " + tet.get_errmsg());
         }
         else {
-            // Is invisible text present?
-            boolean hasInvisibleText = false;
-            
-            // Is normal text present?
-            boolean hasNormalText = false;
+            /* Retrieve all glyphs for the page */
+            text_detector detector = new text_detector();
+            GlyphStream stream = new GlyphStream();
+            stream.addListener(detector);
+            stream.processPage(tet, page, pageno);
             
-            /* Retrieve all text fragments for the page */
-            for (String text = tet.get_text(page); text != null; text = tet
-                    .get_text(page)) {
-                /* loop over all characters */
-                while (tet.get_char_info(page) != -1) {
-                    if (tet.textrendering == INVISIBLE_TEXT_RENDERING) {
-                        hasInvisibleText = true;
-                    }
-                    else {
-                        hasNormalText = true;
-                    }
-                }
-            }
+            boolean hasInvisibleText = detector.hasInvisibleText;
+            boolean hasNormalText = detector.hasNormalText;
             
             /* Check whether there's at least one raster image on the page */
             boolean hasImage = false;
@@ -5,6 +5,8 @@ import java.io.UnsupportedEncodingException;
 
 import com.pdflib.TETException;
 import com.pdflib.TET;
+import com.pdflib.cookbook.tet.util.EventLog;
+import com.pdflib.cookbook.tet.util.PcosCache;
 
 /**
  * This topic is a generalized form of the simple text extractor. In addition to
@@ -80,15 +82,15 @@ public class multiple_documents {
                 try {
                     int doc = tet.open_document(argv[i], DOC_OPTLIST);
                     if (doc == -1) {
-                        System.err.println("Unable to open document \""
-                                + argv[i] + "\": error "
-                                + tet.get_errnum() + " in "
-                                + tet.get_apiname() + "(): " + tet.get_errmsg());
+                        EventLog.getDefault().tetError(tet, argv[i], 0);
                         continue;
                     }
 
                     /* get number of pages in the document */
                     int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
+
+                    /* cache for the pCOS values queried per glyph */
+                    PcosCache pcos = new PcosCache(tet, doc);
         
                     /* loop over pages */
                     for (int pageno = 1; pageno <= n_pages; ++pageno) {
@@ -96,7 +98,7 @@ public class multiple_documents {
                         int page = tet.open_page(doc, pageno, PAGE_OPTLIST);
         
                         if (page < 0) {
-                            print_tet_error(tet, pageno);
+                            print_tet_error(tet, argv[i], pageno);
                             continue; /* try next page */
                         }
         
@@ -116,8 +118,7 @@ public class multiple_documents {
                                  * warning.
                                  */
                                 /* String fontname = */
-                                tet.pcos_get_string(doc, "fonts[" + tet.fontid
-                                        + "]/name");
+                                pcos.fontName(tet.fontid);
                             }
         
                             /* print the retrieved text */
@@ -128,7 +129,7 @@ public class multiple_documents {
                         }
         
                         if (tet.get_errnum() != 0) {
-                            print_tet_error(tet, pageno);
+                            print_tet_error(tet, argv[i], pageno);
                         }
         
                         tet.close_page(page);
@@ -137,10 +138,7 @@ public class multiple_documents {
                     tet.close_document(doc);
                 }
                 catch (TETException ex) {
-                    System.err.println("Error while processing document \""
-                            + argv[i] + "\": error "
-                            + ex.get_errnum() + " in "
-                            + ex.get_apiname() + "(): " + ex.get_errmsg());
+                    EventLog.getDefault().tetException(ex, argv[i], 0);
                     
                     /*
                      * Create a new TET object for processing the next document,
@@ -172,16 +170,17 @@ public class multiple_documents {
     }
 
     /**
-     * Report a TET error while processing a page.
+     * Report a TET error while processing a page. The error is queued in the
+     * event log, which is written by a background thread.
      * 
      * @param tet
      *            The TET object
+     * @param filename
+     *            The document being processed
      * @param pageno
      *            The page number on which the error occurred
      */
-    private static void print_tet_error(TET tet, int pageno) {
-        System.err.println("Error " + tet.get_errnum() + " in  "
-                + tet.get_apiname() + "() on page " + pageno + ": "
-                + tet.get_errmsg());
+    private static void print_tet_error(TET tet, String filename, int pageno) {
+        EventLog.getDefault().tetError(tet, filename, pageno);
     }
 }
@@ -11,6 +11,7 @@ import com.pdflib.PDFlibException;
 import com.pdflib.TET;
 import com.pdflib.TETException;
 import com.pdflib.pdflib;
+import com.pdflib.cookbook.tet.util.OptionList;
 
 /**
  * Split a document into smaller parts based on some page contents. Various
@@ -127,6 +128,26 @@ class burst {
      */
     private static final double CRITERION_TXT_URY = 624;
 
+    /**
+     * Page-specific option list for reading the text that identifies the
+     * first page of a sequence. It only depends on constants, so it is built
+     * once instead of for every page.
+     */
+    private static final String START_SEQ_OPTLIST = OptionList.builder()
+        .addAll(PAGE_OPTLIST)
+        .addRectangle("includebox", START_SEQ_TXT_LLX, START_SEQ_TXT_LLY,
+                START_SEQ_TXT_URX, START_SEQ_TXT_URY)
+        .build().toString();
+
+    /**
+     * Page-specific option list for reading the routing criterion.
+     */
+    private static final String CRITERION_OPTLIST = OptionList.builder()
+        .addAll(PAGE_OPTLIST)
+        .addRectangle("includebox", CRITERION_TXT_LLX, CRITERION_TXT_LLY,
+                CRITERION_TXT_URX, CRITERION_TXT_URY)
+        .build().toString();
+
     /**
      * For printing to System.out in the encoding specified via OUTPUT_ENCODING.
      */
@@ -213,14 +234,7 @@ class burst {
      */
     private boolean isFirstOfSequence(TET tet, int doc, int pageNumber)
             throws TETException {
-        String includeBox = "includebox={{ "
-            + START_SEQ_TXT_LLX + " "
-            + START_SEQ_TXT_LLY + " "
-            + START_SEQ_TXT_URX + " "
-            + START_SEQ_TXT_URY + " }}";
-
-        int page = tet.open_page(doc, pageNumber,
-                PAGE_OPTLIST + " " + includeBox);
+        int page = tet.open_page(doc, pageNumber, START_SEQ_OPTLIST);
 
         String text = tet.get_text(page);
         boolean retval = text != null && text.equals(START_SEQ_TXT);
@@ -246,12 +260,7 @@ class burst {
      */
     private String getRoutingCriterion(TET tet, int doc, int pageNumber)
             throws TETException {
-        String includeBox = "includebox={{ " + CRITERION_TXT_LLX + " "
-                + CRITERION_TXT_LLY + " " + CRITERION_TXT_URX + " "
-                + CRITERION_TXT_URY + " }}";
-
-        int page = tet.open_page(doc, pageNumber, PAGE_OPTLIST + " "
-                + includeBox);
+        int page = tet.open_page(doc, pageNumber, CRITERION_OPTLIST);
 
         String text = tet.get_text(page);
         tet.close_page(page);
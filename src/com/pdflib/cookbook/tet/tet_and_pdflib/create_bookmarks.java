@@ -7,6 +7,7 @@ import com.pdflib.PDFlibException;
 import com.pdflib.TET;
 import com.pdflib.TETException;
 import com.pdflib.pdflib;
+import com.pdflib.cookbook.tet.util.PcosCache;
 
 /**
  * For each page in the document: Process the page with TET, place it in a new
@@ -67,6 +68,11 @@ class create_bookmarks {
      */
     private String outfilename;
 
+    /**
+     * Cache for the pCOS values of the input document.
+     */
+    private PcosCache pcos;
+
     /**
      * The number of bookmarks created in the output document.
      */
@@ -141,8 +147,7 @@ class create_bookmarks {
      * @throws TETException
      */
     private boolean fontMatches(TET tet, final int doc) throws TETException {
-        String name = tet.pcos_get_string(doc,
-                "fonts[" + tet.fontid + "]/name");
+        String name = pcos.fontName(tet.fontid);
         return name.equals(FONT_NAME) &&
             (Math.abs(tet.fontsize - FONT_SIZE) <= FONT_SIZE_TOLERANCE);
     }
@@ -285,6 +290,8 @@ class create_bookmarks {
                 return;
             }
 
+            pcos = new PcosCache(tet, doc);
+
             /*
              * Loop over pages in the document
              */
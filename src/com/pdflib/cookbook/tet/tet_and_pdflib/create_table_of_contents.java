@@ -7,6 +7,7 @@ import com.pdflib.PDFlibException;
 import com.pdflib.TET;
 import com.pdflib.TETException;
 import com.pdflib.pdflib;
+import com.pdflib.cookbook.tet.util.PcosCache;
 
 /**
  * Extract some text from a PDF based on certain typographic criteria (font,
@@ -69,6 +70,11 @@ class create_table_of_contents {
      */
     private String outfilename;
 
+    /**
+     * Cache for the pCOS values of the input document.
+     */
+    private PcosCache pcos;
+
     /**
      * The name of the font to search for.
      */
@@ -221,8 +227,7 @@ class create_table_of_contents {
      * @throws TETException
      */
     private boolean font_matches(TET tet, final int doc) throws TETException {
-        String name = tet.pcos_get_string(doc,
-                "fonts[" + tet.fontid + "]/name");
+        String name = pcos.fontName(tet.fontid);
         return name.equals(FONT_NAME) &&
             (Math.abs(tet.fontsize - FONT_SIZE) <= FONT_SIZE_TOLERANCE);
     }
@@ -518,6 +523,8 @@ class create_table_of_contents {
                 return;
             }
 
+            pcos = new PcosCache(tet, doc);
+
             final int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
             int pdiHandle = -1;
             if (USE_PDI) {
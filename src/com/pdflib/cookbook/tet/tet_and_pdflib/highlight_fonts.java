@@ -14,6 +14,7 @@ import com.pdflib.PDFlibException;
 import com.pdflib.TET;
 import com.pdflib.TETException;
 import com.pdflib.pdflib;
+import com.pdflib.cookbook.tet.util.PcosCache;
 
 /**
  * Font highlighting: Search for all fonts that are not ignored (option
@@ -83,6 +84,11 @@ class highlight_fonts {
      */
     private String outfilename;
 
+    /**
+     * Cache for the pCOS values of the input document.
+     */
+    private PcosCache pcos;
+
     /**
      * The list of fonts that are either included or ignored, depending on the
      * value of member "ignore".
@@ -179,9 +185,7 @@ class highlight_fonts {
      */
     private String getFontName(TET tet, int doc, int pcosId)
             throws TETException {
-        String fontName = tet.pcos_get_string(doc, "fonts["
-                + pcosId + "]/name");
-        return fontName;
+        return pcos.fontName(pcosId);
     }
 
     /**
@@ -443,6 +447,8 @@ class highlight_fonts {
                 return;
             }
 
+            pcos = new PcosCache(tet, doc);
+
             /*
              * Loop over pages in the document
              */
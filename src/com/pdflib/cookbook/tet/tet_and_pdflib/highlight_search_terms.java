@@ -2,16 +2,18 @@ package com.pdflib.cookbook.tet.tet_and_pdflib;
 
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.pdflib.PDFlibException;
 import com.pdflib.TET;
 import com.pdflib.TETException;
 import com.pdflib.pdflib;
+import com.pdflib.cookbook.tet.util.PcosCache;
+import com.pdflib.cookbook.tet.util.SymbolTable;
 
 /**
  * Search term highlighting: Identify all occurrences of a particular word
@@ -75,6 +77,11 @@ class highlight_search_terms {
      */
     private String outfilename;
 
+    /**
+     * Cache for the pCOS values of the input document.
+     */
+    private PcosCache pcos;
+
     /**
      * The search terms to highlight, specified as a regular expression. In
      * the example we search for "XMP", "Metadata" and "PDFlib" in case
@@ -84,6 +91,21 @@ class highlight_search_terms {
     private static final Pattern SEARCH_TERM_REGEX =
         Pattern.compile("(?iu)XMP|Metadata|PDFlib");
 
+    /**
+     * Values of tokenMatches.
+     */
+    private static final byte NOT_MATCHED = 0, MATCH = 1, NO_MATCH = 2;
+
+    /**
+     * The distinct words of the document. Most words occur many times, so
+     * the result of matching a word against SEARCH_TERM_REGEX is cached in
+     * tokenMatches by the id of the word, and each distinct word is matched
+     * only once.
+     */
+    private final SymbolTable tokens = new SymbolTable();
+
+    private byte[] tokenMatches = new byte[256];
+
     /**
      * Import the current page from the PDI import document and place it in the
      * ouput document.
@@ -176,16 +198,14 @@ class highlight_search_terms {
                 /*
                  * Check whether this is text that we want to highlight.
                  */
-                Matcher matcher = SEARCH_TERM_REGEX.matcher(text);
-
-                if (matcher.matches()) {
+                if (is_search_term(text)) {
                     /*
                      * List for collecting the rectangles that belong to an instance
                      * of the search term
                      */
                     List<rectangle> rectangles = new LinkedList<rectangle>();
     
-                    String matchedText = matcher.group(0);
+                    String matchedText = text;
 
                     boolean first = true;
                     double llx = 0, lly = 0, urx = 0, ury = 0, lasty = 0;
@@ -201,10 +221,10 @@ class highlight_search_terms {
             			 * negative number, therefore it will be added to the baseline y
             			 * position to get the lower left y value.
             			 */
-            			final double descender = tet.pcos_get_number(doc, "fonts["
-            					+ tet.fontid + "]/descender") / 1000;
-            			final double ascender = tet.pcos_get_number(doc, "fonts["
-            					+ tet.fontid + "]/ascender") / 1000;
+            			final double descender =
+            			        pcos.fontDescender(tet.fontid) / 1000;
+            			final double ascender =
+            			        pcos.fontAscender(tet.fontid) / 1000;
             			
                         if (first) {
                             llx = tet.x;
@@ -304,6 +324,21 @@ class highlight_search_terms {
         }
     }
 
+    /**
+     * @return whether the word matches SEARCH_TERM_REGEX
+     */
+    private boolean is_search_term(String text) {
+        int id = tokens.intern(text);
+        if (id == tokenMatches.length) {
+            tokenMatches = Arrays.copyOf(tokenMatches, id * 2);
+        }
+        if (tokenMatches[id] == NOT_MATCHED) {
+            tokenMatches[id] = SEARCH_TERM_REGEX.matcher(text).matches()
+                    ? MATCH : NO_MATCH;
+        }
+        return tokenMatches[id] == MATCH;
+    }
+
     private void execute() {
         TET tet = null;
         pdflib p = null;
@@ -342,6 +377,8 @@ class highlight_search_terms {
                 return;
             }
 
+            pcos = new PcosCache(tet, doc);
+
             /*
              * Loop over pages in the document
              */
@@ -10,6 +10,7 @@ import com.pdflib.PDFlibException;
 import com.pdflib.TET;
 import com.pdflib.TETException;
 import com.pdflib.pdflib;
+import com.pdflib.cookbook.tet.util.PcosCache;
 
 /**
  * Highlight unmapped glyphs: Find all glyphs for which TET could not determine
@@ -71,6 +72,11 @@ class highlight_unmapped_glyphs {
      */
     private String outfilename;
 
+    /**
+     * Cache for the pCOS values of the input document.
+     */
+    private PcosCache pcos;
+
     /**
      * Nudge factor for ascender height of the annotations (relative to the font
      * size)
@@ -159,9 +165,7 @@ class highlight_unmapped_glyphs {
      */
     private String getFontName(TET tet, int doc, int pcosId)
             throws TETException {
-        String fontName = tet.pcos_get_string(doc, "fonts["
-                + pcosId + "]/name");
-        return fontName;
+        return pcos.fontName(pcosId);
     }
 
     /**
@@ -419,6 +423,8 @@ class highlight_unmapped_glyphs {
                 return;
             }
 
+            pcos = new PcosCache(tet, doc);
+
             /*
              * Loop over pages in the document
              */
@@ -13,6 +13,7 @@ import com.pdflib.PDFlibException;
 import com.pdflib.TET;
 import com.pdflib.TETException;
 import com.pdflib.pdflib;
+import com.pdflib.cookbook.tet.util.PcosCache;
 
 /**
  * Find text with TET, hide it with a white rectangle, and add the replacement
@@ -97,6 +98,11 @@ class search_and_replace_text {
      */
     private String outfilename;
 
+    /**
+     * Cache for the pCOS values of the input document.
+     */
+    private PcosCache pcos;
+
     /**
      * The format for printing the x and y coordinate values.
      */
@@ -242,10 +248,8 @@ class search_and_replace_text {
              * negative number, therefore it will be added to the baseline y
              * position to get the lower left y value.
              */
-            final double descender = tet.pcos_get_number(doc,
-                "fonts[" + tet.fontid + "]/descender") / 1000;
-            final double ascender = tet.pcos_get_number(doc,
-                "fonts[" + tet.fontid + "]/ascender") / 1000;
+            final double descender = pcos.fontDescender(tet.fontid) / 1000;
+            final double ascender = pcos.fontAscender(tet.fontid) / 1000;
 
             if (first) {
                 llx = tet.x;
@@ -594,6 +598,8 @@ class search_and_replace_text {
                 return;
             }
 
+            pcos = new PcosCache(tet, doc);
+
             /*
              * Loop over pages in the document
              */
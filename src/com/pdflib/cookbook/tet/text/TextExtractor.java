@@ -6,6 +6,7 @@ import java.util.List;
 
 import com.pdflib.TETException;
 import com.pdflib.TET;
+import com.pdflib.cookbook.tet.util.EventLog;
 
 /**
  * PDF text extractor based on PDFlib TET
@@ -18,6 +19,12 @@ import com.pdflib.TET;
  */
 public class TextExtractor {
 	private final TET tet;
+
+	/**
+	 * Number of pages in the document processed by the last call to
+	 * getTextLines
+	 */
+	private int pageCount;
 	
 	
 	/**
@@ -79,6 +86,7 @@ public class TextExtractor {
                         + tet.get_apiname() + "(): " + tet.get_errmsg());
             }
             int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
+            pageCount = n_pages;
             List<String> ret = new ArrayList<String>();
             
             for (int pageno = 1; pageno <= n_pages; ++pageno) {
@@ -86,14 +94,20 @@ public class TextExtractor {
                 int page = tet.open_page(doc, pageno, PAGE_OPTLIST);
 
                 if (page < 0) {
-                    print_tet_error(tet, pageno);
+                    print_tet_error(tet, pdfPath, pageno);
                     continue; /* try next page */
                 }
                 while ((text = tet.get_text(page)) != null) {
                 	String[] lines = text.split("\\n");
                 	ret.addAll(Arrays.asList(lines));
                 }
+                tet.close_page(page);
             }
+            /*
+             * Close the document so that the same TET object can be used for
+             * the next document.
+             */
+            tet.close_document(doc);
             return ret;
 		} catch (TETException e) {
 			throw new IllegalStateException(e);
@@ -102,17 +116,34 @@ public class TextExtractor {
     }
     
     /**
-     * Report a TET error.
+     * @return the number of pages in the document processed by the last call
+     *         to getTextLines, or 0 if no document has been processed yet
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Release the native resources of the TET object. The TextExtractor must
+     * not be used afterwards.
+     */
+    public void delete() {
+        tet.delete();
+    }
+
+    /**
+     * Report a TET error to the event log, without blocking the calling
+     * thread.
      * 
      * @param tet
      *            The TET object
+     * @param pdfPath
+     *            The document being processed
      * @param pageno
      *            The page number on which the error occurred
      */
-    private static void print_tet_error(TET tet, int pageno) {
-        System.err.println("Error " + tet.get_errnum() + " in  "
-                + tet.get_apiname() + "() on page " + pageno + ": "
-                + tet.get_errmsg());
+    private static void print_tet_error(TET tet, String pdfPath, int pageno) {
+        EventLog.getDefault().tetError(tet, pdfPath, pageno);
     }
     
     
@@ -1,18 +1,15 @@
 package com.pdflib.cookbook.tet.text;
 
-import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.text.Collator;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Set;
 
 import com.pdflib.TET;
 import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.util.ReportWriter;
+import com.pdflib.cookbook.tet.util.SymbolTable;
+import com.pdflib.cookbook.tet.util.TokenNormalizer;
 
 /**
  * Create a sorted list of all words in the document along with the page numbers
@@ -55,15 +52,32 @@ class back_of_the_book_index {
                     System.getProperty("file.encoding");
     
     /**
-     * For printing to System.out in the encoding specified via OUTPUT_ENCODING.
+     * For printing to System.out in the encoding specified via OUTPUT_ENCODING,
+     * or as records in the format selected by the system property
+     * com.pdflib.cookbook.tet.report.format.
      */
-    private static PrintStream out;
+    private static ReportWriter out;
 
     /**
      * A word must start with one of the characters in this string to be
      * included in the index (case doesn't matter).
      */
     private static final String INCLUDE_CHARS = "abcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * Whether each ASCII character is in INCLUDE_CHARS, for checking the
+     * first character of a word without searching the string.
+     */
+    private static final boolean[] INCLUDED_ASCII = new boolean[128];
+
+    static {
+        for (int i = 0; i < INCLUDE_CHARS.length(); i += 1) {
+            char c = INCLUDE_CHARS.charAt(i);
+            if (c < INCLUDED_ASCII.length) {
+                INCLUDED_ASCII[c] = true;
+            }
+        }
+    }
     
     /**
      * Set this to true if all words are to be lowercased.
@@ -76,12 +90,22 @@ class back_of_the_book_index {
     private String filename;
     
     /**
-     * A map of sets. The map key is the word, the value is a set of page
-     * numbers. For the page set a LinkedHashSet is used, as we traverse the
-     * document in page order, and the LinkedHashSet preserves the insertion
-     * order, which will give us the desired sorted list of page numbers.
+     * The words of the index; the page lists are indexed by the ids of the
+     * words.
      */
-    private Map<String, Set<Integer>> wordPages = new HashMap<String, Set<Integer>>();
+    private final SymbolTable words = new SymbolTable();
+
+    /**
+     * The list of page numbers of each word and its length. As we traverse
+     * the document in page order, a page is only appended if it differs from
+     * the last one, which gives us the desired sorted list of page numbers
+     * without duplicates.
+     */
+    private int[][] wordPages = new int[256][];
+
+    private int[] wordPageCounts = new int[256];
+
+    private final TokenNormalizer normalizer = new TokenNormalizer(true, false);
 
     /**
      * Process a single page of text.
@@ -114,17 +138,16 @@ class back_of_the_book_index {
                  * Only include words that start with a letter out of the
                  * set of interesting characters.
                  */
-                if (INCLUDE_CHARS.indexOf(Character.toLowerCase(text.charAt(0))) != -1) {
+                if (isIncluded(text.charAt(0))) {
+                    int id;
                     if (LOWERCASE_WORDS) {
-                        text = text.toLowerCase();
+                        int length = normalizer.normalize(text);
+                        id = words.intern(normalizer.getBuffer(), 0, length);
                     }
-                    
-                    Set<Integer> pages = wordPages.get(text);
-                    if (pages == null) {
-                        pages = new LinkedHashSet<Integer>();
-                        wordPages.put(text, pages);
+                    else {
+                        id = words.intern(text);
                     }
-                    pages.add(new Integer(pageno));
+                    add_page(id, pageno);
                 }
             }
 
@@ -137,6 +160,41 @@ class back_of_the_book_index {
         }
     }
 
+    /**
+     * Add a page to the page list of the word with the given id.
+     */
+    private void add_page(int id, int pageno) {
+        if (id == wordPages.length) {
+            wordPages = Arrays.copyOf(wordPages, id * 2);
+            wordPageCounts = Arrays.copyOf(wordPageCounts, id * 2);
+        }
+        int[] pages = wordPages[id];
+        int n = wordPageCounts[id];
+        if (pages == null) {
+            pages = wordPages[id] = new int[4];
+        }
+        else if (pages[n - 1] == pageno) {
+            return;
+        }
+        else if (n == pages.length) {
+            pages = wordPages[id] = Arrays.copyOf(pages, n * 2);
+        }
+        pages[n] = pageno;
+        wordPageCounts[id] = n + 1;
+    }
+
+    /**
+     * @return whether a word starting with the character is to be included
+     *         in the index (case doesn't matter)
+     */
+    private static boolean isIncluded(char c) {
+        int folded = TokenNormalizer.foldCase(c);
+        if (folded < INCLUDED_ASCII.length) {
+            return INCLUDED_ASCII[folded];
+        }
+        return INCLUDE_CHARS.indexOf(folded) != -1;
+    }
+
     /**
      * Print out the results.
      * 
@@ -147,16 +205,21 @@ class back_of_the_book_index {
                 + filename + "\" along with their page number:");
         out.println();
 
-        String[] words = new String[wordPages.size()];
-        words = wordPages.keySet().toArray(words);
-        
+        final String[] symbols = new String[words.size()];
+        Integer[] ids = new Integer[words.size()];
+        for (int id = 0; id < symbols.length; id += 1) {
+            symbols[id] = words.getSymbol(id);
+            ids[id] = Integer.valueOf(id);
+        }
+
         /*
          * Sort according to the sorting rules of the default locale.
          */
         final Collator collator = Collator.getInstance();
-        Arrays.sort(words, new Comparator<Object>() {
-            public int compare(Object o1, Object o2) {
-                return collator.compare(o1, o2);
+        Arrays.sort(ids, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return collator.compare(symbols[o1.intValue()],
+                        symbols[o2.intValue()]);
             }
         });
         
@@ -166,8 +229,14 @@ class back_of_the_book_index {
          * Print out the words with the pages they appear on, grouped by
          * first letter.
          */
-        for (int i = 0; i < words.length; i += 1) {
-            String word = words[i];
+        if (!out.isText()) {
+            print_records(symbols, ids);
+            return;
+        }
+
+        for (int i = 0; i < ids.length; i += 1) {
+            int id = ids[i].intValue();
+            String word = symbols[id];
             char firstChar = Character.toUpperCase(word.charAt(0));
             
             if (firstChar != currentGroup) {
@@ -177,22 +246,29 @@ class back_of_the_book_index {
             
             out.print(word + " ");
             
-            Set<Integer> pages = wordPages.get(word);
-            Iterator<Integer> j = pages.iterator();
-            boolean first = true;
-            while (j.hasNext()) {
-                if (!first) {
+            int[] pages = wordPages[id];
+            for (int j = 0; j < wordPageCounts[id]; j += 1) {
+                if (j > 0) {
                     out.print(", ");
                 }
-                else {
-                    first = false;
-                }
-                out.print(j.next());
+                out.print(pages[j]);
             }
             out.println();
         }
     }
 
+    /**
+     * Print one record per word with the list of its pages.
+     */
+    private void print_records(String[] symbols, Integer[] ids) {
+        for (int i = 0; i < ids.length; i += 1) {
+            int id = ids[i].intValue();
+            out.startRecord().field("word", symbols[id])
+                    .field("pages", wordPages[id], wordPageCounts[id])
+                    .endRecord();
+        }
+    }
+
     /**
      * Generate the index for the given file.
      */
@@ -251,15 +327,17 @@ class back_of_the_book_index {
     }
     
     public static void main(String[] args) throws UnsupportedEncodingException {
-        System.out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
-        out = new PrintStream(System.out, true, OUTPUT_ENCODING);
+        out = ReportWriter.open(OUTPUT_ENCODING);
+        out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
 
         if (args.length != 1) {
-            out.println("usage: back_of_the_book_index <infilename>");
+            System.err.println("usage: back_of_the_book_index <infilename>");
+            out.close();
             return;
         }
 
         back_of_the_book_index c = new back_of_the_book_index(args[0]);
         c.execute();
+        out.close();
     }
 }
@@ -1,22 +1,97 @@
 package com.pdflib.cookbook.tet.text;
 
-import java.io.PrintStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.pdflib.TET;
 import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+import com.pdflib.cookbook.tet.backend.TetBackendFactory;
+import com.pdflib.cookbook.tet.util.ConcordanceState;
+import com.pdflib.cookbook.tet.util.EventLog;
+import com.pdflib.cookbook.tet.util.HeavyHitters;
+import com.pdflib.cookbook.tet.util.NgramCounter;
+import com.pdflib.cookbook.tet.util.ReportWriter;
+import com.pdflib.cookbook.tet.util.SpillingWordCounter;
+import com.pdflib.cookbook.tet.util.TermMatrixWriter;
+import com.pdflib.cookbook.tet.util.TokenNormalizer;
+import com.pdflib.cookbook.tet.util.WordCounter;
 
 /**
- * Create a sorted list of unique words in a document along with counts.
- * 
+ * Create a sorted list of unique words in one or more documents along with
+ * counts.
+ * <p>
+ * usage: concordance [ -top &lt;k&gt; ] [ -threads &lt;n&gt; ] [ -progress
+ * &lt;seconds&gt; ] [ -spill &lt;megabytes&gt; | -approximate &lt;k&gt; [
+ * -width &lt;w&gt; ] [ -depth &lt;d&gt; ] | -ngrams &lt;n&gt; ] [ -corpus
+ * &lt;basename&gt; | -state &lt;statefile&gt; [ -remove &lt;filename&gt; ] ...
+ * ] &lt;infilename&gt; ...
+ * <p>
+ * With -top only the k most frequent words are listed; they are selected
+ * with a bounded heap instead of sorting the whole vocabulary.
+ * <p>
+ * With -threads the documents are processed by a pool of worker threads.
+ * Each worker has its own TET object and its own word counters, so the
+ * workers do not share any state while counting. Documents are split into
+ * ranges of pages, so that the pages of a large document are processed in
+ * parallel, too. The partial counters are merged into the result when the
+ * workers are done, and with -progress additionally every few seconds for
+ * printing the progress to System.err.
+ * <p>
+ * With -spill the memory for the counters is limited to about the given
+ * number of megabytes, for vocabularies that do not fit into the heap. Half
+ * of it is shared by the workers: a worker whose counters exceed its share
+ * merges them into the result. When the result exceeds the other half, it
+ * is written to a sorted run in the temporary directory, and the runs are
+ * merged at the end, see {@link SpillingWordCounter}.
+ * <p>
+ * With -approximate only the k most frequent words are determined, with
+ * approximate counts in fixed memory: a Count-Min Sketch of d rows of w
+ * counters (default 65536 and 5) and a Space-Saving list of k words, see
+ * {@link HeavyHitters}. The workers add the words of each page to the shared
+ * summary. The error guarantees are printed with the list; each count is
+ * given with a lower bound that the true count is guaranteed to reach.
+ * <p>
+ * With -ngrams the sequences of 2 to n consecutive words are counted, too,
+ * and listed after the words. Sequences do not extend over words that are
+ * not counted, e.g. punctuation, nor over page boundaries. The n-grams are
+ * counted by the ids of their words, see {@link NgramCounter}.
+ * <p>
+ * With -corpus the term frequencies of each document are written as a row
+ * of a sparse document-term matrix as soon as the document is done, and the
+ * document frequencies and IDF weights of the terms at the end, for
+ * computing TF-IDF vectors; see {@link TermMatrixWriter} for the files. In
+ * this mode the documents are not split into page ranges, and a worker
+ * merges its counters after each document. Documents with errors are left
+ * out. The rows are written in the order in which the documents are
+ * completed and the term ids are assigned in the order in which the terms
+ * first occur in the rows, so with -threads &gt; 1 both may differ from run
+ * to run; the .docs and .vocab files give the document and the term of each
+ * row and term id.
+ * <p>
+ * With -state the word counts are kept per document in the given file,
+ * which is updated in place, see {@link ConcordanceState}. Documents that
+ * are in the file and whose files have not changed since are not processed
+ * again, changed documents replace their previous counts, and the
+ * documents given with -remove are subtracted. The concordance of all
+ * documents in the file is printed, so that adding a few documents to a
+ * large corpus only costs the new documents. Documents with errors are not
+ * recorded and are processed again in the next run.
+ *
  * Required software: TET 3
  * <p>
- * Required data: PDF document
- * 
+ * Required data: PDF documents
+ *
  * @version $Id: concordance.java,v 1.11 2015/12/03 11:26:46 stm Exp $
  */
 class concordance {
@@ -43,48 +118,403 @@ class concordance {
      * "windows-1252" for getting Latin-1 output.
      */
     private static final String OUTPUT_ENCODING = System.getProperty("file.encoding");
-    
+
     /**
-     * For printing to System.out in the encoding specified via OUTPUT_ENCODING.
+     * For printing to System.out in the encoding specified via OUTPUT_ENCODING,
+     * or as records in the format selected by the system property
+     * com.pdflib.cookbook.tet.report.format.
      */
-    private static PrintStream out;
-    
+    private static ReportWriter out;
+
     /**
      * Set this to true if all words are to be lowercased.
      */
     private static final boolean LOWERCASE_WORDS = false;
-    
+
+    /**
+     * Set this to true if all words are to be NFKC-normalized, so that for
+     * example full-width and compatibility characters are counted as their
+     * ordinary counterparts.
+     */
+    private static final boolean NORMALIZE_WORDS = false;
+
+    /**
+     * Number of pages that a worker processes at a time. Larger ranges
+     * reduce the cost of opening the document in several workers, smaller
+     * ones balance the load better.
+     */
+    private static final int CHUNK_PAGES = 16;
+
+    private static final int DEFAULT_SKETCH_WIDTH = 65536;
+
+    private static final int DEFAULT_SKETCH_DEPTH = 5;
+
+    /**
+     * A range of pages of a document. A range with lastPage 0 stands for the
+     * whole document, whose number of pages is not yet known.
+     */
+    private static class Chunk {
+        final String filename;
+
+        final int firstPage;
+
+        final int lastPage;
+
+        Chunk(String filename, int firstPage, int lastPage) {
+            this.filename = filename;
+            this.firstPage = firstPage;
+            this.lastPage = lastPage;
+        }
+    }
+
+    /**
+     * The names of the files to process.
+     */
+    private final List<String> filenames;
+
+    /**
+     * Number of words to list, or 0 for all words.
+     */
+    private final int top;
+
+    private final int threads;
+
     /**
-     * The name of the file to process.
+     * Seconds between progress reports, or 0 for none.
      */
-    private String filename;
+    private final int progressInterval;
+
+    /**
+     * Number of bytes of counters that a worker holds before it merges them
+     * into the result.
+     */
+    private long workerMemoryLimit = Long.MAX_VALUE;
+
+    /**
+     * The per-word counters of all documents, merged from the counters of
+     * the workers. Access is synchronized on the object.
+     */
+    private SpillingWordCounter wordCounters =
+            new SpillingWordCounter(Long.MAX_VALUE, null);
+
+    /**
+     * The approximate counters for -approximate, otherwise null. Access is
+     * synchronized on the object.
+     */
+    private HeavyHitters heavyHitters;
+
+    /**
+     * The n-gram counters for -ngrams, otherwise null. Access is synchronized
+     * on wordCounters.
+     */
+    private NgramCounter ngramCounters;
+
+    /**
+     * The largest n of the n-grams, or 0 for counting words only.
+     */
+    private int maxN;
+
+    /**
+     * The writer of the document-term matrix for -corpus, otherwise null.
+     */
+    private TermMatrixWriter termMatrix;
+
+    /**
+     * The persisted counts for -state, otherwise null.
+     */
+    private ConcordanceState state;
+
+    private File stateFile;
+
+    /**
+     * Number of documents removed from the state, and skipped because they
+     * are in the state already.
+     */
+    private int removedDocuments;
+
+    private int unchangedDocuments;
+
+    /**
+     * Whether the documents are processed as a whole instead of in page
+     * ranges, for -corpus and -state.
+     */
+    private boolean wholeDocuments;
+
+    /**
+     * The first error from writing the runs of the counters or the
+     * document-term matrix.
+     */
+    private final AtomicReference<IOException> writeError =
+            new AtomicReference<IOException>();
+
+    private final BlockingQueue<Chunk> pendingChunks =
+            new LinkedBlockingQueue<Chunk>();
+
+    /**
+     * Number of whole-document chunks that are not yet split into page
+     * ranges; while there are any, idle workers wait for more chunks.
+     */
+    private final AtomicInteger unsplitDocuments = new AtomicInteger();
+
+    /**
+     * Incremented for each progress report; workers merge their counters
+     * when they see a new value.
+     */
+    private final AtomicInteger mergeRequest = new AtomicInteger();
+
+    private final AtomicLong pagesDone = new AtomicLong();
+
+    private final AtomicLong pagesTotal = new AtomicLong();
+
+    /**
+     * A worker thread with its own TET backend and counters.
+     */
+    private class Worker implements Runnable {
+        private final WordCounter counters = new WordCounter();
+
+        /**
+         * N-gram counters over the word ids of counters, or null.
+         */
+        private final NgramCounter ngrams = maxN > 0
+                ? new NgramCounter(maxN, counters) : null;
+
+        private final TokenNormalizer normalizer =
+                new TokenNormalizer(LOWERCASE_WORDS, NORMALIZE_WORDS);
+
+        private int mergedRequest;
+
+        private TetBackend tet;
+
+        public void run() {
+            try {
+                while (true) {
+                    Chunk chunk = pendingChunks.poll(10, TimeUnit.MILLISECONDS);
+                    if (chunk == null) {
+                        if (unsplitDocuments.get() == 0
+                                && pendingChunks.isEmpty()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    process_chunk(chunk);
+                    if (mergedRequest != mergeRequest.get()) {
+                        mergedRequest = mergeRequest.get();
+                        merge();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                merge();
+                if (tet != null) {
+                    tet.delete();
+                }
+            }
+        }
+
+        /**
+         * Add the partial counters to the result and start over.
+         */
+        private void merge() {
+            if (state != null) {
+                /* whole documents went to the state, drop partial ones */
+                counters.clear();
+                return;
+            }
+            if (heavyHitters != null) {
+                synchronized (heavyHitters) {
+                    for (int id = 0; id < counters.size(); id += 1) {
+                        heavyHitters.add(counters.getWord(id),
+                                counters.getCount(id));
+                    }
+                }
+                counters.clear();
+                return;
+            }
+            try {
+                synchronized (wordCounters) {
+                    wordCounters.addAll(counters);
+                    if (ngrams != null) {
+                        ngramCounters.addAll(ngrams);
+                    }
+                }
+            }
+            catch (IOException e) {
+                writeError.compareAndSet(null, e);
+            }
+            if (ngrams != null) {
+                ngrams.clear();
+            }
+            counters.clear();
+        }
+
+        /**
+         * Write the counters of a whole document as a row of the
+         * document-term matrix or add them to the state, and merge them
+         * into the result.
+         */
+        private void add_document(String filename) {
+            if (state != null) {
+                File file = new File(filename);
+                state.addDocument(filename, file.length(),
+                        file.lastModified(), counters);
+            }
+            else {
+                try {
+                    termMatrix.addDocument(filename, counters);
+                }
+                catch (IOException e) {
+                    writeError.compareAndSet(null, e);
+                }
+            }
+            merge();
+        }
+
+        /**
+         * Drop the counters of a whole document that was not processed
+         * completely, so that they end up neither in the result nor in the
+         * row or the state of the next document.
+         */
+        private void discard_document() {
+            counters.clear();
+            if (ngrams != null) {
+                ngrams.clear();
+            }
+        }
+
+        private void process_chunk(Chunk chunk) {
+            int pageno = 0;
+            boolean unsplit = chunk.lastPage == 0;
+            try {
+                if (tet == null) {
+                    tet = TetBackendFactory.getDefault().create();
+                    tet.set_option(GLOBAL_OPTLIST);
+                }
+
+                final int doc = tet.open_document(chunk.filename, DOC_OPTLIST);
+                if (doc == -1) {
+                    EventLog.getDefault().tetError(tet, chunk.filename, 0);
+                }
+                else {
+                    int lastPage = chunk.lastPage;
+                    if (unsplit) {
+                        lastPage = split(chunk,
+                                (int) tet.pcos_get_number(doc, "length:pages"));
+                        unsplit = false;
+                    }
+
+                    /*
+                     * Loop over the pages of the range
+                     */
+                    boolean complete = true;
+                    for (pageno = chunk.firstPage; pageno <= lastPage; ++pageno) {
+                        complete &= process_page(tet, chunk.filename, doc,
+                                pageno, counters, ngrams, normalizer);
+                        pagesDone.incrementAndGet();
+                        /* in corpus mode merge only whole documents */
+                        if (!wholeDocuments && counters.getMemoryUsage()
+                                > workerMemoryLimit) {
+                            merge();
+                        }
+                    }
+
+                    tet.close_document(doc);
+
+                    if (wholeDocuments) {
+                        /* documents with errors are left out */
+                        if (complete) {
+                            add_document(chunk.filename);
+                        }
+                        else {
+                            discard_document();
+                        }
+                    }
+                }
+            }
+            catch (TETException e) {
+                EventLog.getDefault().tetException(e, chunk.filename, pageno);
+
+                if (wholeDocuments) {
+                    discard_document();
+                }
+                else if (ngrams != null) {
+                    /* no n-gram spans the failed page */
+                    ngrams.breakSequence();
+                }
+
+                /*
+                 * After a TETException the TET object must no longer be
+                 * used, continue with a fresh one.
+                 */
+                tet.delete();
+                tet = null;
+            }
+            finally {
+                if (unsplit) {
+                    /* the document could not be split */
+                    unsplitDocuments.decrementAndGet();
+                }
+            }
+        }
+    }
 
     /**
-     * The map to store the per-word counters. The key is the word, the value
-     * is the number of occurrences of the word.
+     * Queue the pages of a document beyond the first range for the other
+     * workers.
+     *
+     * @return the last page of the first range
      */
-    private Map<String, Integer> wordCounters = new HashMap<String, Integer>();
+    private int split(Chunk chunk, int n_pages) {
+        pagesTotal.addAndGet(n_pages);
+        int lastPage = n_pages;
+        if (threads > 1 && !wholeDocuments) {
+            lastPage = Math.min(n_pages, CHUNK_PAGES);
+            for (int first = lastPage + 1; first <= n_pages;
+                    first += CHUNK_PAGES) {
+                pendingChunks.add(new Chunk(chunk.filename, first,
+                        Math.min(n_pages, first + CHUNK_PAGES - 1)));
+            }
+        }
+        unsplitDocuments.decrementAndGet();
+        return lastPage;
+    }
 
     /**
      * Process a single page of text.
-     * 
+     *
      * @param tet
-     *            TET object
+     *            TET backend
+     * @param filename
+     *            The name of the document, for the error messages
      * @param doc
      *            TET document handle
      * @param pageno
      *            Page to process
-     * 
+     * @param counters
+     *            The counters of the worker
+     * @param ngrams
+     *            The n-gram counters of the worker, or null
+     * @param normalizer
+     *            The normalizer of the worker
+     *
+     * @return false if an error occurred, i.e. the text of the page was not
+     *         counted completely
+     *
      * @throws TETException
      *             An error occurred in the TET API
      */
-    private void process_page(TET tet, final int doc, int pageno)
+    private boolean process_page(TetBackend tet, String filename,
+            final int doc, int pageno, WordCounter counters,
+            NgramCounter ngrams, TokenNormalizer normalizer)
             throws TETException {
         final int page = tet.open_page(doc, pageno, PAGE_OPTLIST);
+        boolean ok = true;
 
         if (page == -1) {
-            System.err.println("Error " + tet.get_errnum() + " in "
-                    + tet.get_apiname() + "(): " + tet.get_errmsg());
+            EventLog.getDefault().tetError(tet, filename, pageno);
+            ok = false;
         }
         else {
             /*
@@ -95,131 +525,467 @@ class concordance {
                 /*
                  * Only include words that start with a letter.
                  */
-                if (Character.isLetter(text.charAt(0))) {
-                    if (LOWERCASE_WORDS) {
-                        text = text.toLowerCase();
-                    }
-                    
-                    Integer value = (Integer) wordCounters.get(text);
-                    if (value != null) {
-                        // Increment counter
-                        value = new Integer(value.intValue() + 1);
+                if (TokenNormalizer.startsWithLetter(text)) {
+                    int length = normalizer.normalize(text);
+                    int id = counters.add(normalizer.getBuffer(), 0, length,
+                            1);
+                    if (ngrams != null) {
+                        ngrams.addToken(id);
                     }
-                    else {
-                        // Initialize with first counted word
-                        value = new Integer(1);
-                    }
-                    wordCounters.put(text, value);
+                }
+                else if (ngrams != null) {
+                    ngrams.breakSequence();
                 }
             }
+            if (ngrams != null) {
+                ngrams.breakSequence();
+            }
 
             if (tet.get_errnum() != 0) {
-                System.err.println("Error " + tet.get_errnum() + " in "
-                        + tet.get_apiname() + "(): " + tet.get_errmsg());
+                EventLog.getDefault().tetError(tet, filename, pageno);
+                ok = false;
             }
 
             tet.close_page(page);
         }
+        return ok;
     }
 
     /**
      * Print out the results.
-     * 
-     * @throws TETException
      */
-    private void print_concordance(TET tet, int doc) throws TETException {
-        out.println("List of words in the document \""
-                + filename + "\" along with the number of occurrences:");
+    private void print_concordance() throws IOException {
+        if (heavyHitters != null) {
+            print_heavy_hitters();
+            return;
+        }
+        if (state != null) {
+            out.println("List of words in the " + state.getDocuments()
+                    + " documents of the state \"" + stateFile
+                    + "\" along with the number of occurrences:");
+            out.println((filenames.size() - unchangedDocuments)
+                    + " documents processed, " + unchangedDocuments
+                    + " unchanged, " + removedDocuments + " removed");
+        }
+        else if (filenames.size() == 1) {
+            out.println("List of words in the document \"" + filenames.get(0)
+                    + "\" along with the number of occurrences:");
+        }
+        else {
+            out.println("List of words in the " + filenames.size()
+                    + " documents along with the number of occurrences:");
+        }
         out.println();
-        
+
         /*
-         * Sort the key-value pairs from the Map descending according to
-         * their count.
+         * Sort the words descending according to their count, or select
+         * the most frequent ones.
          */
-        String[] words = new String[wordCounters.size()];
-        words = (String[]) wordCounters.keySet().toArray(words);
-        Arrays.sort(words, new Comparator<Object>() {
-            public int compare(Object o1, Object o2) {
-                Integer count1 = (Integer) wordCounters.get(o1);
-                Integer count2 = (Integer) wordCounters.get(o2);
-                return count2.compareTo(count1);
-            }
-        });
-        
-        for (int i = 0; i < words.length; i += 1) {
-            out.println(words[i] + " " + wordCounters.get(words[i]));
-        }
+        long unique = wordCounters.visitByCount(top,
+                new SpillingWordCounter.Visitor() {
+                    public void word(String word, long count) {
+                        if (out.isText()) {
+                            out.println(word + " " + count);
+                        }
+                        else if (ngramCounters != null) {
+                            out.startRecord().field("n", 1).field("word", word)
+                                    .field("count", count).endRecord();
+                        }
+                        else {
+                            out.startRecord().field("word", word)
+                                    .field("count", count).endRecord();
+                        }
+                    }
+                });
         out.println();
-        out.println("Total unique words: " + words.length);
+        out.println("Total unique words: " + unique);
+
+        if (ngramCounters != null) {
+            print_ngrams();
+        }
+        if (termMatrix != null) {
+            out.println();
+            out.println("Document-term matrix of " + termMatrix.getDocuments()
+                    + " documents, " + termMatrix.getTerms() + " terms and "
+                    + termMatrix.getEntries() + " entries written to \""
+                    + termMatrix.getBasename() + ".tfm\"");
+        }
     }
 
     /**
-     * Generate the concordance for the given file.
+     * Print out the n-grams of each order.
      */
-    private void execute() {
-        TET tet = null;
-        int pageno = 0;
+    private void print_ngrams() {
+        for (int n = 2; n <= maxN; n += 1) {
+            out.println();
+            out.println("List of " + n + "-grams along with the number of "
+                    + "occurrences:");
+            out.println();
 
-        try {
-            tet = new TET();
-            tet.set_option(GLOBAL_OPTLIST);
+            int[] entries = ngramCounters.sortByCount(n, top);
+            for (int i = 0; i < entries.length; i += 1) {
+                String text = ngramCounters.getText(entries[i]);
+                int count = ngramCounters.getCount(entries[i]);
+                if (out.isText()) {
+                    out.println(text + " " + count);
+                }
+                else {
+                    out.startRecord().field("n", n).field("word", text)
+                            .field("count", count).endRecord();
+                }
+            }
+            out.println();
+            out.println("Total unique " + n + "-grams: "
+                    + ngramCounters.size(n));
+        }
+    }
+
+    /**
+     * Print out the approximate results with their error bounds.
+     */
+    private void print_heavy_hitters() {
+        long total = heavyHitters.getTotal();
+        out.println("Approximate list of the most frequent words in the "
+                + (filenames.size() == 1 ? "document \"" + filenames.get(0)
+                        + "\"" : filenames.size() + " documents")
+                + " along with the number of occurrences:");
+        out.print("Sketch of " + heavyHitters.getDepth() + " x "
+                + heavyHitters.getWidth() + " counters: counts are at most "
+                + (long) Math.ceil(heavyHitters.getEpsilon() * total)
+                + " too high with a probability of ")
+                .printFixed(100 * (1 - heavyHitters.getDelta()), 2)
+                .println("%");
+        out.println("Space-Saving list of " + heavyHitters.getK()
+                + " words: every word with more than "
+                + heavyHitters.getMinCount() + " occurrences is listed");
+        out.println();
 
-            final int doc = tet.open_document(filename, DOC_OPTLIST);
-            if (doc == -1) {
-                System.err.println("Error " + tet.get_errnum() + " in "
-                        + tet.get_apiname() + "(): " + tet.get_errmsg());
+        List<HeavyHitters.Entry> entries = heavyHitters.getEntries();
+        int n = top > 0 ? Math.min(top, entries.size()) : entries.size();
+        for (int i = 0; i < n; i += 1) {
+            HeavyHitters.Entry entry = entries.get(i);
+            if (out.isText()) {
+                out.println(entry.getWord() + " " + entry.getCount()
+                        + " (at least " + entry.getLowerBound() + ")");
             }
             else {
-                /*
-                 * Loop over pages in the document
-                 */
-                final int n_pages = (int) tet.pcos_get_number(doc,
-                        "length:pages");
-                for (pageno = 1; pageno <= n_pages; ++pageno) {
-                    process_page(tet, doc, pageno);
+                out.startRecord().field("word", entry.getWord())
+                        .field("count", entry.getCount())
+                        .field("lower_bound", entry.getLowerBound())
+                        .endRecord();
+            }
+        }
+        out.println();
+        out.println("Total words: " + total);
+    }
+
+    /**
+     * Generate the concordance for the given files.
+     */
+    private void execute() {
+        try {
+            count();
+            print_concordance();
+        }
+        catch (IOException e) {
+            System.err.println("Error writing file: " + e.getMessage());
+            out.close();
+            System.exit(1);
+        }
+        finally {
+            wordCounters.close();
+        }
+    }
+
+    /**
+     * Count the words of the given files with the worker threads, and
+     * complete the document-term matrix or the state.
+     *
+     * @throws IOException
+     *             Writing the runs, the document-term matrix or the state
+     *             failed
+     */
+    private void count() throws IOException {
+        for (String filename : filenames) {
+            if (state != null) {
+                File file = new File(filename);
+                if (state.isCurrent(filename, file.length(),
+                        file.lastModified())) {
+                    unchangedDocuments += 1;
+                    continue;
                 }
+            }
+            unsplitDocuments.incrementAndGet();
+            pendingChunks.add(new Chunk(filename, 1, 0));
+        }
 
-                print_concordance(tet, doc);
+        ScheduledExecutorService scheduler = null;
+        if (progressInterval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    print_progress();
+                    mergeRequest.incrementAndGet();
+                }
+            }, progressInterval, progressInterval, TimeUnit.SECONDS);
+        }
 
-                tet.close_document(doc);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i += 1) {
+            Thread worker = new Thread(new Worker(), "concordance-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
             }
         }
-        catch (TETException e) {
-            if (pageno == 0) {
-                System.err.println("Error " + e.get_errnum() + " in "
-                        + e.get_apiname() + "(): " + e.get_errmsg() + "\n");
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        finally {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
             }
-            else {
-                System.err.println("Error " + e.get_errnum() + " in "
-                        + e.get_apiname() + "() on page " + pageno + ": "
-                        + e.get_errmsg() + "\n");
+            EventLog.getDefault().flush();
+        }
+
+        if (termMatrix != null) {
+            termMatrix.close();
+        }
+        if (writeError.get() != null) {
+            throw writeError.get();
+        }
+        if (state != null) {
+            state.save(stateFile);
+            wordCounters.addAll(state.getTotals());
+        }
+    }
+
+    /**
+     * Print the pages processed so far and the counts merged so far.
+     */
+    private void print_progress() {
+        long words;
+        int spills;
+        if (heavyHitters != null) {
+            synchronized (heavyHitters) {
+                words = heavyHitters.getTotal();
             }
-	    System.exit(1);
+            spills = 0;
         }
-        finally {
-            tet.delete();
+        else if (state != null) {
+            words = state.getTotal();
+            spills = 0;
+        }
+        else {
+            synchronized (wordCounters) {
+                words = wordCounters.getTotal();
+                spills = wordCounters.getSpills();
+            }
         }
+        System.err.println("Progress: " + pagesDone.get() + " of "
+                + pagesTotal.get() + " pages, " + words + " words merged, "
+                + spills + " runs written");
     }
 
     /**
-     * @param filename
-     *            the name of the file for which the concordance will be
+     * @param filenames
+     *            the names of the files for which the concordance will be
      *            generated
+     * @param top
+     *            the number of words to list, or 0 for all words
+     * @param threads
+     *            the number of worker threads
+     * @param progressInterval
+     *            the seconds between progress reports, or 0 for none
+     */
+    private concordance(List<String> filenames, int top, int threads,
+            int progressInterval) {
+        this.filenames = filenames;
+        this.top = top;
+        this.threads = threads;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Limit the memory for the counters, and write them to disk when it is
+     * exceeded.
+     */
+    private void enableSpill(int megabytes) {
+        long limit = megabytes * 1024L * 1024L / 2;
+        workerMemoryLimit = limit / threads;
+        wordCounters = new SpillingWordCounter(limit, null);
+    }
+
+    /**
+     * Count the n-grams of 2 to n words, too.
+     */
+    private void enableNgrams(int n) {
+        maxN = n;
+        ngramCounters = new NgramCounter(n, new WordCounter());
+    }
+
+    /**
+     * Write the document-term matrix to the files with the given base name.
      */
-    private concordance(String filename) {
-        this.filename = filename;
+    private void enableCorpus(String basename) throws IOException {
+        termMatrix = new TermMatrixWriter(basename);
+        wholeDocuments = true;
     }
-    
+
+    /**
+     * Load the persisted counts from the given file, and subtract the
+     * removed documents.
+     */
+    private void enableState(File file, List<String> removals)
+            throws IOException {
+        state = ConcordanceState.load(file);
+        stateFile = file;
+        wholeDocuments = true;
+        for (String name : removals) {
+            if (state.removeDocument(name)) {
+                removedDocuments += 1;
+            }
+            else {
+                System.err.println("Document \"" + name
+                        + "\" is not in the state, not removed");
+            }
+        }
+    }
+
+    /**
+     * Count approximately in fixed memory.
+     */
+    private void enableApproximate(int k, int width, int depth) {
+        heavyHitters = new HeavyHitters(width, depth, k);
+
+        /* the workers add the words of every page to the summary */
+        workerMemoryLimit = 0;
+    }
+
     public static void main(String[] args) throws UnsupportedEncodingException {
-        System.out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
-        out = new PrintStream(System.out, true, OUTPUT_ENCODING);
+        out = ReportWriter.open(OUTPUT_ENCODING);
+        out.println("Using output encoding \"" + OUTPUT_ENCODING + "\"");
 
-        if (args.length != 1) {
-            out.println("usage: concordance <infilename>");
+        int top = 0;
+        int threads = 1;
+        int progressInterval = 0;
+        int spillMegabytes = 0;
+        int approximate = 0;
+        int width = DEFAULT_SKETCH_WIDTH;
+        int depth = DEFAULT_SKETCH_DEPTH;
+        int ngrams = 0;
+        String corpus = null;
+        String stateFile = null;
+        List<String> removals = new ArrayList<String>();
+        boolean valid = true;
+        int i = 0;
+        for (; i < args.length - 1 && args[i].startsWith("-"); i += 2) {
+            int value = intArg(args[i + 1]);
+            if (args[i].equals("-corpus")) {
+                corpus = args[i + 1];
+            }
+            else if (args[i].equals("-state")) {
+                stateFile = args[i + 1];
+            }
+            else if (args[i].equals("-remove")) {
+                removals.add(args[i + 1]);
+            }
+            else if (args[i].equals("-top") && value >= 0) {
+                top = value;
+            }
+            else if (args[i].equals("-threads") && value >= 1) {
+                threads = value;
+            }
+            else if (args[i].equals("-progress") && value >= 0) {
+                progressInterval = value;
+            }
+            else if (args[i].equals("-spill") && value >= 1) {
+                spillMegabytes = value;
+            }
+            else if (args[i].equals("-approximate") && value >= 1) {
+                approximate = value;
+            }
+            else if (args[i].equals("-width") && value >= 1) {
+                width = value;
+            }
+            else if (args[i].equals("-depth") && value >= 1) {
+                depth = value;
+            }
+            else if (args[i].equals("-ngrams") && value >= 2
+                    && value <= NgramCounter.MAX_ORDER) {
+                ngrams = value;
+            }
+            else {
+                valid = false;
+                break;
+            }
+        }
+        int modes = (spillMegabytes > 0 ? 1 : 0) + (approximate > 0 ? 1 : 0)
+                + (ngrams > 0 ? 1 : 0) + (stateFile != null ? 1 : 0);
+        if (!valid || (i >= args.length && stateFile == null) || modes > 1
+                || (stateFile != null && corpus != null)
+                || (stateFile == null && !removals.isEmpty())) {
+            System.err.println("usage: concordance [ -top <k> ] "
+                    + "[ -threads <n> ] [ -progress <seconds> ] "
+                    + "[ -spill <megabytes> | -approximate <k> "
+                    + "[ -width <w> ] [ -depth <d> ] | -ngrams <n> ] "
+                    + "[ -corpus <basename> | -state <statefile> "
+                    + "[ -remove <filename> ] ... ] <infilename> ...");
+            out.close();
             return;
         }
 
-        concordance c = new concordance(args[0]);
+        List<String> filenames = new ArrayList<String>();
+        for (; i < args.length; i += 1) {
+            filenames.add(args[i]);
+        }
+        concordance c = new concordance(filenames, top, threads,
+                progressInterval);
+        if (spillMegabytes > 0) {
+            c.enableSpill(spillMegabytes);
+        }
+        if (approximate > 0) {
+            c.enableApproximate(approximate, width, depth);
+        }
+        if (ngrams > 0) {
+            c.enableNgrams(ngrams);
+        }
+        if (corpus != null) {
+            try {
+                c.enableCorpus(corpus);
+            }
+            catch (IOException e) {
+                System.err.println("Error creating file: " + e.getMessage());
+                out.close();
+                return;
+            }
+        }
+        if (stateFile != null) {
+            try {
+                c.enableState(new File(stateFile), removals);
+            }
+            catch (IOException e) {
+                System.err.println("Error reading file: " + e.getMessage());
+                out.close();
+                return;
+            }
+        }
         c.execute();
+        out.close();
+    }
+
+    /**
+     * @return the value of a numeric option, or -1 if it is not a number
+     */
+    private static int intArg(String value) {
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
     }
 }
@@ -1,13 +1,9 @@
 package com.pdflib.cookbook.tet.text;
 
-import java.io.BufferedWriter;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.util.Formatter;
-import java.util.Locale;
-
 import com.pdflib.TET;
 import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.util.PcosCache;
+import com.pdflib.cookbook.tet.util.ReportWriter;
 
 /**
  * Simple PDF glyph dumper based on PDFlib TET
@@ -35,7 +31,12 @@ public class glyphinfo
      */
     static final String pageoptlist = "granularity=word";
 
-    private static void print_color_value(Formatter formatter, TET tet, int doc, int colorid) throws TETException
+    /**
+     * Buffered output for the glyph information.
+     */
+    private static ReportWriter out;
+
+    private static void print_color_value(ReportWriter out, TET tet, PcosCache pcos, int doc, int colorid) throws TETException
     {
 	int colorinfo;
 	String csname;			/* color space name */
@@ -48,17 +49,17 @@ public class glyphinfo
 	colorinfo = tet.get_color_info(doc, colorid, "usage=fill");
 	if (colorinfo == -1)
 	{
-	    formatter.format(" (not available)");
+	    out.print(" (not available)");
 	    return;
 	}
 	
 	if (tet.colorspaceid == -1 && tet.patternid == -1)
 	{
-	    formatter.format(" (not filled)");
+	    out.print(" (not filled)");
 	    return;
 	}
 
-	formatter.format(" (");
+	out.print(" (");
 
 	if (tet.patternid != -1)
 	{
@@ -71,12 +72,12 @@ public class glyphinfo
 		    (int) tet.pcos_get_number(doc, "patterns[" + tet.patternid + "]/PaintType");
 		if (painttype == 1)
 		{
-		    formatter.format( "colored Pattern)");
+		    out.print("colored Pattern)");
 		    return;
 		}
 		else if (painttype == 2)
 		{
-		    formatter.format( "uncolored Pattern, base color: ");
+		    out.print("uncolored Pattern, base color: ");
 		    /* FALLTHROUGH to colorspaceid output */
 		}
 	    }
@@ -86,14 +87,14 @@ public class glyphinfo
 		    (int) tet.pcos_get_number(doc,
 			    "patterns[" + tet.patternid + "]/Shading/ShadingType");
 
-		formatter.format("shading Pattern, ShadingType=%d)", shadingtype);
+		out.print("shading Pattern, ShadingType=").print(shadingtype).print(')');
 		return;
 	    }
 	}
 
-	csname = tet.pcos_get_string(doc, "colorspaces[" + tet.colorspaceid + "]/name");
+	csname = pcos.colorspaceName(tet.colorspaceid);
 
-	formatter.format("%s", csname);
+	out.print(csname);
 
 	/* Emit more details depending on the colorspace type */
 	if (csname.equals( "ICCBased"))
@@ -112,29 +113,29 @@ public class glyphinfo
 	    /* Check whether the embedded profile is damaged */
 	    if (errormessage.equals(""))
 	    {
-		formatter.format(" (%s)", errormessage);
+		out.print(" (").print(errormessage).print(')');
 	    }
 	    else
 	    {
 		profilename =
 		    tet.pcos_get_string(doc,
 			"iccprofiles[" + iccprofileid + "]/profilename");
-		formatter.format( " '%s'", profilename);
+		out.print(" '").print(profilename).print('\'');
 
 		profilecs = tet.pcos_get_string(doc,
 			"iccprofiles[" + iccprofileid + "]/profilecs");
-		formatter.format(" '%s'", profilecs);
+		out.print(" '").print(profilecs).print('\'');
 	    }
 	}
 	else if (csname.equals("Separation"))
 	{
 	    String colorantname =
 		tet.pcos_get_string(doc, "colorspaces[" + tet.colorspaceid + "]/colorantname");
-	    formatter.format(" '%s'", colorantname);
+	    out.print(" '").print(colorantname).print('\'');
 	}
 	else if (csname.equals("DeviceN"))
 	{
-	    formatter.format( " ");
+	    out.print(' ');
 
 	    for (i=0; i < tet.components.length; i++)
 	    {
@@ -142,10 +143,10 @@ public class glyphinfo
 		    tet.pcos_get_string(doc,
 			"colorspaces[" + tet.colorspaceid + "]/colorantnames[" + i + "]");
 
-		formatter.format( "%s", colorantname);
+		out.print(colorantname);
 
 		if (i != tet.components.length-1)
-		    formatter.format("/");
+		    out.print('/');
 	    }
 	}
 	else if (csname.equals( "Indexed"))
@@ -153,21 +154,21 @@ public class glyphinfo
 	    int baseid =
 		(int) tet.pcos_get_number(doc, "colorspaces[" + tet.colorspaceid + "]/baseid" );
 
-	    csname = tet.pcos_get_string(doc, "colorspaces[" + baseid + "]/name");
+	    csname = pcos.colorspaceName(baseid);
 
-	    formatter.format( " %s", csname);
+	    out.print(' ').print(csname);
 
 	}
 
-	formatter.format( " ");
+	out.print(' ');
 	for (i=0; i < tet.components.length; i++)
 	{
-	    formatter.format( "%g", tet.components[i]);
+	    out.printf("%g", tet.components[i]);
 
 	    if (i != tet.components.length-1)
-		formatter.format( "/");
+		out.print('/');
 	}
-	formatter.format( ")");
+	out.print(')');
     }
 
     
@@ -182,14 +183,15 @@ public class glyphinfo
                 throw new Exception("usage: glyphinfo <filename>");
             }
 
-	    /* print UTF-8 BOM */
-	    byte[] bom = new byte[] { (byte)0xEF, (byte)0xBB, (byte)0xBF };
-	    System.out.write(bom);
+            /*
+             * Buffered output; in the machine-readable modes selected with
+             * com.pdflib.cookbook.tet.report.format one record per glyph is
+             * written instead of the text.
+             */
+            out = ReportWriter.open("UTF-8");
 
-            Writer outfp = new BufferedWriter(
-				    new OutputStreamWriter(System.out, "UTF-8"));
-
-	    Formatter formatter = new Formatter(outfp, Locale.US);
+	    /* print UTF-8 BOM */
+	    out.print('\uFEFF');
 
             tet = new TET();
 
@@ -199,7 +201,7 @@ public class glyphinfo
 
             if (doc == -1)
             {
-                formatter.close();
+                out.close();
                 throw new Exception("Error " + tet.get_errnum() + "in "
                         + tet.get_apiname() + "(): " + tet.get_errmsg());
             }
@@ -207,6 +209,9 @@ public class glyphinfo
             /* get number of pages in the document */
             int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
 
+            /* cache for the pCOS values queried per glyph */
+            PcosCache pcos = new PcosCache(tet, doc);
+
             /* loop over pages in the document */
             for (int pageno = 1; pageno <= n_pages; ++pageno)
             {
@@ -223,14 +228,17 @@ public class glyphinfo
                 }
 
 		/* Administrative information */
-		formatter.format("\n[ Document: '" + 
-		    tet.pcos_get_string(doc, "filename") + "' ]\n");
+		if (out.isText())
+		{
+		    out.print("\n[ Document: '" +
+			tet.pcos_get_string(doc, "filename") + "' ]\n");
 
-		formatter.format("[ Document options: '%s' ]\n", docoptlist);
+		    out.print("[ Document options: '" + docoptlist + "' ]\n");
 
-		formatter.format("[ Page options: '%s' ]\n", pageoptlist);
+		    out.print("[ Page options: '" + pageoptlist + "' ]\n");
 
-		formatter.format("[ ----- Page %d ----- ]\n", pageno);
+		    out.print("[ ----- Page " + pageno + " ----- ]\n");
+		}
 
 
 		/* Retrieve all text fragments */
@@ -240,46 +248,53 @@ public class glyphinfo
                     int ci;
 
 		    /* print the retrieved text */
-		    outfp.write("[" + text + "]\n");
+		    out.print("[" + text + "]\n");
 
 		    /* Loop over all glyphs and print their details */
 		    while ((ci = tet.get_char_info(page)) != -1)
 		    {
 			final String fontname;
 
-			/* Fetch the font name with pCOS (based on its ID) */
-			fontname = tet.pcos_get_string(doc,
-				    "fonts[" + tet.fontid + "]/name");
+			/* Fetch the font name with pCOS (based on its ID, cached) */
+			fontname = pcos.fontName(tet.fontid);
+
+			if (!out.isText())
+			{
+			    print_glyph_record(pageno, fontname, tet);
+			    continue;
+			}
 
 			/* Print the character */
-			formatter.format("U+%04X", tet.uv);
+			out.print("U+").printHex(tet.uv, 4);
 
 			/* ...and its UTF8 representation */
-			formatter.format(" '%c'", tet.uv);
+			out.print(" '").printCodePoint(tet.uv).print('\'');
 
 			/* Print font name, size, and position */
-			formatter.format(" %s size=%.2f x=%.2f y=%.2f",
-			    fontname, tet.fontsize, tet.x, tet.y);
+			out.print(' ').print(fontname);
+			out.print(" size=").printFixed(tet.fontsize, 2);
+			out.print(" x=").printFixed(tet.x, 2);
+			out.print(" y=").printFixed(tet.y, 2);
 
 			/* Print the color id */
-			formatter.format(" colorid=%d", tet.colorid);
+			out.print(" colorid=").print(tet.colorid);
 
 			/* Check wheater the text color changed */
 			if (tet.colorid != previouscolor){
-			    print_color_value(formatter, tet, doc, tet.colorid);
+			    print_color_value(out, tet, pcos, doc, tet.colorid);
 			    previouscolor = tet.colorid;
 			}
 
 			/* Examine the "type" member */
 			if (tet.type == 1)
-			    formatter.format(" ligature_start");
+			    out.print(" ligature_start");
 
 			else if (tet.type == 10)
-			    formatter.format(" ligature_cont");
+			    out.print(" ligature_cont");
 
 			/* Separators are only inserted for granularity > word*/
 			else if (tet.type == 12)
-			    formatter.format(" inserted");
+			    out.print(" inserted");
 
 			/* Examine the bit flags in the "attributes" member */
 			final int ATTR_NONE = 0;
@@ -294,25 +309,25 @@ public class glyphinfo
 			if (tet.attributes != ATTR_NONE)
 			{
 			    if ((tet.attributes & ATTR_SUB) == ATTR_SUB)
-				formatter.format("/sub");
+				out.print("/sub");
 			    if ((tet.attributes & ATTR_SUP) == ATTR_SUP)
-				formatter.format("/sup");
+				out.print("/sup");
 			    if ((tet.attributes & ATTR_DROPCAP) == ATTR_DROPCAP)
-				formatter.format("/dropcap");
+				out.print("/dropcap");
 			    if ((tet.attributes & ATTR_SHADOW) == ATTR_SHADOW)
-				formatter.format("/shadow");
+				out.print("/shadow");
 			    if ((tet.attributes & ATTR_DH_PRE) == ATTR_DH_PRE)
-				formatter.format("/dehyphenation_pre");
+				out.print("/dehyphenation_pre");
 			    if ((tet.attributes & ATTR_DH_ARTIFACT) == ATTR_DH_ARTIFACT)
-				formatter.format("/dehyphenation_artifact");
+				out.print("/dehyphenation_artifact");
 			    if ((tet.attributes & ATTR_DH_POST) == ATTR_DH_POST)
-				formatter.format("/dehyphenation_post");
+				out.print("/dehyphenation_post");
 			}
 
-			formatter.format("\n");
+			out.print('\n');
 		    }
 
-		    formatter.format("\n");
+		    out.print('\n');
 		}
                 if (tet.get_errnum() != 0)
                 {
@@ -323,7 +338,7 @@ public class glyphinfo
             }
 
             tet.close_document(doc);
-            outfp.close();
+            out.close();
         }
 	catch (TETException e)
 	{
@@ -343,6 +358,26 @@ public class glyphinfo
         }
     }
 
+    /**
+     * Write the record for a glyph.
+     */
+    private static void print_glyph_record(int pageno, String fontname,
+	    TET tet)
+    {
+	out.startRecord()
+	    .field("page", pageno)
+	    .field("uv", tet.uv)
+	    .field("char", new String(Character.toChars(tet.uv)))
+	    .field("font", fontname)
+	    .field("size", tet.fontsize)
+	    .field("x", tet.x)
+	    .field("y", tet.y)
+	    .field("colorid", tet.colorid)
+	    .field("type", tet.type)
+	    .field("attributes", tet.attributes)
+	    .endRecord();
+    }
+
     /**
      * Report a TET error.
      * 
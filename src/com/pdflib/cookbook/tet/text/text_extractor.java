@@ -8,6 +8,8 @@ import java.util.List;
 
 import com.pdflib.TETException;
 import com.pdflib.TET;
+import com.pdflib.cookbook.tet.util.EventLog;
+import com.pdflib.cookbook.tet.util.PcosCache;
 
 /**
  * PDF text extractor based on PDFlib TET
@@ -89,7 +91,7 @@ public class text_extractor {
                 int page = tet.open_page(doc, pageno, PAGE_OPTLIST);
 
                 if (page < 0) {
-                    print_tet_error(tet, pageno);
+                    print_tet_error(tet, pdfPath, pageno);
                     continue; /* try next page */
                 }
                 while ((text = tet.get_text(page)) != null) {
@@ -127,13 +129,16 @@ public class text_extractor {
             /* get number of pages in the document */
             int n_pages = (int) tet.pcos_get_number(doc, "length:pages");
 
+            /* cache for the pCOS values queried per glyph */
+            PcosCache pcos = new PcosCache(tet, doc);
+
             /* loop over pages */
             for (int pageno = 1; pageno <= n_pages; ++pageno) {
                 String text;
                 int page = tet.open_page(doc, pageno, PAGE_OPTLIST);
 
                 if (page < 0) {
-                    print_tet_error(tet, pageno);
+                    print_tet_error(tet, argv[0], pageno);
                     continue; /* try next page */
                 }
 
@@ -152,8 +157,7 @@ public class text_extractor {
                          * unused variable warning.
                          */
                         /* String fontname = */
-                        tet.pcos_get_string(doc, "fonts[" + tet.fontid
-                                + "]/name");
+                        pcos.fontName(tet.fontid);
                     }
 
                     /* print the retrieved text */
@@ -164,7 +168,7 @@ public class text_extractor {
                 }
 
                 if (tet.get_errnum() != 0) {
-                    print_tet_error(tet, pageno);
+                    print_tet_error(tet, argv[0], pageno);
                 }
 
                 tet.close_page(page);
@@ -194,12 +198,12 @@ public class text_extractor {
      * 
      * @param tet
      *            The TET object
+     * @param filename
+     *            The document being processed
      * @param pageno
      *            The page number on which the error occurred
      */
-    private static void print_tet_error(TET tet, int pageno) {
-        System.err.println("Error " + tet.get_errnum() + " in  "
-                + tet.get_apiname() + "() on page " + pageno + ": "
-                + tet.get_errmsg());
+    private static void print_tet_error(TET tet, String filename, int pageno) {
+        EventLog.getDefault().tetError(tet, filename, pageno);
     }
 }
@@ -0,0 +1,286 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The word counts of a set of documents that can be saved to a file and
+ * updated later, so that adding documents to a concordance only costs the
+ * new documents.
+ * <p>
+ * Besides the total count of each word, the state keeps the word counts of
+ * each document, so that a removed or changed document can be subtracted
+ * again. A document is identified by its name and recognized as changed by
+ * the length and modification time of its file.
+ * <p>
+ * The file is compact: the words are stored once, and the counts of a
+ * document as ascending word ids with variable-length integers, the ids as
+ * differences to the previous id. Words whose total count has dropped to 0
+ * are left out. The file is written to a temporary file first and then
+ * replaced, so that an interrupted update keeps the previous state.
+ * <p>
+ * The methods are synchronized, so the workers of a program can add their
+ * documents directly.
+ */
+public class ConcordanceState {
+    /**
+     * "CST1"
+     */
+    private static final int MAGIC = 0x43535431;
+
+    private static final int VERSION = 1;
+
+    /**
+     * The word counts of a document, by ascending word id.
+     */
+    private static class Document {
+        final long length;
+
+        final long lastModified;
+
+        final int[] ids;
+
+        final int[] counts;
+
+        Document(long length, long lastModified, int[] ids, int[] counts) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.ids = ids;
+            this.counts = counts;
+        }
+    }
+
+    /**
+     * The total count of each word over all documents.
+     */
+    private WordCounter totals = new WordCounter();
+
+    private final Map<String, Document> documents =
+            new LinkedHashMap<String, Document>();
+
+    private final StringBuilder word = new StringBuilder();
+
+    /**
+     * Load the state from a file.
+     *
+     * @return the state, or an empty state if the file does not exist
+     */
+    public static ConcordanceState load(File file) throws IOException {
+        ConcordanceState state = new ConcordanceState();
+        if (!file.exists()) {
+            return state;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 65536));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a concordance state");
+            }
+            int words = readVarInt(in);
+            for (int id = 0; id < words; id += 1) {
+                String word = in.readUTF();
+                state.totals.add(word, readVarInt(in));
+            }
+            int n = readVarInt(in);
+            for (int d = 0; d < n; d += 1) {
+                String name = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                int size = readVarInt(in);
+                int[] ids = new int[size];
+                int[] counts = new int[size];
+                int id = -1;
+                for (int i = 0; i < size; i += 1) {
+                    id += readVarInt(in);
+                    ids[i] = id;
+                    counts[i] = readVarInt(in);
+                }
+                state.documents.put(name, new Document(length, lastModified,
+                        ids, counts));
+            }
+        }
+        finally {
+            in.close();
+        }
+        return state;
+    }
+
+    /**
+     * Save the state to a file, replacing the file only when the state is
+     * completely written.
+     */
+    public synchronized void save(File file) throws IOException {
+        compact();
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp), 65536));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeVarInt(out, totals.size());
+            for (int id = 0; id < totals.size(); id += 1) {
+                word.setLength(0);
+                totals.appendWord(id, word);
+                out.writeUTF(word.toString());
+                writeVarInt(out, totals.getCount(id));
+            }
+            writeVarInt(out, documents.size());
+            for (Map.Entry<String, Document> entry : documents.entrySet()) {
+                Document document = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(document.length);
+                out.writeLong(document.lastModified);
+                writeVarInt(out, document.ids.length);
+                int previous = -1;
+                for (int i = 0; i < document.ids.length; i += 1) {
+                    writeVarInt(out, document.ids[i] - previous);
+                    writeVarInt(out, document.counts[i]);
+                    previous = document.ids[i];
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return whether the document has been counted with a file of the
+     *         given length and modification time
+     */
+    public synchronized boolean isCurrent(String name, long length,
+            long lastModified) {
+        Document document = documents.get(name);
+        return document != null && document.length == length
+                && document.lastModified == lastModified;
+    }
+
+    /**
+     * Add the word counts of a document, replacing the counts of a previous
+     * version of it.
+     */
+    public synchronized void addDocument(String name, long length,
+            long lastModified, WordCounter counts) {
+        removeDocument(name);
+
+        long[] entries = new long[counts.size()];
+        for (int i = 0; i < entries.length; i += 1) {
+            word.setLength(0);
+            counts.appendWord(i, word);
+            int id = totals.add(word, counts.getCount(i));
+            entries[i] = (long) id << 32 | counts.getCount(i);
+        }
+        Arrays.sort(entries);
+
+        int[] ids = new int[entries.length];
+        int[] documentCounts = new int[entries.length];
+        for (int i = 0; i < entries.length; i += 1) {
+            ids[i] = (int) (entries[i] >>> 32);
+            documentCounts[i] = (int) entries[i];
+        }
+        documents.put(name, new Document(length, lastModified, ids,
+                documentCounts));
+    }
+
+    /**
+     * Subtract the word counts of a document.
+     *
+     * @return false if the document is not in the state
+     */
+    public synchronized boolean removeDocument(String name) {
+        Document document = documents.remove(name);
+        if (document == null) {
+            return false;
+        }
+        for (int i = 0; i < document.ids.length; i += 1) {
+            word.setLength(0);
+            totals.appendWord(document.ids[i], word);
+            totals.add(word, -document.counts[i]);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of documents
+     */
+    public synchronized int getDocuments() {
+        return documents.size();
+    }
+
+    /**
+     * @return the sum of all counts
+     */
+    public synchronized long getTotal() {
+        return totals.getTotal();
+    }
+
+    /**
+     * @return the total count of each word that occurs in any document; the
+     *         counter belongs to the state
+     */
+    public synchronized WordCounter getTotals() {
+        compact();
+        return totals;
+    }
+
+    /**
+     * Drop the words whose total count is 0 and renumber the others.
+     */
+    private void compact() {
+        int[] newIds = new int[totals.size()];
+        WordCounter compacted = new WordCounter();
+        for (int id = 0; id < totals.size(); id += 1) {
+            int count = totals.getCount(id);
+            if (count > 0) {
+                word.setLength(0);
+                totals.appendWord(id, word);
+                newIds[id] = compacted.add(word, count);
+            }
+        }
+        if (compacted.size() == totals.size()) {
+            return;
+        }
+        for (Document document : documents.values()) {
+            for (int i = 0; i < document.ids.length; i += 1) {
+                document.ids[i] = newIds[document.ids[i]];
+            }
+        }
+        totals = compacted;
+    }
+
+    private static void writeVarInt(DataOutput out, int value)
+            throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("invalid variable-length integer");
+    }
+}
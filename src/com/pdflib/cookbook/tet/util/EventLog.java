@@ -0,0 +1,508 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+
+/**
+ * Asynchronous log for errors and other events of the extraction tools.
+ * <p>
+ * Reporting an event only stores its fields in a slot of a fixed-size ring
+ * buffer; no lock is taken and nothing is formatted or written by the
+ * reporting thread. A background thread drains the buffer and writes the
+ * events in one of these formats:
+ * <ul>
+ * <li>TEXT: one line per event in the style of the cookbook samples, e.g.
+ * <code>Error 3508 in open_page() on page 5 of "a.pdf": ...</code></li>
+ * <li>JSONL: one JSON object per line with the fields time, level, document,
+ * page, api, errnum and message, for aggregation with standard tools</li>
+ * <li>BINARY: a DataOutputStream record per event: long time, byte level, int
+ * page, int errnum, and document, api and message as UTF strings ("" for
+ * none)</li>
+ * </ul>
+ * If the buffer is full, events are dropped rather than blocking the workers;
+ * the number of dropped events is reported when the log is closed.
+ * <p>
+ * The default log returned by {@link #getDefault()} is configured with the
+ * system properties <code>com.pdflib.cookbook.tet.eventlog.format</code>
+ * (text, jsonl or binary; default text),
+ * <code>com.pdflib.cookbook.tet.eventlog.file</code> (default: System.err)
+ * and <code>com.pdflib.cookbook.tet.eventlog.capacity</code> (default 8192).
+ * It is drained and flushed by a shutdown hook when the JVM exits.
+ */
+public class EventLog {
+    public enum Format {
+        TEXT, JSONL, BINARY
+    }
+
+    public static final byte ERROR = 0;
+
+    public static final byte WARNING = 1;
+
+    public static final byte INFO = 2;
+
+    private static final String[] LEVEL_NAMES = { "Error", "Warning", "Info" };
+
+    private static final String PROPERTY_PREFIX = "com.pdflib.cookbook.tet.eventlog.";
+
+    /**
+     * Time the drain thread sleeps when the buffer is empty.
+     */
+    private static final long IDLE_NANOS = 1000000L;
+
+    private static EventLog defaultLog;
+
+    private final Format format;
+
+    private final OutputStream stream;
+
+    private final PrintStream textOut;
+
+    private final DataOutputStream binaryOut;
+
+    private final boolean closeStream;
+
+    private final int mask;
+
+    /**
+     * Per slot: the sequence number of the event it holds plus 1 if the slot
+     * is ready to be read, or the sequence number of the next event to be
+     * written into it.
+     */
+    private final AtomicLongArray sequences;
+
+    private final long[] times;
+
+    private final byte[] levels;
+
+    private final int[] pages;
+
+    private final int[] errnums;
+
+    private final String[] documents;
+
+    private final String[] apis;
+
+    private final String[] messages;
+
+    /**
+     * Next sequence number to be claimed by a producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Next sequence number to be read by the drain thread.
+     */
+    private long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread drainer;
+
+    private volatile boolean closed;
+
+    /**
+     * @param format
+     *            Output format
+     * @param stream
+     *            Stream for the events
+     * @param closeStream
+     *            true if close() is to close the stream
+     * @param capacity
+     *            Number of events the buffer can hold, rounded up to a power
+     *            of 2
+     */
+    public EventLog(Format format, OutputStream stream, boolean closeStream,
+            int capacity) {
+        this.format = format;
+        this.stream = stream;
+        this.closeStream = closeStream;
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i += 1) {
+            sequences.set(i, i);
+        }
+        times = new long[size];
+        levels = new byte[size];
+        pages = new int[size];
+        errnums = new int[size];
+        documents = new String[size];
+        apis = new String[size];
+        messages = new String[size];
+
+        if (format == Format.BINARY) {
+            binaryOut = new DataOutputStream(new BufferedOutputStream(stream));
+            textOut = null;
+        }
+        else {
+            try {
+                textOut = new PrintStream(new BufferedOutputStream(stream),
+                        false, "UTF-8");
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            binaryOut = null;
+        }
+
+        drainer = new Thread(new Runnable() {
+            public void run() {
+                drainLoop();
+            }
+        }, "event-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * @return the log configured by system properties, created on first use
+     */
+    public static synchronized EventLog getDefault() {
+        if (defaultLog == null) {
+            Format format = Format.valueOf(System.getProperty(
+                    PROPERTY_PREFIX + "format", "text").toUpperCase());
+            int capacity = Integer.getInteger(PROPERTY_PREFIX + "capacity", 8192);
+            String file = System.getProperty(PROPERTY_PREFIX + "file");
+
+            OutputStream stream = System.err;
+            boolean closeStream = false;
+            if (file != null) {
+                try {
+                    stream = new FileOutputStream(file, true);
+                    closeStream = true;
+                }
+                catch (FileNotFoundException e) {
+                    System.err.println("Cannot open event log \"" + file
+                            + "\", using System.err: " + e.getMessage());
+                }
+            }
+
+            final EventLog log = new EventLog(format, stream, closeStream,
+                    capacity);
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    log.close();
+                }
+            }, "event-log-shutdown"));
+            defaultLog = log;
+        }
+        return defaultLog;
+    }
+
+    /**
+     * Report an event.
+     *
+     * @param level
+     *            ERROR, WARNING or INFO
+     * @param document
+     *            Name of the document, or null
+     * @param page
+     *            Page number, or 0 if the event does not refer to a page
+     * @param api
+     *            Name of the TET API function, or null
+     * @param errnum
+     *            TET error number, or 0
+     * @param message
+     *            The message
+     */
+    public void log(byte level, String document, int page, String api,
+            int errnum, String message) {
+        long pos = tail.get();
+        for (;;) {
+            int slot = (int) pos & mask;
+            long diff = sequences.get(slot) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    times[slot] = System.currentTimeMillis();
+                    levels[slot] = level;
+                    documents[slot] = document;
+                    pages[slot] = page;
+                    apis[slot] = api;
+                    errnums[slot] = errnum;
+                    messages[slot] = message;
+                    /* publish the slot to the drain thread */
+                    sequences.set(slot, pos + 1);
+                    return;
+                }
+                pos = tail.get();
+            }
+            else if (diff < 0) {
+                /* the buffer is full */
+                dropped.incrementAndGet();
+                return;
+            }
+            else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Report the current error of a TET object.
+     */
+    public void tetError(TET tet, String document, int page) {
+        log(ERROR, document, page, tet.get_apiname(), tet.get_errnum(),
+                tet.get_errmsg());
+    }
+
+    /**
+     * Report the current error of a TET backend.
+     */
+    public void tetError(TetBackend tet, String document, int page) {
+        log(ERROR, document, page, tet.get_apiname(), tet.get_errnum(),
+                tet.get_errmsg());
+    }
+
+    /**
+     * Report a TET exception.
+     */
+    public void tetException(TETException e, String document, int page) {
+        log(ERROR, document, page, e.get_apiname(), e.get_errnum(),
+                e.get_errmsg());
+    }
+
+    /**
+     * Report an error without TET details.
+     */
+    public void error(String document, String message) {
+        log(ERROR, document, 0, null, 0, message);
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Wait until all events reported so far have been written, and flush
+     * the output.
+     */
+    public void flush() {
+        long target = tail.get();
+        while (!closed && drainedUpTo() < target) {
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        synchronized (this) {
+            flushStream();
+        }
+    }
+
+    /**
+     * Write all pending events, stop the drain thread and flush (and, if
+     * requested, close) the stream. Events reported afterwards are dropped.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            drain();
+            long n = dropped.get();
+            if (n > 0) {
+                write(WARNING, System.currentTimeMillis(), null, 0, null, 0,
+                        n + " events dropped, event log buffer full");
+            }
+            flushStream();
+            if (closeStream) {
+                try {
+                    stream.close();
+                }
+                catch (IOException e) {
+                    System.err.println("Error closing event log: "
+                            + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private synchronized long drainedUpTo() {
+        return head;
+    }
+
+    private void drainLoop() {
+        while (!closed) {
+            int count;
+            synchronized (this) {
+                count = drain();
+                if (count > 0) {
+                    flushStream();
+                }
+            }
+            if (count == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Write all published events.
+     *
+     * @return the number of events written
+     */
+    private int drain() {
+        int count = 0;
+        for (;;) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                return count;
+            }
+            write(levels[slot], times[slot], documents[slot], pages[slot],
+                    apis[slot], errnums[slot], messages[slot]);
+            documents[slot] = null;
+            apis[slot] = null;
+            messages[slot] = null;
+            /* hand the slot back to the producers for the next round */
+            sequences.set(slot, head + mask + 1);
+            head += 1;
+            count += 1;
+        }
+    }
+
+    private void write(byte level, long time, String document, int page,
+            String api, int errnum, String message) {
+        switch (format) {
+        case TEXT:
+            textOut.println(formatText(level, document, page, api, errnum,
+                    message));
+            break;
+
+        case JSONL:
+            textOut.println(formatJson(level, time, document, page, api,
+                    errnum, message));
+            break;
+
+        case BINARY:
+            try {
+                binaryOut.writeLong(time);
+                binaryOut.writeByte(level);
+                binaryOut.writeInt(page);
+                binaryOut.writeInt(errnum);
+                binaryOut.writeUTF(document != null ? document : "");
+                binaryOut.writeUTF(api != null ? api : "");
+                binaryOut.writeUTF(message != null ? message : "");
+            }
+            catch (IOException e) {
+                dropped.incrementAndGet();
+            }
+            break;
+        }
+    }
+
+    private void flushStream() {
+        if (textOut != null) {
+            textOut.flush();
+        }
+        else {
+            try {
+                binaryOut.flush();
+            }
+            catch (IOException e) {
+                /* reported as dropped events by the next write */
+            }
+        }
+    }
+
+    static String formatText(byte level, String document, int page,
+            String api, int errnum, String message) {
+        StringBuilder line = new StringBuilder(LEVEL_NAMES[level]);
+        if (errnum != 0) {
+            line.append(' ').append(errnum);
+        }
+        if (api != null && api.length() > 0) {
+            line.append(" in ").append(api).append("()");
+        }
+        if (page > 0) {
+            line.append(" on page ").append(page);
+        }
+        if (document != null) {
+            line.append(page > 0 ? " of \"" : " in \"").append(document)
+                    .append('"');
+        }
+        return line.append(": ").append(message).toString();
+    }
+
+    static String formatJson(byte level, long time, String document,
+            int page, String api, int errnum, String message) {
+        StringBuilder line = new StringBuilder(128);
+        line.append("{\"time\":").append(time);
+        line.append(",\"level\":\"").append(LEVEL_NAMES[level].toLowerCase())
+                .append('"');
+        if (document != null) {
+            line.append(",\"document\":");
+            appendJsonString(line, document);
+        }
+        if (page > 0) {
+            line.append(",\"page\":").append(page);
+        }
+        if (api != null && api.length() > 0) {
+            line.append(",\"api\":");
+            appendJsonString(line, api);
+        }
+        if (errnum != 0) {
+            line.append(",\"errnum\":").append(errnum);
+        }
+        line.append(",\"message\":");
+        appendJsonString(line, message != null ? message : "");
+        return line.append('}').toString();
+    }
+
+    /**
+     * Append a string as a JSON string literal.
+     */
+    public static void appendJsonString(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    out.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    out.append(c);
+                }
+            }
+        }
+        out.append('"');
+    }
+}
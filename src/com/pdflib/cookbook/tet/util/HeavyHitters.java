@@ -0,0 +1,315 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate word counts in fixed memory: a Count-Min Sketch for estimating
+ * the count of any word, and a Space-Saving list of the k most frequent
+ * words.
+ * <p>
+ * The sketch has depth rows of width counters. A word increments one
+ * counter per row, and its estimate is the minimum of these counters. The
+ * estimate is never too small, and with probability 1 - delta it is too
+ * large by at most epsilon * N, where N is the total count, epsilon = e /
+ * width and delta = e^-depth.
+ * <p>
+ * The Space-Saving list monitors k words with a count and an error each.
+ * Occurrences of a monitored word increment its count. A word that is not
+ * monitored replaces the word with the smallest count m, taking over count
+ * m plus its occurrences and error m; here it only does so if its estimate
+ * from the sketch exceeds m, so that rare words do not push out frequent
+ * ones. The count of a monitored word is at most its error too large, every
+ * word that occurs more than m times is monitored, and m is at most N / k.
+ * The reported count of a word is the smaller of its Space-Saving count and
+ * its sketch estimate, and count - error is a guaranteed lower bound.
+ * <p>
+ * The memory is 8 * width * depth bytes for the sketch plus the k monitored
+ * words, independent of the number of distinct words. The class is not
+ * thread-safe.
+ */
+public class HeavyHitters {
+    /**
+     * A monitored word with its counts.
+     */
+    public static class Entry {
+        private final String word;
+
+        private final long count;
+
+        private final long lowerBound;
+
+        Entry(String word, long count, long lowerBound) {
+            this.word = word;
+            this.count = count;
+            this.lowerBound = lowerBound;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        /**
+         * @return the estimated count, never smaller than the true count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return a count that the true count is guaranteed to reach
+         */
+        public long getLowerBound() {
+            return lowerBound;
+        }
+    }
+
+    private final int width;
+
+    private final int depth;
+
+    private final int k;
+
+    /**
+     * The sketch, row by row.
+     */
+    private final long[] sketch;
+
+    /**
+     * The monitored words and their counts and errors, by slot.
+     */
+    private final String[] words;
+
+    private final long[] counts;
+
+    private final long[] errors;
+
+    /**
+     * Min-heap of slots by count, and the position of each slot in it.
+     */
+    private final int[] heap;
+
+    private final int[] positions;
+
+    private final Map<String, Integer> slots;
+
+    private int size;
+
+    private long total;
+
+    /**
+     * Buffer for the row indexes of a word.
+     */
+    private final int[] columns;
+
+    /**
+     * @param width
+     *            Number of counters per row of the sketch
+     * @param depth
+     *            Number of rows of the sketch
+     * @param k
+     *            Number of monitored words
+     */
+    public HeavyHitters(int width, int depth, int k) {
+        if (width < 1 || depth < 1 || k < 1) {
+            throw new IllegalArgumentException(
+                    "width, depth and k must be positive");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.k = k;
+        sketch = new long[width * depth];
+        words = new String[k];
+        counts = new long[k];
+        errors = new long[k];
+        heap = new int[k];
+        positions = new int[k];
+        slots = new HashMap<String, Integer>(k * 2);
+        columns = new int[depth];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return the relative error bound e / width of the sketch
+     */
+    public double getEpsilon() {
+        return Math.E / width;
+    }
+
+    /**
+     * @return the probability e^-depth that a sketch estimate exceeds the
+     *         error bound
+     */
+    public double getDelta() {
+        return Math.exp(-depth);
+    }
+
+    /**
+     * @return the sum of all counts
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the smallest count in the Space-Saving list if it is full, 0
+     *         otherwise; words that are not listed occur at most this often
+     */
+    public long getMinCount() {
+        return size == k ? counts[heap[0]] : 0;
+    }
+
+    /**
+     * Count an occurrence of a word.
+     */
+    public void add(String word) {
+        add(word, 1);
+    }
+
+    /**
+     * Add to the count of a word.
+     */
+    public void add(String word, long count) {
+        total += count;
+        columns(word);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row += 1) {
+            int i = row * width + columns[row];
+            sketch[i] += count;
+            estimate = Math.min(estimate, sketch[i]);
+        }
+
+        Integer slot = slots.get(word);
+        if (slot != null) {
+            counts[slot.intValue()] += count;
+            siftDown(positions[slot.intValue()]);
+        }
+        else if (size < k) {
+            words[size] = word;
+            counts[size] = count;
+            errors[size] = 0;
+            slots.put(word, Integer.valueOf(size));
+            heap[size] = size;
+            positions[size] = size;
+            siftUp(size);
+            size += 1;
+        }
+        else {
+            int min = heap[0];
+            if (estimate > counts[min]) {
+                slots.remove(words[min]);
+                words[min] = word;
+                errors[min] = counts[min];
+                counts[min] += count;
+                slots.put(word, Integer.valueOf(min));
+                siftDown(0);
+            }
+        }
+    }
+
+    /**
+     * @return the sketch estimate of the count of a word
+     */
+    public long estimate(String word) {
+        columns(word);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row += 1) {
+            estimate = Math.min(estimate, sketch[row * width + columns[row]]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return the monitored words, by descending count
+     */
+    public List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<Entry>(size);
+        for (int slot = 0; slot < size; slot += 1) {
+            long count = Math.min(counts[slot], estimate(words[slot]));
+            entries.add(new Entry(words[slot], count,
+                    counts[slot] - errors[slot]));
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                int c = Long.compare(e2.count, e1.count);
+                return c != 0 ? c : Long.compare(e2.lowerBound, e1.lowerBound);
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Compute the column of the word in each row from a 64-bit hash, with
+     * the double hashing of Kirsch and Mitzenmacher.
+     */
+    private void columns(String word) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i += 1) {
+            h = (h ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int row = 0; row < depth; row += 1) {
+            columns[row] = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+        }
+    }
+
+    private void siftUp(int pos) {
+        int slot = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+            place(heap[parent], pos);
+            pos = parent;
+        }
+        place(slot, pos);
+    }
+
+    private void siftDown(int pos) {
+        int slot = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size
+                    && counts[heap[child + 1]] < counts[heap[child]]) {
+                child += 1;
+            }
+            if (counts[heap[child]] >= counts[slot]) {
+                break;
+            }
+            place(heap[child], pos);
+            pos = child;
+        }
+        place(slot, pos);
+    }
+
+    private void place(int slot, int pos) {
+        heap[pos] = slot;
+        positions[slot] = pos;
+    }
+}
@@ -0,0 +1,379 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts the n-grams of a token stream, i.e. the sequences of 2 to maxN
+ * consecutive tokens.
+ * <p>
+ * The tokens are given as ids of a {@link WordCounter}, which serves as the
+ * dictionary for the output. An n-gram is stored as the entry of its
+ * (n-1)-gram prefix and its last token id; the prefix of a bigram is its
+ * first token id. Every prefix of a counted n-gram is counted itself, at the
+ * previous token, so the n-grams ending at a token are found by one lookup
+ * per order, starting from the entries found at the previous token, and no
+ * n-gram text is built. The two ints identify the n-gram exactly, so there
+ * are no hash collisions, and the text for the output is recovered by
+ * following the prefixes.
+ * <p>
+ * The hash table is an open-addressing table with linear probing. Each slot
+ * holds the two ints of the key next to the entry number, so that a probe
+ * touches a single cache line even when the table is much larger than the
+ * cache, as it is for the mostly unique trigrams of a large document.
+ * <p>
+ * {@link #clear()} keeps the capacity, so a counter that is cleared after
+ * each merge starts with a table of the size of the previous merge, and
+ * {@link #addAll(NgramCounter)} makes room for the entries of the other
+ * counter before adding them.
+ * <p>
+ * The class is not thread-safe; use one instance per thread and combine the
+ * counts with {@link #addAll(NgramCounter)}.
+ */
+public class NgramCounter {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Ints per slot of the hash table: prefix, last token id and entry + 1.
+     */
+    private static final int SLOT_SIZE = 3;
+
+    /**
+     * Largest supported n.
+     */
+    public static final int MAX_ORDER = 8;
+
+    private final int maxN;
+
+    private final WordCounter tokens;
+
+    /**
+     * Hash table of SLOT_SIZE ints per slot, entry + 1 is 0 for an empty
+     * slot. The table has two slots per entry of capacity, so it is at most
+     * half full.
+     */
+    private int[] slots;
+
+    /**
+     * Entry of the (n-1)-gram prefix of each entry, or for a bigram the
+     * complement ~id of its first token id, which is negative.
+     */
+    private int[] prefixes;
+
+    /**
+     * Last token id of each entry.
+     */
+    private int[] lasts;
+
+    private int[] counts;
+
+    /**
+     * Order of each entry.
+     */
+    private byte[] orders;
+
+    private int size;
+
+    /**
+     * The number of tokens of the current sequence, at most maxN.
+     */
+    private int filled;
+
+    /**
+     * The last token of the current sequence.
+     */
+    private int lastToken;
+
+    /**
+     * Entries of the k-grams ending at the last token, by k.
+     */
+    private final int[] previous;
+
+    /**
+     * @param maxN
+     *            Largest n of the n-grams to count, 2 to MAX_ORDER
+     * @param tokens
+     *            The dictionary of the token ids
+     */
+    public NgramCounter(int maxN, WordCounter tokens) {
+        if (maxN < 2 || maxN > MAX_ORDER) {
+            throw new IllegalArgumentException("n must be between 2 and "
+                    + MAX_ORDER);
+        }
+        this.maxN = maxN;
+        this.tokens = tokens;
+        allocate(INITIAL_CAPACITY);
+        previous = new int[maxN + 1];
+    }
+
+    public int getMaxN() {
+        return maxN;
+    }
+
+    /**
+     * @return the dictionary of the token ids
+     */
+    public WordCounter getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Count the n-grams that end with the next token of the sequence.
+     *
+     * @param id
+     *            The id of the token in the dictionary
+     */
+    public void addToken(int id) {
+        if (filled < maxN) {
+            filled += 1;
+        }
+        int prefix = ~lastToken;
+        for (int n = 2; n <= filled; n += 1) {
+            int e = add(prefix, id, n, 1);
+            /* the n-gram ending at the last token is the next prefix */
+            prefix = previous[n];
+            previous[n] = e;
+        }
+        lastToken = id;
+    }
+
+    /**
+     * End the current sequence, e.g. at punctuation or at the end of a page;
+     * no n-gram spans the break.
+     */
+    public void breakSequence() {
+        filled = 0;
+    }
+
+    /**
+     * Add the counts of another counter, whose token ids may be from a
+     * different dictionary.
+     */
+    public void addAll(NgramCounter other) {
+        int[] mappedIds = null;
+        if (other.tokens != tokens) {
+            mappedIds = new int[other.tokens.size()];
+            Arrays.fill(mappedIds, -1);
+        }
+        ensureCapacity(size + other.size);
+
+        /* the prefix of an entry always comes before the entry */
+        int[] mapped = new int[other.size];
+        for (int e = 0; e < other.size; e += 1) {
+            int n = other.orders[e];
+            if (n > maxN) {
+                continue;
+            }
+            int prefix = other.prefixes[e];
+            prefix = n == 2 ? ~map(other, ~prefix, mappedIds)
+                    : mapped[prefix];
+            mapped[e] = add(prefix, map(other, other.lasts[e], mappedIds),
+                    n, other.counts[e]);
+        }
+    }
+
+    /**
+     * @return the id in this dictionary of a token id of the other counter
+     */
+    private int map(NgramCounter other, int id, int[] mappedIds) {
+        if (mappedIds == null) {
+            return id;
+        }
+        if (mappedIds[id] < 0) {
+            mappedIds[id] = tokens.add(other.tokens.getWord(id), 0);
+        }
+        return mappedIds[id];
+    }
+
+    /**
+     * @return the number of distinct n-grams of all orders
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getOrder(int entry) {
+        checkEntry(entry);
+        return orders[entry];
+    }
+
+    public int getCount(int entry) {
+        checkEntry(entry);
+        return counts[entry];
+    }
+
+    /**
+     * @return the tokens of the n-gram, separated by blanks
+     */
+    public String getText(int entry) {
+        checkEntry(entry);
+        int[] ids = new int[orders[entry]];
+        int e = entry;
+        for (int i = ids.length - 1; i > 0; i -= 1) {
+            ids[i] = lasts[e];
+            e = prefixes[e];
+        }
+        ids[0] = ~e;
+
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < ids.length; i += 1) {
+            if (i > 0) {
+                s.append(' ');
+            }
+            tokens.appendWord(ids[i], s);
+        }
+        return s.toString();
+    }
+
+    /**
+     * @return the number of distinct n-grams of order n
+     */
+    public int size(int n) {
+        int count = 0;
+        for (int e = 0; e < size; e += 1) {
+            if (orders[e] == n) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sort the n-grams of order n descending by count, like
+     * {@link WordCounter#sortByCount()}.
+     *
+     * @param top
+     *            Number of n-grams to return, or 0 for all of them
+     *
+     * @return the entries in sorted order
+     */
+    public int[] sortByCount(int n, int top) {
+        long[] keys = new long[size(n)];
+        int k = 0;
+        for (int e = 0; e < size; e += 1) {
+            if (orders[e] == n) {
+                keys[k++] = (long) (Integer.MAX_VALUE - counts[e]) << 32 | e;
+            }
+        }
+        Arrays.sort(keys);
+        int[] entries = new int[top > 0 ? Math.min(top, k) : k];
+        for (int i = 0; i < entries.length; i += 1) {
+            entries[i] = (int) keys[i];
+        }
+        return entries;
+    }
+
+    /**
+     * Remove all n-grams and end the current sequence. The capacity is kept.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+        filled = 0;
+    }
+
+    /**
+     * Add to the count of the n-gram of the prefix and the last token id.
+     *
+     * @return the entry of the n-gram
+     */
+    private int add(int prefix, int last, int n, int delta) {
+        int mask = slots.length / SLOT_SIZE - 1;
+        int slot = spread(prefix, last) & mask;
+        int e;
+        while ((e = slots[SLOT_SIZE * slot + 2] - 1) >= 0) {
+            if (slots[SLOT_SIZE * slot] == prefix
+                    && slots[SLOT_SIZE * slot + 1] == last) {
+                counts[e] += delta;
+                return e;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        e = size;
+        if (e == counts.length) {
+            ensureCapacity(e + 1);
+            slot = freeSlot(prefix, last);
+        }
+        prefixes[e] = prefix;
+        lasts[e] = last;
+        counts[e] = delta;
+        orders[e] = (byte) n;
+        slots[SLOT_SIZE * slot] = prefix;
+        slots[SLOT_SIZE * slot + 1] = last;
+        slots[SLOT_SIZE * slot + 2] = e + 1;
+        size += 1;
+        return e;
+    }
+
+    private void checkEntry(int entry) {
+        if (entry < 0 || entry >= size) {
+            throw new IndexOutOfBoundsException("n-gram " + entry);
+        }
+    }
+
+    /**
+     * Grow the arrays to a power of two that holds at least the given number
+     * of entries.
+     */
+    private void ensureCapacity(int entries) {
+        int capacity = counts.length;
+        if (entries <= capacity) {
+            return;
+        }
+        while (capacity < entries) {
+            capacity *= 2;
+        }
+
+        int[] old = slots;
+        allocate(capacity);
+        for (int i = 0; i < old.length; i += SLOT_SIZE) {
+            if (old[i + 2] != 0) {
+                int slot = freeSlot(old[i], old[i + 1]);
+                System.arraycopy(old, i, slots, SLOT_SIZE * slot, SLOT_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Allocate or grow the arrays for the given number of entries and
+     * allocate an empty hash table for them.
+     */
+    private void allocate(int capacity) {
+        if (counts == null) {
+            prefixes = new int[capacity];
+            lasts = new int[capacity];
+            counts = new int[capacity];
+            orders = new byte[capacity];
+        }
+        else {
+            prefixes = Arrays.copyOf(prefixes, capacity);
+            lasts = Arrays.copyOf(lasts, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            orders = Arrays.copyOf(orders, capacity);
+        }
+        slots = new int[capacity * 2 * SLOT_SIZE];
+    }
+
+    /**
+     * @return the first empty slot for the key
+     */
+    private int freeSlot(int prefix, int last) {
+        int mask = slots.length / SLOT_SIZE - 1;
+        int slot = spread(prefix, last) & mask;
+        while (slots[SLOT_SIZE * slot + 2] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return well-mixed low bits of a key for the table index
+     */
+    private static int spread(int prefix, int last) {
+        long key = (long) prefix << 32 ^ (last & 0xffffffffL);
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,315 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, validated TET option list.
+ * <p>
+ * Option lists are built with a {@link Builder} from typed values instead of
+ * string concatenation. The builder checks the option names and the brace
+ * structure of the values, quotes values with braces where necessary, and
+ * orders the options by name, so that equal option lists always have the
+ * same string form. {@link Builder#build()} interns the result: building the
+ * same option list again returns the same instance, whose string was created
+ * only once. Option lists can therefore be kept in constants instead of being
+ * rebuilt for every page, and they can serve as keys for caches of
+ * extraction results.
+ * <p>
+ * As interned option lists are kept for the lifetime of the JVM, use
+ * {@link Builder#format()} for option lists that are only used once, e.g.
+ * with a different file name for every image.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * private static final String INCLUDE_OPTLIST = OptionList.builder()
+ *         .add("granularity", "page")
+ *         .addRectangle("includebox", 50, 535, 105, 550)
+ *         .build().toString();
+ * </pre>
+ */
+public final class OptionList {
+    private static final Map<String, OptionList> INTERNED =
+            new ConcurrentHashMap<String, OptionList>();
+
+    private final String string;
+
+    private OptionList(String string) {
+        this.string = string;
+    }
+
+    /**
+     * @return a builder for a new option list
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Parse and validate an option list string, and return the interned
+     * option list.
+     *
+     * @throws IllegalArgumentException
+     *             The string is not a valid option list
+     */
+    public static OptionList of(String optlist) {
+        OptionList retval = INTERNED.get(optlist);
+        if (retval == null) {
+            retval = builder().addAll(optlist).build();
+            INTERNED.putIfAbsent(optlist, retval);
+        }
+        return retval;
+    }
+
+    /**
+     * @return the option list in the form expected by the TET API
+     */
+    public String toString() {
+        return string;
+    }
+
+    public boolean equals(Object o) {
+        return o instanceof OptionList && ((OptionList) o).string.equals(string);
+    }
+
+    public int hashCode() {
+        return string.hashCode();
+    }
+
+    /**
+     * Collects typed options. Each option may only be added once. Builders
+     * are not thread-safe; the built option lists are.
+     */
+    public static class Builder {
+        private final TreeMap<String, String> options =
+                new TreeMap<String, String>();
+
+        private Builder() {
+        }
+
+        /**
+         * Add a string option; the value is put in braces if necessary.
+         */
+        public Builder add(String name, String value) {
+            return put(name, quote(value));
+        }
+
+        /**
+         * Add a boolean option.
+         */
+        public Builder add(String name, boolean value) {
+            return put(name, value ? "true" : "false");
+        }
+
+        /**
+         * Add an integer option.
+         */
+        public Builder add(String name, int value) {
+            return put(name, Integer.toString(value));
+        }
+
+        /**
+         * Add a numeric option.
+         */
+        public Builder add(String name, double value) {
+            return put(name, number(value));
+        }
+
+        /**
+         * Add a list of numbers, e.g. a single rectangle or a matrix.
+         */
+        public Builder addList(String name, double... values) {
+            StringBuilder list = new StringBuilder("{");
+            for (int i = 0; i < values.length; i += 1) {
+                if (i > 0) {
+                    list.append(' ');
+                }
+                list.append(number(values[i]));
+            }
+            return put(name, list.append('}').toString());
+        }
+
+        /**
+         * Add a list with a single rectangle, as expected by the
+         * "includebox" and "excludebox" options.
+         */
+        public Builder addRectangle(String name, double llx, double lly,
+                double urx, double ury) {
+            return put(name, "{{" + number(llx) + " " + number(lly) + " "
+                    + number(urx) + " " + number(ury) + "}}");
+        }
+
+        /**
+         * Add all options of an option list string.
+         *
+         * @throws IllegalArgumentException
+         *             The string is not a valid option list, or contains an
+         *             option that has already been added
+         */
+        public Builder addAll(String optlist) {
+            int i = 0;
+            final int length = optlist.length();
+            while (i < length) {
+                while (i < length && Character.isWhitespace(optlist.charAt(i))) {
+                    i += 1;
+                }
+                if (i == length) {
+                    break;
+                }
+
+                int start = i;
+                int depth = 0;
+                while (i < length && (depth > 0
+                        || !Character.isWhitespace(optlist.charAt(i)))) {
+                    char c = optlist.charAt(i);
+                    if (c == '{') {
+                        depth += 1;
+                    }
+                    else if (c == '}') {
+                        depth -= 1;
+                        if (depth < 0) {
+                            throw invalid(optlist, "unbalanced braces");
+                        }
+                    }
+                    i += 1;
+                }
+                if (depth != 0) {
+                    throw invalid(optlist, "unbalanced braces");
+                }
+
+                String option = optlist.substring(start, i);
+                int equals = option.indexOf('=');
+                if (equals == -1) {
+                    /* a name without value is a boolean option set to true */
+                    put(option, "true");
+                }
+                else {
+                    put(option.substring(0, equals),
+                            option.substring(equals + 1));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Add all options of another option list.
+         */
+        public Builder addAll(OptionList optlist) {
+            return addAll(optlist.string);
+        }
+
+        /**
+         * @return the interned option list
+         */
+        public OptionList build() {
+            String string = format();
+            OptionList retval = INTERNED.get(string);
+            if (retval == null) {
+                retval = new OptionList(string);
+                OptionList previous = INTERNED.putIfAbsent(string, retval);
+                if (previous != null) {
+                    retval = previous;
+                }
+            }
+            return retval;
+        }
+
+        /**
+         * @return the string form of the option list, without interning
+         */
+        public String format() {
+            StringBuilder result = new StringBuilder();
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append(option.getKey()).append('=')
+                        .append(option.getValue());
+            }
+            return result.toString();
+        }
+
+        private Builder put(String name, String value) {
+            if (!isName(name)) {
+                throw new IllegalArgumentException("invalid option name \""
+                        + name + "\"");
+            }
+            if (!balanced(value)) {
+                throw new IllegalArgumentException("unbalanced braces in "
+                        + "value of option \"" + name + "\"");
+            }
+            if (options.containsKey(name)) {
+                throw new IllegalArgumentException("option \"" + name
+                        + "\" specified twice");
+            }
+            options.put(name, value);
+            return this;
+        }
+    }
+
+    /**
+     * Put a string value in braces if it is empty or contains whitespace,
+     * braces or an equals sign.
+     */
+    private static String quote(String value) {
+        if (value.length() == 0) {
+            return "{}";
+        }
+        for (int i = 0; i < value.length(); i += 1) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c) || c == '{' || c == '}' || c == '=') {
+                return "{" + value + "}";
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Format a number without exponent and without trailing zeros.
+     */
+    private static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("invalid number " + value);
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private static boolean isName(String name) {
+        if (name.length() == 0 || !Character.isLetter(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != ':') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean balanced(String value) {
+        int depth = 0;
+        for (int i = 0; i < value.length(); i += 1) {
+            char c = value.charAt(i);
+            if (c == '{') {
+                depth += 1;
+            }
+            else if (c == '}' && --depth < 0) {
+                return false;
+            }
+        }
+        return depth == 0;
+    }
+
+    private static IllegalArgumentException invalid(String optlist,
+            String reason) {
+        return new IllegalArgumentException("invalid option list \"" + optlist
+                + "\": " + reason);
+    }
+}
@@ -0,0 +1,260 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.util.Arrays;
+
+import com.pdflib.TET;
+import com.pdflib.TETException;
+import com.pdflib.cookbook.tet.backend.NativeTetBackend;
+import com.pdflib.cookbook.tet.backend.TetBackend;
+
+/**
+ * Per-document cache for pCOS values that do not change while the document is
+ * open, e.g. the name of a font or the pixel size of an image.
+ * <p>
+ * Glyph and image loops typically query the same few values over and over
+ * again, like <code>"fonts[" + tet.fontid + "]/name"</code> for every glyph.
+ * With this cache the pCOS path is built and the value is fetched through JNI
+ * only for the first request of each object id; all further requests are
+ * plain array lookups.
+ * <p>
+ * The cache is bound to one document handle and must not be used after the
+ * document has been closed. Like the TET object itself it is not thread-safe.
+ * The arrays grow on demand, as some pCOS arrays (e.g. "images") only get
+ * their final length after all pages have been processed.
+ */
+public class PcosCache {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final TetBackend tet;
+
+    private final int doc;
+
+    private String[] fontNames = new String[INITIAL_CAPACITY];
+
+    private double[] fontAscenders = nanArray(INITIAL_CAPACITY);
+
+    private double[] fontDescenders = nanArray(INITIAL_CAPACITY);
+
+    /**
+     * 0 = not yet fetched, 1 = not embedded, 2 = embedded
+     */
+    private byte[] fontEmbedded = new byte[INITIAL_CAPACITY];
+
+    private String[] colorspaceNames = new String[INITIAL_CAPACITY];
+
+    /**
+     * -1 = not yet fetched
+     */
+    private int[] imageWidths = minusOneArray(INITIAL_CAPACITY);
+
+    private int[] imageHeights = minusOneArray(INITIAL_CAPACITY);
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * @param tet
+     *            The TET object
+     * @param doc
+     *            The TET document handle
+     */
+    public PcosCache(TET tet, int doc) {
+        this(new NativeTetBackend(tet), doc);
+    }
+
+    /**
+     * @param tet
+     *            The TET backend
+     * @param doc
+     *            The document handle
+     */
+    public PcosCache(TetBackend tet, int doc) {
+        this.tet = tet;
+        this.doc = doc;
+    }
+
+    /**
+     * @return the value of "fonts[fontid]/name"
+     */
+    public String fontName(int fontid) throws TETException {
+        if (fontid >= fontNames.length) {
+            fontNames = Arrays.copyOf(fontNames, newCapacity(fontid));
+        }
+        String name = fontNames[fontid];
+        if (name == null) {
+            misses += 1;
+            name = tet.pcos_get_string(doc, "fonts[" + fontid + "]/name");
+            fontNames[fontid] = name;
+        }
+        else {
+            hits += 1;
+        }
+        return name;
+    }
+
+    /**
+     * @return the value of "fonts[fontid]/ascender", relative to a font
+     *         scaling factor of 1000
+     */
+    public double fontAscender(int fontid) throws TETException {
+        if (fontid >= fontAscenders.length) {
+            fontAscenders = grow(fontAscenders, newCapacity(fontid));
+        }
+        double value = fontAscenders[fontid];
+        if (Double.isNaN(value)) {
+            misses += 1;
+            value = tet.pcos_get_number(doc, "fonts[" + fontid + "]/ascender");
+            fontAscenders[fontid] = value;
+        }
+        else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of "fonts[fontid]/descender", relative to a font
+     *         scaling factor of 1000 (usually a negative number)
+     */
+    public double fontDescender(int fontid) throws TETException {
+        if (fontid >= fontDescenders.length) {
+            fontDescenders = grow(fontDescenders, newCapacity(fontid));
+        }
+        double value = fontDescenders[fontid];
+        if (Double.isNaN(value)) {
+            misses += 1;
+            value = tet.pcos_get_number(doc, "fonts[" + fontid + "]/descender");
+            fontDescenders[fontid] = value;
+        }
+        else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    /**
+     * @return true if "fonts[fontid]/embedded" is set
+     */
+    public boolean fontEmbedded(int fontid) throws TETException {
+        if (fontid >= fontEmbedded.length) {
+            fontEmbedded = Arrays.copyOf(fontEmbedded, newCapacity(fontid));
+        }
+        byte value = fontEmbedded[fontid];
+        if (value == 0) {
+            misses += 1;
+            value = tet.pcos_get_number(doc, "fonts[" + fontid + "]/embedded")
+                    != 0 ? (byte) 2 : (byte) 1;
+            fontEmbedded[fontid] = value;
+        }
+        else {
+            hits += 1;
+        }
+        return value == 2;
+    }
+
+    /**
+     * @return the value of "colorspaces[colorspaceid]/name"
+     */
+    public String colorspaceName(int colorspaceid) throws TETException {
+        if (colorspaceid >= colorspaceNames.length) {
+            colorspaceNames = Arrays.copyOf(colorspaceNames,
+                    newCapacity(colorspaceid));
+        }
+        String name = colorspaceNames[colorspaceid];
+        if (name == null) {
+            misses += 1;
+            name = tet.pcos_get_string(doc,
+                    "colorspaces[" + colorspaceid + "]/name");
+            colorspaceNames[colorspaceid] = name;
+        }
+        else {
+            hits += 1;
+        }
+        return name;
+    }
+
+    /**
+     * @return the value of "images[imageid]/Width" in pixels
+     */
+    public int imageWidth(int imageid) throws TETException {
+        if (imageid >= imageWidths.length) {
+            imageWidths = grow(imageWidths, newCapacity(imageid));
+        }
+        int value = imageWidths[imageid];
+        if (value == -1) {
+            misses += 1;
+            value = (int) tet.pcos_get_number(doc,
+                    "images[" + imageid + "]/Width");
+            imageWidths[imageid] = value;
+        }
+        else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of "images[imageid]/Height" in pixels
+     */
+    public int imageHeight(int imageid) throws TETException {
+        if (imageid >= imageHeights.length) {
+            imageHeights = grow(imageHeights, newCapacity(imageid));
+        }
+        int value = imageHeights[imageid];
+        if (value == -1) {
+            misses += 1;
+            value = (int) tet.pcos_get_number(doc,
+                    "images[" + imageid + "]/Height");
+            imageHeights[imageid] = value;
+        }
+        else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    /**
+     * @return number of requests that were answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of requests that had to be fetched via pCOS
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    private static int newCapacity(int id) {
+        return Math.max(id + 1, id * 2);
+    }
+
+    private static double[] nanArray(int length) {
+        double[] retval = new double[length];
+        Arrays.fill(retval, Double.NaN);
+        return retval;
+    }
+
+    private static int[] minusOneArray(int length) {
+        int[] retval = new int[length];
+        Arrays.fill(retval, -1);
+        return retval;
+    }
+
+    private static double[] grow(double[] array, int length) {
+        int oldLength = array.length;
+        double[] retval = Arrays.copyOf(array, length);
+        Arrays.fill(retval, oldLength, length, Double.NaN);
+        return retval;
+    }
+
+    private static int[] grow(int[] array, int length) {
+        int oldLength = array.length;
+        int[] retval = Arrays.copyOf(array, length);
+        Arrays.fill(retval, oldLength, length, -1);
+        return retval;
+    }
+}
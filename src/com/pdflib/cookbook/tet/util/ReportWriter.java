@@ -0,0 +1,577 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Buffered writer for the reports of the cookbook tools.
+ * <p>
+ * A PrintStream created with autoflush, as the samples use for System.out,
+ * flushes and converts its output on every println. For large documents this
+ * dominates the runtime of tools that print a line per word or per glyph.
+ * The ReportWriter instead collects the output in a large buffer that is
+ * written when it is full, on {@link #flush()} and on {@link #close()}. A
+ * flush interval can be set so that the output of long runs still appears
+ * regularly; the flush is then done by a background thread.
+ * <p>
+ * Besides the human-readable TEXT mode, which is written with the
+ * print()/println() methods, a report can be written as records in one of
+ * the machine-readable modes:
+ * <ul>
+ * <li>JSONL: one JSON object per record and line</li>
+ * <li>CSV: comma-separated values as in RFC 4180, with a header line</li>
+ * <li>TSV: tab-separated values with a header line; tabs, line breaks and
+ * backslashes in values are written as \t, \n, \r and \\</li>
+ * </ul>
+ * The header of CSV and TSV is taken from the field names of the first
+ * record, so all records of a report must have the same fields. In the
+ * machine-readable modes the print methods are ignored, so that the tools
+ * can write their text output unconditionally and only need to check
+ * {@link #isText()} where they build records instead.
+ * <p>
+ * {@link #open(String)} creates the writer for System.out with the mode and
+ * flush interval from the system properties
+ * <code>com.pdflib.cookbook.tet.report.format</code> (text, jsonl, csv or
+ * tsv; default text) and <code>com.pdflib.cookbook.tet.report.flush</code>
+ * (flush interval in milliseconds; default 0 for no background flushing).
+ * <p>
+ * Like PrintStream, the writer does not throw IOExceptions; use
+ * {@link #checkError()} to test whether an error occurred.
+ */
+public class ReportWriter implements Closeable, Flushable {
+    public enum Mode {
+        TEXT, JSONL, CSV, TSV
+    }
+
+    private static final String PROPERTY_PREFIX = "com.pdflib.cookbook.tet.report.";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L,
+        10000L, 100000L, 1000000L };
+
+    private final Writer writer;
+
+    /**
+     * Whether close() closes the stream; System.out and System.err are only
+     * flushed, so that the program can still print to them afterwards.
+     */
+    private final boolean closeStream;
+
+    private final Mode mode;
+
+    private final String lineSeparator = System.getProperty("line.separator");
+
+    /**
+     * Field names of the current record, and of the first record for CSV and
+     * TSV.
+     */
+    private final List<String> names = new ArrayList<String>();
+
+    private List<String> header;
+
+    /**
+     * The current record, written as a whole by endRecord().
+     */
+    private final StringBuilder record = new StringBuilder(256);
+
+    private boolean inRecord;
+
+    /**
+     * For {@link #printf(String, Object...)}, created on first use.
+     */
+    private Formatter formatter;
+
+    private StringBuilder formatterBuffer;
+
+    private Thread flusher;
+
+    private boolean error;
+
+    private boolean closed;
+
+    /**
+     * @param stream
+     *            The stream to write to; System.out and System.err are
+     *            flushed but not closed by {@link #close()}
+     * @param encoding
+     *            The character encoding of the output
+     * @param mode
+     *            The output mode
+     * @param flushIntervalMillis
+     *            Interval for flushing the output by a background thread, or 0
+     *            to flush only when the buffer is full or on explicit request
+     *
+     * @throws UnsupportedEncodingException
+     *             The encoding is not supported
+     */
+    public ReportWriter(OutputStream stream, String encoding, Mode mode,
+            long flushIntervalMillis) throws UnsupportedEncodingException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream,
+                encoding), BUFFER_SIZE);
+        this.closeStream = stream != System.out && stream != System.err;
+        this.mode = mode;
+        if (flushIntervalMillis > 0) {
+            startFlusher(flushIntervalMillis);
+        }
+    }
+
+    /**
+     * Create the writer for System.out, configured by system properties. The
+     * TEXT mode uses the given encoding, the machine-readable modes use UTF-8.
+     * The output is flushed when the JVM exits, so that nothing is lost if a
+     * tool terminates with System.exit().
+     *
+     * @param encoding
+     *            The encoding for the TEXT mode
+     *
+     * @throws UnsupportedEncodingException
+     *             The encoding is not supported
+     */
+    public static ReportWriter open(String encoding)
+            throws UnsupportedEncodingException {
+        Mode mode = Mode.valueOf(System.getProperty(
+                PROPERTY_PREFIX + "format", "text").toUpperCase());
+        long interval = Long.getLong(PROPERTY_PREFIX + "flush", 0);
+
+        final ReportWriter out = new ReportWriter(System.out,
+                mode == Mode.TEXT ? encoding : "UTF-8", mode, interval);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                out.flush();
+            }
+        }, "report-writer-shutdown"));
+        return out;
+    }
+
+    /**
+     * @return the output mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return true if the report is written as text with the print methods,
+     *         false if it is written as records
+     */
+    public boolean isText() {
+        return mode == Mode.TEXT;
+    }
+
+    public synchronized ReportWriter print(String s) {
+        if (mode == Mode.TEXT) {
+            write(s != null ? s : "null");
+        }
+        return this;
+    }
+
+    public ReportWriter print(Object o) {
+        return print(String.valueOf(o));
+    }
+
+    public synchronized ReportWriter print(char c) {
+        if (mode == Mode.TEXT) {
+            try {
+                writer.write(c);
+            }
+            catch (IOException e) {
+                error = true;
+            }
+        }
+        return this;
+    }
+
+    public ReportWriter print(int i) {
+        return print(Integer.toString(i));
+    }
+
+    public ReportWriter print(long l) {
+        return print(Long.toString(l));
+    }
+
+    /**
+     * Print a Unicode code point, which may be outside of the BMP.
+     */
+    public synchronized ReportWriter printCodePoint(int codePoint) {
+        if (mode == Mode.TEXT) {
+            if (Character.isBmpCodePoint(codePoint)) {
+                return print((char) codePoint);
+            }
+            print(Character.highSurrogate(codePoint));
+            print(Character.lowSurrogate(codePoint));
+        }
+        return this;
+    }
+
+    /**
+     * Print an integer as an uppercase hexadecimal number, padded with zeros
+     * to the given number of digits, like "%04X".
+     */
+    public synchronized ReportWriter printHex(int value, int minDigits) {
+        if (mode == Mode.TEXT) {
+            char[] digits = new char[8];
+            int n = 0;
+            do {
+                digits[n++] = HEX_DIGITS[value & 0xF];
+                value >>>= 4;
+            } while (value != 0);
+            for (int i = n; i < minDigits; i += 1) {
+                print('0');
+            }
+            while (n > 0) {
+                print(digits[--n]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Print a number with a fixed number of decimals, like "%.2f" in the US
+     * locale, but without the overhead of a Formatter.
+     *
+     * @param decimals
+     *            Number of decimals, 0 to 6
+     */
+    public synchronized ReportWriter printFixed(double value, int decimals) {
+        if (mode == Mode.TEXT) {
+            if (Double.isNaN(value) || Double.isInfinite(value)
+                    || Math.abs(value) >= 1e12) {
+                return printf("%." + decimals + "f", value);
+            }
+            long scale = POWERS_OF_TEN[decimals];
+            double abs = Math.abs(value) * scale;
+            if (Math.abs(abs - Math.floor(abs) - 0.5) < 1e-6) {
+                /*
+                 * Close to a tie, the Formatter rounds the shortest decimal
+                 * representation half-up, which the multiplication above
+                 * cannot reproduce.
+                 */
+                return printf("%." + decimals + "f", value);
+            }
+            long scaled = Math.round(abs);
+            if (value < 0) {
+                print('-');
+            }
+            print(scaled / scale);
+            if (decimals > 0) {
+                print('.');
+                String fraction = Long.toString(scaled % scale);
+                for (int i = fraction.length(); i < decimals; i += 1) {
+                    print('0');
+                }
+                print(fraction);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Print formatted output in the US locale. Intended for output that is
+     * rare compared to the rest of the report.
+     */
+    public synchronized ReportWriter printf(String format, Object... args) {
+        if (mode == Mode.TEXT) {
+            if (formatter == null) {
+                formatterBuffer = new StringBuilder();
+                formatter = new Formatter(formatterBuffer, Locale.US);
+            }
+            formatterBuffer.setLength(0);
+            formatter.format(format, args);
+            write(formatterBuffer.toString());
+        }
+        return this;
+    }
+
+    public synchronized ReportWriter println() {
+        if (mode == Mode.TEXT) {
+            write(lineSeparator);
+        }
+        return this;
+    }
+
+    public synchronized ReportWriter println(String s) {
+        return print(s).println();
+    }
+
+    public ReportWriter println(Object o) {
+        return println(String.valueOf(o));
+    }
+
+    /**
+     * Start a record. Ignored in TEXT mode, like the field methods.
+     */
+    public synchronized ReportWriter startRecord() {
+        if (mode != Mode.TEXT) {
+            if (inRecord) {
+                throw new IllegalStateException("record not ended");
+            }
+            inRecord = true;
+            names.clear();
+            record.setLength(0);
+            if (mode == Mode.JSONL) {
+                record.append('{');
+            }
+        }
+        return this;
+    }
+
+    public synchronized ReportWriter field(String name, String value) {
+        if (mode != Mode.TEXT) {
+            startField(name);
+            if (mode == Mode.JSONL) {
+                EventLog.appendJsonString(record, value);
+            }
+            else {
+                appendSeparatedValue(value);
+            }
+        }
+        return this;
+    }
+
+    public synchronized ReportWriter field(String name, long value) {
+        if (mode != Mode.TEXT) {
+            startField(name);
+            record.append(value);
+        }
+        return this;
+    }
+
+    public synchronized ReportWriter field(String name, double value) {
+        if (mode != Mode.TEXT) {
+            startField(name);
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                record.append(mode == Mode.JSONL ? "null" : "");
+            }
+            else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                record.append((long) value);
+            }
+            else {
+                record.append(value);
+            }
+        }
+        return this;
+    }
+
+    public synchronized ReportWriter field(String name, boolean value) {
+        if (mode != Mode.TEXT) {
+            startField(name);
+            record.append(value);
+        }
+        return this;
+    }
+
+    /**
+     * Add a list of integers, as JSON array or as space-separated list in
+     * CSV and TSV.
+     */
+    public synchronized ReportWriter field(String name, int[] values,
+            int length) {
+        if (mode != Mode.TEXT) {
+            startField(name);
+            record.append(mode == Mode.JSONL ? "[" : "");
+            for (int i = 0; i < length; i += 1) {
+                if (i > 0) {
+                    record.append(mode == Mode.JSONL ? ',' : ' ');
+                }
+                record.append(values[i]);
+            }
+            record.append(mode == Mode.JSONL ? "]" : "");
+        }
+        return this;
+    }
+
+    /**
+     * End the current record and write it.
+     */
+    public synchronized ReportWriter endRecord() {
+        if (mode != Mode.TEXT) {
+            if (!inRecord) {
+                throw new IllegalStateException("no record started");
+            }
+            inRecord = false;
+
+            if (mode == Mode.JSONL) {
+                record.append('}');
+            }
+            else if (header == null) {
+                header = new ArrayList<String>(names);
+                char separator = mode == Mode.CSV ? ',' : '\t';
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < header.size(); i += 1) {
+                    if (i > 0) {
+                        line.append(separator);
+                    }
+                    line.append(header.get(i));
+                }
+                write(line.toString());
+                write(lineSeparator);
+            }
+            else if (!names.equals(header)) {
+                throw new IllegalStateException("fields " + names
+                        + " do not match header " + header);
+            }
+            record.append(lineSeparator);
+            write(record);
+        }
+        return this;
+    }
+
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            writer.flush();
+        }
+        catch (IOException e) {
+            error = true;
+        }
+    }
+
+    /**
+     * Flush the output and close the underlying stream, unless it is
+     * System.out or System.err. The writer cannot be used afterwards.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            t = flusher;
+            try {
+                if (closeStream) {
+                    writer.close();
+                }
+                else {
+                    writer.flush();
+                }
+            }
+            catch (IOException e) {
+                error = true;
+            }
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Flush the output and return whether an error occurred.
+     */
+    public synchronized boolean checkError() {
+        flush();
+        return error;
+    }
+
+    private void startField(String name) {
+        if (!inRecord) {
+            throw new IllegalStateException("no record started");
+        }
+        boolean first = names.isEmpty();
+        names.add(name);
+        if (mode == Mode.JSONL) {
+            if (!first) {
+                record.append(',');
+            }
+            EventLog.appendJsonString(record, name);
+            record.append(':');
+        }
+        else if (!first) {
+            record.append(mode == Mode.CSV ? ',' : '\t');
+        }
+    }
+
+    private void appendSeparatedValue(String value) {
+        if (value == null) {
+            return;
+        }
+        if (mode == Mode.CSV) {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i += 1) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                record.append(value);
+                return;
+            }
+            record.append('"');
+            for (int i = 0; i < value.length(); i += 1) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    record.append('"');
+                }
+                record.append(c);
+            }
+            record.append('"');
+        }
+        else {
+            for (int i = 0; i < value.length(); i += 1) {
+                char c = value.charAt(i);
+                switch (c) {
+                case '\t':
+                    record.append("\\t");
+                    break;
+                case '\n':
+                    record.append("\\n");
+                    break;
+                case '\r':
+                    record.append("\\r");
+                    break;
+                case '\\':
+                    record.append("\\\\");
+                    break;
+                default:
+                    record.append(c);
+                }
+            }
+        }
+    }
+
+    private void write(CharSequence s) {
+        try {
+            writer.append(s);
+        }
+        catch (IOException e) {
+            error = true;
+        }
+    }
+
+    private void startFlusher(final long intervalMillis) {
+        flusher = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (;;) {
+                        Thread.sleep(intervalMillis);
+                        synchronized (ReportWriter.this) {
+                            if (closed) {
+                                return;
+                            }
+                            flush();
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    /* closed */
+                }
+            }
+        }, "report-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+}
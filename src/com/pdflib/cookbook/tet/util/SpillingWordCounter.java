@@ -0,0 +1,514 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Word counter for vocabularies that do not fit into the heap.
+ * <p>
+ * The words are counted in a {@link WordCounter}. When its memory usage
+ * exceeds the limit, the counts are written as a sorted run to a temporary
+ * file and the counter starts over. At the end the runs are combined with a
+ * k-way merge, which adds up the counts of equal words. The runs are sorted
+ * by the hash code of the words and then by the words, so that the in-memory
+ * sort is a primitive sort.
+ * <p>
+ * For listing the words by descending count, the merged words are sorted
+ * once more: the k most frequent words are selected with a heap of size k;
+ * for the full list, the merged words are collected in buffers of bounded
+ * size, which are written as runs sorted by count and merged again. Words
+ * with equal counts are then listed in alphabetical order.
+ * <p>
+ * As long as no run was written, everything happens in memory with the
+ * methods of {@link WordCounter}, and words with equal counts are listed in
+ * the order in which they were first counted. The class is not thread-safe.
+ */
+public class SpillingWordCounter implements Closeable {
+    /**
+     * Maximum number of runs that are merged at a time; more runs are merged
+     * in several passes, so that the number of open files stays bounded.
+     */
+    private static final int MAX_MERGE_RUNS = 64;
+
+    /**
+     * Estimated bytes per word for the buffer of the final sort, without the
+     * characters.
+     */
+    private static final int BUFFER_WORD_OVERHEAD = 64;
+
+    /**
+     * Receives the words in sorted order.
+     */
+    public interface Visitor {
+        void word(String word, long count) throws IOException;
+    }
+
+    private final WordCounter counter = new WordCounter();
+
+    private final long memoryLimit;
+
+    private final File tempDirectory;
+
+    private final List<File> runs = new ArrayList<File>();
+
+    private long total;
+
+    private int spills;
+
+    /**
+     * @param memoryLimit
+     *            Number of bytes of counts that are held in memory, or
+     *            Long.MAX_VALUE for counting in memory only
+     * @param tempDirectory
+     *            Directory for the runs, or null for the default temporary
+     *            directory
+     */
+    public SpillingWordCounter(long memoryLimit, File tempDirectory) {
+        this.memoryLimit = memoryLimit;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Count an occurrence of a word.
+     */
+    public void add(CharSequence word) throws IOException {
+        counter.add(word);
+        total += 1;
+        if (counter.getMemoryUsage() > memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * Add the counts of a WordCounter.
+     */
+    public void addAll(WordCounter other) throws IOException {
+        counter.addAll(other);
+        total += other.getTotal();
+        if (counter.getMemoryUsage() > memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the sum of all counts
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of times the counts were written to disk
+     */
+    public int getSpills() {
+        return spills;
+    }
+
+    /**
+     * @return the number of distinct words held in memory; equal to the
+     *         number of distinct words if no run was written
+     */
+    public int getMemorySize() {
+        return counter.size();
+    }
+
+    /**
+     * List the words by descending count. After this the counter is empty.
+     *
+     * @param top
+     *            Number of most frequent words to list, or 0 for all words
+     * @param visitor
+     *            Receives the words
+     *
+     * @return the number of distinct words
+     */
+    public long visitByCount(int top, Visitor visitor) throws IOException {
+        if (runs.isEmpty()) {
+            int[] ids = top > 0 ? counter.topByCount(top)
+                    : counter.sortByCount();
+            for (int i = 0; i < ids.length; i += 1) {
+                visitor.word(counter.getWord(ids[i]), counter.getCount(ids[i]));
+            }
+            long size = counter.size();
+            counter.clear();
+            return size;
+        }
+
+        if (counter.size() > 0) {
+            spill();
+        }
+        File merged = mergeAll(runs, false);
+        runs.clear();
+        runs.add(merged);
+
+        Run in = new Run(merged);
+        try {
+            return top > 0 ? visitTop(in, top, visitor)
+                    : visitAll(in, visitor);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Delete the temporary files.
+     */
+    public void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    /**
+     * Write the counts in memory as a run sorted by hash code and word.
+     */
+    private void spill() throws IOException {
+        int size = counter.size();
+        long[] keys = new long[size];
+        for (int id = 0; id < size; id += 1) {
+            keys[id] = (long) counter.getHash(id) << 32 | id;
+        }
+        Arrays.sort(keys);
+
+        /* words with equal hash codes are rare, sort them by the words */
+        int start = 0;
+        while (start < size) {
+            int end = start + 1;
+            while (end < size && keys[end] >>> 32 == keys[start] >>> 32) {
+                end += 1;
+            }
+            if (end - start > 1) {
+                sortGroup(keys, start, end);
+            }
+            start = end;
+        }
+
+        File file = File.createTempFile("words", ".run", tempDirectory);
+        file.deleteOnExit();
+        runs.add(file);
+        DataOutputStream out = openRun(file);
+        try {
+            for (int i = 0; i < size; i += 1) {
+                int id = (int) keys[i];
+                writeRecord(out, keys[i] >> 32, counter.getWord(id),
+                        counter.getCount(id));
+            }
+        }
+        finally {
+            out.close();
+        }
+        counter.clear();
+        spills += 1;
+    }
+
+    /**
+     * Sort keys[start] to keys[end - 1] by the words of their ids.
+     */
+    private void sortGroup(long[] keys, int start, int end) {
+        final String[] words = new String[end - start];
+        Integer[] order = new Integer[end - start];
+        for (int i = 0; i < order.length; i += 1) {
+            words[i] = counter.getWord((int) keys[start + i]);
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return words[i1.intValue()].compareTo(words[i2.intValue()]);
+            }
+        });
+        long[] sortedKeys = new long[order.length];
+        for (int i = 0; i < order.length; i += 1) {
+            sortedKeys[i] = keys[start + order[i].intValue()];
+        }
+        System.arraycopy(sortedKeys, 0, keys, start, order.length);
+    }
+
+    /**
+     * Merge runs into a single run, in several passes if necessary.
+     *
+     * @param byCount
+     *            false to add up the counts of equal words, true to merge
+     *            runs sorted by count
+     */
+    private File mergeAll(List<File> files, boolean byCount)
+            throws IOException {
+        List<File> pending = new ArrayList<File>(files);
+        do {
+            List<File> next = new ArrayList<File>();
+            for (int i = 0; i < pending.size(); i += MAX_MERGE_RUNS) {
+                List<File> group = pending.subList(i,
+                        Math.min(pending.size(), i + MAX_MERGE_RUNS));
+                next.add(merge(group, byCount));
+            }
+            pending = next;
+        } while (pending.size() > 1);
+        return pending.get(0);
+    }
+
+    /**
+     * Merge runs into a new run, and delete them.
+     */
+    private File merge(List<File> files, boolean byCount) throws IOException {
+        if (files.size() == 1) {
+            return files.get(0);
+        }
+        File file = File.createTempFile("words", ".run", tempDirectory);
+        file.deleteOnExit();
+        DataOutputStream out = openRun(file);
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(files.size(),
+                RUN_ORDER);
+        List<Run> open = new ArrayList<Run>();
+        try {
+            for (File run : files) {
+                Run in = new Run(run);
+                open.add(in);
+                if (in.advance()) {
+                    queue.add(in);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                Run in = queue.poll();
+                long key = in.key;
+                String word = in.word;
+                long count = in.count;
+                if (in.advance()) {
+                    queue.add(in);
+                }
+                while (!byCount && !queue.isEmpty()
+                        && queue.peek().key == key
+                        && queue.peek().word.equals(word)) {
+                    Run equal = queue.poll();
+                    count += equal.count;
+                    if (equal.advance()) {
+                        queue.add(equal);
+                    }
+                }
+                writeRecord(out, key, word, count);
+            }
+        }
+        finally {
+            out.close();
+            for (Run in : open) {
+                in.close();
+            }
+        }
+        for (File run : files) {
+            run.delete();
+        }
+        return file;
+    }
+
+    /**
+     * Select the most frequent words of the merged run with a heap.
+     */
+    private long visitTop(Run in, int top, Visitor visitor)
+            throws IOException {
+        /* the heap head is the least frequent of the selected words */
+        PriorityQueue<Object[]> heap = new PriorityQueue<Object[]>(top,
+                new Comparator<Object[]>() {
+                    public int compare(Object[] e1, Object[] e2) {
+                        return compareByCount(e2, e1);
+                    }
+                });
+        long size = 0;
+        while (in.advance()) {
+            size += 1;
+            Object[] entry = new Object[] { in.word, Long.valueOf(in.count) };
+            if (heap.size() < top) {
+                heap.add(entry);
+            }
+            else if (compareByCount(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        Object[][] entries = heap.toArray(new Object[heap.size()][]);
+        Arrays.sort(entries, new Comparator<Object[]>() {
+            public int compare(Object[] e1, Object[] e2) {
+                return compareByCount(e1, e2);
+            }
+        });
+        for (Object[] entry : entries) {
+            visitor.word((String) entry[0], ((Long) entry[1]).longValue());
+        }
+        return size;
+    }
+
+    /**
+     * Descending count, then ascending word.
+     */
+    private static int compareByCount(Object[] e1, Object[] e2) {
+        int c = Long.compare(((Long) e2[1]).longValue(),
+                ((Long) e1[1]).longValue());
+        return c != 0 ? c : ((String) e1[0]).compareTo((String) e2[0]);
+    }
+
+    /**
+     * Sort the merged run by count in runs of bounded size, and merge them.
+     */
+    private long visitAll(Run in, Visitor visitor) throws IOException {
+        List<File> countRuns = new ArrayList<File>();
+        try {
+            long size = 0;
+            List<String> words = new ArrayList<String>();
+            long[] keys = new long[1024];
+            long bytes = 0;
+            boolean more = true;
+            while (more) {
+                more = in.advance();
+                if (more) {
+                    size += 1;
+                    if (words.size() == keys.length) {
+                        keys = Arrays.copyOf(keys, keys.length * 2);
+                    }
+                    /* position in the buffer, sorted with the count */
+                    keys[words.size()] = in.count;
+                    words.add(in.word);
+                    bytes += BUFFER_WORD_OVERHEAD + 2 * in.word.length();
+                }
+                if (!words.isEmpty() && (!more || bytes > memoryLimit)) {
+                    countRuns.add(writeCountRun(words, keys));
+                    words.clear();
+                    bytes = 0;
+                }
+            }
+            if (countRuns.isEmpty()) {
+                return 0;
+            }
+
+            File merged = mergeAll(countRuns, true);
+            countRuns.clear();
+            countRuns.add(merged);
+            Run sorted = new Run(merged);
+            try {
+                while (sorted.advance()) {
+                    visitor.word(sorted.word, sorted.count);
+                }
+            }
+            finally {
+                sorted.close();
+            }
+            return size;
+        }
+        finally {
+            for (File run : countRuns) {
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * Write a buffer of words as a run sorted by descending count and word.
+     */
+    private File writeCountRun(final List<String> words, final long[] counts)
+            throws IOException {
+        Integer[] order = new Integer[words.size()];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                int c = Long.compare(counts[i2.intValue()],
+                        counts[i1.intValue()]);
+                return c != 0 ? c : words.get(i1.intValue()).compareTo(
+                        words.get(i2.intValue()));
+            }
+        });
+
+        File file = File.createTempFile("counts", ".run", tempDirectory);
+        file.deleteOnExit();
+        DataOutputStream out = openRun(file);
+        try {
+            for (Integer i : order) {
+                long count = counts[i.intValue()];
+                writeRecord(out, Long.MAX_VALUE - count, words.get(i.intValue()),
+                        count);
+            }
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static DataOutputStream openRun(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16));
+    }
+
+    /**
+     * Record of a run: sort key, word, count.
+     */
+    private static void writeRecord(DataOutputStream out, long key,
+            String word, long count) throws IOException {
+        out.writeLong(key);
+        out.writeUTF(word);
+        out.writeLong(count);
+    }
+
+    /**
+     * Runs are ordered by the key of their current record, then by the word.
+     */
+    private static final Comparator<Run> RUN_ORDER = new Comparator<Run>() {
+        public int compare(Run r1, Run r2) {
+            int c = Long.compare(r1.key, r2.key);
+            return c != 0 ? c : r1.word.compareTo(r2.word);
+        }
+    };
+
+    /**
+     * Reader for a run, positioned on its current record.
+     */
+    private static class Run {
+        private final DataInputStream in;
+
+        long key;
+
+        String word;
+
+        long count;
+
+        Run(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), 1 << 16));
+        }
+
+        /**
+         * Read the next record.
+         *
+         * @return false at the end of the run
+         */
+        boolean advance() throws IOException {
+            try {
+                key = in.readLong();
+            }
+            catch (EOFException e) {
+                return false;
+            }
+            word = in.readUTF();
+            count = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
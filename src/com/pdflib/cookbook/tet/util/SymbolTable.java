@@ -0,0 +1,244 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.util.Arrays;
+
+/**
+ * Maps each distinct token to a dense int id, so that analyzers can keep
+ * their data per token in int-indexed arrays instead of maps with String
+ * keys.
+ * <p>
+ * The ids are 0 to size() - 1, in the order in which the tokens were first
+ * interned. The characters of all tokens are stored once in a shared char
+ * arena, and a token is interned from a char array or a CharSequence
+ * without creating a String. The hash table is an open-addressing table
+ * with linear probing that holds only the ids, so a lookup touches one int
+ * array, the array of hash codes and the arena.
+ * <p>
+ * The class is not thread-safe.
+ */
+public class SymbolTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Hash table of id + 1 per slot, 0 for an empty slot. The table is at
+     * most half full.
+     */
+    private int[] slots;
+
+    /**
+     * Hash code of each token.
+     */
+    private int[] hashes;
+
+    /**
+     * Start of each token in the arena; the token ends at the start of the
+     * next token.
+     */
+    private int[] starts;
+
+    private char[] arena;
+
+    private int size;
+
+    /**
+     * Buffer for copying CharSequences.
+     */
+    private char[] scratch = new char[32];
+
+    public SymbolTable() {
+        slots = new int[INITIAL_CAPACITY * 2];
+        hashes = new int[INITIAL_CAPACITY];
+        starts = new int[INITIAL_CAPACITY + 1];
+        arena = new char[INITIAL_CAPACITY * 8];
+    }
+
+    /**
+     * @return the id of the token, a new one if the token is new
+     */
+    public int intern(CharSequence token) {
+        int length = copy(token);
+        return intern(scratch, 0, length);
+    }
+
+    /**
+     * @return the id of the token in chars[offset] to chars[offset + length -
+     *         1], a new one if the token is new
+     */
+    public int intern(char[] chars, int offset, int length) {
+        int hash = hash(chars, offset, length);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        int id;
+        while ((id = slots[slot] - 1) >= 0) {
+            if (hashes[id] == hash && equals(id, chars, offset, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        id = size;
+        if (id == hashes.length) {
+            grow();
+            slot = hash & (slots.length - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+        }
+        int start = starts[id];
+        if (start + length > arena.length) {
+            arena = Arrays.copyOf(arena,
+                    Math.max(arena.length * 2, start + length));
+        }
+        System.arraycopy(chars, offset, arena, start, length);
+        starts[id + 1] = start + length;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        size += 1;
+        return id;
+    }
+
+    /**
+     * @return the id in this table of the token with the given id in another
+     *         table, a new one if the token is new
+     */
+    public int intern(SymbolTable other, int id) {
+        other.checkId(id);
+        int start = other.starts[id];
+        return intern(other.arena, start, other.starts[id + 1] - start);
+    }
+
+    /**
+     * @return the id of a token, or -1 if it has not been interned
+     */
+    public int find(CharSequence token) {
+        int length = copy(token);
+        int hash = hash(scratch, 0, length);
+        int mask = slots.length - 1;
+        int id;
+        for (int slot = hash & mask; (id = slots[slot] - 1) >= 0;
+                slot = (slot + 1) & mask) {
+            if (hashes[id] == hash && equals(id, scratch, 0, length)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of distinct tokens
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the hash code of the token with the given id; equal tokens have
+     *         equal hash codes in all SymbolTables
+     */
+    public int getHash(int id) {
+        checkId(id);
+        return hashes[id];
+    }
+
+    /**
+     * @return the token with the given id as a new String
+     */
+    public String getSymbol(int id) {
+        checkId(id);
+        return new String(arena, starts[id], starts[id + 1] - starts[id]);
+    }
+
+    /**
+     * Append the token with the given id to a StringBuilder, without creating
+     * a String.
+     */
+    public void appendSymbol(int id, StringBuilder s) {
+        checkId(id);
+        s.append(arena, starts[id], starts[id + 1] - starts[id]);
+    }
+
+    /**
+     * @return the approximate number of bytes used for the tokens interned so
+     *         far; the arrays themselves are kept by clear() and can take up
+     *         to twice as much
+     */
+    public long getMemoryUsage() {
+        return 4L * slots.length + 8L * size + 2L * starts[size];
+    }
+
+    /**
+     * Remove all tokens.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("symbol id " + id);
+        }
+    }
+
+    private int copy(CharSequence token) {
+        int length = token.length();
+        if (length > scratch.length) {
+            scratch = new char[Math.max(length, scratch.length * 2)];
+        }
+        if (token instanceof String) {
+            ((String) token).getChars(0, length, scratch, 0);
+        }
+        else {
+            for (int i = 0; i < length; i += 1) {
+                scratch[i] = token.charAt(i);
+            }
+        }
+        return length;
+    }
+
+    private boolean equals(int id, char[] chars, int offset, int length) {
+        int start = starts[id];
+        if (starts[id + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i += 1) {
+            if (arena[start + i] != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Double the capacity and rehash the ids with the stored hash codes.
+     */
+    private void grow() {
+        int capacity = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        starts = Arrays.copyOf(starts, capacity + 1);
+
+        slots = new int[capacity * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id += 1) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int hash(char[] chars, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i += 1) {
+            h = 31 * h + chars[i];
+        }
+        /* spread the bits, as linear probing uses the low bits only */
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
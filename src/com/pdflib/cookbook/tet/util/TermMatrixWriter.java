@@ -0,0 +1,199 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes the term frequencies of a corpus of documents as a sparse
+ * document-term matrix, together with the document frequency and the
+ * inverse document frequency of each term, for computing TF-IDF vectors
+ * without tokenizing the text again.
+ * <p>
+ * Each document is written as one row as soon as it is complete, so the
+ * matrix never has to be held in memory; only the vocabulary and one offset
+ * per document are kept. The document frequencies and thus the IDF weights
+ * are only known at the end, so they are written after the rows, and the
+ * TF-IDF weight of an entry is its count times the IDF of its term. The
+ * files are:
+ * <dl>
+ * <dt>&lt;base&gt;.tfm</dt>
+ * <dd>The matrix in CSR layout, all numbers big-endian as written by
+ * DataOutputStream: the int magic number and the int version; the entries
+ * as pairs of int term id and int count, row by row, ascending by term id
+ * within a row; then the trailer with int number of documents d, int number
+ * of terms t, long number of entries, d + 1 long row offsets in entries, t
+ * int document frequencies and t float IDF weights ln(d / df); finally the
+ * long file position of the trailer.</dd>
+ * <dt>&lt;base&gt;.docs</dt>
+ * <dd>The name of the document of each row, one per line in UTF-8, written
+ * along with the rows.</dd>
+ * <dt>&lt;base&gt;.vocab</dt>
+ * <dd>The term of each term id, one per line in UTF-8, written at the
+ * end.</dd>
+ * </dl>
+ * The rows are numbered in the order in which the documents are added, and
+ * the term ids in the order in which the terms first occur in the rows. The
+ * methods are synchronized, so the workers of a program can add their
+ * documents directly; the row order and the term ids then depend on the
+ * order in which the workers complete their documents and may differ from
+ * run to run, while the .docs and .vocab files always name the document of
+ * each row and the term of each term id.
+ */
+public class TermMatrixWriter implements Closeable {
+    /**
+     * "TFM1"
+     */
+    public static final int MAGIC = 0x54464d31;
+
+    public static final int VERSION = 1;
+
+    private final String basename;
+
+    private final DataOutputStream matrix;
+
+    private final Writer documents;
+
+    /**
+     * The terms of all documents; the count of a term is its document
+     * frequency.
+     */
+    private final WordCounter vocabulary = new WordCounter();
+
+    /**
+     * Offset of each row in entries, and the number of entries.
+     */
+    private long[] rowOffsets = new long[256];
+
+    private int rows;
+
+    private long position;
+
+    private final StringBuilder term = new StringBuilder();
+
+    /**
+     * @param basename
+     *            The name of the files without the extension
+     */
+    public TermMatrixWriter(String basename) throws IOException {
+        this.basename = basename;
+        matrix = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(basename + ".tfm"), 65536));
+        documents = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(basename + ".docs"), "UTF-8"));
+        matrix.writeInt(MAGIC);
+        matrix.writeInt(VERSION);
+        position = 8;
+    }
+
+    public String getBasename() {
+        return basename;
+    }
+
+    /**
+     * Write the row of a document.
+     *
+     * @param name
+     *            The name of the document
+     * @param counts
+     *            The term frequencies of the document
+     *
+     * @return the row number of the document
+     */
+    public synchronized int addDocument(String name, WordCounter counts)
+            throws IOException {
+        /*
+         * Map the terms to the ids of the vocabulary, counting the document
+         * for each of them, and sort the row by these ids.
+         */
+        long[] entries = new long[counts.size()];
+        for (int id = 0; id < entries.length; id += 1) {
+            term.setLength(0);
+            counts.appendWord(id, term);
+            int termId = vocabulary.add(term, 1);
+            entries[id] = (long) termId << 32 | counts.getCount(id);
+        }
+        Arrays.sort(entries);
+
+        for (int i = 0; i < entries.length; i += 1) {
+            matrix.writeInt((int) (entries[i] >>> 32));
+            matrix.writeInt((int) entries[i]);
+        }
+        position += 8L * entries.length;
+        documents.write(name);
+        documents.write('\n');
+
+        if (rows + 2 > rowOffsets.length) {
+            rowOffsets = Arrays.copyOf(rowOffsets, rowOffsets.length * 2);
+        }
+        rowOffsets[rows + 1] = rowOffsets[rows] + entries.length;
+        return rows++;
+    }
+
+    /**
+     * @return the number of documents written so far
+     */
+    public synchronized int getDocuments() {
+        return rows;
+    }
+
+    /**
+     * @return the number of distinct terms so far
+     */
+    public synchronized int getTerms() {
+        return vocabulary.size();
+    }
+
+    /**
+     * @return the number of entries written so far
+     */
+    public synchronized long getEntries() {
+        return rowOffsets[rows];
+    }
+
+    /**
+     * Write the trailer and the vocabulary, and close the files.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            int terms = vocabulary.size();
+            matrix.writeInt(rows);
+            matrix.writeInt(terms);
+            matrix.writeLong(rowOffsets[rows]);
+            for (int row = 0; row <= rows; row += 1) {
+                matrix.writeLong(rowOffsets[row]);
+            }
+            for (int id = 0; id < terms; id += 1) {
+                matrix.writeInt(vocabulary.getCount(id));
+            }
+            for (int id = 0; id < terms; id += 1) {
+                matrix.writeFloat((float) Math.log((double) rows
+                        / vocabulary.getCount(id)));
+            }
+            matrix.writeLong(position);
+        }
+        finally {
+            matrix.close();
+            documents.close();
+        }
+
+        Writer words = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(basename + ".vocab"), "UTF-8"));
+        try {
+            for (int id = 0; id < vocabulary.size(); id += 1) {
+                term.setLength(0);
+                vocabulary.appendWord(id, term);
+                words.append(term).append('\n');
+            }
+        }
+        finally {
+            words.close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Classifies and normalizes the words returned by TET_get_text() for
+ * counting and indexing: case folding and optionally NFKC normalization.
+ * <p>
+ * Most words of most documents are pure ASCII, so ASCII is handled by a
+ * fast path: the word is copied into a reusable buffer and folded in place
+ * with one table lookup per character, while the bits of all characters are
+ * collected, so that non-ASCII characters are detected with a single branch
+ * per word instead of one per character. Only words with other
+ * characters take the general path: NFKC normalization with
+ * java.text.Normalizer, if enabled, and full Unicode case folding per code
+ * point. The full case folding maps characters like "&szlig;" or the "fi"
+ * ligature to several characters ("ss", "fi"), which String.toLowerCase()
+ * does not do, so that the words match regardless of case.
+ * <p>
+ * The normalized word is left in the buffer of the normalizer, which can be
+ * passed to {@link WordCounter#add(char[], int, int, int)} without creating
+ * a String. The class is not thread-safe; use one instance per thread.
+ */
+public class TokenNormalizer {
+    /**
+     * Lowercase of each ASCII character.
+     */
+    private static final char[] ASCII_FOLD = new char[128];
+
+    static {
+        for (char c = 0; c < 128; c += 1) {
+            ASCII_FOLD[c] = c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+        }
+    }
+
+    private final boolean foldCase;
+
+    private final boolean nfkc;
+
+    private char[] buffer = new char[32];
+
+    private int length;
+
+    /**
+     * @param foldCase
+     *            Whether to fold the case of the words
+     * @param nfkc
+     *            Whether to apply NFKC normalization to the words
+     */
+    public TokenNormalizer(boolean foldCase, boolean nfkc) {
+        this.foldCase = foldCase;
+        this.nfkc = nfkc;
+    }
+
+    /**
+     * @return whether the word starts with a letter, like
+     *         Character.isLetter() for its first code point
+     */
+    public static boolean startsWithLetter(CharSequence word) {
+        char c = word.charAt(0);
+        if (c < 0x80) {
+            return (char) ((c | 0x20) - 'a') < 26;
+        }
+        return Character.isLetter(Character.codePointAt(word, 0));
+    }
+
+    /**
+     * @return the simple case folding of a character, i.e. the folding that
+     *         does not change the number of characters
+     */
+    public static int foldCase(int c) {
+        if (c < 0x80) {
+            return ASCII_FOLD[c];
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Normalize a word into the buffer.
+     *
+     * @return the length of the normalized word
+     */
+    public int normalize(CharSequence word) {
+        int n = word.length();
+        if (n > buffer.length) {
+            buffer = new char[Math.max(n, buffer.length * 2)];
+        }
+        char[] chars = buffer;
+        if (word instanceof String) {
+            ((String) word).getChars(0, n, chars, 0);
+        }
+        else {
+            for (int i = 0; i < n; i += 1) {
+                chars[i] = word.charAt(i);
+            }
+        }
+
+        /*
+         * Fold as if the word were ASCII and collect the bits of all
+         * characters; the result is only used if it was.
+         */
+        int bits = 0;
+        if (foldCase) {
+            for (int i = 0; i < n; i += 1) {
+                char c = chars[i];
+                bits |= c;
+                chars[i] = ASCII_FOLD[c & 0x7f];
+            }
+        }
+        else {
+            for (int i = 0; i < n; i += 1) {
+                bits |= chars[i];
+            }
+        }
+
+        if (bits < 0x80) {
+            length = n;
+        }
+        else if (foldCase || nfkc) {
+            normalizeUnicode(word);
+        }
+        else {
+            length = n;
+        }
+        return length;
+    }
+
+    /**
+     * @return the buffer with the normalized word in [0, length())
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the length of the normalized word
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the normalized word as a new String
+     */
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * The general path for words with non-ASCII characters.
+     */
+    private void normalizeUnicode(CharSequence word) {
+        if (nfkc && !Normalizer.isNormalized(word, Normalizer.Form.NFKC)) {
+            word = Normalizer.normalize(word, Normalizer.Form.NFKC);
+        }
+        length = 0;
+        for (int i = 0; i < word.length();) {
+            int c = Character.codePointAt(word, i);
+            i += Character.charCount(c);
+            if (!foldCase) {
+                append(c);
+            }
+            else if (c < 0x80) {
+                append(ASCII_FOLD[c]);
+            }
+            else {
+                appendFolded(c);
+            }
+        }
+    }
+
+    /**
+     * Append the full case folding of a non-ASCII code point.
+     */
+    private void appendFolded(int c) {
+        int upper = Character.toUpperCase(c);
+        if (upper == c && Character.isLowerCase(c)) {
+            /*
+             * A lowercase letter without a single uppercase letter, like
+             * "&szlig;" or a ligature; its full uppercase mapping may consist
+             * of several characters. Such letters are rare.
+             */
+            String full = new String(Character.toChars(c))
+                    .toUpperCase(Locale.ROOT);
+            for (int i = 0; i < full.length();) {
+                int u = full.codePointAt(i);
+                i += Character.charCount(u);
+                append(Character.toLowerCase(u));
+            }
+        }
+        else {
+            append(Character.toLowerCase(upper));
+        }
+    }
+
+    private void append(int c) {
+        if (length + 2 > buffer.length) {
+            char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        length += Character.toChars(c, buffer, length);
+    }
+}
@@ -0,0 +1,268 @@
+package com.pdflib.cookbook.tet.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts the occurrences of words without creating an object per occurrence.
+ * <p>
+ * This replaces a HashMap&lt;String, Integer&gt;, which needs a String for
+ * every lookup and a new Integer for every increment. The words are interned
+ * in a {@link SymbolTable}, and the counts are kept in an int array indexed
+ * by the ids of the table. So each distinct word has a dense id, 0 to
+ * size() - 1, in the order in which the words were first added.
+ * <p>
+ * The class is not thread-safe; use one instance per thread and combine the
+ * counts with {@link #addAll(WordCounter)}.
+ */
+public class WordCounter {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    /**
+     * Count of each word.
+     */
+    private int[] counts = new int[INITIAL_CAPACITY];
+
+    private long total;
+
+    /**
+     * Count an occurrence of a word.
+     *
+     * @return the id of the word
+     */
+    public int add(CharSequence word) {
+        return add(word, 1);
+    }
+
+    /**
+     * Add to the count of a word.
+     *
+     * @param delta
+     *            Number of occurrences to add
+     *
+     * @return the id of the word
+     */
+    public int add(CharSequence word, int delta) {
+        int size = symbols.size();
+        return count(symbols.intern(word), size, delta);
+    }
+
+    /**
+     * Add to the count of the word in chars[offset] to chars[offset + length
+     * - 1].
+     *
+     * @return the id of the word
+     */
+    public int add(char[] chars, int offset, int length, int delta) {
+        int size = symbols.size();
+        return count(symbols.intern(chars, offset, length), size, delta);
+    }
+
+    /**
+     * Add the counts of another counter to this one.
+     */
+    public void addAll(WordCounter other) {
+        for (int id = 0; id < other.size(); id += 1) {
+            int size = symbols.size();
+            count(symbols.intern(other.symbols, id), size, other.counts[id]);
+        }
+    }
+
+    /**
+     * @return the id of a word, or -1 if it has not been counted
+     */
+    public int find(CharSequence word) {
+        return symbols.find(word);
+    }
+
+    /**
+     * @return the number of distinct words
+     */
+    public int size() {
+        return symbols.size();
+    }
+
+    /**
+     * @return the sum of all counts
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCount(int id) {
+        checkId(id);
+        return counts[id];
+    }
+
+    /**
+     * @return the hash code of the word with the given id; equal words have
+     *         equal hash codes in all WordCounters
+     */
+    public int getHash(int id) {
+        return symbols.getHash(id);
+    }
+
+    /**
+     * @return the approximate number of bytes used for the words counted so
+     *         far; the arrays themselves are kept by clear() and can take up
+     *         to twice as much
+     */
+    public long getMemoryUsage() {
+        return symbols.getMemoryUsage() + 4L * size();
+    }
+
+    /**
+     * @return the word with the given id as a new String
+     */
+    public String getWord(int id) {
+        return symbols.getSymbol(id);
+    }
+
+    /**
+     * Append the word with the given id to a StringBuilder, without creating
+     * a String.
+     */
+    public void appendWord(int id, StringBuilder s) {
+        symbols.appendSymbol(id, s);
+    }
+
+    /**
+     * Sort the words descending by count; words with the same count are in
+     * the order of their ids. The sort is a primitive sort of the counts and
+     * ids packed into longs.
+     *
+     * @return the ids of all words in sorted order
+     */
+    public int[] sortByCount() {
+        return sortByCount(counts, size());
+    }
+
+    /**
+     * Find the k most frequent words with a bounded heap, in O(size() * log
+     * k) time and O(k) memory.
+     *
+     * @return the ids of the k most frequent words, or of all words if there
+     *         are fewer, in the same order as by {@link #sortByCount()}
+     */
+    public int[] topByCount(int k) {
+        return topByCount(counts, size(), k);
+    }
+
+    /**
+     * Sort the indexes of counts[0] to counts[size - 1] descending by count,
+     * like {@link #sortByCount()}, for counts that are kept outside of a
+     * WordCounter.
+     *
+     * @return the indexes in sorted order
+     */
+    public static int[] sortByCount(int[] counts, int size) {
+        long[] keys = new long[size];
+        for (int id = 0; id < size; id += 1) {
+            keys[id] = rankKey(counts, id);
+        }
+        Arrays.sort(keys);
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            ids[i] = (int) keys[i];
+        }
+        return ids;
+    }
+
+    /**
+     * Find the indexes of the k largest of counts[0] to counts[size - 1],
+     * like {@link #topByCount(int)}.
+     *
+     * @return the indexes in the order of {@link #sortByCount(int[], int)}
+     */
+    public static int[] topByCount(int[] counts, int size, int k) {
+        if (k >= size) {
+            return sortByCount(counts, size);
+        }
+        /*
+         * Min-heap of the rank keys of the best words so far; a smaller rank
+         * key is a better word, so the heap is ordered by the complement.
+         */
+        long[] heap = new long[k];
+        int n = 0;
+        for (int id = 0; id < size; id += 1) {
+            long key = ~rankKey(counts, id);
+            if (n < k) {
+                int i = n++;
+                while (i > 0 && heap[(i - 1) / 2] > key) {
+                    heap[i] = heap[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = key;
+            }
+            else if (key > heap[0]) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= k) {
+                        break;
+                    }
+                    if (child + 1 < k && heap[child + 1] < heap[child]) {
+                        child += 1;
+                    }
+                    if (heap[child] >= key) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = key;
+            }
+        }
+
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            heap[i] = ~heap[i];
+        }
+        Arrays.sort(heap, 0, n);
+        for (int i = 0; i < n; i += 1) {
+            ids[i] = (int) heap[i];
+        }
+        return ids;
+    }
+
+    /**
+     * @return a key that sorts ascending by descending count and ascending
+     *         id
+     */
+    private static long rankKey(int[] counts, int id) {
+        return (long) (Integer.MAX_VALUE - counts[id]) << 32 | id;
+    }
+
+    /**
+     * Remove all words.
+     */
+    public void clear() {
+        symbols.clear();
+        total = 0;
+    }
+
+    /**
+     * Add to the count of the word with the given id, which is a new word if
+     * it equals the former size.
+     */
+    private int count(int id, int size, int delta) {
+        if (id == size) {
+            if (id == counts.length) {
+                counts = Arrays.copyOf(counts, counts.length * 2);
+            }
+            counts[id] = delta;
+        }
+        else {
+            counts[id] += delta;
+        }
+        total += delta;
+        return id;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size()) {
+            throw new IndexOutOfBoundsException("word id " + id);
+        }
+    }
+}